@@ -17,6 +17,7 @@ package br.com.cpqd.asr.recognizer;
 
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
 import android.support.annotation.NonNull;
 
@@ -27,11 +28,18 @@ import android.support.annotation.NonNull;
  * handle messages for an instance of this thread to process.</p>
  * <p>Subclasses are expected to implement {@link Handler.Callback},
  * that is, how received messages should be interpreted.</p>
+ * <p>Alternatively, messages may be handled in the looper of another thread
+ * shared by many instances, in which case this thread is never started.</p>
  */
 abstract class AbstractMessagingThread extends HandlerThread implements Handler.Callback {
 
     private Handler mHandler;
 
+    /**
+     * Looper shared with other instances, or {@code null} if this thread has its own.
+     */
+    private final Looper mSharedLooper;
+
     /**
      * Sets up object initial state.
      *
@@ -39,24 +47,57 @@ abstract class AbstractMessagingThread extends HandlerThread implements Handler.
      */
     AbstractMessagingThread(@NonNull String threadName) {
 
+        this(threadName, null);
+    }
+
+    /**
+     * Sets up object initial state.
+     *
+     * @param threadName   thread name.
+     * @param sharedLooper looper where messages are handled, or {@code null}
+     *                     if they should be handled by this thread once started.
+     */
+    AbstractMessagingThread(@NonNull String threadName, Looper sharedLooper) {
+
         super(threadName);
 
         setDaemon(true);
 
         mHandler = null;
+
+        mSharedLooper = sharedLooper;
     }
 
     /**
-     * @see Handler#obtainMessage()
+     * Starts this thread, unless messages are handled in a shared looper.
      */
-    public Message obtainMessage() {
+    void startMessaging() {
 
-        if (mHandler == null) {
+        if (mSharedLooper == null) {
+            start();
+        }
+    }
 
-            mHandler = new Handler(getLooper(), this);
+    /**
+     * Stops handling messages. This thread is finished, unless messages
+     * are handled in a shared looper, in which case pending messages are
+     * discarded.
+     */
+    void finishMessaging() {
+
+        if (mSharedLooper == null) {
+            quit();
+        } else {
+            getHandler().removeCallbacksAndMessages(null);
         }
+    }
 
-        return mHandler.obtainMessage();
+    /**
+     * @see Handler#obtainMessage()
+     */
+    public Message obtainMessage() {
+
+        return getHandler().obtainMessage();
     }
 
     /**
@@ -64,12 +105,7 @@ abstract class AbstractMessagingThread extends HandlerThread implements Handler.
      */
     boolean sendMessageDelayed(Message msg, long delayMillis) {
 
-        if (mHandler == null) {
-
-            mHandler = new Handler(getLooper(), this);
-        }
-
-        return mHandler.sendMessageDelayed(msg, delayMillis);
+        return getHandler().sendMessageDelayed(msg, delayMillis);
     }
 
     /**
@@ -77,12 +113,22 @@ abstract class AbstractMessagingThread extends HandlerThread implements Handler.
      */
     void removeMessages(int what) {
 
+        getHandler().removeMessages(what);
+    }
+
+    /**
+     * Gets the handler, creating it on first use.
+     *
+     * @return the handler.
+     */
+    private synchronized Handler getHandler() {
+
         if (mHandler == null) {
 
-            mHandler = new Handler(getLooper(), this);
+            mHandler = new Handler(mSharedLooper != null ? mSharedLooper : getLooper(), this);
         }
 
-        mHandler.removeMessages(what);
+        return mHandler;
     }
 
     /**
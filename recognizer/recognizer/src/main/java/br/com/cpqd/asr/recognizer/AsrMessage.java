@@ -21,6 +21,7 @@ import android.util.Log;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -46,7 +47,7 @@ class AsrMessage {
     /**
      * ASR protocol.
      */
-    private static final String ASR_PROTOCOL = "ASR";
+    static final String ASR_PROTOCOL = "ASR";
 
     /**
      * ASR major version.
@@ -119,6 +120,51 @@ class AsrMessage {
      */
     private static final String VERSION_REGEX = "(" + ASR_MAJOR_VERSION + "\\.\\d+)";
 
+    /**
+     * Version of the protocol implemented by this library, e.g. <tt>2.3</tt>.
+     */
+    static final String ASR_VERSION = ASR_MAJOR_VERSION + "." + ASR_MINOR_VERSION;
+
+    /**
+     * All valid methods, used by the buffer decoder to map method octets
+     * back to the corresponding constant without allocating a new string.
+     */
+    private static final String[] METHODS = {
+            METHOD_RECOGNITION_RESULT, METHOD_RESPONSE, METHOD_START_OF_SPEECH,
+            METHOD_END_OF_SPEECH, METHOD_CANCEL_RECOGNITION, METHOD_CREATE_SESSION,
+            METHOD_START_RECOGNITION, METHOD_SEND_AUDIO, METHOD_RELEASE_SESSION,
+            METHOD_START_INPUT_TIMERS
+    };
+
+    /**
+     * Header field names and values that are frequently sent by the server.
+     * The buffer decoder reuses these strings instead of allocating new ones.
+     */
+    private static final String[] WELL_KNOWN_TOKENS = {
+            "Handle", "Method", "Result", "Result-Status", "Session-Status", "Error-Code",
+            "Expires", "Content-Length", "Content-Type", "application/json",
+            "SUCCESS", "FAILURE", "INVALID_ACTION", "ASR_LISTENING", "ASR_RECOGNIZING",
+            "ASR_IDLE", "PROCESSING", "RECOGNIZED", "NO_MATCH", "NO_INPUT_TIMEOUT",
+            "MAX_SPEECH", "NO_SPEECH", "EARLY_SPEECH", "RECOGNITION_TIMEOUT", "CANCELED",
+            METHOD_CREATE_SESSION, METHOD_START_RECOGNITION, METHOD_SEND_AUDIO,
+            METHOD_RELEASE_SESSION, METHOD_CANCEL_RECOGNITION, METHOD_START_INPUT_TIMERS
+    };
+
+    /**
+     * Octets of {@link #METHODS}, in the same order.
+     */
+    private static final byte[][] METHODS_BYTES = toByteArrays(METHODS);
+
+    /**
+     * Octets of {@link #WELL_KNOWN_TOKENS}, in the same order.
+     */
+    private static final byte[][] WELL_KNOWN_TOKENS_BYTES = toByteArrays(WELL_KNOWN_TOKENS);
+
+    /**
+     * Octets of the start line prefix, i.e. <tt>ASR 2.</tt>.
+     */
+    private static final byte[] START_LINE_PREFIX_BYTES = (ASR_PROTOCOL + " " + ASR_MAJOR_VERSION + ".").getBytes(Constants.NETWORK_CHARSET);
+
     /**
      * Protocol of this message.
      * It should be <tt>ASR</tt>.
@@ -150,6 +196,13 @@ class AsrMessage {
      */
     private byte[] mBody;
 
+    /**
+     * Body of this message as a slice of the buffer it was decoded from.
+     * It is {@code null} unless this message has been constructed by
+     * {@link #AsrMessage(ByteBuffer)} and it has a body.
+     */
+    private ByteBuffer mBodyBuffer;
+
     /**
      * Constructs an ASR message by setting values to its variables directly.
      *
@@ -166,7 +219,7 @@ class AsrMessage {
         }
 
         mProtocol = ASR_PROTOCOL;
-        mVersion = ASR_MAJOR_VERSION + "." + ASR_MINOR_VERSION;
+        mVersion = ASR_VERSION;
 
         mMethod = method;
 
@@ -325,6 +378,433 @@ class AsrMessage {
         }
     }
 
+    /**
+     * <p>Constructs an ASR message from serialized octets, parsing them
+     * straight from the given buffer.</p>
+     * <p>Unlike {@link #AsrMessage(byte[])}, this constructor does not copy the
+     * serialized message: the start line and header fields are scanned in place,
+     * well-known tokens are mapped to constant strings, and the body is kept as
+     * a slice of {@code serializedMessage}.  Therefore the contents of the given
+     * buffer must not be modified afterwards.  Its position and limit are left
+     * untouched.</p>
+     *
+     * @param serializedMessage octet-serialized ASR message, between
+     *                          its position and limit.
+     * @throws IllegalArgumentException if {@code serializedMessage} does not represent a valid ASR message.
+     */
+    AsrMessage(@NonNull ByteBuffer serializedMessage) {
+
+        final int limit = serializedMessage.limit();
+
+        // Read first message line.  It should be something like this:
+        //
+        // ASR 2.1 METHOD
+        int lineStart = serializedMessage.position();
+        int lineEnd = indexOfLineSeparator(serializedMessage, lineStart, limit);
+
+        if (lineEnd == -1) {
+
+            throw new IllegalArgumentException("invalid message: unexpected end of message");
+        }
+
+        // Check "ASR 2." prefix.
+        if (lineEnd - lineStart < START_LINE_PREFIX_BYTES.length
+                || !regionMatches(serializedMessage, lineStart, START_LINE_PREFIX_BYTES)) {
+
+            throw new IllegalArgumentException("invalid message: invalid start line");
+        }
+
+        // Check the minor version digits up to the next space.
+        int versionStart = lineStart + START_LINE_PREFIX_BYTES.length - ASR_MAJOR_VERSION.length() - 1;
+        int versionEnd = lineStart + START_LINE_PREFIX_BYTES.length;
+
+        while (versionEnd < lineEnd && isDigit(serializedMessage.get(versionEnd))) {
+            versionEnd++;
+        }
+
+        if (versionEnd == lineStart + START_LINE_PREFIX_BYTES.length
+                || versionEnd == lineEnd || serializedMessage.get(versionEnd) != ' ') {
+
+            throw new IllegalArgumentException("invalid message: invalid start line");
+        }
+
+        // Check "METHOD" is a token.
+        int methodStart = versionEnd + 1;
+
+        if (methodStart == lineEnd) {
+
+            throw new IllegalArgumentException("invalid message: invalid start line");
+        }
+
+        for (int i = methodStart; i < lineEnd; i++) {
+
+            if (!isTokenChar(serializedMessage.get(i))) {
+
+                throw new IllegalArgumentException("invalid message: invalid start line");
+            }
+        }
+
+        // Check if "METHOD" is a valid ASR method.
+        int methodIndex = indexOfToken(serializedMessage, methodStart, lineEnd, METHODS_BYTES);
+
+        if (methodIndex == -1) {
+
+            throw new IllegalArgumentException("invalid method: " + decode(serializedMessage, methodStart, lineEnd));
+        }
+
+        // At last, set "ASR 2.0 METHOD" into corresponding fields.
+        mProtocol = ASR_PROTOCOL;
+        mVersion = regionEquals(serializedMessage, versionStart, versionEnd, ASR_VERSION)
+                ? ASR_VERSION : decode(serializedMessage, versionStart, versionEnd);
+        mMethod = METHODS[methodIndex];
+
+        mHeaderFields = null;
+
+        // Read message lines up to an empty one.
+        // Non-empty lines should be a header field name and value pair, like:
+        //
+        // field-name: field-value
+
+        lineStart = lineEnd + 2;
+        lineEnd = indexOfLineSeparator(serializedMessage, lineStart, limit);
+
+        if (lineEnd == -1) {
+
+            throw new IllegalArgumentException("invalid message: unexpected end of message");
+        }
+
+        int contentLength = -1;
+
+        while (lineEnd != lineStart) {
+
+            // Header field name is a token immediately followed by a colon:
+            // https://tools.ietf.org/html/rfc7230#section-3.2
+            int colon = lineStart;
+
+            while (colon < lineEnd && isTokenChar(serializedMessage.get(colon))) {
+                colon++;
+            }
+
+            if (colon > lineStart && colon < lineEnd && serializedMessage.get(colon) == ':') {
+
+                // Trim optional spaces of field value.
+                int valueStart = colon + 1;
+                int valueEnd = lineEnd;
+
+                while (valueStart < valueEnd && isWhitespace(serializedMessage.get(valueStart))) {
+                    valueStart++;
+                }
+
+                while (valueEnd > valueStart && isWhitespace(serializedMessage.get(valueEnd - 1))) {
+                    valueEnd--;
+                }
+
+                String name = decodeToken(serializedMessage, lineStart, colon);
+                String value = decodeToken(serializedMessage, valueStart, valueEnd);
+
+                if (mHeaderFields == null) {
+
+                    mHeaderFields = new HashMap<>();
+                }
+
+                mHeaderFields.put(name, value);
+
+                if (name.contentEquals("Content-Length")) {
+
+                    contentLength = parseContentLength(serializedMessage, valueStart, valueEnd, value);
+                }
+
+            } else {
+
+                Log.i(TAG, "ignoring invalid header field: " + decode(serializedMessage, lineStart, lineEnd));
+            }
+
+            lineStart = lineEnd + 2;
+            lineEnd = indexOfLineSeparator(serializedMessage, lineStart, limit);
+
+            if (lineEnd == -1) {
+
+                throw new IllegalArgumentException("invalid message: unexpected end of message");
+            }
+        }
+
+        // Read message body.
+        //
+        // The message body is only read if a valid Content-Length header field has been provided
+        // and if there are remaining bytes to be consumed.
+
+        int bodyStart = lineEnd + 2;
+
+        if (contentLength > 0) {
+
+            // If there are less available bytes than what was informed
+            // in Content-Length, the number of bytes to be read diminishes
+            // to the quantity of available bytes.
+            if (limit - bodyStart < contentLength) {
+
+                Log.i(TAG, "provided body is smaller than content length");
+
+                contentLength = limit - bodyStart;
+            }
+        }
+
+        mBody = null;
+
+        if (contentLength > 0) {
+
+            ByteBuffer body = serializedMessage.duplicate();
+            body.limit(bodyStart + contentLength);
+            body.position(bodyStart);
+
+            mBodyBuffer = body.slice();
+
+        } else {
+
+            mBodyBuffer = null;
+        }
+    }
+
+    /**
+     * Converts strings into their network octets.
+     *
+     * @param strings the strings to be converted.
+     * @return an array with the octets of each string, in the same order.
+     */
+    private static byte[][] toByteArrays(String[] strings) {
+
+        byte[][] byteArrays = new byte[strings.length][];
+
+        for (int i = 0; i < strings.length; i++) {
+            byteArrays[i] = strings[i].getBytes(Constants.NETWORK_CHARSET);
+        }
+
+        return byteArrays;
+    }
+
+    /**
+     * Returns the position of the next line separator (CRLF) in the given range of the buffer.
+     *
+     * @param buffer the buffer to be searched on.
+     * @param from   the absolute position to start the search from.
+     * @param limit  the absolute position to end the search at (exclusive).
+     * @return the absolute position of CR, or {@code -1} if no CRLF was found in the range.
+     */
+    private static int indexOfLineSeparator(ByteBuffer buffer, int from, int limit) {
+
+        for (int i = from; i < limit - 1; i++) {
+
+            if (buffer.get(i) == 13 && buffer.get(i + 1) == 10) {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Evaluates whether the buffer contains the given octets at the given position.
+     *
+     * @param buffer the buffer to be evaluated.
+     * @param offset the absolute position to compare from.
+     * @param bytes  the expected octets.
+     * @return {@code true} if the octets match, {@code false} otherwise.
+     */
+    private static boolean regionMatches(ByteBuffer buffer, int offset, byte[] bytes) {
+
+        for (int i = 0; i < bytes.length; i++) {
+
+            if (buffer.get(offset + i) != bytes[i]) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Evaluates whether a range of the buffer holds exactly the given ASCII string.
+     *
+     * @param buffer the buffer to be evaluated.
+     * @param start  the absolute start position of the range.
+     * @param end    the absolute end position of the range (exclusive).
+     * @param ascii  the expected string.
+     * @return {@code true} if the range matches, {@code false} otherwise.
+     */
+    private static boolean regionEquals(ByteBuffer buffer, int start, int end, String ascii) {
+
+        if (end - start != ascii.length()) {
+
+            return false;
+        }
+
+        for (int i = 0; i < ascii.length(); i++) {
+
+            if (buffer.get(start + i) != ascii.charAt(i)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds which of the given tokens a range of the buffer holds.
+     *
+     * @param buffer the buffer to be evaluated.
+     * @param start  the absolute start position of the range.
+     * @param end    the absolute end position of the range (exclusive).
+     * @param tokens the candidate tokens, as octets.
+     * @return the index of the matching token, or {@code -1} if there is none.
+     */
+    private static int indexOfToken(ByteBuffer buffer, int start, int end, byte[][] tokens) {
+
+        for (int i = 0; i < tokens.length; i++) {
+
+            if (tokens[i].length == end - start && regionMatches(buffer, start, tokens[i])) {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Decodes a range of the buffer as text, reusing one of the
+     * {@link #WELL_KNOWN_TOKENS} when possible.
+     *
+     * @param buffer the buffer to be decoded.
+     * @param start  the absolute start position of the range.
+     * @param end    the absolute end position of the range (exclusive).
+     * @return the decoded text.
+     */
+    private static String decodeToken(ByteBuffer buffer, int start, int end) {
+
+        int tokenIndex = indexOfToken(buffer, start, end, WELL_KNOWN_TOKENS_BYTES);
+
+        if (tokenIndex != -1) {
+
+            return WELL_KNOWN_TOKENS[tokenIndex];
+        }
+
+        return decode(buffer, start, end);
+    }
+
+    /**
+     * Decodes a range of the buffer as text.
+     *
+     * @param buffer the buffer to be decoded.
+     * @param start  the absolute start position of the range.
+     * @param end    the absolute end position of the range (exclusive).
+     * @return the decoded text.
+     */
+    private static String decode(ByteBuffer buffer, int start, int end) {
+
+        if (buffer.hasArray()) {
+
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, Constants.NETWORK_CHARSET);
+        }
+
+        byte[] bytes = new byte[end - start];
+
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+
+        return new String(bytes, Constants.NETWORK_CHARSET);
+    }
+
+    /**
+     * Parses the value of a Content-Length header field straight from the buffer.
+     *
+     * @param buffer the buffer holding the value.
+     * @param start  the absolute start position of the value.
+     * @param end    the absolute end position of the value (exclusive).
+     * @param value  the value as text, used for logging only.
+     * @return the content length, or {@code -1} if it is not a valid non-negative integer.
+     */
+    private static int parseContentLength(ByteBuffer buffer, int start, int end, String value) {
+
+        long contentLength = 0;
+
+        for (int i = start; i < end; i++) {
+
+            byte b = buffer.get(i);
+
+            if (!isDigit(b) || contentLength > Integer.MAX_VALUE) {
+
+                Log.i(TAG, "ignoring invalid content length: " + value);
+
+                return -1;
+            }
+
+            contentLength = contentLength * 10 + (b - '0');
+        }
+
+        if (start == end || contentLength > Integer.MAX_VALUE) {
+
+            Log.i(TAG, "ignoring invalid content length: " + value);
+
+            return -1;
+        }
+
+        return (int) contentLength;
+    }
+
+    /**
+     * Evaluates whether the given octet is an ASCII digit.
+     */
+    private static boolean isDigit(byte b) {
+
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Evaluates whether the given octet is an optional whitespace, i.e. space or horizontal tab.
+     */
+    private static boolean isWhitespace(byte b) {
+
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Evaluates whether the given octet is allowed in an HTTP token.
+     * Refer to <a href="https://tools.ietf.org/html/rfc7230#section-3.2.6">RFC 7230, Section 3.2.6</a>.
+     *
+     * @see #TOKEN_REGEX
+     */
+    private static boolean isTokenChar(byte b) {
+
+        if ((b >= '0' && b <= '9') || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z')) {
+
+            return true;
+        }
+
+        switch (b) {
+            case '!':
+            case '#':
+            case '$':
+            case '%':
+            case '&':
+            case '\'':
+            case '*':
+            case '+':
+            case '-':
+            case '.':
+            case '^':
+            case '_':
+            case '`':
+            case '|':
+            case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Evaluates whether the given method is a valid ASR method.
      *
@@ -501,9 +981,11 @@ class AsrMessage {
             messageBaos.write(CRLF);
 
             // Write message body, if any.
-            if (mBody != null) {
+            byte[] body = getBody();
+
+            if (body != null) {
 
-                messageBaos.write(mBody);
+                messageBaos.write(body);
             }
 
         } catch (IOException e) {
@@ -517,46 +999,59 @@ class AsrMessage {
     }
 
     /**
-     * Logs this ASR message into {@link Log} for debugging purposes.
+     * Appends a human readable transcript of this ASR message, for debugging purposes.
+     *
+     * @param transcript    the builder the transcript is appended to.
+     * @param includeHeader whether header fields should be appended.
+     * @param includeBody   whether the body should be appended.  Text bodies are
+     *                      appended as text, other bodies by their size only.
      */
-    void logItself() {
+    void appendTranscript(StringBuilder transcript, boolean includeHeader, boolean includeBody) {
 
-        // Log first message line.
-        Log.d(TAG, String.format(Constants.DEFAULT_LOCALE, "%1$s %2$s %3$s(CRLF)", mProtocol, mVersion, mMethod));
+        // First message line.
+        transcript.append(mProtocol).append(' ').append(mVersion).append(' ').append(mMethod).append("(CRLF)");
+
+        if (!includeHeader) {
+            return;
+        }
 
-        // Log header fields, if any.
+        // Header fields, if any.
         if (mHeaderFields != null) {
 
             for (Map.Entry<String, String> headerField : mHeaderFields.entrySet()) {
 
-                Log.d(TAG, String.format(Constants.DEFAULT_LOCALE, "%1$s: %2$s(CRLF)", headerField.getKey(), headerField.getValue()));
+                transcript.append('\n').append(headerField.getKey()).append(": ").append(headerField.getValue()).append("(CRLF)");
             }
         }
 
-        // Log empty line that indicates the end of the header section.
-        Log.d(TAG, "(CRLF)");
+        // Empty line that indicates the end of the header section.
+        transcript.append("\n(CRLF)");
 
-        // Log message body, if any.
-        if (mBody != null) {
+        if (!includeBody) {
+            return;
+        }
+
+        // Message body, if any.
+        if (hasBody()) {
 
-            Log.d(TAG, String.format(Constants.DEFAULT_LOCALE, "(body size: %1$d)", mBody.length));
+            transcript.append("\n(body size: ").append(getBodyLength()).append(')');
 
-            // If the message body is of text type, log body text.
+            // If the message body is of text type, append body text.
 
             String contentType = getHeaderFieldValueForName("Content-Type");
 
             if (contentType != null && contentType.contentEquals("application/json")) {
 
-                Log.d(TAG, new String(mBody, Constants.DEFAULT_CHARSET));
+                transcript.append('\n').append(getBodyAsString(Constants.DEFAULT_CHARSET));
 
             } else {
 
-                Log.d(TAG, "(body present)");
+                transcript.append("\n(body present)");
             }
 
         } else {
 
-            Log.d(TAG, "(no body)");
+            transcript.append("\n(no body)");
         }
     }
 
@@ -572,15 +1067,90 @@ class AsrMessage {
     }
 
     /**
-     * Gets the body of this ASR message.
+     * <p>Gets the body of this ASR message.</p>
+     * <p>If this message has been decoded from a buffer, the body is copied
+     * out of it on the first call.  Prefer {@link #getBodyBuffer()} or
+     * {@link #getBodyAsString(Charset)} in that case.</p>
      *
      * @return the message body, e.g. audio payload or recognition result.
      */
     byte[] getBody() {
 
+        if (mBody == null && mBodyBuffer != null) {
+
+            mBody = new byte[mBodyBuffer.remaining()];
+
+            mBodyBuffer.duplicate().get(mBody);
+        }
+
         return mBody;
     }
 
+    /**
+     * Gets the body of this ASR message as a read-only buffer, without copying it.
+     * The returned buffer is independent, so its position and limit may be
+     * changed freely.
+     *
+     * @return the message body, or {@code null} if there is no body.
+     */
+    ByteBuffer getBodyBuffer() {
+
+        if (mBodyBuffer != null) {
+
+            return mBodyBuffer.asReadOnlyBuffer();
+        }
+
+        return mBody != null ? ByteBuffer.wrap(mBody).asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Decodes the body of this ASR message as text, without copying it
+     * into an intermediate byte array.
+     *
+     * @param charset the character encoding of the body.
+     * @return the message body as text, or {@code null} if there is no body.
+     */
+    String getBodyAsString(Charset charset) {
+
+        if (mBodyBuffer != null) {
+
+            if (mBodyBuffer.hasArray()) {
+
+                return new String(mBodyBuffer.array(), mBodyBuffer.arrayOffset() + mBodyBuffer.position(),
+                        mBodyBuffer.remaining(), charset);
+            }
+
+            return charset.decode(mBodyBuffer.duplicate()).toString();
+        }
+
+        return mBody != null ? new String(mBody, charset) : null;
+    }
+
+    /**
+     * Evaluates whether this ASR message has a body.
+     *
+     * @return {@code true} if there is a body, {@code false} otherwise.
+     */
+    boolean hasBody() {
+
+        return mBody != null || mBodyBuffer != null;
+    }
+
+    /**
+     * Gets the length of the body of this ASR message.
+     *
+     * @return the body length in octets, or {@code 0} if there is no body.
+     */
+    int getBodyLength() {
+
+        if (mBodyBuffer != null) {
+
+            return mBodyBuffer.remaining();
+        }
+
+        return mBody != null ? mBody.length : 0;
+    }
+
     /**
      * Gets the value of a header field for a given name.
      *
@@ -16,6 +16,8 @@
 package br.com.cpqd.asr.recognizer;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
@@ -38,8 +40,11 @@ import java.security.cert.CertPathValidatorException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLHandshakeException;
 import javax.websocket.ClientEndpoint;
@@ -54,12 +59,17 @@ import javax.websocket.OnClose;
 import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 
+import br.com.cpqd.asr.recognizer.audio.AudioEncoding;
+import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
 import br.com.cpqd.asr.recognizer.model.RecognitionConfig;
 import br.com.cpqd.asr.recognizer.model.RecognitionError;
 import br.com.cpqd.asr.recognizer.model.RecognitionErrorCode;
 import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionResultCode;
 import br.com.cpqd.asr.recognizer.util.Constants;
 import br.com.cpqd.asr.recognizer.util.Util;
 
@@ -158,6 +168,18 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
      */
     public static final int MESSAGE_START_INPUT_TIMERS = 8;
 
+    /**
+     * Handler message code for handing the connection over to another recognizer handler,
+     * given as the message object. The current handler is notified of the session release,
+     * and the new one is notified of the create session if the ASR session can be reused.
+     */
+    public static final int MESSAGE_DETACH = 9;
+
+    /**
+     * Handler message code for releasing the session, closing the connection and finishing this thread.
+     */
+    public static final int MESSAGE_SHUTDOWN = 10;
+
     /**
      * Handler message code for resetting network timeout.
      */
@@ -193,11 +215,33 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
      */
     private static final int INTERNAL_MESSAGE_RAISE_NETWORK_TIMEOUT = 26;
 
+    /**
+     * Handler message code for an audio packet that could not be sent.
+     */
+    private static final int INTERNAL_MESSAGE_ON_SEND_AUDIO_ERROR = 27;
+
+    /**
+     * Handler message code for resuming the sending of buffered audio, once an audio packet has been written.
+     */
+    private static final int INTERNAL_MESSAGE_SEND_BUFFERED_AUDIO = 28;
+
+    /**
+     * Value of the {@link #MESSAGE_START_RECOGNITION} {@code arg2} requesting that the recognition
+     * is started along with the ASR session creation, if it is still being created.
+     */
+    static final int START_RECOGNITION_PIPELINED = 1;
+
     /**
      * Code for request timeout message.
      */
     private static final int WHAT_REQUEST_TIMEOUT = 1;
 
+    /**
+     * Maximum number of audio packets queued to this thread or being sent to
+     * the server, i.e. the window of audio packets in flight.
+     */
+    private static final int MAX_PENDING_AUDIO_PACKETS = 8;
+
     /**
      * The current connection state.
      */
@@ -225,15 +269,67 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
     private final AsrClientEndpoint mAsrClientEndpoint;
 
     /**
-     * Buffer that accumulates audio samples to be sent to the server while the connection has not been established.
+     * Buffer that accumulates audio packets to be sent to the server while the recognition has not been started.
      */
-    private final ByteArrayOutputStream mAudioBufferBaos;
+    private volatile PreRollBuffer mPreRoll;
 
     /**
-     * Flag indicating whether the audio buffered in {@link #mAudioBufferBaos} should be sent to the server as the last packet.
+     * Flag indicating whether the audio buffered in {@link #mPreRoll} should be sent to the server as the last packet.
      */
     private boolean mAudioBufferIsLastPacket;
 
+    /**
+     * Audio packets received while the audio in {@link #mPreRoll} is being sent.
+     * They are sent after it, so that the audio is kept in order.
+     */
+    private final ArrayDeque<ByteBuffer> mAudioBacklog;
+
+    /**
+     * Number of audio packet permits held by the packets in {@link #mAudioBacklog}.
+     * Any buffered packet may be sent with them.
+     */
+    private int mHeldAudioPacketPermits;
+
+    /**
+     * Flag indicating whether the buffered audio is being sent, as the window of
+     * audio packets in flight allows.  It is read by the websocket library threads.
+     */
+    private volatile boolean mSendingBufferedAudio;
+
+    /**
+     * Configuration of the start recognition request to be sent right after
+     * the create session request, once the websocket is open.
+     */
+    private RecognitionConfig mPendingStartConfig;
+
+    /**
+     * Flag indicating whether a start recognition request is to be sent right
+     * after the create session request, once the websocket is open.
+     */
+    private boolean mStartRecognitionPending;
+
+    /**
+     * Flag indicating whether a start recognition request was sent without
+     * waiting for the response to create session.
+     */
+    private boolean mStartRecognitionPipelined;
+
+    /**
+     * Serializer of send audio messages.
+     */
+    private final SendAudioEncoder mSendAudioEncoder;
+
+    /**
+     * Content type of the audio sent to the server.
+     */
+    private final String mAudioContentType;
+
+    /**
+     * Permits to queue audio packets to this thread, so that audio is not read
+     * faster than it is sent to the server.
+     */
+    private final Semaphore mAudioPacketPermits;
+
     /**
      * Network timeout period, in milliseconds.
      */
@@ -255,18 +351,62 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
     private URI mServerURI;
 
     /**
-     * Reference to SpeechRecognizerImpl
+     * Handler of the recognizer currently served by this connection.
+     * It may be replaced when the connection is pooled.
+     */
+    private volatile Handler mRecognizerHandler;
+
+    /**
+     * Stage the partial results go through before being sent to the recognizer handler.
      */
-    private SpeechRecognizerImpl mRecognizer;
+    private volatile PartialResultCoalescer mPartialResults;
+
+    /**
+     * Creates and starts a connection thread as configured by a recognizer builder.
+     *
+     * @param context           the Context reference.
+     * @param recognizerHandler the handler notified of the connection events.
+     * @param builder           the Builder object.
+     * @return the started connection thread.
+     * @throws URISyntaxException if the server URI is invalid.
+     */
+    static AsrServerConnectionThread create(Context context, Handler recognizerHandler,
+                                            SpeechRecognizer.Builder builder) throws URISyntaxException {
+
+        return create(context, recognizerHandler, builder, null);
+    }
+
+    /**
+     * Creates and starts a connection as configured by a recognizer builder.
+     *
+     * @param context           the Context reference.
+     * @param recognizerHandler the handler notified of the connection events.
+     * @param builder           the Builder object.
+     * @param sharedLooper      the looper where the connection messages are handled,
+     *                          or {@code null} to start a new thread.
+     * @return the started connection.
+     * @throws URISyntaxException if the server URI is invalid.
+     */
+    static AsrServerConnectionThread create(Context context, Handler recognizerHandler,
+                                            SpeechRecognizer.Builder builder, Looper sharedLooper) throws URISyntaxException {
+
+        AsrServerConnectionThread connection = new AsrServerConnectionThread(context, recognizerHandler,
+                builder.uri, builder.credentials, builder.maxSessionIdleSeconds, builder.userAgent,
+                builder.encoding, sharedLooper);
+        connection.startMessaging();
+
+        return connection;
+    }
 
     /**
      * Sets up object initial state.
      */
-    public AsrServerConnectionThread(Context context, SpeechRecognizerImpl recognizer,
+    public AsrServerConnectionThread(Context context, Handler recognizerHandler,
                                      URI serverURI, String[] credentials,
-                                     int timeout, String userAgent) throws URISyntaxException {
+                                     int timeout, String userAgent,
+                                     AudioEncoding audioEncoding, Looper sharedLooper) throws URISyntaxException {
 
-        super("asr-server-connection");
+        super("asr-server-connection", sharedLooper);
 
         if (serverURI == null) {
             throw new NullPointerException("Server URI cannot be null");
@@ -276,7 +416,7 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
             throw new URISyntaxException("Invalid Server URI", serverURI.toString());
         }
 
-        mRecognizer = recognizer;
+        mRecognizerHandler = recognizerHandler;
 
         mServerURI = serverURI;
 
@@ -286,10 +426,20 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
         mAsrClientEndpoint = new AsrClientEndpoint();
 
-        mAudioBufferBaos = new ByteArrayOutputStream();
+        mPreRoll = new PreRollBuffer(Integer.MAX_VALUE, PreRollOverflowPolicy.DROP_OLDEST);
+
+        mAudioBacklog = new ArrayDeque<>();
+
+        mSendAudioEncoder = new SendAudioEncoder(audioEncoding.getContentType());
+
+        mAudioContentType = audioEncoding.getContentType();
+
+        mAudioPacketPermits = new Semaphore(MAX_PENDING_AUDIO_PACKETS);
 
         mLibraryErrorCloseReason = new LibraryErrorCloseReason();
 
+        mPartialResults = new PartialResultCoalescer(PartialResultMode.ALL);
+
         mClientManager = ClientManager.createClient();
 
         // Inform trusted CAs to the connection.
@@ -346,6 +496,66 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
         resetConnectionState(false, null);
     }
 
+    /**
+     * Sets the handler notified of the connection events.
+     * The connection must not be serving a recognition at the time.
+     *
+     * @param recognizerHandler the recognizer handler.
+     */
+    void setRecognizerHandler(Handler recognizerHandler) {
+        mRecognizerHandler = recognizerHandler;
+    }
+
+    /**
+     * Sends a message obtained from the recognizer handler. If the recognizer
+     * handles its messages in this same thread, i.e. they share a looper, the
+     * message is handled right away instead of going through the queue again.
+     *
+     * @param message the message to the recognizer.
+     */
+    private void sendToRecognizer(Message message) {
+
+        Handler target = message.getTarget();
+
+        if (target.getLooper() == Looper.myLooper()) {
+            target.dispatchMessage(message);
+            message.recycle();
+        } else {
+            message.sendToTarget();
+        }
+    }
+
+    /**
+     * Sets the stage the partial results go through before being sent to the recognizer handler.
+     *
+     * @param partialResults the partial result stage of the recognizer.
+     */
+    void setPartialResultCoalescer(PartialResultCoalescer partialResults) {
+        mPartialResults = partialResults;
+    }
+
+    /**
+     * Sends a partial result to the recognizer handler, unless an unread one
+     * of the same segment has been replaced by it.
+     *
+     * @param result the partial result.
+     */
+    private void sendPartialResult(PartialRecognitionResult result) {
+
+        if (result == null) {
+            return;
+        }
+
+        PartialResultCoalescer.Slot slot = mPartialResults.offer(result);
+
+        if (slot != null) {
+            Message message = mRecognizerHandler.obtainMessage();
+            message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_PARTIAL_RESULT;
+            message.obj = slot;
+            sendToRecognizer(message);
+        }
+    }
+
     /**
      * Method to set network timeout
      */
@@ -375,10 +585,10 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
             Log.w(TAG, "IOException while connecting to server", e);
 
-            Message message = mRecognizer.obtainMessage();
+            Message message = mRecognizerHandler.obtainMessage();
             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
             message.obj = new RecognitionError(RecognitionErrorCode.CONNECTION_FAILURE, "Connection failed");
-            message.sendToTarget();
+            sendToRecognizer(message);
 
             return;
 
@@ -391,25 +601,25 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
                     && e.getCause().getCause() != null && e.getCause().getCause().getClass() == CertificateException.class && e.getCause().getCause().getMessage().contentEquals("java.security.cert.CertPathValidatorException: Trust anchor for certification path not found.")
                     && e.getCause().getCause().getCause() != null && e.getCause().getCause().getCause().getClass() == CertPathValidatorException.class && e.getCause().getCause().getCause().getMessage().contentEquals("Trust anchor for certification path not found.")) {
 
-                Message message = mRecognizer.obtainMessage();
+                Message message = mRecognizerHandler.obtainMessage();
                 message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
                 message.obj = new RecognitionError(RecognitionErrorCode.CONNECTION_FAILURE, "Invalid TLS certificate");
-                message.sendToTarget();
+                sendToRecognizer(message);
 
             } else if (e.getClass() == DeploymentException.class && e.getMessage().contentEquals("Handshake error.")
                     && e.getCause() != null && e.getCause().getClass() == AuthenticationException.class && (e.getCause().getMessage().contentEquals("Credentials are missing.") || e.getCause().getMessage().contentEquals("Authentication failed."))) {
 
-                Message message = mRecognizer.obtainMessage();
+                Message message = mRecognizerHandler.obtainMessage();
                 message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
                 message.obj = new RecognitionError(RecognitionErrorCode.CONNECTION_FAILURE, "Invalid username or password");
-                message.sendToTarget();
+                sendToRecognizer(message);
 
             } else {
 
-                Message message = mRecognizer.obtainMessage();
+                Message message = mRecognizerHandler.obtainMessage();
                 message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
                 message.obj = new RecognitionError(RecognitionErrorCode.CONNECTION_FAILURE, "Connection failed");
-                message.sendToTarget();
+                sendToRecognizer(message);
             }
 
             return;
@@ -450,9 +660,13 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
         mWebsocketSession = null;
 
-        mAudioBufferBaos.reset();
+        clearBufferedAudio();
 
-        mAudioBufferIsLastPacket = false;
+        mPendingStartConfig = null;
+
+        mStartRecognitionPending = false;
+
+        mStartRecognitionPipelined = false;
     }
 
     /**
@@ -464,8 +678,30 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
      * @param audioPacket  the audio packet to be processed.
      * @param isLastPacket flag indicating whether this audio packet
      *                     is the last one of this ASR recognition session.
+     * @param holdsPermit  flag indicating whether an audio packet permit was acquired for this packet.
+     * @return {@code true} if the permit is given back once the packet is sent, {@code false} if
+     * the caller should give it back.
+     */
+    private boolean handleAudioPacket(byte[] audioPacket, boolean isLastPacket, boolean holdsPermit) {
+
+        return handleAudioPacket(audioPacket != null ? ByteBuffer.wrap(audioPacket) : null, isLastPacket, holdsPermit);
+    }
+
+    /**
+     * Processes an incoming audio packet.
+     * Depending on the connection state, the audio packet will be uploaded
+     * to the server, stored into an internal buffer to be sent later,
+     * or dropped.
+     *
+     * @param audioPacket  the audio packet to be processed, between its
+     *                     position and limit, e.g. a slice of a mapped file.
+     * @param isLastPacket flag indicating whether this audio packet
+     *                     is the last one of this ASR recognition session.
+     * @param holdsPermit  flag indicating whether an audio packet permit was acquired for this packet.
+     * @return {@code true} if the permit is given back once the packet is sent, {@code false} if
+     * the caller should give it back.
      */
-    private void handleAudioPacket(byte[] audioPacket, boolean isLastPacket) {
+    private boolean handleAudioPacket(ByteBuffer audioPacket, boolean isLastPacket, boolean holdsPermit) {
 
         if (mConnectionState == CONNECTION_STATE_IDLE
                 || mConnectionState == CONNECTION_STATE_DISCONNECTED
@@ -475,35 +711,239 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
             // If this thread receives an audio packet while trying to establish
             // a connection to the server, store the audio packet.
-            if (audioPacket != null) {
-                try {
-                    mAudioBufferBaos.write(audioPacket);
-                } catch (IOException e) {
-                    Log.e(TAG, "IOException while writing to audio buffer", e);
-                    throw new RuntimeException(e);
+            if (audioPacket != null && audioPacket.hasRemaining()) {
+
+                boolean overflowed = mPreRoll.hasOverflowed();
+
+                if (!mPreRoll.add(audioPacket) && !overflowed) {
+
+                    Log.w(TAG, "audio buffer overflow while starting the recognition");
+
+                    // The recognition is cancelled on the server once it starts
+                    Message message = mRecognizerHandler.obtainMessage();
+                    message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
+                    message.obj = new RecognitionError(RecognitionErrorCode.FAILURE,
+                            "Audio buffer overflow while starting the recognition");
+                    sendToRecognizer(message);
+                }
+            }
+
+            mAudioBufferIsLastPacket = mAudioBufferIsLastPacket || isLastPacket;
+
+        } else if (mConnectionState == CONNECTION_STATE_STREAMING_AUDIO && mSendingBufferedAudio) {
+
+            // The audio buffered before goes first.
+            boolean permitHandedOver = false;
+
+            if (audioPacket != null && audioPacket.hasRemaining()) {
+
+                mAudioBacklog.add(audioPacket);
+
+                if (holdsPermit) {
+                    mHeldAudioPacketPermits++;
+                    permitHandedOver = true;
                 }
             }
 
             mAudioBufferIsLastPacket = mAudioBufferIsLastPacket || isLastPacket;
 
+            sendBufferedAudio();
+
+            return permitHandedOver;
+
         } else if (mConnectionState == CONNECTION_STATE_STREAMING_AUDIO) {
 
             // If this thread is ready to stream audio, upload audio packet to server.
-            Map<String, String> headerFields = new HashMap<>(3);
-            headerFields.put("LastPacket", Boolean.toString(isLastPacket));
-            headerFields.put("Content-Length", Integer.toString(audioPacket != null ? audioPacket.length : 0));
-            headerFields.put("Content-Type", "application/octet-stream");
+            return streamAudioPacket(audioPacket, isLastPacket, holdsPermit);
+        }
+
+        return false;
+    }
+
+    /**
+     * Uploads an audio packet to the server.
+     *
+     * @param audioPacket  the audio packet, between its position and limit; may be {@code null}.
+     * @param isLastPacket flag indicating whether this audio packet
+     *                     is the last one of this ASR recognition session.
+     * @param holdsPermit  flag indicating whether an audio packet permit was acquired for this packet.
+     * @return {@code true} if the permit is given back once the packet is sent, {@code false} if
+     * the caller should give it back.
+     */
+    private boolean streamAudioPacket(ByteBuffer audioPacket, boolean isLastPacket, boolean holdsPermit) {
+
+        if (WireTrace.isEnabled()) {
+            WireTrace.traceSendAudio(audioPacket != null ? audioPacket.remaining() : 0, isLastPacket,
+                    mAudioContentType);
+        }
+
+        ByteBuffer frame = mSendAudioEncoder.encode(audioPacket, isLastPacket);
+
+        if (!sendAudioFrame(frame, holdsPermit)) {
+            return false;
+        }
+
+        if (isLastPacket) {
+            mConnectionState = CONNECTION_STATE_WAITING_RECOGNITION_RESULT;
+        }
+
+        return holdsPermit;
+    }
+
+    /**
+     * Sends a serialized send audio message to server without waiting for it
+     * to be written, so that server messages are not held back by a slow uplink.
+     * The permit is given back once it is written.
+     * If a problem occurs, an error message is sent to the main {@link android.os.Handler}.
+     *
+     * @param frame         the serialized send audio message, obtained from {@link SendAudioEncoder}.
+     * @param releasePermit flag indicating whether an audio packet permit should be given back once written.
+     * @return true if the message is being sent or false otherwise.
+     */
+    private boolean sendAudioFrame(ByteBuffer frame, boolean releasePermit) {
+
+        if (mWebsocketSession == null) {
+
+            Log.w(TAG, "unexpected null mWebsocketSession while sending audio to server");
 
-            if (!sendAsrMessage(new AsrMessage(AsrMessage.METHOD_SEND_AUDIO, headerFields, audioPacket))) {
+            Message message = mRecognizerHandler.obtainMessage();
+            message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
+            message.obj = new RecognitionError(RecognitionErrorCode.FAILURE, "Internal library error");
+            sendToRecognizer(message);
+
+            return false;
+        }
+
+        try {
+            mWebsocketSession.getAsyncRemote().sendBinary(frame, new AudioSendHandler(releasePermit));
+        } catch (IllegalStateException e) {
+
+            Log.w(TAG, "IllegalStateException while sending audio", e);
+
+            Message message = mRecognizerHandler.obtainMessage();
+            message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
+            message.obj = new RecognitionError(RecognitionErrorCode.CONNECTION_FAILURE, "Network error");
+            sendToRecognizer(message);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Starts sending the audio buffered while the recognition was being started,
+     * as regular audio packets.
+     */
+    private void sendPreRoll() {
+
+        if (mPreRoll.getDroppedBytes() > 0) {
+            Log.w(TAG, "audio dropped while starting the recognition: " + mPreRoll.getDroppedBytes() + " bytes");
+        }
+
+        mSendingBufferedAudio = true;
+
+        sendBufferedAudio();
+    }
+
+    /**
+     * <p>Sends the buffered audio, the pre-roll first and then the backlog, as far
+     * as the window of audio packets in flight allows.</p>
+     * <p>Each packet takes an audio packet permit, so the buffered audio does
+     * not flood a slow uplink. When no permit is left, sending is resumed by
+     * {@link #INTERNAL_MESSAGE_SEND_BUFFERED_AUDIO} once a packet has been written.</p>
+     */
+    private void sendBufferedAudio() {
+
+        while (mSendingBufferedAudio) {
+
+            if (mConnectionState != CONNECTION_STATE_STREAMING_AUDIO) {
+                clearBufferedAudio();
+                return;
+            }
+
+            boolean fromPreRoll = !mPreRoll.isEmpty();
+
+            if (!fromPreRoll && mAudioBacklog.isEmpty()) {
+
+                boolean isLastPacket = mAudioBufferIsLastPacket;
+
+                clearBufferedAudio();
+
+                if (isLastPacket) {
+                    streamAudioPacket(null, true, false);
+                }
+
+                return;
+            }
+
+            if (mHeldAudioPacketPermits > 0) {
+                mHeldAudioPacketPermits--;
+            } else if (!mAudioPacketPermits.tryAcquire()) {
                 return;
             }
 
+            ByteBuffer packet = fromPreRoll ? mPreRoll.poll() : mAudioBacklog.poll();
+
+            boolean isLastPacket = mAudioBufferIsLastPacket && mPreRoll.isEmpty() && mAudioBacklog.isEmpty();
+
             if (isLastPacket) {
-                mConnectionState = CONNECTION_STATE_WAITING_RECOGNITION_RESULT;
+                mAudioBufferIsLastPacket = false;
+            }
+
+            if (!streamAudioPacket(packet, isLastPacket, true)) {
+                mAudioPacketPermits.release();
+                clearBufferedAudio();
+                return;
             }
         }
     }
 
+    /**
+     * Discards the buffered audio and gives back the permits it holds.
+     */
+    private void clearBufferedAudio() {
+
+        mSendingBufferedAudio = false;
+
+        mPreRoll.clear();
+
+        mAudioBacklog.clear();
+
+        mAudioBufferIsLastPacket = false;
+
+        mAudioPacketPermits.release(mHeldAudioPacketPermits);
+
+        mHeldAudioPacketPermits = 0;
+    }
+
+    /**
+     * Sets the buffer of the audio packets received while the recognition is
+     * being started.
+     *
+     * @param preRoll the pre-roll buffer of the recognizer.
+     */
+    void setPreRollBuffer(PreRollBuffer preRoll) {
+        mPreRoll = preRoll;
+    }
+
+    /**
+     * <p>Waits for permission to queue an audio packet to this thread.</p>
+     * <p>A permit must be acquired before each {@link #MESSAGE_HANDLE_AUDIO_PACKET}
+     * message is sent, and it is given back once the packet has been written
+     * to the server or dropped. The permits bound the audio packets in flight,
+     * so a slow uplink holds the audio reader back.</p>
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    the time unit of {@code timeout}.
+     * @return {@code true} if a permit was acquired, {@code false} if the waiting time elapsed.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    boolean acquireAudioPacketPermit(long timeout, TimeUnit unit) throws InterruptedException {
+
+        return mAudioPacketPermits.tryAcquire(timeout, unit);
+    }
+
     /**
      * Sends an ASR message to server requesting creation of an ASR session.
      */
@@ -523,6 +963,42 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
         // Set network timeout.
         setNetworkTimeout();
+
+        // Send the start recognition request queued while connecting, if any.
+        if (mStartRecognitionPending) {
+
+            RecognitionConfig config = mPendingStartConfig;
+            mPendingStartConfig = null;
+            mStartRecognitionPending = false;
+
+            mStartRecognitionPipelined = sendAsrMessage(createStartRecognitionMessage(config));
+        }
+    }
+
+    /**
+     * Creates the ASR message that starts a recognition with the current language model.
+     *
+     * @param config the recognition configuration parameters; may be {@code null}.
+     * @return the start recognition ASR message.
+     */
+    private AsrMessage createStartRecognitionMessage(RecognitionConfig config) {
+
+        byte[] languageModel = mLanguageModelUri.getBytes(Constants.NETWORK_CHARSET);
+
+        Map<String, String> headerFields = new HashMap<>();
+        headerFields.put("Content-Type", "text/uri-list");
+        headerFields.put("Content-Length", Integer.toString(languageModel.length));
+
+        // define os parametros do reconhecimento
+        if (config != null) {
+            HashMap<String, String> map = config.getParameterMap();
+            // adiciona header extras (parametros para o reconhecimento)
+            for (String key : map.keySet()) {
+                headerFields.put(key, map.get(key));
+            }
+        }
+
+        return new AsrMessage(AsrMessage.METHOD_START_RECOGNITION, headerFields, languageModel);
     }
 
     /**
@@ -538,10 +1014,10 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
             Log.w(TAG, "unexpected null mWebsocketSession while sending asr message to server");
 
-            Message message = mRecognizer.obtainMessage();
+            Message message = mRecognizerHandler.obtainMessage();
             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
             message.obj = new RecognitionError(RecognitionErrorCode.FAILURE, "Internal library error");
-            message.sendToTarget();
+            sendToRecognizer(message);
 
             return false;
         }
@@ -554,10 +1030,10 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
             Log.w(TAG, "IOException while sending asr message", e);
 
-            Message message = mRecognizer.obtainMessage();
+            Message message = mRecognizerHandler.obtainMessage();
             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
             message.obj = new RecognitionError(RecognitionErrorCode.CONNECTION_FAILURE, "Network error");
-            message.sendToTarget();
+            sendToRecognizer(message);
 
             return false;
 
@@ -565,10 +1041,10 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
             Log.w(TAG, "EncodeException while sending asr message", e);
 
-            Message message = mRecognizer.obtainMessage();
+            Message message = mRecognizerHandler.obtainMessage();
             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
             message.obj = new RecognitionError(RecognitionErrorCode.FAILURE, "Internal library error");
-            message.sendToTarget();
+            sendToRecognizer(message);
 
             return false;
         }
@@ -607,11 +1083,22 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                         String createSessionResult = asrMessage.getHeaderFieldValueForName("Result");
 
-                        if (createSessionResult != null && createSessionResult.contentEquals("SUCCESS")) {
+                        if (createSessionResult != null && createSessionResult.contentEquals("SUCCESS")
+                                && mStartRecognitionPipelined) {
+
+                            // Start recognition has already been sent, its response comes next.
+                            mStartRecognitionPipelined = false;
 
-                            Message message = mRecognizer.obtainMessage();
+                            mConnectionState = CONNECTION_STATE_WAITING_START_RECOGNITION;
+
+                            // Set Network Timeout
+                            setNetworkTimeout();
+
+                        } else if (createSessionResult != null && createSessionResult.contentEquals("SUCCESS")) {
+
+                            Message message = mRecognizerHandler.obtainMessage();
                             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_CREATE_SESSION;
-                            message.sendToTarget();
+                            sendToRecognizer(message);
 
                             mConnectionState = CONNECTION_STATE_IDLE;
 
@@ -619,10 +1106,10 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                             resetConnectionState(true, mLibraryErrorCloseReason);
 
-                            Message message = mRecognizer.obtainMessage();
+                            Message message = mRecognizerHandler.obtainMessage();
                             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
                             message.obj = new RecognitionError(RecognitionErrorCode.FAILURE, "Internal library error");
-                            message.sendToTarget();
+                            sendToRecognizer(message);
                         }
                     } else {
                         Log.i(TAG, "ignoring response to create session asr message");
@@ -640,28 +1127,43 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                         String startRecogResult = asrMessage.getHeaderFieldValueForName("Result");
 
-                        if (startRecogResult != null && startRecogResult.contentEquals("SUCCESS")) {
+                        if (startRecogResult != null && startRecogResult.contentEquals("SUCCESS")
+                                && mPreRoll.hasOverflowed()) {
+
+                            // The recognition has already failed on the client side.
+                            clearBufferedAudio();
+
+                            if (!sendAsrMessage(new AsrMessage(AsrMessage.METHOD_CANCEL_RECOGNITION, null, null))) {
+                                Log.w(TAG, "error sending cancel recognition");
+                            }
+
+                            mConnectionState = CONNECTION_STATE_WAITING_CANCEL_RECOGNITION;
+
+                            // Set Network Timeout
+                            setNetworkTimeout();
+
+                        } else if (startRecogResult != null && startRecogResult.contentEquals("SUCCESS")) {
 
                             // Notify the speech recognizer that server is listening
-                            Message message = mRecognizer.obtainMessage();
+                            Message message = mRecognizerHandler.obtainMessage();
                             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_START_RECOGNITION;
-                            message.sendToTarget();
+                            sendToRecognizer(message);
 
                             mConnectionState = CONNECTION_STATE_STREAMING_AUDIO;
 
                             // The thread state has just become "streaming audio".
                             // Send buffered audio, if any, to server.
-                            if (mAudioBufferBaos.size() > 0 || mAudioBufferIsLastPacket) {
-                                handleAudioPacket(mAudioBufferBaos.toByteArray(), mAudioBufferIsLastPacket);
-                            }
+                            sendPreRoll();
 
                         } else {
 
                             mConnectionState = CONNECTION_STATE_IDLE;
 
+                            clearBufferedAudio();
+
                             String startRecogErrorCode = asrMessage.getHeaderFieldValueForName("Error-Code");
 
-                            Message message = mRecognizer.obtainMessage();
+                            Message message = mRecognizerHandler.obtainMessage();
                             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
 
                             if (startRecogErrorCode != null) {
@@ -680,7 +1182,7 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
                                 message.obj = new RecognitionError(RecognitionErrorCode.FAILURE, "Internal library error");
                             }
 
-                            message.sendToTarget();
+                            sendToRecognizer(message);
                         }
                     } else {
                         Log.i(TAG, "ignoring response to start recognition asr message");
@@ -700,9 +1202,9 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                         mConnectionState = CONNECTION_STATE_WAITING_RECOGNITION_RESULT;
 
-                        Message message = mRecognizer.obtainMessage();
+                        Message message = mRecognizerHandler.obtainMessage();
                         message.arg1 = SpeechRecognizerImpl.MESSAGE_STOP;
-                        message.sendToTarget();
+                        sendToRecognizer(message);
 
                     }
 
@@ -720,9 +1222,9 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                         resetConnectionState(true, mLibraryErrorCloseReason);
 
-                        Message message = mRecognizer.obtainMessage();
+                        Message message = mRecognizerHandler.obtainMessage();
                         message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_RELEASE_SESSION;
-                        message.sendToTarget();
+                        sendToRecognizer(message);
                     } else {
                         Log.i(TAG, "ignoring response to release session asr message");
                     }
@@ -739,9 +1241,9 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                         mConnectionState = CONNECTION_STATE_IDLE;
 
-                        Message message = mRecognizer.obtainMessage();
+                        Message message = mRecognizerHandler.obtainMessage();
                         message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_CANCEL_RECOGNITION;
-                        message.sendToTarget();
+                        sendToRecognizer(message);
                     } else {
                         Log.i(TAG, "ignoring response to cancel recognition asr message");
                     }
@@ -755,9 +1257,9 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
                     //
                     // Notify the main thread.
                     if (mConnectionState == CONNECTION_STATE_STREAMING_AUDIO || mConnectionState == CONNECTION_STATE_WAITING_RECOGNITION_RESULT) {
-                        Message message = mRecognizer.obtainMessage();
+                        Message message = mRecognizerHandler.obtainMessage();
                         message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_START_INPUT_TIMERS;
-                        message.sendToTarget();
+                        sendToRecognizer(message);
                     } else {
                         Log.i(TAG, "ignoring response to start input timers asr message");
                     }
@@ -781,9 +1283,9 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                 mConnectionState = CONNECTION_STATE_WAITING_RECOGNITION_RESULT;
 
-                Message message = mRecognizer.obtainMessage();
+                Message message = mRecognizerHandler.obtainMessage();
                 message.arg1 = SpeechRecognizerImpl.MESSAGE_STOP;
-                message.sendToTarget();
+                sendToRecognizer(message);
             }
 
         } else if (method.contentEquals(AsrMessage.METHOD_RECOGNITION_RESULT)) {
@@ -799,36 +1301,43 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                 String resultStatusHeaderField = asrMessage.getHeaderFieldValueForName("Result-Status");
 
-                if (resultStatusHeaderField != null) {
+                PartialResultCoalescer partialResults = mPartialResults;
 
-                    String result;
+                if (resultStatusHeaderField != null
+                        && resultStatusHeaderField.contentEquals(RecognitionResultCode.PROCESSING.name())) {
 
-                    if (asrMessage.getBody() != null) {
-                        result = new String(asrMessage.getBody(), Constants.DEFAULT_CHARSET);
+                    // Partial result: parse it only if it will be notified
+                    if (partialResults.isEnabled()) {
+                        sendPartialResult(Util.getPartialRecogResult(asrMessage.getBodyBuffer()));
                     } else {
-                        result = null;
+                        partialResults.drop();
                     }
 
+                } else if (resultStatusHeaderField != null) {
+
+                    ByteBuffer result = asrMessage.getBodyBuffer();
+
                     RecognitionResult recognitionResult = Util.getRecogResult(result);
 
                     if (recognitionResult != null && recognitionResult.isFinalResult()) {
 
+                        // An unread partial result of the segment is out of date
+                        partialResults.onFinalResult(recognitionResult.getSpeechSegmentIndex());
+
                         // back state to idle if is the last segment
                         if (recognitionResult.isLastSpeechSegment()) {
                             mConnectionState = CONNECTION_STATE_IDLE;
                         }
 
-                        Message message = mRecognizer.obtainMessage();
+                        Message message = mRecognizerHandler.obtainMessage();
                         message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_RESULT;
                         message.obj = recognitionResult;
-                        message.sendToTarget();
+                        sendToRecognizer(message);
 
+                    } else if (partialResults.isEnabled()) {
+                        sendPartialResult(Util.getPartialRecogResult(result));
                     } else {
-
-                        Message message = mRecognizer.obtainMessage();
-                        message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_PARTIAL_RESULT;
-                        message.obj = Util.getPartialRecogResult(result);
-                        message.sendToTarget();
+                        partialResults.drop();
                     }
 
                 } else {
@@ -862,9 +1371,9 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
                 connectToServer();
             } else if (mConnectionState == CONNECTION_STATE_IDLE) {
                 // Already connected
-                Message message = mRecognizer.obtainMessage();
+                Message message = mRecognizerHandler.obtainMessage();
                 message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_CREATE_SESSION;
-                message.sendToTarget();
+                sendToRecognizer(message);
             } else {
                 Log.i(TAG, "ignoring connect to server handler message");
             }
@@ -873,26 +1382,11 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
             // Connect to server if thread is in correct state.
 
-            if (mConnectionState == CONNECTION_STATE_IDLE) {
-
-                byte[] languageModel = mLanguageModelUri.getBytes(Constants.NETWORK_CHARSET);
-
-                RecognitionConfig config = (msg.obj != null ? (RecognitionConfig) msg.obj : null);
-
-                Map<String, String> headerFields = new HashMap<>();
-                headerFields.put("Content-Type", "text/uri-list");
-                headerFields.put("Content-Length", Integer.toString(languageModel.length));
+            RecognitionConfig config = (msg.obj != null ? (RecognitionConfig) msg.obj : null);
 
-                // define os parametros do reconhecimento
-                if (config != null) {
-                    HashMap<String, String> map = config.getParameterMap();
-                    // adiciona header extras (parametros para o reconhecimento)
-                    for (String key : map.keySet()) {
-                        headerFields.put(key, map.get(key));
-                    }
-                }
+            if (mConnectionState == CONNECTION_STATE_IDLE) {
 
-                if (!sendAsrMessage(new AsrMessage(AsrMessage.METHOD_START_RECOGNITION, headerFields, languageModel))) {
+                if (!sendAsrMessage(createStartRecognitionMessage(config))) {
                     Log.w(TAG, "error sending start recognition");
                 }
 
@@ -900,6 +1394,20 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                 // Set Network Timeout
                 setNetworkTimeout();
+
+            } else if (msg.arg2 == START_RECOGNITION_PIPELINED
+                    && mConnectionState == CONNECTION_STATE_WAITING_SERVER_HANDSHAKE) {
+
+                // Send it right after create session, once the websocket is open.
+                mPendingStartConfig = config;
+                mStartRecognitionPending = true;
+
+            } else if (msg.arg2 == START_RECOGNITION_PIPELINED
+                    && mConnectionState == CONNECTION_STATE_WAITING_CREATE_SESSION && !mStartRecognitionPipelined) {
+
+                // Send it without waiting for the response to create session.
+                mStartRecognitionPipelined = sendAsrMessage(createStartRecognitionMessage(config));
+
             } else {
                 Log.i(TAG, "ignoring start recognition handler message");
             }
@@ -918,9 +1426,9 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
                 // Set Network Timeout
                 setNetworkTimeout();
             } else {
-                Message message = mRecognizer.obtainMessage();
+                Message message = mRecognizerHandler.obtainMessage();
                 message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_RELEASE_SESSION;
-                message.sendToTarget();
+                sendToRecognizer(message);
             }
 
         } else if (msg.arg1 == MESSAGE_CANCEL_RECOGNITION) {
@@ -943,16 +1451,28 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
         } else if (msg.arg1 == MESSAGE_HANDLE_AUDIO_PACKET) {
 
             // Handle incoming audio packet if thread is in correct state.
-            if (mConnectionState == CONNECTION_STATE_IDLE
-                    || mConnectionState == CONNECTION_STATE_DISCONNECTED
-                    || mConnectionState == CONNECTION_STATE_WAITING_SERVER_HANDSHAKE
-                    || mConnectionState == CONNECTION_STATE_WAITING_CREATE_SESSION
-                    || mConnectionState == CONNECTION_STATE_WAITING_START_RECOGNITION
-                    || mConnectionState == CONNECTION_STATE_STREAMING_AUDIO) {
-
-                handleAudioPacket((byte[]) msg.obj, msg.arg2 == 1);
-            } else {
-                Log.i(TAG, "ignoring handle audio packet handler message");
+            boolean permitHandedOver = false;
+            try {
+                if (mConnectionState == CONNECTION_STATE_IDLE
+                        || mConnectionState == CONNECTION_STATE_DISCONNECTED
+                        || mConnectionState == CONNECTION_STATE_WAITING_SERVER_HANDSHAKE
+                        || mConnectionState == CONNECTION_STATE_WAITING_CREATE_SESSION
+                        || mConnectionState == CONNECTION_STATE_WAITING_START_RECOGNITION
+                        || mConnectionState == CONNECTION_STATE_STREAMING_AUDIO) {
+
+                    if (msg.obj instanceof ByteBuffer) {
+                        permitHandedOver = handleAudioPacket((ByteBuffer) msg.obj, msg.arg2 == 1, true);
+                    } else {
+                        permitHandedOver = handleAudioPacket((byte[]) msg.obj, msg.arg2 == 1, true);
+                    }
+                } else {
+                    Log.i(TAG, "ignoring handle audio packet handler message");
+                }
+            } finally {
+                // Otherwise, it is given back once the packet is sent
+                if (!permitHandedOver) {
+                    mAudioPacketPermits.release();
+                }
             }
 
         } else if (msg.arg1 == MESSAGE_ON_CPQD_ASR_LIBRARY_ERROR) {
@@ -977,6 +1497,38 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
                 Log.i(TAG, "ignoring start input timers to server handler message");
             }
 
+        } else if (msg.arg1 == MESSAGE_DETACH) {
+
+            // The current recognizer is done with this connection.
+            Message message = mRecognizerHandler.obtainMessage();
+            message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_RELEASE_SESSION;
+            sendToRecognizer(message);
+
+            mRecognizerHandler = (Handler) msg.obj;
+
+            // Only an idle ASR session can serve another recognition.
+            message = mRecognizerHandler.obtainMessage();
+            message.arg1 = mConnectionState == CONNECTION_STATE_IDLE
+                    ? SpeechRecognizerImpl.MESSAGE_ON_CREATE_SESSION : SpeechRecognizerImpl.MESSAGE_ON_RELEASE_SESSION;
+            sendToRecognizer(message);
+
+        } else if (msg.arg1 == MESSAGE_SHUTDOWN) {
+
+            // Release the session, if any, without waiting for the response.
+            removeMessages(WHAT_REQUEST_TIMEOUT);
+
+            if (mConnectionState == CONNECTION_STATE_IDLE && mWebsocketSession != null) {
+                try {
+                    mWebsocketSession.getBasicRemote().sendObject(new AsrMessage(AsrMessage.METHOD_RELEASE_SESSION, null, null));
+                } catch (Exception e) {
+                    Log.i(TAG, "could not release session while shutting down", e);
+                }
+            }
+
+            resetConnectionState(true, mLibraryErrorCloseReason);
+
+            finishMessaging();
+
         } else if (msg.arg1 == INTERNAL_MESSAGE_REMOVE_NETWORK_TIMEOUT) {
 
             // Remove the request timeout.
@@ -1026,10 +1578,10 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
                 recognitionError = new RecognitionError(RecognitionErrorCode.CONNECTION_FAILURE, "Connection closed");
             }
 
-            Message message = mRecognizer.obtainMessage();
+            Message message = mRecognizerHandler.obtainMessage();
             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
             message.obj = recognitionError;
-            message.sendToTarget();
+            sendToRecognizer(message);
 
         } else if (msg.arg1 == INTERNAL_MESSAGE_ON_WEBSOCKET_LIBRARY_ERROR) {
 
@@ -1050,18 +1602,38 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
                 Log.w(TAG, "asr header error", throwable);
 
-                Message message = mRecognizer.obtainMessage();
+                Message message = mRecognizerHandler.obtainMessage();
                 message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
                 message.obj = new RecognitionError(RecognitionErrorCode.FAILURE, "ASR message header error");
-                message.sendToTarget();
+                sendToRecognizer(message);
             } else {
 
                 Log.w(TAG, "connection error", throwable);
 
-                Message message = mRecognizer.obtainMessage();
+                Message message = mRecognizerHandler.obtainMessage();
                 message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
                 message.obj = new RecognitionError(RecognitionErrorCode.CONNECTION_FAILURE, "Connection error");
-                message.sendToTarget();
+                sendToRecognizer(message);
+            }
+
+        } else if (msg.arg1 == INTERNAL_MESSAGE_ON_SEND_AUDIO_ERROR) {
+
+            Log.w(TAG, "error while sending audio", (Throwable) msg.obj);
+
+            // Raise the error, unless the recognition is already over.
+            if (mConnectionState == CONNECTION_STATE_STREAMING_AUDIO
+                    || mConnectionState == CONNECTION_STATE_WAITING_RECOGNITION_RESULT) {
+
+                Message message = mRecognizerHandler.obtainMessage();
+                message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
+                message.obj = new RecognitionError(RecognitionErrorCode.CONNECTION_FAILURE, "Network error");
+                sendToRecognizer(message);
+            }
+
+        } else if (msg.arg1 == INTERNAL_MESSAGE_SEND_BUFFERED_AUDIO) {
+
+            if (mSendingBufferedAudio) {
+                sendBufferedAudio();
             }
 
         } else if (msg.arg1 == INTERNAL_MESSAGE_RAISE_NETWORK_TIMEOUT) {
@@ -1077,19 +1649,61 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
             }
 
             // Raise request timeout.
-            Message message = mRecognizer.obtainMessage();
+            Message message = mRecognizerHandler.obtainMessage();
             message.arg1 = SpeechRecognizerImpl.MESSAGE_ON_ERROR;
             message.obj = new RecognitionError(RecognitionErrorCode.REQUEST_TIMEOUT, "Request timeout");
-            message.sendToTarget();
+            sendToRecognizer(message);
 
         } else {
 
             Log.i(TAG, "ignoring handler message with code: " + Integer.toString(msg.arg1));
         }
 
+        // The audio still buffered is of a recognition that is no longer streaming.
+        if (mSendingBufferedAudio && mConnectionState != CONNECTION_STATE_STREAMING_AUDIO) {
+            clearBufferedAudio();
+        }
+
         return true;
     }
 
+    /**
+     * <p>Completion callback of an audio frame sent to the server.</p>
+     * <p>It is called in a thread managed by the websocket library, so it
+     * only gives back the permit, and delegates the error handling and the
+     * sending of buffered audio to {@link AsrServerConnectionThread}.</p>
+     */
+    private class AudioSendHandler implements SendHandler {
+
+        /* Whether an audio packet permit is given back once sent. */
+        private final boolean releasePermit;
+
+        AudioSendHandler(boolean releasePermit) {
+            this.releasePermit = releasePermit;
+        }
+
+        @Override
+        public void onResult(SendResult result) {
+
+            if (releasePermit) {
+                mAudioPacketPermits.release();
+
+                if (mSendingBufferedAudio) {
+                    Message message = obtainMessage();
+                    message.arg1 = INTERNAL_MESSAGE_SEND_BUFFERED_AUDIO;
+                    message.sendToTarget();
+                }
+            }
+
+            if (!result.isOK()) {
+                Message message = obtainMessage();
+                message.arg1 = INTERNAL_MESSAGE_ON_SEND_AUDIO_ERROR;
+                message.obj = result.getException();
+                message.sendToTarget();
+            }
+        }
+    }
+
     /**
      * <p>Client websocket endpoint that handles callbacks like
      * {@link OnOpen}, {@link OnMessage} etc.</p>
@@ -1201,7 +1815,9 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
         @Override
         public ByteBuffer encode(AsrMessage object) {
 
-            object.logItself();
+            if (WireTrace.isEnabled()) {
+                WireTrace.trace(true, object);
+            }
 
             return ByteBuffer.wrap(object.toByteArray());
         }
@@ -1219,25 +1835,25 @@ class AsrServerConnectionThread extends AbstractMessagingThread {
 
     /**
      * Deserializer class used by the websocket library to
-     * assemble {@link AsrMessage} instances from byte arrays.
+     * assemble {@link AsrMessage} instances from byte buffers.
+     * The message is parsed in place and its body references
+     * the received buffer, so no octets are copied.
      */
     public static class AsrMessageDecoder implements Decoder.Binary<AsrMessage> {
 
         @Override
         public AsrMessage decode(ByteBuffer bytes) throws DecodeException {
 
-            byte[] serializedMessage = new byte[bytes.remaining()];
-
-            bytes.get(serializedMessage);
-
             AsrMessage asrMessage;
             try {
-                asrMessage = new AsrMessage(serializedMessage);
+                asrMessage = new AsrMessage(bytes);
             } catch (IllegalArgumentException e) {
                 throw new DecodeException(bytes, "could not decode asr message", e);
             }
 
-            asrMessage.logItself();
+            if (WireTrace.isEnabled()) {
+                WireTrace.trace(false, asrMessage);
+            }
 
             return asrMessage;
         }
@@ -0,0 +1,722 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import br.com.cpqd.asr.recognizer.util.Util;
+
+/**
+ * <p>Pool of ASR sessions shared by recognizers.</p>
+ * <p>A pooled session is a connection to the server whose ASR session has
+ * already been created, so that a recognition may start without paying for
+ * the connection handshake and the session creation. Recognizers built with
+ * {@link SpeechRecognizer.Builder#sessionPool(AsrSessionPool)} take a session
+ * from the pool when they start a recognition and hand it back when they are
+ * closed. Idle sessions are evicted before the server would time them out, as
+ * given by {@link SpeechRecognizer.Builder#maxSessionIdleSeconds(int)}.</p>
+ * <p>Sessions are kept per server URI and client configuration, so a single
+ * pool may serve recognizers of different servers. Sessions of recognizers
+ * with a {@link SpeechRecognizer.Builder#ioLooper(android.os.Looper)} are opened
+ * in that looper.</p>
+ */
+public class AsrSessionPool {
+
+    /**
+     * Log tag.
+     */
+    private static final String TAG = AsrSessionPool.class.getSimpleName();
+
+    /**
+     * Default maximum number of idle sessions per server.
+     */
+    private static final int DEFAULT_MAX_IDLE_SESSIONS = 2;
+
+    /**
+     * Period of the idle session eviction, in milliseconds.
+     */
+    private static final int EVICTION_PERIOD = 1000;
+
+    /**
+     * Code for eviction message.
+     */
+    private static final int WHAT_EVICT = 1;
+
+    /**
+     * Application context, used to set up new connections.
+     */
+    private final Context mContext;
+
+    /**
+     * Maximum number of idle sessions per server.
+     */
+    private final int mMaxIdleSessions;
+
+    /**
+     * Thread that receives the events of the pooled connections.
+     */
+    private final HandlerThread mHandlerThread;
+
+    /**
+     * Handler of the pool thread.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Lock of the pool state.
+     */
+    private final Object mLock;
+
+    /**
+     * Idle sessions per server, least recently used first.
+     */
+    private final Map<SessionKey, List<PooledSession>> mIdleSessions;
+
+    /**
+     * Sessions owned by the pool, whether idle or not ready yet.
+     */
+    private final Map<AsrServerConnectionThread, PooledSession> mSessions;
+
+    /**
+     * Flag indicating the pool has been closed.
+     */
+    private boolean mClosed;
+
+    /**
+     * Number of sessions handed out to recognizers.
+     */
+    private long mAcquisitions;
+
+    /**
+     * Number of sessions handed out that were ready for recognition.
+     */
+    private long mWarmAcquisitions;
+
+    /**
+     * Number of idle sessions evicted.
+     */
+    private long mEvictions;
+
+    /**
+     * Number of time to first audio samples.
+     */
+    private long mFirstAudioCount;
+
+    /**
+     * Sum of the time to first audio samples, in nanoseconds.
+     */
+    private long mFirstAudioTotal;
+
+    /**
+     * Maximum time to first audio, in nanoseconds.
+     */
+    private long mFirstAudioMax;
+
+    /**
+     * Creates a new instance of the object builder.
+     *
+     * @return the Builder object.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The Builder object for the AsrSessionPool class.
+     */
+    public static class Builder {
+
+        /**
+         * The maximum number of idle sessions per server.
+         */
+        protected int maxIdleSessions;
+
+        /**
+         * Private constructor. Defines default configuration parameters.
+         */
+        private Builder() {
+            this.maxIdleSessions = DEFAULT_MAX_IDLE_SESSIONS;
+        }
+
+        /**
+         * Builds an AsrSessionPool instance.
+         *
+         * @param context the Context reference.
+         * @return the pool instance.
+         */
+        public AsrSessionPool build(Context context) {
+            return new AsrSessionPool(context, this);
+        }
+
+        /**
+         * Sets the maximum number of idle sessions kept per server.
+         *
+         * @param maxIdleSessions the maximum number of idle sessions.
+         * @return the Builder object.
+         */
+        public Builder maxIdleSessions(int maxIdleSessions) {
+            this.maxIdleSessions = maxIdleSessions;
+            return this;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context the Context reference.
+     * @param builder the Builder object.
+     */
+    private AsrSessionPool(Context context, Builder builder) {
+
+        if (builder.maxIdleSessions < 0) {
+            throw new IllegalArgumentException("invalid maximum number of idle sessions: " + builder.maxIdleSessions);
+        }
+
+        mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+
+        mMaxIdleSessions = builder.maxIdleSessions;
+
+        mHandlerThread = new HandlerThread("AsrSessionPoolThread");
+        mHandlerThread.setDaemon(true);
+        mHandlerThread.start();
+
+        mHandler = new Handler(mHandlerThread.getLooper(), new Handler.Callback() {
+
+            @Override
+            public boolean handleMessage(Message msg) {
+
+                if (msg.what == WHAT_EVICT) {
+                    evictIdleSessions();
+                }
+
+                return true;
+            }
+        });
+
+        mLock = new Object();
+
+        mIdleSessions = new HashMap<>();
+
+        mSessions = new HashMap<>();
+    }
+
+    /**
+     * Opens sessions in advance, so that they are ready when recognizers need them.
+     * No more than the maximum number of idle sessions are kept.
+     *
+     * @param builder  the Builder object of the recognizers that will use the sessions.
+     * @param sessions the number of sessions to open.
+     * @throws URISyntaxException if the server URI is invalid.
+     */
+    public void warmUp(SpeechRecognizer.Builder builder, int sessions) throws URISyntaxException {
+
+        SessionKey key = keyOf(builder);
+
+        for (int i = 0; i < sessions; i++) {
+
+            if (!open(key, builder)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the pool statistics.
+     *
+     * @return a snapshot of the statistics.
+     */
+    public Statistics getStatistics() {
+
+        synchronized (mLock) {
+
+            int idleSessions = 0;
+
+            for (List<PooledSession> sessions : mIdleSessions.values()) {
+                idleSessions += sessions.size();
+            }
+
+            return new Statistics(mAcquisitions, mWarmAcquisitions, mEvictions, idleSessions,
+                    mFirstAudioCount, mFirstAudioTotal, mFirstAudioMax);
+        }
+    }
+
+    /**
+     * Closes all sessions in the pool. Sessions held by recognizers are closed
+     * when they are handed back.
+     */
+    public void close() {
+
+        List<PooledSession> sessions;
+
+        synchronized (mLock) {
+
+            mClosed = true;
+
+            sessions = new ArrayList<>(mSessions.values());
+
+            mSessions.clear();
+            mIdleSessions.clear();
+        }
+
+        for (PooledSession session : sessions) {
+            shutdown(session.connection);
+        }
+
+        mHandlerThread.quit();
+    }
+
+    /**
+     * Takes a session from the pool, or opens a new connection if there is no idle
+     * session for the recognizer configuration.  A session taken from the pool is
+     * replaced by a new one, so that the next recognizer finds a warm session as well.
+     *
+     * @param builder           the Builder object of the recognizer.
+     * @param recognizerHandler the handler of the recognizer.
+     * @return the connection thread, which notifies the given handler from now on.
+     * @throws URISyntaxException if the server URI is invalid.
+     */
+    AsrServerConnectionThread acquire(SpeechRecognizer.Builder builder, Handler recognizerHandler) throws URISyntaxException {
+
+        SessionKey key = keyOf(builder);
+
+        synchronized (mLock) {
+
+            mAcquisitions++;
+
+            List<PooledSession> idleSessions = mIdleSessions.get(key);
+
+            if (idleSessions != null && !idleSessions.isEmpty()) {
+
+                // The most recently used session is the least likely to be timed out.
+                PooledSession session = idleSessions.remove(idleSessions.size() - 1);
+
+                mSessions.remove(session.connection);
+
+                mWarmAcquisitions++;
+
+                session.connection.setRecognizerHandler(recognizerHandler);
+
+                if (countSessions(key) < mMaxIdleSessions) {
+                    open(key, builder);
+                }
+
+                return session.connection;
+            }
+        }
+
+        return AsrServerConnectionThread.create(mContext, recognizerHandler, builder, builder.ioLooper);
+    }
+
+    /**
+     * Hands a connection back to the pool. The recognizer handler is notified of
+     * the session release, and the session is kept if it can be reused.
+     *
+     * @param builder    the Builder object of the recognizer.
+     * @param connection the connection thread obtained from {@link #acquire(SpeechRecognizer.Builder, Handler)}.
+     */
+    void release(SpeechRecognizer.Builder builder, AsrServerConnectionThread connection) {
+
+        PooledSession session = new PooledSession(keyOf(builder), builder.maxSessionIdleSeconds);
+        session.connection = connection;
+
+        synchronized (mLock) {
+            mSessions.put(connection, session);
+        }
+
+        Message message = connection.obtainMessage();
+        message.arg1 = AsrServerConnectionThread.MESSAGE_DETACH;
+        message.obj = session.handler;
+        message.sendToTarget();
+    }
+
+    /**
+     * Records the time a recognition took from its request to the moment the
+     * server was ready for its audio.
+     *
+     * @param nanos the time to first audio, in nanoseconds.
+     */
+    void recordTimeToFirstAudio(long nanos) {
+
+        synchronized (mLock) {
+            mFirstAudioCount++;
+            mFirstAudioTotal += nanos;
+            mFirstAudioMax = Math.max(mFirstAudioMax, nanos);
+        }
+    }
+
+    /**
+     * Opens a session that is added to the pool once its ASR session is created.
+     *
+     * @param key     the key of the recognizer configuration.
+     * @param builder the Builder object of the recognizers that will use the session.
+     * @return {@code true} if the session is being opened, {@code false} if the pool is closed.
+     * @throws URISyntaxException if the server URI is invalid.
+     */
+    private boolean open(SessionKey key, SpeechRecognizer.Builder builder) throws URISyntaxException {
+
+        PooledSession session = new PooledSession(key, builder.maxSessionIdleSeconds);
+
+        synchronized (mLock) {
+
+            if (mClosed) {
+                return false;
+            }
+
+            session.connection = AsrServerConnectionThread.create(mContext, session.handler, builder, builder.ioLooper);
+            mSessions.put(session.connection, session);
+        }
+
+        Message message = session.connection.obtainMessage();
+        message.arg1 = AsrServerConnectionThread.MESSAGE_CONNECT_TO_SERVER;
+        message.sendToTarget();
+
+        return true;
+    }
+
+    /**
+     * Counts the sessions owned by the pool for a recognizer configuration,
+     * whether idle or still being opened.  Must be called holding the lock.
+     *
+     * @param key the key of the recognizer configuration.
+     * @return the number of sessions.
+     */
+    private int countSessions(SessionKey key) {
+
+        int count = 0;
+
+        for (PooledSession session : mSessions.values()) {
+            if (session.key.equals(key)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Makes a session available for recognizers, unless there are enough idle sessions already.
+     * Called in the pool thread.
+     *
+     * @param session the session whose ASR session has been created.
+     */
+    private void onSessionReady(PooledSession session) {
+
+        synchronized (mLock) {
+
+            if (mSessions.get(session.connection) != session) {
+                return;
+            }
+
+            List<PooledSession> idleSessions = mIdleSessions.get(session.key);
+
+            if (idleSessions == null) {
+                idleSessions = new ArrayList<>();
+                mIdleSessions.put(session.key, idleSessions);
+            }
+
+            if (!mClosed && idleSessions.size() < mMaxIdleSessions) {
+
+                session.idleSince = SystemClock.elapsedRealtime();
+                idleSessions.add(session);
+
+                if (!mHandler.hasMessages(WHAT_EVICT)) {
+                    mHandler.sendMessageDelayed(mHandler.obtainMessage(WHAT_EVICT), EVICTION_PERIOD);
+                }
+
+                return;
+            }
+        }
+
+        discard(session);
+    }
+
+    /**
+     * Removes a session from the pool and closes its connection.
+     *
+     * @param session the session to be discarded.
+     */
+    private void discard(PooledSession session) {
+
+        synchronized (mLock) {
+
+            if (mSessions.get(session.connection) != session) {
+                return;
+            }
+
+            mSessions.remove(session.connection);
+
+            List<PooledSession> idleSessions = mIdleSessions.get(session.key);
+
+            if (idleSessions != null) {
+                idleSessions.remove(session);
+            }
+        }
+
+        shutdown(session.connection);
+    }
+
+    /**
+     * Closes the idle sessions that would be timed out by the server before the next check.
+     * Called in the pool thread.
+     */
+    private void evictIdleSessions() {
+
+        List<PooledSession> evicted = new ArrayList<>();
+        boolean hasIdleSessions = false;
+
+        long now = SystemClock.elapsedRealtime();
+
+        synchronized (mLock) {
+
+            for (List<PooledSession> idleSessions : mIdleSessions.values()) {
+
+                Iterator<PooledSession> iterator = idleSessions.iterator();
+
+                while (iterator.hasNext()) {
+
+                    PooledSession session = iterator.next();
+
+                    if (session.idleTimeout > 0 && now - session.idleSince + EVICTION_PERIOD >= session.idleTimeout) {
+                        iterator.remove();
+                        mSessions.remove(session.connection);
+                        evicted.add(session);
+                    }
+                }
+
+                hasIdleSessions = hasIdleSessions || !idleSessions.isEmpty();
+            }
+
+            mEvictions += evicted.size();
+        }
+
+        for (PooledSession session : evicted) {
+            Log.d(TAG, "evicting idle session");
+            shutdown(session.connection);
+        }
+
+        if (hasIdleSessions) {
+            mHandler.sendMessageDelayed(mHandler.obtainMessage(WHAT_EVICT), EVICTION_PERIOD);
+        }
+    }
+
+    /**
+     * Asks a connection thread to release its session and finish.
+     *
+     * @param connection the connection thread.
+     */
+    private static void shutdown(AsrServerConnectionThread connection) {
+
+        Message message = connection.obtainMessage();
+        message.arg1 = AsrServerConnectionThread.MESSAGE_SHUTDOWN;
+        message.sendToTarget();
+    }
+
+    /**
+     * Evaluates the key of the sessions that can serve recognizers of a given configuration.
+     * Sessions opened in an I/O looper only serve recognizers of that looper.
+     *
+     * @param builder the Builder object.
+     * @return the session key.
+     */
+    private static SessionKey keyOf(SpeechRecognizer.Builder builder) {
+
+        return new SessionKey(builder.uri + "|" + Arrays.toString(builder.credentials) + "|" + builder.userAgent
+                + "|" + builder.maxSessionIdleSeconds + "|" + builder.encoding + "|"
+                + Util.calculateBufferSize(builder.chunkLength, builder.audioSampleRate, builder.encoding.getSampleSize()),
+                builder.ioLooper);
+    }
+
+    /**
+     * Key of the sessions that can serve recognizers of a given configuration.
+     * The I/O looper is compared by reference, since sessions opened in a looper
+     * only serve recognizers of that same looper.
+     */
+    private static final class SessionKey {
+
+        /* The connection settings of the recognizer configuration. */
+        private final String settings;
+
+        /* The I/O looper of the recognizer configuration, or null. */
+        private final Looper ioLooper;
+
+        SessionKey(String settings, Looper ioLooper) {
+            this.settings = settings;
+            this.ioLooper = ioLooper;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof SessionKey)) {
+                return false;
+            }
+
+            SessionKey other = (SessionKey) o;
+
+            return ioLooper == other.ioLooper && settings.equals(other.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * settings.hashCode() + System.identityHashCode(ioLooper);
+        }
+    }
+
+    /**
+     * A session owned by the pool. It receives the events of its connection thread
+     * while no recognizer is using it.
+     */
+    private class PooledSession implements Handler.Callback {
+
+        /* Key of the recognizer configuration. */
+        private final SessionKey key;
+
+        /* Time after which the server closes the idle session, in milliseconds. */
+        private final long idleTimeout;
+
+        /* Handler that receives the connection events in the pool thread. */
+        private final Handler handler;
+
+        /* The connection thread. */
+        private AsrServerConnectionThread connection;
+
+        /* Time the session became idle at. */
+        private long idleSince;
+
+        PooledSession(SessionKey key, int maxSessionIdleSeconds) {
+            this.key = key;
+            this.idleTimeout = maxSessionIdleSeconds * 1000L;
+            this.handler = new Handler(mHandlerThread.getLooper(), this);
+        }
+
+        @Override
+        public boolean handleMessage(Message msg) {
+
+            if (msg.arg1 == SpeechRecognizerImpl.MESSAGE_ON_CREATE_SESSION) {
+                onSessionReady(this);
+            } else if (msg.arg1 == SpeechRecognizerImpl.MESSAGE_ON_ERROR
+                    || msg.arg1 == SpeechRecognizerImpl.MESSAGE_ON_RELEASE_SESSION) {
+                discard(this);
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Snapshot of the pool statistics.
+     */
+    public static class Statistics {
+
+        private final long acquisitions;
+
+        private final long warmAcquisitions;
+
+        private final long evictions;
+
+        private final int idleSessions;
+
+        private final long firstAudioCount;
+
+        private final long firstAudioTotal;
+
+        private final long firstAudioMax;
+
+        private Statistics(long acquisitions, long warmAcquisitions, long evictions, int idleSessions,
+                           long firstAudioCount, long firstAudioTotal, long firstAudioMax) {
+            this.acquisitions = acquisitions;
+            this.warmAcquisitions = warmAcquisitions;
+            this.evictions = evictions;
+            this.idleSessions = idleSessions;
+            this.firstAudioCount = firstAudioCount;
+            this.firstAudioTotal = firstAudioTotal;
+            this.firstAudioMax = firstAudioMax;
+        }
+
+        /**
+         * @return the number of sessions handed out to recognizers.
+         */
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        /**
+         * @return the number of sessions handed out that were ready for recognition.
+         */
+        public long getWarmAcquisitions() {
+            return warmAcquisitions;
+        }
+
+        /**
+         * @return the number of idle sessions evicted.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return the number of idle sessions in the pool.
+         */
+        public int getIdleSessions() {
+            return idleSessions;
+        }
+
+        /**
+         * @return the number of recognitions whose time to first audio was recorded.
+         */
+        public long getFirstAudioCount() {
+            return firstAudioCount;
+        }
+
+        /**
+         * @return the mean time from the recognition request until the server is ready for audio, in milliseconds.
+         */
+        public float getMeanTimeToFirstAudio() {
+            return firstAudioCount > 0 ? firstAudioTotal / (float) firstAudioCount / 1000000F : 0;
+        }
+
+        /**
+         * @return the maximum time from the recognition request until the server is ready for audio, in milliseconds.
+         */
+        public float getMaxTimeToFirstAudio() {
+            return firstAudioMax / 1000000F;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics [acquisitions=" + acquisitions + ", warmAcquisitions=" + warmAcquisitions
+                    + ", evictions=" + evictions + ", idleSessions=" + idleSessions
+                    + ", meanTimeToFirstAudio=" + getMeanTimeToFirstAudio() + " ms"
+                    + ", maxTimeToFirstAudio=" + getMaxTimeToFirstAudio() + " ms]";
+        }
+    }
+}
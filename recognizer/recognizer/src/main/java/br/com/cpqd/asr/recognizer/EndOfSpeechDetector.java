@@ -15,55 +15,518 @@
  ******************************************************************************/
 package br.com.cpqd.asr.recognizer;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
 /**
- * <p>End of speech detector, adapted from
- * <a href="https://github.com/Kaljurand/speechutils/blob/master/app/src/ee/ioc/phon/android/speechutils/AbstractAudioRecorder.java">speechutils</a>.</p>
- * <p>A new instance of this class should be created for each
- * {@link android.media.AudioRecord} object, i.e. an end of speech detector
- * should not be reused among different recording sessions.</p>
+ * <p>End of speech detector of 16-bit linear PCM mono audio.</p>
+ * <p>The audio is split in frames, and the energy of each frame is compared
+ * to two thresholds: frames above the speech threshold are voiced, and frames
+ * below the silence threshold are silent. Frames in between keep the current
+ * state. Once speech is detected, a pause is detected after the hangover time
+ * of consecutive silent frames.</p>
+ * <p>Audio may be given as byte arrays, ShortBuffer or ByteBuffer slices of any
+ * length; frames are carried over between calls. Processing does not allocate,
+ * and the energy is computed in plain counted loops the JIT can unroll and
+ * vectorize.</p>
+ * <p>A new instance of this class should be created for each recording
+ * session, i.e. an end of speech detector should not be reused among
+ * different audio streams.</p>
  */
 public class EndOfSpeechDetector {
 
-    private double mAvgEnergy;
+    /**
+     * Default frame length, in milliseconds.
+     */
+    public static final int DEFAULT_FRAME_MILLIS = 20;
+
+    /**
+     * Default speech threshold, in dBFS.
+     */
+    public static final float DEFAULT_SPEECH_THRESHOLD = -40;
+
+    /**
+     * Default silence threshold, in dBFS.
+     */
+    public static final float DEFAULT_SILENCE_THRESHOLD = -45;
+
+    /**
+     * Default hangover time, in milliseconds.
+     */
+    public static final int DEFAULT_HANGOVER_MILLIS = 500;
+
+    /**
+     * Level of digital silence, in dBFS.
+     */
+    public static final float MIN_LEVEL = -120;
+
+    /**
+     * Square of the full scale of 16-bit samples.
+     */
+    private static final double FULL_SCALE_SQUARE = 32768.0 * 32768.0;
+
+    /**
+     * Number of samples per frame.
+     */
+    private final int mFrameSize;
+
+    /**
+     * Mean square of the samples of a frame at the speech threshold.
+     */
+    private final double mSpeechEnergy;
+
+    /**
+     * Mean square of the samples of a frame at the silence threshold.
+     */
+    private final double mSilenceEnergy;
+
+    /**
+     * Number of silent frames after speech that make a pause.
+     */
+    private final int mHangoverFrames;
+
+    /**
+     * Samples of the incomplete frame.
+     */
+    private final short[] mFrame;
+
+    /**
+     * Number of samples in {@link #mFrame}.
+     */
+    private int mFrameFill;
+
+    /**
+     * Low byte of a sample split between two calls, or -1.
+     */
+    private int mPendingByte = -1;
+
+    /**
+     * Number of complete frames processed.
+     */
+    private long mFrameCount;
+
+    /**
+     * Index of the first voiced frame, or -1.
+     */
+    private long mSpeechStartFrame = -1;
 
+    /**
+     * Index of the frame where the last pause was detected, or -1.
+     */
+    private long mPauseFrame = -1;
+
+    /**
+     * Number of consecutive silent frames.
+     */
+    private int mSilentFrames;
+
+    /**
+     * Whether the current state is speech.
+     */
+    private boolean mSpeech;
+
+    /**
+     * Mean square of the samples of the last frame.
+     */
+    private double mLastEnergy;
+
+    /**
+     * Creates a detector of 8 kHz audio with the default thresholds.
+     */
     public EndOfSpeechDetector() {
+        this(8000, DEFAULT_FRAME_MILLIS, DEFAULT_SPEECH_THRESHOLD, DEFAULT_SILENCE_THRESHOLD, DEFAULT_HANGOVER_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate       the audio sample rate, in Hz.
+     * @param frameMillis      the frame length, in milliseconds.
+     * @param speechThreshold  the level above which a frame is voiced, in dBFS.
+     * @param silenceThreshold the level below which a frame is silent, in dBFS.
+     * @param hangoverMillis   the silence after speech that makes a pause, in milliseconds.
+     */
+    public EndOfSpeechDetector(int sampleRate, int frameMillis, float speechThreshold, float silenceThreshold,
+                               int hangoverMillis) {
+
+        if (silenceThreshold > speechThreshold) {
+            throw new IllegalArgumentException("silence threshold above speech threshold");
+        }
 
-        mAvgEnergy = 0.0;
+        mFrameSize = Math.max(1, sampleRate * frameMillis / 1000);
+        mSpeechEnergy = toEnergy(speechThreshold);
+        mSilenceEnergy = toEnergy(silenceThreshold);
+        mHangoverFrames = (hangoverMillis + frameMillis - 1) / frameMillis;
+        mFrame = new short[mFrameSize];
     }
 
+    /**
+     * Processes 16-bit linear PCM audio, little-endian.
+     *
+     * @param audio the audio.
+     * @return {@code true} if a pause after speech is detected.
+     */
     public boolean isPausing(byte[] audio) {
+        return process(audio, 0, audio.length);
+    }
+
+    /**
+     * Processes 16-bit linear PCM audio, little-endian.
+     *
+     * @param audio  the audio.
+     * @param offset offset of the audio in {@code audio}.
+     * @param length length of the audio, in bytes.
+     * @return {@code true} if a pause after speech is detected.
+     */
+    public boolean process(byte[] audio, int offset, int length) {
+
+        int end = offset + length;
+        int i = offset;
+
+        if (mPendingByte >= 0 && i < end) {
+            append((short) (audio[i++] << 8 | mPendingByte));
+            mPendingByte = -1;
+        }
+
+        while (end - i >= 2) {
 
-        return getPauseScore(audio) > 7.0;
+            int count = Math.min(mFrameSize - mFrameFill, (end - i) >> 1);
+            short[] frame = mFrame;
+            int fill = mFrameFill;
+
+            for (int k = 0; k < count; k++) {
+                int index = i + (k << 1);
+                frame[fill + k] = (short) (audio[index + 1] << 8 | audio[index] & 0xFF);
+            }
+
+            i += count << 1;
+            mFrameFill += count;
+
+            if (mFrameFill == mFrameSize) {
+                onFrame(sumOfSquares(frame, 0, mFrameSize));
+                mFrameFill = 0;
+            }
+        }
+
+        if (i < end) {
+            mPendingByte = audio[i] & 0xFF;
+        }
+
+        return isPausing();
+    }
+
+    /**
+     * Processes 16-bit linear PCM audio, little-endian whatever the order of the buffer.
+     *
+     * @param audio the audio, between its position and limit. Its position is not changed.
+     * @return {@code true} if a pause after speech is detected.
+     */
+    public boolean process(ByteBuffer audio) {
+
+        if (audio.hasArray()) {
+            return process(audio.array(), audio.arrayOffset() + audio.position(), audio.remaining());
+        }
+
+        boolean swap = audio.order() != ByteOrder.LITTLE_ENDIAN;
+        int i = audio.position();
+        int limit = audio.limit();
+
+        if (mPendingByte >= 0 && i < limit) {
+            append((short) (audio.get(i++) << 8 | mPendingByte));
+            mPendingByte = -1;
+        }
+
+        int end = i + ((limit - i) & ~1);
+
+        while (i < end) {
+
+            int count = Math.min(mFrameSize - mFrameFill, (end - i) >> 1);
+            short[] frame = mFrame;
+            int fill = mFrameFill;
+
+            for (int k = 0; k < count; k++) {
+                short sample = audio.getShort(i + (k << 1));
+                frame[fill + k] = swap ? Short.reverseBytes(sample) : sample;
+            }
+
+            i += count << 1;
+            mFrameFill += count;
+
+            if (mFrameFill == mFrameSize) {
+                onFrame(sumOfSquares(frame, 0, mFrameSize));
+                mFrameFill = 0;
+            }
+        }
+
+        if (i < limit) {
+            mPendingByte = audio.get(i) & 0xFF;
+        }
+
+        return isPausing();
     }
 
-    private double getPauseScore(byte[] audio) {
+    /**
+     * Processes 16-bit linear PCM samples.
+     *
+     * @param samples the samples.
+     * @param offset  offset of the samples in {@code samples}.
+     * @param length  number of samples.
+     * @return {@code true} if a pause after speech is detected.
+     */
+    public boolean process(short[] samples, int offset, int length) {
+
+        int end = offset + length;
+        int i = offset;
 
-        long t2 = getRms(audio);
+        // Complete the carried over frame
+        if (mFrameFill > 0) {
+            int count = Math.min(mFrameSize - mFrameFill, length);
+            System.arraycopy(samples, i, mFrame, mFrameFill, count);
+            i += count;
+            mFrameFill += count;
 
-        if (t2 == 0L) {
+            if (mFrameFill < mFrameSize) {
+                return isPausing();
+            }
 
-            return 0.0;
+            onFrame(sumOfSquares(mFrame, 0, mFrameSize));
+            mFrameFill = 0;
         }
 
-        double t = mAvgEnergy / (double) t2;
+        // Whole frames are read in place
+        while (end - i >= mFrameSize) {
+            onFrame(sumOfSquares(samples, i, mFrameSize));
+            i += mFrameSize;
+        }
 
-        mAvgEnergy = (mAvgEnergy * 2.0 + (double) t2) / 3.0;
+        System.arraycopy(samples, i, mFrame, 0, end - i);
+        mFrameFill = end - i;
 
-        return t;
+        return isPausing();
     }
 
-    private long getRms(byte[] audio) {
+    /**
+     * Processes 16-bit linear PCM samples.
+     *
+     * @param samples the samples, between its position and limit. Its position is not changed.
+     * @return {@code true} if a pause after speech is detected.
+     */
+    public boolean process(ShortBuffer samples) {
+
+        if (samples.hasArray()) {
+            return process(samples.array(), samples.arrayOffset() + samples.position(), samples.remaining());
+        }
 
-        long rms = 0L;
+        int position = samples.position();
+
+        while (samples.hasRemaining()) {
+
+            int count = Math.min(mFrameSize - mFrameFill, samples.remaining());
+            samples.get(mFrame, mFrameFill, count);
+            mFrameFill += count;
+
+            if (mFrameFill == mFrameSize) {
+                onFrame(sumOfSquares(mFrame, 0, mFrameSize));
+                mFrameFill = 0;
+            }
+        }
+
+        samples.position(position);
+
+        return isPausing();
+    }
+
+    /**
+     * @return {@code true} if a pause after speech is detected.
+     */
+    public boolean isPausing() {
+        return mSpeechStartFrame >= 0 && !mSpeech;
+    }
+
+    /**
+     * @return {@code true} if speech is detected and not followed by a pause yet.
+     */
+    public boolean isSpeech() {
+        return mSpeech;
+    }
+
+    /**
+     * @return the number of complete frames processed.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return the index of the first voiced frame, or -1 if no speech was detected.
+     */
+    public long getSpeechStartFrame() {
+        return mSpeechStartFrame;
+    }
+
+    /**
+     * @return the index of the frame where the last pause was detected, or -1 if none was.
+     */
+    public long getPauseFrame() {
+        return mPauseFrame;
+    }
+
+    /**
+     * @return the level of the last complete frame, in dBFS.
+     */
+    public float getLastFrameLevel() {
+        return toLevel(mLastEnergy);
+    }
+
+    /**
+     * Evaluates the mean square of 16-bit linear PCM audio, little-endian.
+     *
+     * @param audio  the audio.
+     * @param offset offset of the audio in {@code audio}.
+     * @param length length of the audio, in bytes. A trailing odd byte is ignored.
+     * @return the mean square of the samples, or 0 if there is none.
+     */
+    public static double energy(byte[] audio, int offset, int length) {
+
+        int samples = length >> 1;
+
+        if (samples == 0) {
+            return 0;
+        }
+
+        long sum = 0;
+
+        for (int k = 0; k < samples; k++) {
+            int index = offset + (k << 1);
+            int sample = audio[index + 1] << 8 | audio[index] & 0xFF;
+            sum += sample * sample;
+        }
+
+        return (double) sum / samples;
+    }
+
+    /**
+     * Evaluates the mean square of 16-bit linear PCM audio, little-endian
+     * whatever the order of the buffer.
+     *
+     * @param audio the audio, between its position and limit. Its position is not changed.
+     * @return the mean square of the samples, or 0 if there is none.
+     */
+    public static double energy(ByteBuffer audio) {
+
+        if (audio.hasArray()) {
+            return energy(audio.array(), audio.arrayOffset() + audio.position(), audio.remaining());
+        }
+
+        int samples = audio.remaining() >> 1;
+
+        if (samples == 0) {
+            return 0;
+        }
+
+        boolean swap = audio.order() != ByteOrder.LITTLE_ENDIAN;
+        int position = audio.position();
+        long sum = 0;
+
+        for (int k = 0; k < samples; k++) {
+            short sample = audio.getShort(position + (k << 1));
+            int value = swap ? Short.reverseBytes(sample) : sample;
+            sum += value * value;
+        }
+
+        return (double) sum / samples;
+    }
+
+    /**
+     * Evaluates the mean square of 16-bit linear PCM samples.
+     *
+     * @param samples the samples.
+     * @param offset  offset of the samples in {@code samples}.
+     * @param length  number of samples.
+     * @return the mean square of the samples, or 0 if there is none.
+     */
+    public static double energy(short[] samples, int offset, int length) {
+        return length > 0 ? (double) sumOfSquares(samples, offset, length) / length : 0;
+    }
+
+    /**
+     * Converts a mean square of 16-bit samples to a level.
+     *
+     * @param energy the mean square.
+     * @return the level, in dBFS.
+     */
+    public static float toLevel(double energy) {
+        return energy > 0 ? Math.max(MIN_LEVEL, (float) (10 * Math.log10(energy / FULL_SCALE_SQUARE))) : MIN_LEVEL;
+    }
+
+    /**
+     * Converts a level to a mean square of 16-bit samples.
+     *
+     * @param level the level, in dBFS.
+     * @return the mean square.
+     */
+    public static double toEnergy(float level) {
+        return FULL_SCALE_SQUARE * Math.pow(10, level / 10.0);
+    }
+
+    /**
+     * Sums the squares of the samples. Products of 16-bit samples fit in an
+     * int, so only the sum is widened.
+     */
+    private static long sumOfSquares(short[] samples, int offset, int length) {
+
+        long sum = 0;
+        int end = offset + length;
+
+        for (int i = offset; i < end; i++) {
+            int sample = samples[i];
+            sum += sample * sample;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Adds a sample to the incomplete frame.
+     */
+    private void append(short sample) {
+
+        mFrame[mFrameFill++] = sample;
+
+        if (mFrameFill == mFrameSize) {
+            onFrame(sumOfSquares(mFrame, 0, mFrameSize));
+            mFrameFill = 0;
+        }
+    }
 
-        for (int i = 0; i < audio.length; i += 2) {
+    /**
+     * Updates the state with a complete frame.
+     *
+     * @param sumOfSquares the sum of the squares of the samples of the frame.
+     */
+    private void onFrame(long sumOfSquares) {
 
-            // Assemble a little-endian short from two bytes.
-            short sample = (short) (audio[i + 1] << 8 | audio[i]);
+        double energy = (double) sumOfSquares / mFrameSize;
+        mLastEnergy = energy;
 
-            rms += (long) (sample * sample);
+        if (energy > mSpeechEnergy) {
+            if (mSpeechStartFrame < 0) {
+                mSpeechStartFrame = mFrameCount;
+            }
+            mSpeech = true;
+            mSilentFrames = 0;
+        } else if (energy < mSilenceEnergy) {
+            mSilentFrames++;
+            if (mSpeech && mSilentFrames >= mHangoverFrames) {
+                mSpeech = false;
+                mPauseFrame = mFrameCount;
+            }
+        } else if (mSpeech) {
+            // Between the thresholds, speech goes on
+            mSilentFrames = 0;
         }
 
-        return rms;
+        mFrameCount++;
     }
 }
@@ -0,0 +1,645 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import br.com.cpqd.asr.recognizer.audio.AudioSource;
+import br.com.cpqd.asr.recognizer.model.LanguageModelList;
+import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionConfig;
+import br.com.cpqd.asr.recognizer.model.RecognitionError;
+import br.com.cpqd.asr.recognizer.model.RecognitionErrorCode;
+import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+
+/**
+ * <p>Recognizer that runs many recognitions at the same time.</p>
+ * <p>Each call to {@link #recognize(AudioSource, LanguageModelList, RecognitionConfig, RecognitionListener...)}
+ * returns at once with its own {@link RecognitionHandle} and notifies its own
+ * listeners. Recognitions are scheduled over a fixed number of server sessions;
+ * the ones submitted while every session is busy wait for a session to be free,
+ * in submission order. A recognition whose result is not received within the
+ * max wait time of the sessions after the end of its audio fails, and its
+ * session is given to the next one.</p>
+ * <p>The events of all the sessions are handled by a small fixed set of I/O
+ * threads, instead of two threads per session, and the audio of the running
+ * recognitions is read by a pool with one thread per session.</p>
+ */
+public class MultiStreamRecognizer {
+
+    /**
+     * Log tag.
+     */
+    private static final String TAG = MultiStreamRecognizer.class.getSimpleName();
+
+    /**
+     * Default number of I/O threads.
+     */
+    private static final int DEFAULT_IO_THREADS = 2;
+
+    /**
+     * Default number of server sessions.
+     */
+    private static final int DEFAULT_MAX_SESSIONS = 4;
+
+    /**
+     * Maximum time to wait for the pending recognitions to be discarded on close, in milliseconds.
+     */
+    private static final int MAX_CLOSE_TIMEOUT = 1000;
+
+    /**
+     * Threads where the recognizer and connection events are handled.
+     */
+    private final HandlerThread[] mIoThreads;
+
+    /**
+     * Handler of the first I/O thread, where the recognitions are scheduled.
+     */
+    private final Handler mDispatchHandler;
+
+    /**
+     * Executor of the audio reader tasks.
+     */
+    private final ExecutorService mReaderExecutor;
+
+    /**
+     * The recognizers, one per server session.
+     */
+    private final List<Lane> mLanes;
+
+    /**
+     * Recognizers ready for a new recognition. Only used in the dispatch thread.
+     */
+    private final LinkedList<Lane> mFreeLanes;
+
+    /**
+     * Recognitions waiting for a free recognizer. Only used in the dispatch thread.
+     */
+    private final LinkedList<Stream> mPendingStreams;
+
+    /**
+     * Identifier of the next recognition.
+     */
+    private final AtomicLong mNextId;
+
+    /**
+     * Flag indicating the recognizer has been closed.
+     */
+    private volatile boolean mClosed;
+
+    /**
+     * Creates a new instance of the object builder.
+     *
+     * @param recognizerBuilder the configuration of the server sessions.
+     * @return the Builder object.
+     */
+    public static Builder builder(SpeechRecognizer.Builder recognizerBuilder) {
+        return new Builder(recognizerBuilder);
+    }
+
+    /**
+     * The Builder object for the MultiStreamRecognizer class.
+     */
+    public static class Builder {
+
+        /**
+         * The configuration of the server sessions.
+         */
+        protected SpeechRecognizer.Builder recognizerBuilder;
+
+        /**
+         * The number of I/O threads.
+         */
+        protected int ioThreads;
+
+        /**
+         * The number of server sessions.
+         */
+        protected int maxSessions;
+
+        /**
+         * Private constructor. Defines default configuration parameters.
+         *
+         * @param recognizerBuilder the configuration of the server sessions.
+         */
+        private Builder(SpeechRecognizer.Builder recognizerBuilder) {
+            this.recognizerBuilder = recognizerBuilder;
+            this.ioThreads = DEFAULT_IO_THREADS;
+            this.maxSessions = DEFAULT_MAX_SESSIONS;
+        }
+
+        /**
+         * Builds a MultiStreamRecognizer instance.
+         *
+         * @param context the Context reference.
+         * @return the recognizer instance.
+         * @throws URISyntaxException if the server URI is invalid.
+         */
+        public MultiStreamRecognizer build(Context context) throws URISyntaxException {
+            return new MultiStreamRecognizer(context, this);
+        }
+
+        /**
+         * Sets the number of threads where the events of the server sessions are handled.
+         *
+         * @param ioThreads the number of I/O threads.
+         * @return the Builder object.
+         */
+        public Builder ioThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        /**
+         * Sets the number of server sessions, which is the maximum number of
+         * recognitions running at the same time.
+         *
+         * @param maxSessions the number of server sessions.
+         * @return the Builder object.
+         */
+        public Builder maxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+            return this;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context the Context reference.
+     * @param builder the Builder object.
+     * @throws URISyntaxException if the server URI is invalid.
+     */
+    private MultiStreamRecognizer(Context context, Builder builder) throws URISyntaxException {
+
+        if (builder.ioThreads < 1) {
+            throw new IllegalArgumentException("invalid number of I/O threads: " + builder.ioThreads);
+        } else if (builder.maxSessions < 1) {
+            throw new IllegalArgumentException("invalid number of sessions: " + builder.maxSessions);
+        }
+
+        mIoThreads = new HandlerThread[builder.ioThreads];
+        for (int i = 0; i < mIoThreads.length; i++) {
+            mIoThreads[i] = new HandlerThread("AsrIoThread-" + i);
+            mIoThreads[i].start();
+        }
+
+        mDispatchHandler = new Handler(mIoThreads[0].getLooper());
+
+        final AtomicInteger readerCount = new AtomicInteger();
+        mReaderExecutor = Executors.newFixedThreadPool(builder.maxSessions, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AsrReaderThread-" + readerCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        mFreeLanes = new LinkedList<>();
+        mPendingStreams = new LinkedList<>();
+        mNextId = new AtomicLong();
+        mLanes = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < builder.maxSessions; i++) {
+
+                // The lane is notified after the recognizer itself, so the recognizer is idle by then
+                Lane lane = new Lane(mIoThreads[i % mIoThreads.length]);
+
+                SpeechRecognizer.Builder laneBuilder = builder.recognizerBuilder.copy();
+                laneBuilder.autoClose = false;
+                // Lanes are notified in the I/O thread of their recognizer
+                laneBuilder.listenerExecutor = null;
+                laneBuilder.listeners.add(lane);
+
+                lane.recognizer = new SpeechRecognizerImpl(context, laneBuilder,
+                        mIoThreads[i % mIoThreads.length].getLooper(), mReaderExecutor);
+                lane.recognizer.setIdleCallback(lane);
+
+                mLanes.add(lane);
+                mFreeLanes.add(lane);
+            }
+        } catch (URISyntaxException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Submits a recognition, which starts as soon as a server session is free.
+     *
+     * @param audio     the audio source.
+     * @param lmList    the language model to use.
+     * @param config    the recognition configuration, or {@code null} to use the recognizer's one.
+     * @param listeners the listeners of the recognition events.
+     * @return the handle of the recognition.
+     */
+    public RecognitionHandle recognize(AudioSource audio, LanguageModelList lmList, RecognitionConfig config,
+                                       RecognitionListener... listeners) {
+
+        final Stream stream = new Stream(mNextId.incrementAndGet(), audio, lmList, config, listeners);
+
+        if (mClosed) {
+            stream.fail(new RecognitionError(RecognitionErrorCode.FAILURE, "Recognizer is closed"));
+            return stream.handle;
+        }
+
+        mDispatchHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mClosed) {
+                    stream.fail(new RecognitionError(RecognitionErrorCode.FAILURE, "Recognizer is closed"));
+                } else {
+                    mPendingStreams.add(stream);
+                    dispatch();
+                }
+            }
+        });
+
+        return stream.handle;
+    }
+
+    /**
+     * Submits a recognition with the recognizer's configuration.
+     *
+     * @param audio     the audio source.
+     * @param lmList    the language model to use.
+     * @param listeners the listeners of the recognition events.
+     * @return the handle of the recognition.
+     */
+    public RecognitionHandle recognize(AudioSource audio, LanguageModelList lmList, RecognitionListener... listeners) {
+        return recognize(audio, lmList, null, listeners);
+    }
+
+    /**
+     * Discards the pending recognitions, fails the running ones and releases the server sessions.
+     */
+    public void close() {
+
+        mClosed = true;
+
+        final CountDownLatch discarded = new CountDownLatch(1);
+
+        mDispatchHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Stream stream : mPendingStreams) {
+                    stream.fail(new RecognitionError(RecognitionErrorCode.FAILURE, "Recognizer is closed"));
+                }
+                mPendingStreams.clear();
+                mFreeLanes.clear();
+                discarded.countDown();
+            }
+        });
+
+        try {
+            discarded.await(MAX_CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Lane lane : mLanes) {
+            lane.close();
+        }
+
+        for (HandlerThread ioThread : mIoThreads) {
+            ioThread.quit();
+        }
+
+        mReaderExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts pending recognitions while there are free recognizers. Runs in the dispatch thread.
+     */
+    private void dispatch() {
+
+        while (!mClosed && !mPendingStreams.isEmpty() && !mFreeLanes.isEmpty()) {
+
+            Stream stream = mPendingStreams.poll();
+            if (stream.handle.isDone()) {
+                continue;
+            }
+
+            Lane lane = mFreeLanes.poll();
+            if (!lane.start(stream)) {
+
+                // The recognizer is still finishing the previous recognition; it is freed when idle
+                mPendingStreams.addFirst(stream);
+            }
+        }
+    }
+
+    /**
+     * Marks a recognizer as ready for a new recognition.
+     *
+     * @param lane the recognizer.
+     */
+    private void free(final Lane lane) {
+
+        mDispatchHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mClosed && lane.current.get() == null && !mFreeLanes.contains(lane)) {
+                    mFreeLanes.add(lane);
+                    dispatch();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops a recognition whose handle was cancelled.
+     *
+     * @param stream the recognition.
+     */
+    private void cancel(final Stream stream) {
+
+        mDispatchHandler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                if (mPendingStreams.remove(stream)) {
+                    return;
+                }
+
+                for (Lane lane : mLanes) {
+                    if (lane.current.get() == stream) {
+                        lane.cancel();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * A submitted recognition.
+     */
+    private class Stream {
+
+        /* The handle given to the caller. */
+        final RecognitionHandle handle;
+
+        /* The audio source. */
+        final AudioSource audio;
+
+        /* The language model to use. */
+        final LanguageModelList lmList;
+
+        /* The recognition configuration. */
+        final RecognitionConfig config;
+
+        /* The listeners of this recognition. */
+        final List<RecognitionListener> listeners;
+
+        /* The results received so far. */
+        final List<RecognitionResult> results;
+
+        Stream(long id, AudioSource audio, LanguageModelList lmList, RecognitionConfig config,
+               RecognitionListener[] listeners) {
+            this.handle = new RecognitionHandle(id, new Runnable() {
+                @Override
+                public void run() {
+                    cancel(Stream.this);
+                }
+            });
+            this.audio = audio;
+            this.lmList = lmList;
+            this.config = config;
+            this.listeners = Arrays.asList(listeners);
+            this.results = new ArrayList<>();
+        }
+
+        void fail(RecognitionError error) {
+
+            if (handle.fail(error)) {
+                for (RecognitionListener listener : listeners) {
+                    listener.onError(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * A recognizer holding one server session, running one recognition at a time.
+     * It receives the events of its recognizer and forwards them to the current recognition.
+     */
+    private class Lane implements RecognitionListener, Runnable {
+
+        /* The recognizer. */
+        SpeechRecognizerImpl recognizer;
+
+        /* The I/O thread of the recognizer. */
+        final HandlerThread ioThread;
+
+        /* The recognition being run, or null if none. */
+        final AtomicReference<Stream> current;
+
+        Lane(HandlerThread ioThread) {
+            this.ioThread = ioThread;
+            this.current = new AtomicReference<>();
+        }
+
+        /**
+         * Starts a recognition. Runs in the dispatch thread.
+         *
+         * @return {@code false} if the recognizer is not idle.
+         */
+        boolean start(Stream stream) {
+
+            current.set(stream);
+
+            try {
+                if (recognizer.startRecognition(stream.audio, stream.lmList, stream.config) != null) {
+                    return true;
+                }
+
+                Log.w(TAG, "[" + ioThread.getName() + "] recognizer is not idle");
+                current.set(null);
+                return false;
+
+            } catch (RecognitionException e) {
+                if (current.compareAndSet(stream, null)) {
+                    stream.fail(new RecognitionError(e.getErrorCode(), e.getMessage()));
+                    free(this);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Cancels the current recognition. If the server is not listening yet,
+         * it is cancelled as soon as it is.
+         */
+        void cancel() {
+
+            try {
+                recognizer.requestCancelRecognition();
+            } catch (RecognitionException e) {
+                Log.w(TAG, "[" + ioThread.getName() + "] cancel failed: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Closes the recognizer, failing the current recognition.
+         */
+        void close() {
+
+            try {
+                recognizer.close();
+            } catch (RecognitionException e) {
+                Log.w(TAG, "[" + ioThread.getName() + "] close failed: " + e.getMessage());
+            }
+
+            Stream stream = current.getAndSet(null);
+            if (stream != null) {
+                stream.fail(new RecognitionError(RecognitionErrorCode.FAILURE, "Recognizer is closed"));
+            }
+        }
+
+        /**
+         * Frees the recognizer once the given recognition is over.
+         */
+        private void finish(Stream stream) {
+
+            if (current.compareAndSet(stream, null)) {
+                free(this);
+            }
+        }
+
+        /**
+         * Called when a cancel request completes.
+         */
+        @Override
+        public void run() {
+
+            Stream stream = current.get();
+
+            if (stream != null) {
+                finish(stream);
+            } else {
+                free(this);
+            }
+        }
+
+        @Override
+        public void onListening() {
+
+            Stream stream = current.get();
+            if (stream == null) {
+                return;
+            }
+
+            if (stream.handle.isCancelled()) {
+                cancel();
+                return;
+            }
+
+            for (RecognitionListener listener : stream.listeners) {
+                listener.onListening();
+            }
+        }
+
+        @Override
+        public void onSpeechStart(Integer time) {
+
+            Stream stream = current.get();
+            if (stream == null) {
+                return;
+            }
+
+            for (RecognitionListener listener : stream.listeners) {
+                listener.onSpeechStart(time);
+            }
+        }
+
+        @Override
+        public void onSpeechStop(Integer time) {
+
+            Stream stream = current.get();
+            if (stream == null) {
+                return;
+            }
+
+            for (RecognitionListener listener : stream.listeners) {
+                listener.onSpeechStop(time);
+            }
+        }
+
+        @Override
+        public void onPartialRecognitionResult(PartialRecognitionResult result) {
+
+            Stream stream = current.get();
+            if (stream == null) {
+                return;
+            }
+
+            for (RecognitionListener listener : stream.listeners) {
+                listener.onPartialRecognitionResult(result);
+            }
+        }
+
+        @Override
+        public void onRecognitionResult(RecognitionResult result) {
+
+            Stream stream = current.get();
+            if (stream == null) {
+                return;
+            }
+
+            stream.results.add(result);
+
+            for (RecognitionListener listener : stream.listeners) {
+                listener.onRecognitionResult(result);
+            }
+
+            if (result.isLastSpeechSegment()) {
+                stream.handle.complete(stream.results);
+                finish(stream);
+            }
+        }
+
+        @Override
+        public void onError(RecognitionError error) {
+
+            Stream stream = current.get();
+            if (stream == null) {
+                return;
+            }
+
+            stream.fail(error);
+            finish(stream);
+        }
+    }
+}
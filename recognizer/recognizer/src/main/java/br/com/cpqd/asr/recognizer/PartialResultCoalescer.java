@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
+
+/**
+ * <p>Stage between the connection thread, which receives the partial results,
+ * and the recognizer handler, which notifies them to the listeners.</p>
+ * <p>In {@link PartialResultMode#LATEST} mode, a single handler message is
+ * pending per speech segment: later partial results of the segment replace
+ * the unread one, so the handler queue does not grow when partial results
+ * arrive faster than the listeners consume them.</p>
+ */
+class PartialResultCoalescer {
+
+    /**
+     * The delivery mode.
+     */
+    private final PartialResultMode mMode;
+
+    /**
+     * Unread partial results per speech segment, in LATEST mode.
+     */
+    private final Map<Integer, Slot> mUnread;
+
+    /**
+     * Number of partial results discarded before reaching the listeners.
+     */
+    private long mDroppedCount;
+
+    /**
+     * Number of partial results replaced by a later one of the same segment.
+     */
+    private long mMergedCount;
+
+    /**
+     * Constructor.
+     *
+     * @param mode the delivery mode.
+     */
+    PartialResultCoalescer(PartialResultMode mode) {
+        mMode = mode;
+        mUnread = new HashMap<>();
+    }
+
+    /**
+     * @return {@code true} if partial results should be parsed and offered.
+     */
+    boolean isEnabled() {
+        return mMode != PartialResultMode.NONE;
+    }
+
+    /**
+     * Counts a partial result discarded without being parsed.
+     */
+    synchronized void drop() {
+        mDroppedCount++;
+    }
+
+    /**
+     * Offers a partial result to be notified.
+     *
+     * @param result the partial result.
+     * @return the slot to be sent to the recognizer handler, or {@code null}
+     * if the result replaced an unread one.
+     */
+    synchronized Slot offer(PartialRecognitionResult result) {
+
+        if (mMode != PartialResultMode.LATEST) {
+            return new Slot(result);
+        }
+
+        Slot slot = mUnread.get(result.getSpeechSegmentIndex());
+
+        if (slot != null) {
+            slot.result = result;
+            mMergedCount++;
+            return null;
+        }
+
+        slot = new Slot(result);
+        mUnread.put(result.getSpeechSegmentIndex(), slot);
+
+        return slot;
+    }
+
+    /**
+     * Discards the unread partial result of a segment whose final result arrived.
+     *
+     * @param segment the speech segment index.
+     */
+    synchronized void onFinalResult(int segment) {
+
+        Slot slot = mUnread.remove(segment);
+
+        if (slot != null && slot.result != null) {
+            slot.result = null;
+            mDroppedCount++;
+        }
+    }
+
+    /**
+     * @return the number of partial results discarded before reaching the listeners.
+     */
+    synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return the number of partial results replaced by a later one of the same segment.
+     */
+    synchronized long getMergedCount() {
+        return mMergedCount;
+    }
+
+    /**
+     * A partial result waiting to be notified.
+     */
+    class Slot {
+
+        /* The latest partial result, or null if discarded. */
+        private PartialRecognitionResult result;
+
+        private Slot(PartialRecognitionResult result) {
+            this.result = result;
+        }
+
+        /**
+         * Takes the partial result, so later ones are sent in a new slot.
+         *
+         * @return the partial result, or {@code null} if it was discarded.
+         */
+        PartialRecognitionResult take() {
+
+            synchronized (PartialResultCoalescer.this) {
+
+                if (result != null && mUnread.get(result.getSpeechSegmentIndex()) == this) {
+                    mUnread.remove(result.getSpeechSegmentIndex());
+                }
+
+                PartialRecognitionResult taken = result;
+                result = null;
+
+                return taken;
+            }
+        }
+    }
+}
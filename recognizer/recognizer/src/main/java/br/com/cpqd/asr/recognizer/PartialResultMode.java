@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+/**
+ * How the partial recognition results are delivered to the listeners.
+ */
+public enum PartialResultMode {
+
+    /**
+     * Every partial result is delivered.
+     */
+    ALL,
+
+    /**
+     * Only the latest partial result of each speech segment is delivered. A
+     * partial result that has not been delivered yet is replaced by the next
+     * one of the same segment, and discarded once the segment final result arrives.
+     */
+    LATEST,
+
+    /**
+     * Partial results are discarded without being parsed.
+     */
+    NONE
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import br.com.cpqd.asr.recognizer.audio.AudioEncoding;
+
+/**
+ * <p>Encodes the 16-bit linear PCM packets read from an audio source, in order.</p>
+ * <p>Audio sources may return an odd number of bytes, so a sample may be split
+ * between two packets. The trailing odd byte of a packet is kept and encoded
+ * along with the first byte of the next one, so that the samples of the rest of
+ * the stream stay aligned.</p>
+ */
+class PcmPacketEncoder {
+
+    /**
+     * The encoding the packets are encoded to.
+     */
+    private final AudioEncoding mEncoding;
+
+    /**
+     * The low byte of a sample split between packets, or -1.
+     */
+    private int mPendingByte = -1;
+
+    /**
+     * Sets up object initial state.
+     *
+     * @param encoding the encoding the packets are encoded to.
+     */
+    PcmPacketEncoder(AudioEncoding encoding) {
+        mEncoding = encoding;
+    }
+
+    /**
+     * Encodes a packet of linear PCM audio.
+     *
+     * @param pcm    the audio packet.
+     * @param offset offset of the packet in {@code pcm}.
+     * @param length length of the packet, in bytes.
+     * @return the encoded packet; empty if it holds no whole sample.
+     */
+    byte[] encode(byte[] pcm, int offset, int length) {
+
+        int pcmLength = length + (mPendingByte >= 0 ? 1 : 0);
+        byte[] encoded = new byte[mEncoding.getEncodedLength(pcmLength)];
+        int encodedLength = 0;
+
+        if (mPendingByte >= 0 && length > 0) {
+
+            // The sample split between the previous packet and this one
+            byte[] sample = {(byte) mPendingByte, pcm[offset]};
+            encodedLength = mEncoding.encode(sample, 0, 2, encoded, 0);
+            mPendingByte = -1;
+
+            offset++;
+            length--;
+        }
+
+        encodedLength += mEncoding.encode(pcm, offset, length, encoded, encodedLength);
+
+        if ((length & 1) != 0) {
+            mPendingByte = pcm[offset + length - 1] & 0xFF;
+        }
+
+        return encoded;
+    }
+}
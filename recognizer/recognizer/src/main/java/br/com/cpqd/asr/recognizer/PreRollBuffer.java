@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * <p>Audio packets received by the connection thread while the recognition
+ * is being started on the server.</p>
+ * <p>Packets are kept as they are handed over by the reader, so they are sent
+ * as regular audio packets once the recognition starts, instead of as one
+ * large message. The buffer is bounded, and the overflow policy decides what
+ * happens when it is full. It is only accessed by the connection thread.</p>
+ */
+class PreRollBuffer {
+
+    /**
+     * Maximum number of buffered bytes.
+     */
+    private final int mMaxSize;
+
+    /**
+     * The overflow policy.
+     */
+    private final PreRollOverflowPolicy mPolicy;
+
+    /**
+     * Buffered packets, oldest first.
+     */
+    private final ArrayDeque<ByteBuffer> mPackets;
+
+    /**
+     * Number of buffered bytes.
+     */
+    private int mSize;
+
+    /**
+     * Number of bytes discarded because the buffer was full.
+     */
+    private long mDroppedBytes;
+
+    /**
+     * Whether the buffer overflowed in {@link PreRollOverflowPolicy#FAIL} mode.
+     */
+    private boolean mOverflowed;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize maximum number of buffered bytes.
+     * @param policy  what to do with a packet that does not fit.
+     */
+    PreRollBuffer(int maxSize, PreRollOverflowPolicy policy) {
+        mMaxSize = maxSize;
+        mPolicy = policy;
+        mPackets = new ArrayDeque<>();
+    }
+
+    /**
+     * Buffers an audio packet, which must not be changed afterwards.
+     *
+     * @param packet the audio packet, between its position and limit.
+     * @return {@code false} if the buffer overflowed in {@link PreRollOverflowPolicy#FAIL} mode.
+     */
+    boolean add(ByteBuffer packet) {
+
+        if (mOverflowed) {
+            mDroppedBytes += packet.remaining();
+            return false;
+        }
+
+        int length = packet.remaining();
+
+        if (mSize + length > mMaxSize) {
+
+            if (mPolicy == PreRollOverflowPolicy.FAIL) {
+                mOverflowed = true;
+                mDroppedBytes += mSize + length;
+                mPackets.clear();
+                mSize = 0;
+                return false;
+            }
+
+            while (!mPackets.isEmpty() && mSize + length > mMaxSize) {
+                int dropped = mPackets.remove().remaining();
+                mSize -= dropped;
+                mDroppedBytes += dropped;
+            }
+        }
+
+        mPackets.add(packet);
+        mSize += length;
+
+        return true;
+    }
+
+    /**
+     * Removes the oldest packet.
+     *
+     * @return the packet, or {@code null} if the buffer is empty.
+     */
+    ByteBuffer poll() {
+
+        ByteBuffer packet = mPackets.poll();
+
+        if (packet != null) {
+            mSize -= packet.remaining();
+        }
+
+        return packet;
+    }
+
+    /**
+     * @return {@code true} if there is no buffered packet.
+     */
+    boolean isEmpty() {
+        return mPackets.isEmpty();
+    }
+
+    /**
+     * @return the number of buffered bytes.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of bytes discarded because the buffer was full.
+     */
+    long getDroppedBytes() {
+        return mDroppedBytes;
+    }
+
+    /**
+     * @return {@code true} if the buffer overflowed in {@link PreRollOverflowPolicy#FAIL} mode.
+     */
+    boolean hasOverflowed() {
+        return mOverflowed;
+    }
+
+    /**
+     * Discards the buffered packets and resets the counters, for the next recognition.
+     */
+    void clear() {
+        mPackets.clear();
+        mSize = 0;
+        mDroppedBytes = 0;
+        mOverflowed = false;
+    }
+}
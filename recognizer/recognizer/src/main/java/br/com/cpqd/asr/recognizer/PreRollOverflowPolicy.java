@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+/**
+ * What to do with the audio read while the recognition is being started on
+ * the server, once it exceeds the pre-roll limit.
+ *
+ * @see SpeechRecognizer.Builder#preRoll(int, PreRollOverflowPolicy)
+ */
+public enum PreRollOverflowPolicy {
+
+    /**
+     * The oldest audio packets are discarded, so the recognition starts with
+     * the latest audio.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The recognition fails, and is cancelled on the server.
+     */
+    FAIL
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionError;
+import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+
+/**
+ * A recognition event, as notified to the {@link RecognitionListener} callbacks.
+ */
+public class RecognitionEvent {
+
+    /**
+     * Recognition event types.
+     */
+    public enum Type {
+
+        /**
+         * The server is listening for audio.
+         */
+        LISTENING,
+
+        /**
+         * The server detected the start of speech.
+         */
+        SPEECH_START,
+
+        /**
+         * The server detected the end of speech.
+         */
+        SPEECH_STOP,
+
+        /**
+         * The server generated a partial recognition result.
+         */
+        PARTIAL_RESULT,
+
+        /**
+         * The server generated a recognition result.
+         */
+        RESULT,
+
+        /**
+         * The recognition failed.
+         */
+        ERROR
+    }
+
+    /**
+     * The event type.
+     */
+    private final Type mType;
+
+    /**
+     * The audio position of a speech start or stop (in milis).
+     */
+    private final Integer mTime;
+
+    /**
+     * The partial recognition result.
+     */
+    private final PartialRecognitionResult mPartialResult;
+
+    /**
+     * The recognition result.
+     */
+    private final RecognitionResult mResult;
+
+    /**
+     * The recognition error.
+     */
+    private final RecognitionError mError;
+
+    /**
+     * Constructor.
+     */
+    private RecognitionEvent(Type type, Integer time, PartialRecognitionResult partialResult,
+                             RecognitionResult result, RecognitionError error) {
+        mType = type;
+        mTime = time;
+        mPartialResult = partialResult;
+        mResult = result;
+        mError = error;
+    }
+
+    /**
+     * Creates a listening event.
+     */
+    static RecognitionEvent listening() {
+        return new RecognitionEvent(Type.LISTENING, null, null, null, null);
+    }
+
+    /**
+     * Creates a speech start event.
+     */
+    static RecognitionEvent speechStart(Integer time) {
+        return new RecognitionEvent(Type.SPEECH_START, time, null, null, null);
+    }
+
+    /**
+     * Creates a speech stop event.
+     */
+    static RecognitionEvent speechStop(Integer time) {
+        return new RecognitionEvent(Type.SPEECH_STOP, time, null, null, null);
+    }
+
+    /**
+     * Creates a partial result event.
+     */
+    static RecognitionEvent partialResult(PartialRecognitionResult result) {
+        return new RecognitionEvent(Type.PARTIAL_RESULT, null, result, null, null);
+    }
+
+    /**
+     * Creates a result event.
+     */
+    static RecognitionEvent result(RecognitionResult result) {
+        return new RecognitionEvent(Type.RESULT, null, null, result, null);
+    }
+
+    /**
+     * Creates an error event.
+     */
+    static RecognitionEvent error(RecognitionError error) {
+        return new RecognitionEvent(Type.ERROR, null, null, null, error);
+    }
+
+    /**
+     * @return the event type.
+     */
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return the audio position of a speech start or stop event (in milis).
+     */
+    public Integer getTime() {
+        return mTime;
+    }
+
+    /**
+     * @return the result of a partial result event.
+     */
+    public PartialRecognitionResult getPartialResult() {
+        return mPartialResult;
+    }
+
+    /**
+     * @return the result of a result event.
+     */
+    public RecognitionResult getResult() {
+        return mResult;
+    }
+
+    /**
+     * @return the error of an error event.
+     */
+    public RecognitionError getError() {
+        return mError;
+    }
+
+    /**
+     * Notifies the event to a listener.
+     *
+     * @param listener the listener.
+     */
+    public void dispatch(RecognitionListener listener) {
+
+        switch (mType) {
+            case LISTENING:
+                listener.onListening();
+                break;
+            case SPEECH_START:
+                listener.onSpeechStart(mTime);
+                break;
+            case SPEECH_STOP:
+                listener.onSpeechStop(mTime);
+                break;
+            case PARTIAL_RESULT:
+                listener.onPartialRecognitionResult(mPartialResult);
+                break;
+            case RESULT:
+                listener.onRecognitionResult(mResult);
+                break;
+            case ERROR:
+                listener.onError(mError);
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (mType) {
+            case SPEECH_START:
+            case SPEECH_STOP:
+                return mType + " [" + mTime + "]";
+            case PARTIAL_RESULT:
+                return mType + " [" + mPartialResult.getSpeechSegmentIndex() + ": " + mPartialResult + "]";
+            case RESULT:
+                return mType + " [" + mResult + "]";
+            case ERROR:
+                return mType + " [" + mError + "]";
+            default:
+                return mType.toString();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.concurrent.TimeUnit;
+
+import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionError;
+import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+
+/**
+ * <p>Listener that queues the recognition events for a consumer that reads
+ * them at its own pace.</p>
+ * <p>The listener callbacks never block, so a slow consumer does not stall the
+ * recognizer. Partial results are bounded by the queue capacity and handled by
+ * the overflow policy; the other events are always kept, since they are few
+ * and the consumer relies on them. Register the queue as a listener with
+ * {@link SpeechRecognizer.Builder#addListener(RecognitionListener)}, or give
+ * it to a single recognition of a {@link MultiStreamRecognizer}, and read the
+ * events with {@link #take()} or {@link #poll(long, TimeUnit)}.</p>
+ */
+public class RecognitionEventQueue implements RecognitionListener {
+
+    /**
+     * What to do with a partial result when the consumer is behind.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Discard the oldest unread partial result when the queue is full.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Replace the unread partial result of the same speech segment, if any,
+         * so the consumer only reads the latest one. The latest one is queued
+         * in its arrival order. Discard the oldest unread partial result when
+         * the queue is full.
+         */
+        COALESCE
+    }
+
+    /**
+     * Maximum number of unread partial results.
+     */
+    private final int mCapacity;
+
+    /**
+     * The overflow policy.
+     */
+    private final OverflowPolicy mPolicy;
+
+    /**
+     * Unread events, oldest first. Guarded by this object.
+     */
+    private final LinkedList<RecognitionEvent> mEvents;
+
+    /**
+     * Number of unread partial results.
+     */
+    private int mPartialCount;
+
+    /**
+     * Number of partial results discarded because the queue was full.
+     */
+    private long mDroppedCount;
+
+    /**
+     * Number of partial results replaced by a later one of the same segment.
+     */
+    private long mCoalescedCount;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the maximum number of unread partial results.
+     * @param policy   what to do with a partial result when the consumer is behind.
+     */
+    public RecognitionEventQueue(int capacity, OverflowPolicy policy) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+
+        mCapacity = capacity;
+        mPolicy = policy;
+        mEvents = new LinkedList<>();
+    }
+
+    /**
+     * Waits for the next event.
+     *
+     * @return the event.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized RecognitionEvent take() throws InterruptedException {
+
+        while (mEvents.isEmpty()) {
+            wait();
+        }
+
+        return remove();
+    }
+
+    /**
+     * Waits for the next event, up to the given timeout.
+     *
+     * @param timeout the timeout.
+     * @param unit    the timeout unit.
+     * @return the event, or {@code null} if the timeout elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized RecognitionEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (mEvents.isEmpty()) {
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        return remove();
+    }
+
+    /**
+     * @return the number of unread events.
+     */
+    public synchronized int size() {
+        return mEvents.size();
+    }
+
+    /**
+     * @return the number of partial results discarded because the queue was full.
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return the number of partial results replaced by a later one of the same segment.
+     */
+    public synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * Discards the unread events.
+     */
+    public synchronized void clear() {
+        mEvents.clear();
+        mPartialCount = 0;
+    }
+
+    @Override
+    public void onListening() {
+        add(RecognitionEvent.listening());
+    }
+
+    @Override
+    public void onSpeechStart(Integer time) {
+        add(RecognitionEvent.speechStart(time));
+    }
+
+    @Override
+    public void onSpeechStop(Integer time) {
+        add(RecognitionEvent.speechStop(time));
+    }
+
+    @Override
+    public void onPartialRecognitionResult(PartialRecognitionResult result) {
+
+        RecognitionEvent event = RecognitionEvent.partialResult(result);
+
+        synchronized (this) {
+
+            if (mPolicy == OverflowPolicy.COALESCE && replacePartial(event)) {
+                mCoalescedCount++;
+                return;
+            }
+
+            if (mPartialCount >= mCapacity) {
+                removeOldestPartial();
+                mDroppedCount++;
+            }
+
+            mEvents.add(event);
+            mPartialCount++;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void onRecognitionResult(RecognitionResult result) {
+        add(RecognitionEvent.result(result));
+    }
+
+    @Override
+    public void onError(RecognitionError error) {
+        add(RecognitionEvent.error(error));
+    }
+
+    /**
+     * Queues an event that is never discarded.
+     */
+    private synchronized void add(RecognitionEvent event) {
+        mEvents.add(event);
+        notifyAll();
+    }
+
+    /**
+     * Removes the oldest event.
+     */
+    private RecognitionEvent remove() {
+
+        RecognitionEvent event = mEvents.removeFirst();
+
+        if (event.getType() == RecognitionEvent.Type.PARTIAL_RESULT) {
+            mPartialCount--;
+        }
+
+        return event;
+    }
+
+    /**
+     * Replaces the unread partial result of the same speech segment, if any.
+     * The new one is queued last, after the events that arrived before it.
+     *
+     * @return {@code true} if a partial result was replaced.
+     */
+    private boolean replacePartial(RecognitionEvent event) {
+
+        int segment = event.getPartialResult().getSpeechSegmentIndex();
+
+        ListIterator<RecognitionEvent> iterator = mEvents.listIterator(mEvents.size());
+
+        while (iterator.hasPrevious()) {
+
+            RecognitionEvent previous = iterator.previous();
+
+            if (previous.getType() == RecognitionEvent.Type.PARTIAL_RESULT
+                    && previous.getPartialResult().getSpeechSegmentIndex() == segment) {
+                iterator.remove();
+                mEvents.add(event);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the oldest unread partial result.
+     */
+    private void removeOldestPartial() {
+
+        Iterator<RecognitionEvent> iterator = mEvents.iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().getType() == RecognitionEvent.Type.PARTIAL_RESULT) {
+                iterator.remove();
+                mPartialCount--;
+                return;
+            }
+        }
+    }
+}
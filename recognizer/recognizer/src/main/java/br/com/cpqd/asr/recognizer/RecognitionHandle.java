@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import br.com.cpqd.asr.recognizer.model.RecognitionError;
+import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+
+/**
+ * <p>Handle of a recognition submitted without blocking the caller.</p>
+ * <p>It completes with the recognition results once the last speech segment
+ * has been recognized. If the recognition fails, {@link #get()} throws an
+ * {@link ExecutionException} whose cause is a {@link RecognitionException}.</p>
+ */
+public class RecognitionHandle implements Future<List<RecognitionResult>> {
+
+    /**
+     * The recognition identifier.
+     */
+    private final long mId;
+
+    /**
+     * Action that stops the recognition when the handle is cancelled.
+     */
+    private final Runnable mCanceller;
+
+    /**
+     * Released when the handle completes.
+     */
+    private final CountDownLatch mDone;
+
+    /**
+     * The recognition results, if successful.
+     */
+    private List<RecognitionResult> mResults;
+
+    /**
+     * The recognition error, if failed.
+     */
+    private RecognitionError mError;
+
+    /**
+     * Flag indicating the handle was cancelled.
+     */
+    private boolean mCancelled;
+
+    /**
+     * Constructor.
+     *
+     * @param id        the recognition identifier.
+     * @param canceller action that stops the recognition when the handle is cancelled.
+     */
+    RecognitionHandle(long id, Runnable canceller) {
+        mId = id;
+        mCanceller = canceller;
+        mDone = new CountDownLatch(1);
+    }
+
+    /**
+     * @return the recognition identifier.
+     */
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * Cancels the recognition. A recognition that has not started yet is
+     * discarded; a running one is cancelled in the server.
+     *
+     * @param mayInterruptIfRunning not used; running recognitions are always cancelled.
+     * @return {@code false} if the recognition had already completed.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+
+        synchronized (this) {
+
+            if (isDone()) {
+                return false;
+            }
+
+            mCancelled = true;
+            mDone.countDown();
+        }
+
+        mCanceller.run();
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return mDone.getCount() == 0;
+    }
+
+    @Override
+    public List<RecognitionResult> get() throws InterruptedException, ExecutionException {
+
+        mDone.await();
+
+        return getNow();
+    }
+
+    @Override
+    public List<RecognitionResult> get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException("Recognition " + mId + " has not completed");
+        }
+
+        return getNow();
+    }
+
+    /**
+     * Completes the handle with the recognition results.
+     *
+     * @param results the recognition results.
+     * @return {@code false} if the handle had already completed.
+     */
+    synchronized boolean complete(List<RecognitionResult> results) {
+
+        if (isDone()) {
+            return false;
+        }
+
+        mResults = results;
+        mDone.countDown();
+
+        return true;
+    }
+
+    /**
+     * Completes the handle with an error.
+     *
+     * @param error the recognition error.
+     * @return {@code false} if the handle had already completed.
+     */
+    synchronized boolean fail(RecognitionError error) {
+
+        if (isDone()) {
+            return false;
+        }
+
+        mError = error;
+        mDone.countDown();
+
+        return true;
+    }
+
+    /**
+     * Gets the outcome of a completed handle.
+     */
+    private synchronized List<RecognitionResult> getNow() throws ExecutionException {
+
+        if (mCancelled) {
+            throw new CancellationException("Recognition " + mId + " was cancelled");
+        } else if (mError != null) {
+            throw new ExecutionException(new RecognitionException(mError));
+        }
+
+        return mResults;
+    }
+
+    @Override
+    public String toString() {
+        return "RecognitionHandle [" + mId + (isDone() ? ", done" : "") + (isCancelled() ? ", cancelled" : "") + "]";
+    }
+}
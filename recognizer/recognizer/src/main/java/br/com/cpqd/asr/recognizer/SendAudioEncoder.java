@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+import br.com.cpqd.asr.recognizer.util.Constants;
+
+/**
+ * <p>Specialized serializer of {@link AsrMessage#METHOD_SEND_AUDIO} messages.</p>
+ * <p>The constant parts of the message (start line and header field names) are
+ * encoded once, and only the <tt>LastPacket</tt> and <tt>Content-Length</tt>
+ * values are written for each audio packet.  Each frame is written into a heap
+ * array of its exact size, with a single copy of the audio.  The websocket
+ * library copies every frame into a new array of its own before sending it, so
+ * pooling frames would not spare the allocation per packet.
+ * The output is the same as {@link AsrMessage#toByteArray()} for an equivalent
+ * message, with the <tt>LastPacket</tt>, <tt>Content-Length</tt> and
+ * <tt>Content-Type</tt> header fields in this order.</p>
+ */
+class SendAudioEncoder {
+
+    /**
+     * Octets from the start line up to the <tt>LastPacket</tt> value.
+     */
+    private static final byte[] LAST_PACKET_PREFIX = (AsrMessage.ASR_PROTOCOL + " " + AsrMessage.ASR_VERSION
+            + " " + AsrMessage.METHOD_SEND_AUDIO + "\r\nLastPacket: ").getBytes(Constants.NETWORK_CHARSET);
+
+    /**
+     * <tt>LastPacket</tt> value octets.
+     */
+    private static final byte[] TRUE = "true".getBytes(Constants.NETWORK_CHARSET);
+
+    /**
+     * <tt>LastPacket</tt> value octets.
+     */
+    private static final byte[] FALSE = "false".getBytes(Constants.NETWORK_CHARSET);
+
+    /**
+     * Octets between the <tt>LastPacket</tt> and <tt>Content-Length</tt> values.
+     */
+    private static final byte[] CONTENT_LENGTH_PREFIX = "\r\nContent-Length: ".getBytes(Constants.NETWORK_CHARSET);
+
+    /**
+     * Octets between the <tt>Content-Length</tt> and <tt>Content-Type</tt> values.
+     */
+    private static final byte[] CONTENT_TYPE_PREFIX = "\r\nContent-Type: ".getBytes(Constants.NETWORK_CHARSET);
+
+    /**
+     * Octets from the <tt>Content-Type</tt> value up to the body.
+     */
+    private static final byte[] HEADER_END = "\r\n\r\n".getBytes(Constants.NETWORK_CHARSET);
+
+    /**
+     * Octets from the <tt>Content-Length</tt> value up to the body.
+     */
+    private final byte[] mHeaderSuffix;
+
+    /**
+     * Sets up object initial state.
+     *
+     * @param contentType value of the <tt>Content-Type</tt> header field.
+     */
+    SendAudioEncoder(String contentType) {
+
+        mHeaderSuffix = concat(CONTENT_TYPE_PREFIX, contentType.getBytes(Constants.NETWORK_CHARSET), HEADER_END);
+    }
+
+    /**
+     * Serializes a send audio message into a frame.
+     *
+     * @param audio        the audio packet; may be {@code null} for an empty body.
+     * @param offset       offset of the packet in {@code audio}.
+     * @param length       length of the packet.
+     * @param isLastPacket value of the <tt>LastPacket</tt> header field.
+     * @return a frame ready to be sent, backed by an array of its exact size.
+     */
+    @NonNull
+    ByteBuffer encode(byte[] audio, int offset, int length, boolean isLastPacket) {
+
+        if (audio == null) {
+            length = 0;
+        }
+
+        ByteBuffer frame = allocate(length, isLastPacket);
+
+        if (length > 0) {
+            frame.put(audio, offset, length);
+        }
+
+        frame.flip();
+
+        return frame;
+    }
+
+    /**
+     * Serializes a send audio message into a frame.
+     *
+     * @param audio        the audio packet, between its position and limit;
+     *                     may be {@code null} for an empty body. Its position is not changed.
+     * @param isLastPacket value of the <tt>LastPacket</tt> header field.
+     * @return a frame ready to be sent, backed by an array of its exact size.
+     */
+    @NonNull
+    ByteBuffer encode(ByteBuffer audio, boolean isLastPacket) {
+
+        if (audio != null && audio.hasArray()) {
+            return encode(audio.array(), audio.arrayOffset() + audio.position(), audio.remaining(), isLastPacket);
+        }
+
+        int length = audio != null ? audio.remaining() : 0;
+
+        ByteBuffer frame = allocate(length, isLastPacket);
+
+        if (length > 0) {
+            frame.put(audio.duplicate());
+        }
+
+        frame.flip();
+
+        return frame;
+    }
+
+    /**
+     * Allocates a frame of the exact size and writes the header into it.
+     *
+     * @param length       length of the body.
+     * @param isLastPacket value of the <tt>LastPacket</tt> header field.
+     * @return the frame, positioned at the body.
+     */
+    private ByteBuffer allocate(int length, boolean isLastPacket) {
+
+        byte[] lastPacket = isLastPacket ? TRUE : FALSE;
+
+        ByteBuffer frame = ByteBuffer.allocate(LAST_PACKET_PREFIX.length + lastPacket.length
+                + CONTENT_LENGTH_PREFIX.length + decimalLength(length) + mHeaderSuffix.length + length);
+
+        frame.put(LAST_PACKET_PREFIX);
+        frame.put(lastPacket);
+        frame.put(CONTENT_LENGTH_PREFIX);
+        putDecimal(frame, length);
+        frame.put(mHeaderSuffix);
+
+        return frame;
+    }
+
+    /**
+     * Concatenates byte arrays.
+     */
+    private static byte[] concat(byte[]... parts) {
+
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+
+        byte[] result = new byte[length];
+
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the number of digits of the decimal representation of a non-negative integer.
+     *
+     * @param value the value.
+     * @return the number of digits.
+     */
+    private static int decimalLength(int value) {
+
+        int length = 1;
+
+        while (value >= 10) {
+            value /= 10;
+            length++;
+        }
+
+        return length;
+    }
+
+    /**
+     * Writes the ASCII decimal representation of a non-negative integer.
+     *
+     * @param buffer the buffer to be written.
+     * @param value  the value to be written.
+     */
+    private static void putDecimal(ByteBuffer buffer, int value) {
+
+        int divisor = 1;
+
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+
+        while (divisor > 0) {
+            buffer.put((byte) ('0' + value / divisor % 10));
+            divisor /= 10;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import br.com.cpqd.asr.recognizer.model.RecognitionConfig;
+
+/**
+ * <p>Client-side voice activity gate of the audio packets sent to the server.</p>
+ * <p>Packets whose level is below the threshold are silent. The silence that
+ * follows speech is sent until it covers the time the server endpointer waits
+ * for the end of speech plus its tail margin. Later silent packets are held
+ * back, and only those that cover the head margin are kept: they are sent
+ * before the next voiced packet, so the server endpointer still sees the
+ * margins it is configured with. The rest of the silence is not sent.</p>
+ */
+class SilenceGate {
+
+    /**
+     * Server default of {@link RecognitionConfig#getHeadMarginMiliseconds()}, in milliseconds.
+     */
+    static final int DEFAULT_HEAD_MARGIN = 250;
+
+    /**
+     * Server default of {@link RecognitionConfig#getTailMarginMiliseconds()}, in milliseconds.
+     */
+    static final int DEFAULT_TAIL_MARGIN = 450;
+
+    /**
+     * Server default of {@link RecognitionConfig#getWaitEndMiliseconds()}, in milliseconds.
+     */
+    static final int DEFAULT_WAIT_END = 900;
+
+    /**
+     * Mean square of the 16-bit samples of a packet at the level threshold.
+     */
+    private final double mThresholdEnergy;
+
+    /**
+     * Silence kept before a voiced packet, in milliseconds.
+     */
+    private final int mHeadMargin;
+
+    /**
+     * Silence sent after a voiced packet, in milliseconds.
+     */
+    private final int mTail;
+
+    /**
+     * Silent packets held back, oldest first.
+     */
+    private final ArrayDeque<Object> mHeld;
+
+    /**
+     * Duration of each packet in {@link #mHeld}, in milliseconds.
+     */
+    private final ArrayDeque<Integer> mHeldDurations;
+
+    /**
+     * Total duration of the packets in {@link #mHeld}, in milliseconds.
+     */
+    private int mHeldMillis;
+
+    /**
+     * Silence still to be sent after the last voiced packet, in milliseconds.
+     */
+    private int mRemainingTail;
+
+    /**
+     * Silence not sent to the server, in milliseconds.
+     */
+    private long mSuppressedMillis;
+
+    /**
+     * Packets ready to be sent, returned by {@link #offer(Object, int, boolean)}.
+     */
+    private final List<Object> mReady;
+
+    /**
+     * Constructor.
+     *
+     * @param levelThreshold the level below which audio is silent, in dBFS.
+     * @param config         the recognition configuration, for the endpointer
+     *                       margins; may be {@code null} for the server defaults.
+     */
+    SilenceGate(int levelThreshold, RecognitionConfig config) {
+
+        mThresholdEnergy = EndOfSpeechDetector.toEnergy(levelThreshold);
+
+        Integer headMargin = config != null ? config.getHeadMarginMiliseconds() : null;
+        Integer tailMargin = config != null ? config.getTailMarginMiliseconds() : null;
+        Integer waitEnd = config != null ? config.getWaitEndMiliseconds() : null;
+
+        mHeadMargin = headMargin != null ? headMargin : DEFAULT_HEAD_MARGIN;
+        mTail = (tailMargin != null ? tailMargin : DEFAULT_TAIL_MARGIN)
+                + (waitEnd != null ? waitEnd : DEFAULT_WAIT_END);
+
+        mHeld = new ArrayDeque<>();
+        mHeldDurations = new ArrayDeque<>();
+        mReady = new ArrayList<>();
+    }
+
+    /**
+     * Checks if 16-bit linear PCM audio, little-endian, is above the level threshold.
+     *
+     * @param pcm    the audio.
+     * @param offset offset of the audio in {@code pcm}.
+     * @param length length of the audio, in bytes.
+     * @return {@code true} if the audio is voiced.
+     */
+    boolean isVoiced(byte[] pcm, int offset, int length) {
+        return EndOfSpeechDetector.energy(pcm, offset, length) > mThresholdEnergy;
+    }
+
+    /**
+     * Checks if 16-bit linear PCM audio, little-endian, is above the level threshold.
+     *
+     * @param pcm the audio, between its position and limit. Its position is not changed.
+     * @return {@code true} if the audio is voiced.
+     */
+    boolean isVoiced(ByteBuffer pcm) {
+        return EndOfSpeechDetector.energy(pcm) > mThresholdEnergy;
+    }
+
+    /**
+     * Offers an audio packet to be sent.
+     *
+     * @param packet   the audio packet.
+     * @param duration the duration of the packet, in milliseconds.
+     * @param voiced   whether the packet is voiced.
+     * @return the packets to be sent now, oldest first. The list is reused by
+     * the next call.
+     */
+    List<Object> offer(Object packet, int duration, boolean voiced) {
+
+        mReady.clear();
+
+        if (voiced) {
+            // The head margin goes before the speech
+            mReady.addAll(mHeld);
+            mHeld.clear();
+            mHeldDurations.clear();
+            mHeldMillis = 0;
+
+            mReady.add(packet);
+            mRemainingTail = mTail;
+
+        } else if (mRemainingTail > 0) {
+            mReady.add(packet);
+            mRemainingTail -= duration;
+
+        } else {
+            mHeld.add(packet);
+            mHeldDurations.add(duration);
+            mHeldMillis += duration;
+
+            // Keep just enough silence to cover the head margin, which may be none
+            while (!mHeldDurations.isEmpty() && mHeldMillis - mHeldDurations.peek() >= mHeadMargin) {
+                mHeld.remove();
+                int dropped = mHeldDurations.remove();
+                mHeldMillis -= dropped;
+                mSuppressedMillis += dropped;
+            }
+        }
+
+        return mReady;
+    }
+
+    /**
+     * @return the silence not sent to the server, in milliseconds.
+     */
+    long getSuppressedMillis() {
+        return mSuppressedMillis + mHeldMillis;
+    }
+}
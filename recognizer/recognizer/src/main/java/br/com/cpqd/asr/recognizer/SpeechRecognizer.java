@@ -16,6 +16,7 @@
 package br.com.cpqd.asr.recognizer;
 
 import android.content.Context;
+import android.os.Looper;
 
 import java.io.IOException;
 import java.net.URI;
@@ -23,8 +24,11 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
 
 import br.com.cpqd.asr.recognizer.audio.AudioEncoding;
+import br.com.cpqd.asr.recognizer.audio.AudioPacing;
 import br.com.cpqd.asr.recognizer.model.LanguageCode;
 import br.com.cpqd.asr.recognizer.model.RecognitionConfig;
 
@@ -98,6 +102,12 @@ public class SpeechRecognizer {
          */
         protected Float serverRTF;
 
+        /**
+         * the pacing of audio sources that do not define their own.
+         * If {@code null}, audio is sent at the speed allowed by {@link #serverRTF}.
+         */
+        protected AudioPacing audioPacing;
+
         /**
          * the maximum time to wait for a recognition result.
          */
@@ -116,11 +126,75 @@ public class SpeechRecognizer {
          */
         protected boolean autoClose;
 
+        /**
+         * If set to true, the recognition is started along with the ASR session
+         * creation, without waiting for its response.
+         */
+        protected boolean pipelinedSetup;
+
+        /**
+         * If set to true, the recognizer and its connection to the server
+         * handle their events in a single thread.
+         */
+        protected boolean singleThread;
+
+        /**
+         * The executor the listeners are notified in. If {@code null}, they
+         * are notified in the thread that handles the recognizer events.
+         */
+        protected Executor listenerExecutor;
+
+        /**
+         * The looper where the recognizer and connection events are handled.
+         * If {@code null}, the recognizer starts its own threads.
+         */
+        protected Looper ioLooper;
+
+        /**
+         * The executor of the audio reading and other background tasks. If
+         * {@code null}, a thread is started for each task.
+         */
+        protected Executor readerExecutor;
+
+        /**
+         * The factory of the threads started for the background tasks, if no
+         * {@link #readerExecutor} is set. If {@code null}, plain threads are started.
+         */
+        protected ThreadFactory threadFactory;
+
         /**
          * The maximum time the ASR session is kept open and idle.
          */
         protected int maxSessionIdleSeconds;
 
+        /**
+         * The pool the ASR sessions are taken from. If {@code null}, the
+         * recognizer keeps its own connection to the server.
+         */
+        protected AsrSessionPool sessionPool;
+
+        /**
+         * How the partial results are delivered to the listeners.
+         */
+        protected PartialResultMode partialResultMode;
+
+        /**
+         * The level (in dBFS) below which audio is not sent to the server, beyond
+         * the endpointer margins. If {@code null}, all the audio is sent.
+         */
+        protected Integer silenceThreshold;
+
+        /**
+         * The maximum length of the audio buffered while the recognition is
+         * being started on the server, in milliseconds.
+         */
+        protected Integer preRollMillis;
+
+        /**
+         * What to do with the audio that exceeds {@link #preRollMillis}.
+         */
+        protected PreRollOverflowPolicy preRollOverflowPolicy;
+
         /**
          * Private constructor. Defines default configuration parameters.
          */
@@ -131,14 +205,24 @@ public class SpeechRecognizer {
             this.serverRTF = 0.1F;
             this.maxWaitSeconds = 30;
             this.maxSessionIdleSeconds = 30;
+            this.partialResultMode = PartialResultMode.ALL;
+            this.preRollMillis = 30000;
+            this.preRollOverflowPolicy = PreRollOverflowPolicy.FAIL;
         }
 
         /**
          * Builds an SpeechRecognizer instance.
          *
          * @return the recognizer instance.
+         * @throws IllegalArgumentException if a single thread is requested along
+         *                                  with a session pool but without an I/O looper.
          */
         public SpeechRecognizerInterface build(Context context) throws URISyntaxException, IOException, RecognitionException {
+
+            if (singleThread && sessionPool != null && ioLooper == null) {
+                throw new IllegalArgumentException("single thread with a session pool requires an I/O looper");
+            }
+
             return new SpeechRecognizerImpl(context, this);
         }
 
@@ -239,6 +323,111 @@ public class SpeechRecognizer {
             return this;
         }
 
+        /**
+         * Sets the pipelined setup property. If set to true, the start
+         * recognition request is sent right after the create session request,
+         * without waiting for its response, saving a round trip to the server
+         * when the ASR session is created at the recognition. Otherwise, the
+         * recognition is started once the session is created.
+         *
+         * @param pipelinedSetup the pipelinedSetup property value.
+         * @return the Builder object.
+         */
+        public Builder pipelinedSetup(boolean pipelinedSetup) {
+            this.pipelinedSetup = pipelinedSetup;
+            return this;
+        }
+
+        /**
+         * Sets the single thread property. If set to true, the recognizer and
+         * its connection to the server handle their events in a single thread,
+         * so that server events reach the recognizer without another thread
+         * switch. Otherwise, each of them has its own thread. Pooled sessions
+         * outlive the recognizer and its thread, so with a
+         * {@link #sessionPool(AsrSessionPool)} it requires an {@link #ioLooper(Looper)}.
+         *
+         * @param singleThread the singleThread property value.
+         * @return the Builder object.
+         */
+        public Builder singleThread(boolean singleThread) {
+            this.singleThread = singleThread;
+            return this;
+        }
+
+        /**
+         * Sets the executor the listeners are notified in, so that slow
+         * listeners do not hold the recognizer events back. The events of a
+         * recognition are notified in order if the executor runs its tasks in
+         * order, e.g. a single thread executor.
+         *
+         * @param listenerExecutor the executor, or {@code null} to notify the
+         *                         listeners in the thread that handles the recognizer events.
+         * @return the Builder object.
+         */
+        public Builder listenerExecutor(Executor listenerExecutor) {
+            this.listenerExecutor = listenerExecutor;
+            return this;
+        }
+
+        /**
+         * Sets the looper where the recognizer and connection events are
+         * handled, e.g. of a {@link android.os.HandlerThread} shared by many
+         * recognizers. The looper is neither started nor quit by the recognizer.
+         * The sessions of a {@link #sessionPool(AsrSessionPool)} are opened in
+         * this looper as well, and only serve recognizers that share it.
+         *
+         * @param ioLooper the looper, or {@code null} to let the recognizer start its own threads.
+         * @return the Builder object.
+         */
+        public Builder ioLooper(Looper ioLooper) {
+            this.ioLooper = ioLooper;
+            return this;
+        }
+
+        /**
+         * Sets the executor of the audio reading and other background tasks,
+         * such as the automatic close of the session. A task runs for each
+         * recognition while its audio is read, so an executor shared by many
+         * recognizers needs as many threads as recognitions running at the same
+         * time.
+         *
+         * @param readerExecutor the executor, or {@code null} to start a thread for each task.
+         * @return the Builder object.
+         */
+        public Builder readerExecutor(Executor readerExecutor) {
+            this.readerExecutor = readerExecutor;
+            return this;
+        }
+
+        /**
+         * Sets the factory of the threads started for the background tasks,
+         * e.g. to name them or set their priority. It is not used if a
+         * {@link #readerExecutor(Executor)} is set.
+         *
+         * @param threadFactory the thread factory, or {@code null} to start plain threads.
+         * @return the Builder object.
+         */
+        public Builder threadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Sets the pacing at which audio is read and sent to the server. It applies
+         * to audio sources that do not define their own pacing, i.e. those that do
+         * not implement {@link br.com.cpqd.asr.recognizer.audio.PacedAudioSource}.
+         * A single recognition may still be given its own pacing, see
+         * {@link SpeechRecognizerInterface#recognize(br.com.cpqd.asr.recognizer.audio.AudioSource,
+         * br.com.cpqd.asr.recognizer.model.LanguageModelList, RecognitionConfig, AudioPacing)}.
+         *
+         * @param audioPacing the audio pacing.
+         * @return the Builder object.
+         */
+        public Builder audioPacing(AudioPacing audioPacing) {
+            this.audioPacing = audioPacing;
+            return this;
+        }
+
         /**
          * Sets the maximum session idle time.
          *
@@ -251,25 +440,122 @@ public class SpeechRecognizer {
         }
 
         /**
-         * Sets the audio sample rate (in bps).
+         * Sets the pool of ASR sessions. A session is taken from the pool when a
+         * recognition starts, and handed back to it when the recognizer is closed.
+         *
+         * @param sessionPool the session pool.
+         * @return the Builder object.
+         */
+        public Builder sessionPool(AsrSessionPool sessionPool) {
+            this.sessionPool = sessionPool;
+            return this;
+        }
+
+        /**
+         * Sets how the partial results are delivered to the listeners. In
+         * continuous mode, {@link PartialResultMode#LATEST} keeps slow listeners
+         * from falling behind the server.
+         *
+         * @param partialResultMode the partial result mode.
+         * @return the Builder object.
+         */
+        public Builder partialResultMode(PartialResultMode partialResultMode) {
+            this.partialResultMode = partialResultMode;
+            return this;
+        }
+
+        /**
+         * Enables the suppression of silence on the client side. Audio packets
+         * whose level is below the threshold are not sent to the server, except
+         * for the silence the server endpointer needs: the head margin before
+         * speech, and the wait end time plus the tail margin after it, as set in
+         * the {@link RecognitionConfig} or the server defaults otherwise.
+         * <p>The server only sees the audio that is sent, so the times it reports,
+         * like word alignment and speech start and stop times, are relative to
+         * that audio and no longer line up with the source audio. The no-input
+         * timeout likewise only counts the audio sent.</p>
+         *
+         * @param levelThreshold the level below which audio is silent, in dBFS (e.g. -45).
+         * @return the Builder object.
+         */
+        public Builder suppressSilence(int levelThreshold) {
+            this.silenceThreshold = levelThreshold;
+            return this;
+        }
+
+        /**
+         * Bounds the audio buffered while the recognition is being started on
+         * the server, e.g. while connecting over a slow link. Once the
+         * recognition starts, the buffered audio is sent as regular audio
+         * packets. By default, up to 30 seconds are buffered, and the
+         * recognition fails beyond that.
+         *
+         * @param maxMillis the maximum length of the buffered audio, in milliseconds.
+         * @param policy    what to do with the audio that exceeds it.
+         * @return the Builder object.
+         */
+        public Builder preRoll(int maxMillis, PreRollOverflowPolicy policy) {
+            this.preRollMillis = maxMillis;
+            this.preRollOverflowPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Creates a copy of this builder, with its own list of listeners.
+         *
+         * @return the Builder copy.
+         */
+        Builder copy() {
+            Builder copy = new Builder();
+            copy.uri = this.uri;
+            copy.userAgent = this.userAgent;
+            copy.credentials = this.credentials;
+            copy.recogConfig = this.recogConfig;
+            copy.listeners = new ArrayList<>(this.listeners);
+            copy.encoding = this.encoding;
+            copy.audioSampleRate = this.audioSampleRate;
+            copy.language = this.language;
+            copy.chunkLength = this.chunkLength;
+            copy.serverRTF = this.serverRTF;
+            copy.audioPacing = this.audioPacing;
+            copy.maxWaitSeconds = this.maxWaitSeconds;
+            copy.connectOnRecognize = this.connectOnRecognize;
+            copy.autoClose = this.autoClose;
+            copy.pipelinedSetup = this.pipelinedSetup;
+            copy.singleThread = this.singleThread;
+            copy.listenerExecutor = this.listenerExecutor;
+            copy.ioLooper = this.ioLooper;
+            copy.readerExecutor = this.readerExecutor;
+            copy.threadFactory = this.threadFactory;
+            copy.maxSessionIdleSeconds = this.maxSessionIdleSeconds;
+            copy.sessionPool = this.sessionPool;
+            copy.partialResultMode = this.partialResultMode;
+            copy.silenceThreshold = this.silenceThreshold;
+            copy.preRollMillis = this.preRollMillis;
+            copy.preRollOverflowPolicy = this.preRollOverflowPolicy;
+            return copy;
+        }
+
+        /**
+         * Sets the audio sample rate (in Hz). Audio sources wrapped in a
+         * {@link br.com.cpqd.asr.recognizer.audio.WavAudioSource} must match it.
          *
          * @param sampleRate the audio sample rate.
          * @return the Builder object.
          */
-        @SuppressWarnings("unused")
-        private Builder audioSampleRate(int sampleRate) {
+        public Builder audioSampleRate(int sampleRate) {
             this.audioSampleRate = sampleRate;
             return this;
         }
 
         /**
-         * Sets the audio encoding.
+         * Sets the audio encoding. Audio sources wrapped in a
+         * {@link br.com.cpqd.asr.recognizer.audio.WavAudioSource} must match it.
          *
          * @param encoding the audio encoding.
          * @return the Builder object.
          */
-        @SuppressWarnings("unused")
-        private Builder audioEncoding(AudioEncoding encoding) {
+        public Builder audioEncoding(AudioEncoding encoding) {
             this.encoding = encoding;
             return this;
         }
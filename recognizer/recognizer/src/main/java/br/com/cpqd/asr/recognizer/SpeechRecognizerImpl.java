@@ -18,17 +18,30 @@ package br.com.cpqd.asr.recognizer;
 import android.content.Context;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import br.com.cpqd.asr.recognizer.audio.AudioEncoding;
+import br.com.cpqd.asr.recognizer.audio.AudioPacing;
+import br.com.cpqd.asr.recognizer.audio.AudioFormatException;
 import br.com.cpqd.asr.recognizer.audio.AudioSource;
+import br.com.cpqd.asr.recognizer.audio.PacedAudioSource;
+import br.com.cpqd.asr.recognizer.audio.SlicedAudioSource;
+import br.com.cpqd.asr.recognizer.audio.WavAudioSource;
 import br.com.cpqd.asr.recognizer.model.LanguageModelList;
 import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
 import br.com.cpqd.asr.recognizer.model.RecognitionConfig;
@@ -53,39 +66,50 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
     private static final int MAX_RESPONSE_TIMEOUT = 10000;
 
     /**
-     * State indicating the library is idle, waiting for requests.
+     * Identifier of the next asynchronous recognition.
      */
-    private static final int STATE_IDLE = 1;
+    private static final AtomicLong sNextHandleId = new AtomicLong();
 
     /**
-     * State indicating the library received a start request.
+     * Library states.
      */
-    private static final int STATE_STARTING = 2;
+    private enum State {
 
-    /**
-     * State indicating the library started recording audio.
-     */
-    private static final int STATE_RECORDING = 3;
+        /**
+         * State indicating the library is idle, waiting for requests.
+         */
+        IDLE,
 
-    /**
-     * State indicating the library stopped recording and is waiting for recognition.
-     */
-    private static final int STATE_WAITING_RECOGNITION = 4;
+        /**
+         * State indicating the library received a start request.
+         */
+        STARTING,
 
-    /**
-     * State indicating the library is waiting for create session.
-     */
-    private static final int STATE_WAITING_CREATE_SESSION = 5;
+        /**
+         * State indicating the library started recording audio.
+         */
+        RECORDING,
 
-    /**
-     * State indicating the library stopped recording and is waiting for cancel the recognition.
-     */
-    private static final int STATE_WAITING_CANCEL_RECOGNITION = 6;
+        /**
+         * State indicating the library stopped recording and is waiting for recognition.
+         */
+        WAITING_RECOGNITION,
 
-    /**
-     * State indicating the library is waiting for release session.
-     */
-    private static final int STATE_WAITING_RELEASE_SESSION = 7;
+        /**
+         * State indicating the library is waiting for create session.
+         */
+        WAITING_CREATE_SESSION,
+
+        /**
+         * State indicating the library stopped recording and is waiting for cancel the recognition.
+         */
+        WAITING_CANCEL_RECOGNITION,
+
+        /**
+         * State indicating the library is waiting for release session.
+         */
+        WAITING_RELEASE_SESSION
+    }
 
     /**
      * Handler message code for indicating the audio recording should be stopped.
@@ -134,18 +158,60 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
     /**
      * Thread that handles the connection to the server.
+     * If a session pool is used, it is {@code null} while no session is held.
      */
-    private final AsrServerConnectionThread mAsrServerConnectionThread;
+    private AsrServerConnectionThread mAsrServerConnectionThread;
 
     /**
-     * Handler that allows managed threads do communicate back here.
+     * The pool ASR sessions are taken from, or {@code null} if the connection is not pooled.
      */
-    private final Handler mHandler;
+    private final AsrSessionPool mSessionPool;
+
+    /**
+     * Time the current recognition was requested at, in nanoseconds.
+     */
+    private volatile long mRecognizeTime;
+
+    /**
+     * Executor of the reader tasks, or {@code null} to start a thread for each recognition.
+     */
+    private final Executor mReaderExecutor;
+
+    /**
+     * Called in the handler thread when a cancel or release request completes.
+     */
+    private volatile Runnable mIdleCallback;
+
+    /**
+     * Handle of the current asynchronous recognition, or {@code null} if it was started synchronously.
+     */
+    private volatile RecognitionHandle mAsyncHandle;
+
+    /**
+     * Flag indicating whether the caller of the current recognition does not wait for
+     * its result, which is then timed out by the recognizer.
+     */
+    private volatile boolean mAsyncRecognition;
+
+    /**
+     * Fails the current asynchronous recognition when its result takes longer than the max wait time.
+     */
+    private final Runnable mAsyncTimeout;
 
     /**
-     * Lock object to server response
+     * Stage the partial results go through before being notified to the listeners.
      */
-    private final Object mSeverResponseLock;
+    private final PartialResultCoalescer mPartialResults;
+
+    /**
+     * Audio packets buffered by the connection thread while the recognition is being started.
+     */
+    private final PreRollBuffer mPreRoll;
+
+    /**
+     * Handler that allows managed threads do communicate back here.
+     */
+    private final Handler mHandler;
 
     /**
      * Registered listener interfaces.
@@ -154,9 +220,10 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
     /**
      * The current library state.
-     * It can be one of the {@code STATE_*} values.
+     * It is shared by the caller, handler and websocket threads, so it only
+     * changes through atomic transitions.
      */
-    private int mState;
+    private final AtomicReference<State> mState;
 
     /**
      * Blocking queue to read recognition result.
@@ -176,17 +243,30 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
     /**
      * The asynchronous reader task.
      */
-    private ReaderTask mReaderTask;
+    private final AtomicReference<ReaderTask> mReaderTask;
+
+    /**
+     * Released when the server responds to the pending synchronous operation.
+     * A new latch is set up before each request is sent, so that a response
+     * arriving before the caller starts waiting is not missed.
+     */
+    private volatile CountDownLatch mServerResponseLatch;
+
+    /**
+     * Released when the current recognition is over, either because its last
+     * result was received or because it was stopped.
+     */
+    private volatile CountDownLatch mRecognitionLatch;
 
     /**
      * Flag to know if server response.
      */
-    private boolean mServerResponse;
+    private volatile boolean mServerResponse;
 
     /**
      * The recognition error.
      */
-    private RecognitionError mError;
+    private volatile RecognitionError mError;
 
     /**
      * Status definition of the reader task.
@@ -203,21 +283,72 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
      */
     SpeechRecognizerImpl(Context context, SpeechRecognizer.Builder builder) throws URISyntaxException {
 
-        // Start the asr connection thread
-        mAsrServerConnectionThread = new AsrServerConnectionThread(context, this,
-                builder.uri, builder.credentials, builder.maxSessionIdleSeconds, builder.userAgent);
-        mAsrServerConnectionThread.start();
+        this(context, builder, builder.ioLooper, builder.readerExecutor);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context        the Context reference.
+     * @param builder        the Builder object.
+     * @param sharedLooper   the looper where the recognizer and connection messages are handled,
+     *                       or {@code null} to start dedicated threads.
+     * @param readerExecutor the executor of the reader tasks, or {@code null} to start
+     *                       a thread for each recognition.
+     */
+    SpeechRecognizerImpl(Context context, SpeechRecognizer.Builder builder,
+                         Looper sharedLooper, Executor readerExecutor) throws URISyntaxException {
 
         // Start the handler thread
-        HandlerThread handlerThread = new HandlerThread("AsrHandlerThread");
-        handlerThread.start();
-        mHandler = new Handler(handlerThread.getLooper(), new CPqDASRHandlerCallback());
+        if (sharedLooper != null) {
+            mHandler = new Handler(sharedLooper, new CPqDASRHandlerCallback());
+        } else {
+            HandlerThread handlerThread = new HandlerThread("AsrHandlerThread");
+            handlerThread.start();
+            mHandler = new Handler(handlerThread.getLooper(), new CPqDASRHandlerCallback());
+
+            // The connection handles its messages in the same thread
+            if (builder.singleThread) {
+                sharedLooper = handlerThread.getLooper();
+            }
+        }
+
+        mReaderExecutor = readerExecutor;
+
+        mAsyncTimeout = new Runnable() {
+            @Override
+            public void run() {
+                onAsyncTimeout();
+            }
+        };
+
+        // Partial results are not even parsed if no listener is registered
+        mPartialResults = new PartialResultCoalescer(builder.listeners.isEmpty()
+                ? PartialResultMode.NONE : builder.partialResultMode);
+
+        // Audio read while the recognition is being started is kept here
+        mPreRoll = new PreRollBuffer(Util.calculateBufferSize(builder.preRollMillis, builder.audioSampleRate,
+                builder.encoding.getSampleSize()), builder.preRollOverflowPolicy);
+
+        // Start the asr connection thread, or take it from the pool
+        mSessionPool = builder.sessionPool;
+        if (mSessionPool != null) {
+            mAsrServerConnectionThread = mSessionPool.acquire(builder, mHandler);
+        } else {
+            mAsrServerConnectionThread = AsrServerConnectionThread.create(context, mHandler, builder, sharedLooper);
+        }
+        mAsrServerConnectionThread.setPartialResultCoalescer(mPartialResults);
+        mAsrServerConnectionThread.setPreRollBuffer(mPreRoll);
 
         mSentencesQueue = new LinkedBlockingQueue<>();
 
-        mSeverResponseLock = new Object();
+        mServerResponseLatch = new CountDownLatch(0);
+
+        mRecognitionLatch = new CountDownLatch(0);
 
-        mState = STATE_IDLE;
+        mReaderTask = new AtomicReference<>();
+
+        mState = new AtomicReference<>(State.IDLE);
 
         mBuilder = builder;
 
@@ -225,25 +356,153 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
         mListeners = new ArrayList<>();
         mListeners.add(this);
-        if (mBuilder.listeners.size() > 0) {
-            mListeners.addAll(mBuilder.listeners);
+        for (RecognitionListener listener : mBuilder.listeners) {
+            mListeners.add(mBuilder.listenerExecutor != null
+                    ? new ExecutorListener(listener, mBuilder.listenerExecutor) : listener);
         }
 
         // Ask connection thread to establish connection.
         if (!builder.connectOnRecognize) {
 
-            mState = STATE_WAITING_CREATE_SESSION;
+            mState.set(State.WAITING_CREATE_SESSION);
+
+            CountDownLatch serverResponseLatch = new CountDownLatch(1);
+            mServerResponseLatch = serverResponseLatch;
 
             Message message = mAsrServerConnectionThread.obtainMessage();
             message.arg1 = AsrServerConnectionThread.MESSAGE_CONNECT_TO_SERVER;
             message.sendToTarget();
 
+            await(serverResponseLatch, MAX_RESPONSE_TIMEOUT);
+        }
+    }
+
+    /**
+     * Sets the callback run in the handler thread when a cancel or release request completes.
+     *
+     * @param idleCallback the callback, or {@code null}.
+     */
+    void setIdleCallback(Runnable idleCallback) {
+        mIdleCallback = idleCallback;
+    }
+
+    /**
+     * Runs the idle callback, if any.
+     */
+    private void notifyIdle() {
+
+        Runnable idleCallback = mIdleCallback;
+
+        if (idleCallback != null) {
+            idleCallback.run();
+        }
+    }
+
+    /**
+     * Gets the connection thread, taking a session from the pool if none is held.
+     *
+     * @return the connection thread.
+     * @throws RecognitionException if a pooled connection could not be set up.
+     */
+    private synchronized AsrServerConnectionThread getConnection() throws RecognitionException {
+
+        if (mAsrServerConnectionThread == null) {
             try {
-                synchronized (mSeverResponseLock) {
-                    mSeverResponseLock.wait(MAX_RESPONSE_TIMEOUT);
-                }
-            } catch (Exception e) {
-                // ignoring
+                mAsrServerConnectionThread = mSessionPool.acquire(mBuilder, mHandler);
+                mAsrServerConnectionThread.setPartialResultCoalescer(mPartialResults);
+                mAsrServerConnectionThread.setPreRollBuffer(mPreRoll);
+            } catch (URISyntaxException e) {
+                throw new RecognitionException(RecognitionErrorCode.FAILURE, e.getMessage());
+            }
+        }
+
+        return mAsrServerConnectionThread;
+    }
+
+    /**
+     * Gets the connection thread, if any.
+     *
+     * @return the connection thread, or {@code null} if no pooled session is held.
+     */
+    private synchronized AsrServerConnectionThread peekConnection() {
+        return mAsrServerConnectionThread;
+    }
+
+    /**
+     * Informs the connection thread that a library error occurred.
+     */
+    private void notifyLibraryError() {
+
+        AsrServerConnectionThread connection = peekConnection();
+
+        if (connection != null) {
+            Message message = connection.obtainMessage();
+            message.arg1 = AsrServerConnectionThread.MESSAGE_ON_CPQD_ASR_LIBRARY_ERROR;
+            message.sendToTarget();
+        }
+    }
+
+    /**
+     * Waits for a latch to be released, up to the given timeout.
+     *
+     * @param latch   the latch.
+     * @param timeout the timeout in milliseconds.
+     */
+    private static void await(CountDownLatch latch, long timeout) {
+
+        try {
+            latch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // Preserve the interrupt for the caller.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Notifies the caller waiting for the server response.
+     */
+    private void notifyServerResponse() {
+        mServerResponseLatch.countDown();
+    }
+
+    /**
+     * Notifies the caller waiting for the recognition result.
+     */
+    private void notifyRecognitionEnd() {
+        mRecognitionLatch.countDown();
+    }
+
+    /**
+     * Runs a background task in the reader executor or, if there is none, in a new thread.
+     *
+     * @param task       the task.
+     * @param threadName the name of the new thread, unless created by the builder thread factory.
+     */
+    private void execute(Runnable task, String threadName) {
+
+        if (mReaderExecutor != null) {
+            mReaderExecutor.execute(task);
+        } else if (mBuilder.threadFactory != null) {
+            mBuilder.threadFactory.newThread(task).start();
+        } else {
+            new Thread(task, threadName).start();
+        }
+    }
+
+    /**
+     * Stops the reader task, if any.
+     *
+     * @param cancel {@code true} to cancel the task, {@code false} to finish it.
+     */
+    private void stopReaderTask(boolean cancel) {
+
+        ReaderTask readerTask = mReaderTask.get();
+
+        if (readerTask != null) {
+            if (cancel) {
+                readerTask.cancel();
+            } else {
+                readerTask.finish();
             }
         }
     }
@@ -272,13 +531,14 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
             if (msg.arg1 == MESSAGE_STOP) {
 
                 // Check if library is in expected state to accept message.
-                if (mState == STATE_RECORDING) {
-
-                    mState = STATE_WAITING_RECOGNITION;
+                if (mState.compareAndSet(State.RECORDING, State.WAITING_RECOGNITION)) {
 
                     // Finalize audio capture.
-                    if (mReaderTask != null) {
-                        mReaderTask.finish();
+                    stopReaderTask(false);
+
+                    // Start the timer of the asynchronous recognition result
+                    if (mAsyncRecognition) {
+                        mHandler.postDelayed(mAsyncTimeout, mBuilder.maxWaitSeconds * 1000L);
                     }
                 } else {
                     Log.i(TAG, "ignoring handle stop message");
@@ -286,9 +546,12 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
             } else if (msg.arg1 == MESSAGE_ON_PARTIAL_RESULT) {
 
-                // Notify callback listener of partial result.
-                for (RecognitionListener listener : mListeners) {
-                    listener.onPartialRecognitionResult((PartialRecognitionResult) msg.obj);
+                // Notify callback listener of the latest partial result, unless discarded.
+                PartialRecognitionResult result = ((PartialResultCoalescer.Slot) msg.obj).take();
+                if (result != null) {
+                    for (RecognitionListener listener : mListeners) {
+                        listener.onPartialRecognitionResult(result);
+                    }
                 }
 
             } else if (msg.arg1 == MESSAGE_ON_RESULT) {
@@ -301,7 +564,7 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
             } else if (msg.arg1 == MESSAGE_ON_ERROR) {
 
                 // Notify callback listener.
-                if (mState != STATE_IDLE) {
+                if (mState.get() != State.IDLE) {
                     for (RecognitionListener listener : mListeners) {
                         listener.onError((RecognitionError) msg.obj);
                     }
@@ -309,22 +572,21 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
             } else if (msg.arg1 == MESSAGE_ON_CREATE_SESSION) {
 
-                if (mState == STATE_WAITING_CREATE_SESSION) {
-
-                    mState = STATE_IDLE;
+                if (mState.compareAndSet(State.WAITING_CREATE_SESSION, State.IDLE)) {
 
                     // Notify the server response
-                    synchronized (mSeverResponseLock) {
-                        mSeverResponseLock.notifyAll();
-                    }
+                    notifyServerResponse();
 
-                } else if (mState == STATE_STARTING) {
+                } else if (mState.get() == State.STARTING) {
 
-                    // Start recognition in connection thread.
-                    Message message = mAsrServerConnectionThread.obtainMessage();
-                    message.arg1 = AsrServerConnectionThread.MESSAGE_START_RECOGNITION;
-                    message.obj = mRecognitionConfig;
-                    message.sendToTarget();
+                    // Start recognition in connection thread, unless already requested.
+                    AsrServerConnectionThread connection = peekConnection();
+                    if (connection != null && !mBuilder.pipelinedSetup) {
+                        Message message = connection.obtainMessage();
+                        message.arg1 = AsrServerConnectionThread.MESSAGE_START_RECOGNITION;
+                        message.obj = mRecognitionConfig;
+                        message.sendToTarget();
+                    }
 
                 } else {
                     Log.i(TAG, "ignoring on create session message");
@@ -333,10 +595,11 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
             } else if (msg.arg1 == MESSAGE_ON_START_RECOGNITION) {
 
                 // Notify callback listener of the start of audio recording.
-                if (mState == STATE_STARTING) {
+                if (mState.compareAndSet(State.STARTING, State.RECORDING)) {
 
-                    // Set the state to recording
-                    mState = STATE_RECORDING;
+                    if (mSessionPool != null) {
+                        mSessionPool.recordTimeToFirstAudio(System.nanoTime() - mRecognizeTime);
+                    }
 
                     // Set response from server to true
                     mServerResponse = true;
@@ -347,9 +610,7 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
                     }
 
                     // Notify the server response
-                    synchronized (mSeverResponseLock) {
-                        mSeverResponseLock.notifyAll();
-                    }
+                    notifyServerResponse();
 
                 } else {
                     Log.i(TAG, "ignoring on recording start handle message");
@@ -357,18 +618,16 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
             } else if (msg.arg1 == MESSAGE_ON_CANCEL_RECOGNITION) {
 
-                if (mState == STATE_WAITING_CANCEL_RECOGNITION) {
-
-                    // Back state to idle
-                    mState = STATE_IDLE;
+                // Back state to idle
+                if (mState.compareAndSet(State.WAITING_CANCEL_RECOGNITION, State.IDLE)) {
 
                     // Set response from server to true
                     mServerResponse = true;
 
                     // Notify the server response
-                    synchronized (mSeverResponseLock) {
-                        mSeverResponseLock.notifyAll();
-                    }
+                    notifyServerResponse();
+
+                    notifyIdle();
 
                 } else {
                     Log.i(TAG, "ignoring on cancel recognition message");
@@ -376,18 +635,16 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
             } else if (msg.arg1 == MESSAGE_ON_RELEASE_SESSION) {
 
-                if (mState == STATE_WAITING_RELEASE_SESSION) {
-
-                    // Back state to idle
-                    mState = STATE_IDLE;
+                // Back state to idle
+                if (mState.compareAndSet(State.WAITING_RELEASE_SESSION, State.IDLE)) {
 
                     // Set response from server to true
                     mServerResponse = true;
 
                     // Notify the server response
-                    synchronized (mSeverResponseLock) {
-                        mSeverResponseLock.notifyAll();
-                    }
+                    notifyServerResponse();
+
+                    notifyIdle();
 
                 } else {
                     Log.i(TAG, "ignoring on release session message");
@@ -409,25 +666,88 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
     @Override
     public void recognize(AudioSource audio, LanguageModelList lmList, RecognitionConfig config) throws RecognitionException {
+        recognize(audio, lmList, config, null);
+    }
+
+    @Override
+    public void recognize(AudioSource audio, LanguageModelList lmList, RecognitionConfig config, AudioPacing pacing)
+            throws RecognitionException {
+
+        // Wait release session to start another recognize
+        if (mState.get() == State.WAITING_RELEASE_SESSION) {
+            await(mServerResponseLatch, MAX_RESPONSE_TIMEOUT);
+        }
+
+        CountDownLatch serverResponseLatch = startRecognition(audio, lmList, config, pacing, false, null);
 
         // Check if library is in expected state to accept message.
-        if (mState != STATE_IDLE && mState != STATE_WAITING_RELEASE_SESSION) {
+        if (serverResponseLatch == null) {
             return;
         }
 
-        // Wait release session to start another recognize
-        if (mState == STATE_WAITING_RELEASE_SESSION) {
-            try {
-                synchronized (mSeverResponseLock) {
-                    mSeverResponseLock.wait(MAX_RESPONSE_TIMEOUT);
-                }
-                Thread.sleep(500);
-            } catch (Exception e) {
-                // ignoring
+        // Check if is in the correct state
+        if (mState.get() == State.STARTING) {
+            await(serverResponseLatch, MAX_RESPONSE_TIMEOUT);
+        }
+
+        if (!mServerResponse && mError == null) {
+            for (RecognitionListener listener : mListeners) {
+                listener.onError(new RecognitionError(RecognitionErrorCode.FAILURE, "Recognition operation timeout"));
             }
+            throw new RecognitionException(RecognitionErrorCode.FAILURE, "Recognition timeout");
+        } else if (mError != null) {
+            throw new RecognitionException(mError);
+        }
+    }
+
+    /**
+     * Starts a recognition without waiting for the server. The outcome is notified
+     * to the listeners; requests the server does not answer are timed out by the
+     * connection thread, and a result not received within the max wait time after
+     * the end of the audio is notified as an error.
+     *
+     * @param audio  audio source.
+     * @param lmList the language model to use.
+     * @param config recognition configuration parameters; may be {@code null}.
+     * @return the latch released when the server starts listening, or {@code null}
+     * if the library is not in a state to start a recognition.
+     * @throws RecognitionException if a pooled connection could not be set up.
+     */
+    CountDownLatch startRecognition(AudioSource audio, LanguageModelList lmList, RecognitionConfig config)
+            throws RecognitionException {
+        return startRecognition(audio, lmList, config, null, true, null);
+    }
+
+    /**
+     * Starts a recognition without waiting for the server.
+     *
+     * @param audio       audio source.
+     * @param lmList      the language model to use.
+     * @param config      recognition configuration parameters; may be {@code null}.
+     * @param pacing      the pace the audio is read at; may be {@code null}.
+     * @param async       flag indicating whether the caller does not wait for the result,
+     *                    which is then timed out by the recognizer.
+     * @param asyncHandle the handle completed with the recognition outcome; may be {@code null}.
+     * @return the latch released when the server starts listening, or {@code null}
+     * if the library is not in a state to start a recognition.
+     * @throws RecognitionException if a pooled connection could not be set up.
+     */
+    private CountDownLatch startRecognition(AudioSource audio, LanguageModelList lmList, RecognitionConfig config,
+                                            AudioPacing pacing, boolean async, RecognitionHandle asyncHandle)
+            throws RecognitionException {
+
+        // Check if library is in expected state to accept message. Only a blocking recognize
+        // goes on after waiting for a release in vain; an asynchronous one would be reset by it.
+        if (!mState.compareAndSet(State.IDLE, State.STARTING)
+                && (asyncHandle != null || !mState.compareAndSet(State.WAITING_RELEASE_SESSION, State.STARTING))) {
+            return null;
         }
 
-        mState = STATE_STARTING;
+        mHandler.removeCallbacks(mAsyncTimeout);
+
+        mAsyncHandle = asyncHandle;
+
+        mAsyncRecognition = async;
 
         mSentencesQueue.clear();
 
@@ -435,45 +755,123 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
         mError = null;
 
+        CountDownLatch serverResponseLatch = new CountDownLatch(1);
+        mServerResponseLatch = serverResponseLatch;
+
+        mRecognitionLatch = new CountDownLatch(1);
+
         if (config != null) {
             mRecognitionConfig = config;
         }
 
+        mRecognizeTime = System.nanoTime();
+
+        AsrServerConnectionThread connection;
+        try {
+            connection = getConnection();
+        } catch (RecognitionException e) {
+            mState.set(State.IDLE);
+            throw e;
+        }
+
         // Creates a thread to read the audio source and send the packets to the server
-        mReaderTask = new ReaderTask(audio, mBuilder);
+        ReaderTask readerTask = new ReaderTask(audio, pacing, mBuilder, connection, mRecognitionConfig);
+        mReaderTask.set(readerTask);
+
+        // The recognizer may have been closed before the task was set, in which case it was not stopped.
+        if (mState.get() != State.STARTING) {
+            readerTask.cancel();
+            return null;
+        }
 
         // Set language model URI into connection thread.
-        Message message = mAsrServerConnectionThread.obtainMessage();
+        Message message = connection.obtainMessage();
         message.arg1 = AsrServerConnectionThread.MESSAGE_SET_LANGUAGE_MODEL_URI;
         message.obj = lmList.getUriList().get(0);
         message.sendToTarget();
 
         // Connect to server session
-        message = mAsrServerConnectionThread.obtainMessage();
+        message = connection.obtainMessage();
         message.arg1 = AsrServerConnectionThread.MESSAGE_CONNECT_TO_SERVER;
         message.sendToTarget();
 
-        // Check if is in the correct state
-        if (mState == STATE_STARTING) {
-            try {
-                synchronized (mSeverResponseLock) {
-                    mSeverResponseLock.wait(MAX_RESPONSE_TIMEOUT);
+        // Start recognition along with the session creation, if still being created.
+        if (mBuilder.pipelinedSetup) {
+            message = connection.obtainMessage();
+            message.arg1 = AsrServerConnectionThread.MESSAGE_START_RECOGNITION;
+            message.arg2 = AsrServerConnectionThread.START_RECOGNITION_PIPELINED;
+            message.obj = mRecognitionConfig;
+            message.sendToTarget();
+        }
+
+        return serverResponseLatch;
+    }
+
+    @Override
+    public RecognitionHandle recognizeAsync(AudioSource audio, LanguageModelList lmList) {
+        return recognizeAsync(audio, lmList, null);
+    }
+
+    @Override
+    public RecognitionHandle recognizeAsync(AudioSource audio, LanguageModelList lmList, RecognitionConfig config) {
+
+        RecognitionHandle handle = new RecognitionHandle(sNextHandleId.incrementAndGet(), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    requestCancelRecognition();
+                } catch (RecognitionException e) {
+                    Log.w(TAG, "[recognizeAsync] cancel failed: " + e.getMessage());
                 }
-            } catch (Exception e) {
-                // ignoring
             }
+        });
+
+        // Wait release session to start another recognize
+        if (mState.get() == State.WAITING_RELEASE_SESSION) {
+            await(mServerResponseLatch, MAX_RESPONSE_TIMEOUT);
         }
 
-        if (!mServerResponse && mError == null) {
-            for (RecognitionListener listener : mListeners) {
-                listener.onError(new RecognitionError(RecognitionErrorCode.FAILURE, "Recognition operation timeout"));
+        try {
+            if (startRecognition(audio, lmList, config, null, true, handle) == null) {
+                handle.fail(new RecognitionError(RecognitionErrorCode.FAILURE, "A recognition is already running"));
             }
-            throw new RecognitionException(RecognitionErrorCode.FAILURE, "Recognition timeout");
-        } else if (mError != null) {
-            throw new RecognitionException(mError);
+        } catch (RecognitionException e) {
+            handle.fail(new RecognitionError(e.getErrorCode(), e.getMessage()));
+        }
+
+        return handle;
+    }
+
+    /**
+     * Fails the asynchronous recognition whose result was not received in time.
+     * Runs in the handler thread.
+     */
+    private void onAsyncTimeout() {
+
+        RecognitionHandle handle = mAsyncHandle;
+
+        if (!mAsyncRecognition || handle != null && handle.isDone() || mState.get() != State.WAITING_RECOGNITION) {
+            return;
+        }
+
+        // Send error message to the connection thread
+        notifyLibraryError();
+
+        for (RecognitionListener listener : mListeners) {
+            listener.onError(new RecognitionError(RecognitionErrorCode.FAILURE, "Recognition timeout"));
         }
     }
 
+    @Override
+    public long getDroppedPartialResults() {
+        return mPartialResults.getDroppedCount();
+    }
+
+    @Override
+    public long getMergedPartialResults() {
+        return mPartialResults.getMergedCount();
+    }
+
     @Override
     public List<RecognitionResult> waitRecognitionResult() throws RecognitionException {
         return waitRecognitionResult(mBuilder.maxWaitSeconds);
@@ -482,23 +880,20 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
     @Override
     public List<RecognitionResult> waitRecognitionResult(int timeout) throws RecognitionException {
 
+        ReaderTask readerTask = mReaderTask.get();
+
         // Server not listening
-        if (mReaderTask == null || mReaderTask.isIdle() || mReaderTask.isCancelled()) {
+        if (readerTask == null || readerTask.isIdle() || readerTask.isCancelled()) {
             return new ArrayList<>();
         }
 
         // Waits for receipt of the result if the server is processing
-        if (mState == STATE_RECORDING || mState == STATE_WAITING_RECOGNITION) {
-            try {
-                synchronized (mSentencesQueue) {
-                    mSentencesQueue.wait(timeout * 1000);
-                }
-            } catch (InterruptedException e) {
-                // ignoring
-            }
+        State state = mState.get();
+        if (state == State.RECORDING || state == State.WAITING_RECOGNITION) {
+            await(mRecognitionLatch, timeout * 1000L);
         }
 
-        if (mReaderTask.isCancelled()) {
+        if (readerTask.isCancelled()) {
             return new ArrayList<>();
         }
 
@@ -506,9 +901,7 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
             if (mSentencesQueue.size() == 0 && mError == null) {
 
                 // Send error message to the connection thread
-                Message message = mAsrServerConnectionThread.obtainMessage();
-                message.arg1 = AsrServerConnectionThread.MESSAGE_ON_CPQD_ASR_LIBRARY_ERROR;
-                message.sendToTarget();
+                notifyLibraryError();
 
                 for (RecognitionListener listener : mListeners) {
                     listener.onError(new RecognitionError(RecognitionErrorCode.FAILURE, "Recognition timeout"));
@@ -523,54 +916,80 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
 
         } finally {
             // returns to original state; if there are calls in sequence to the wait () method, avoiding timeout occurring
-            if (mReaderTask != null) {
-                mReaderTask.finish();
-            }
-            mReaderTask = null;
+            readerTask.finish();
+            mReaderTask.compareAndSet(readerTask, null);
         }
     }
 
     @Override
     public void close() throws RecognitionException {
 
-        mState = STATE_WAITING_RELEASE_SESSION;
+        RecognitionHandle asyncHandle = mAsyncHandle;
+        if (asyncHandle != null) {
+            asyncHandle.fail(new RecognitionError(RecognitionErrorCode.FAILURE, "Recognizer is closed"));
+        }
+
+        CountDownLatch serverResponseLatch = new CountDownLatch(1);
+        mServerResponseLatch = serverResponseLatch;
+
+        mState.set(State.WAITING_RELEASE_SESSION);
+
+        releaseSession(serverResponseLatch);
+    }
+
+    /**
+     * Releases the session, once the state and server response latch have been set up.
+     *
+     * @param serverResponseLatch the latch released by the server response.
+     * @throws RecognitionException in case of error or timeout.
+     */
+    private void releaseSession(CountDownLatch serverResponseLatch) throws RecognitionException {
 
         mServerResponse = false;
 
         mError = null;
 
         // Cancel the audio recorder thread.
-        if (mReaderTask != null) {
-            mReaderTask.cancel();
-        }
+        stopReaderTask(true);
 
-        // Notify the sentences queue
-        synchronized (mSentencesQueue) {
-            mSentencesQueue.notifyAll();
-        }
+        // Notify the recognition waiter
+        notifyRecognitionEnd();
 
-        // Ask connection thread to establish connection with given URL.
-        Message message = mAsrServerConnectionThread.obtainMessage();
-        message.arg1 = AsrServerConnectionThread.MESSAGE_RELEASE_SESSION;
-        message.sendToTarget();
+        if (mSessionPool == null) {
 
-        // Check if is in the correct state
-        if (mState == STATE_WAITING_RELEASE_SESSION) {
-            try {
-                synchronized (mSeverResponseLock) {
-                    mSeverResponseLock.wait(MAX_RESPONSE_TIMEOUT);
-                }
-            } catch (Exception e) {
-                // ignoring
+            // Ask connection thread to release the session.
+            Message message = mAsrServerConnectionThread.obtainMessage();
+            message.arg1 = AsrServerConnectionThread.MESSAGE_RELEASE_SESSION;
+            message.sendToTarget();
+
+        } else {
+
+            AsrServerConnectionThread connection;
+            synchronized (this) {
+                connection = mAsrServerConnectionThread;
+                mAsrServerConnectionThread = null;
+            }
+
+            if (connection != null) {
+                // Hand the session back to the pool, which notifies the release.
+                mSessionPool.release(mBuilder, connection);
+            } else {
+                // No session is held.
+                Message message = mHandler.obtainMessage();
+                message.arg1 = MESSAGE_ON_RELEASE_SESSION;
+                message.sendToTarget();
             }
         }
 
+        // Check if is in the correct state
+        if (mState.get() == State.WAITING_RELEASE_SESSION) {
+            await(serverResponseLatch, MAX_RESPONSE_TIMEOUT);
+        }
+
         if (!mServerResponse && mError == null) {
 
             // Send error message to the connection thread
-            message = mAsrServerConnectionThread.obtainMessage();
-            message.arg1 = AsrServerConnectionThread.MESSAGE_ON_CPQD_ASR_LIBRARY_ERROR;
-            message.sendToTarget();
+            notifyLibraryError();
 
             for (RecognitionListener listener : mListeners) {
                 listener.onError(new RecognitionError(RecognitionErrorCode.FAILURE, "Close operation timeout"));
@@ -585,49 +1004,22 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
     @Override
     public void cancelRecognition() throws RecognitionException {
 
+        CountDownLatch serverResponseLatch = requestCancelRecognition();
+
         // Check if library is in expected state to accept message.
-        if (mState != STATE_RECORDING && mState != STATE_WAITING_RECOGNITION) {
+        if (serverResponseLatch == null) {
             return;
         }
 
-        mState = STATE_WAITING_CANCEL_RECOGNITION;
-
-        mServerResponse = false;
-
-        mError = null;
-
-        // Ask connection thread to cancel recognition.
-        Message message = mAsrServerConnectionThread.obtainMessage();
-        message.arg1 = AsrServerConnectionThread.MESSAGE_CANCEL_RECOGNITION;
-        message.sendToTarget();
-
-        // Cancel the audio recorder thread.
-        if (mReaderTask != null) {
-            mReaderTask.cancel();
-        }
-
-        // Notify the sentences queue
-        synchronized (mSentencesQueue) {
-            mSentencesQueue.notifyAll();
-        }
-
         // Check if is in the correct state
-        if (mState == STATE_WAITING_CANCEL_RECOGNITION) {
-            try {
-                synchronized (mSeverResponseLock) {
-                    mSeverResponseLock.wait(MAX_RESPONSE_TIMEOUT);
-                }
-            } catch (Exception e) {
-                // ignoring
-            }
+        if (mState.get() == State.WAITING_CANCEL_RECOGNITION) {
+            await(serverResponseLatch, MAX_RESPONSE_TIMEOUT);
         }
 
         if (!mServerResponse && mError == null) {
 
             // Send error message to the connection thread
-            message = mAsrServerConnectionThread.obtainMessage();
-            message.arg1 = AsrServerConnectionThread.MESSAGE_ON_CPQD_ASR_LIBRARY_ERROR;
-            message.sendToTarget();
+            notifyLibraryError();
 
             for (RecognitionListener listener : mListeners) {
                 listener.onError(new RecognitionError(RecognitionErrorCode.FAILURE, "Cancel recognition operation timeout"));
@@ -639,15 +1031,70 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
         }
     }
 
+    /**
+     * Cancels the current recognition without waiting for the server response.
+     *
+     * @return the latch released by the server response, or {@code null} if
+     * there is no recognition to be cancelled.
+     * @throws RecognitionException if the connection is not available.
+     */
+    CountDownLatch requestCancelRecognition() throws RecognitionException {
+
+        // Check if library is in expected state to accept message.
+        if (!mState.compareAndSet(State.RECORDING, State.WAITING_CANCEL_RECOGNITION)
+                && !mState.compareAndSet(State.WAITING_RECOGNITION, State.WAITING_CANCEL_RECOGNITION)) {
+            return null;
+        }
+
+        mHandler.removeCallbacks(mAsyncTimeout);
+
+        // Cancel the asynchronous recognition, if any
+        RecognitionHandle asyncHandle = mAsyncHandle;
+        if (asyncHandle != null) {
+            asyncHandle.cancel(true);
+        }
+
+        mServerResponse = false;
+
+        mError = null;
+
+        CountDownLatch serverResponseLatch = new CountDownLatch(1);
+        mServerResponseLatch = serverResponseLatch;
+
+        // Ask connection thread to cancel recognition.
+        Message message = getConnection().obtainMessage();
+        message.arg1 = AsrServerConnectionThread.MESSAGE_CANCEL_RECOGNITION;
+        message.sendToTarget();
+
+        // Cancel the audio recorder thread.
+        stopReaderTask(true);
+
+        // Notify the recognition waiter
+        notifyRecognitionEnd();
+
+        return serverResponseLatch;
+    }
+
     @Override
     public void onListening() {
         Log.d(TAG, "[onListening]");
 
-        // Change state of the reader task
-        mReaderTask.readerStatus = ReaderTaskStatus.RUNNING;
+        // The asynchronous recognition was cancelled before the server was listening
+        RecognitionHandle asyncHandle = mAsyncHandle;
+        if (asyncHandle != null && asyncHandle.isCancelled()) {
+            try {
+                requestCancelRecognition();
+            } catch (RecognitionException e) {
+                Log.w(TAG, "[onListening] cancel failed: " + e.getMessage());
+            }
+            return;
+        }
 
         // Start the reader task
-        new Thread(mReaderTask).start();
+        ReaderTask readerTask = mReaderTask.get();
+        if (readerTask != null) {
+            readerTask.start();
+        }
     }
 
     @Override
@@ -675,158 +1122,514 @@ class SpeechRecognizerImpl implements SpeechRecognizerInterface, RecognitionList
         // Received final result of the last segment
         if (result.isLastSpeechSegment()) {
 
-            // Back the state to idle
-            mState = STATE_IDLE;
+            mHandler.removeCallbacks(mAsyncTimeout);
+            final RecognitionHandle asyncHandle = mAsyncHandle;
+            final List<RecognitionResult> results =
+                    Arrays.asList(mSentencesQueue.toArray(new RecognitionResult[mSentencesQueue.size()]));
 
             // The recognition is over. close the session
             if (mBuilder.autoClose) {
 
-                mState = STATE_WAITING_RELEASE_SESSION;
+                // Set up the wait before changing state, so that a new recognize waits for the release.
+                final CountDownLatch serverResponseLatch = new CountDownLatch(1);
+                mServerResponseLatch = serverResponseLatch;
+
+                mState.set(State.WAITING_RELEASE_SESSION);
 
-                new Thread(new Runnable() {
+                execute(new Runnable() {
                     @Override
                     public void run() {
                         try {
-                            close();
+                            releaseSession(serverResponseLatch);
                         } catch (RecognitionException e) {
                             //ignoring
+                        } finally {
+                            // Complete the asynchronous recognition once the session is released,
+                            // so that a recognition chained on it finds the recognizer idle.
+                            if (asyncHandle != null) {
+                                asyncHandle.complete(results);
+                            }
                         }
                     }
-                }).start();
+                }, "AsrCloseThread");
+
+            } else if (mState.compareAndSet(State.WAITING_CANCEL_RECOGNITION, State.IDLE)) {
+
+                // The cancel arrived after the audio was over, so the server will not answer it
+                mServerResponse = true;
+
+                notifyServerResponse();
+
+                notifyIdle();
+
+            } else if (!mState.compareAndSet(State.RECORDING, State.IDLE)) {
+
+                // Back the state to idle, unless a close request is pending
+                mState.compareAndSet(State.WAITING_RECOGNITION, State.IDLE);
             }
 
             // Finalize the reader task
-            if (mReaderTask != null) {
-                mReaderTask.finish();
-            }
+            stopReaderTask(false);
 
-            // Notify the sentence queue
-            synchronized (mSentencesQueue) {
-                mSentencesQueue.notifyAll();
+            // Complete the asynchronous recognition, unless it is completed once the session is released
+            if (asyncHandle != null && !mBuilder.autoClose) {
+                asyncHandle.complete(results);
             }
+
+            // Notify the recognition waiter
+            notifyRecognitionEnd();
         }
     }
 
     @Override
     public void onError(RecognitionError error) {
 
-        // Back the state to idle
-        mState = STATE_IDLE;
-
         // Set the error
         mError = error;
 
+        // Back the state to idle
+        mState.set(State.IDLE);
+
         // Cancel the reader thread.
-        if (mReaderTask != null) {
-            mReaderTask.cancel();
+        stopReaderTask(true);
+
+        // Fail the asynchronous recognition
+        mHandler.removeCallbacks(mAsyncTimeout);
+        RecognitionHandle asyncHandle = mAsyncHandle;
+        if (asyncHandle != null) {
+            asyncHandle.fail(error);
         }
 
         // Notify the server response
-        synchronized (mSeverResponseLock) {
-            mSeverResponseLock.notifyAll();
+        notifyServerResponse();
+
+        // Notify the recognition waiter
+        notifyRecognitionEnd();
+    }
+
+    /**
+     * Fails the current recognition because of an error on the client side,
+     * and cancels it on the server. The listeners are notified of the error as
+     * if it came from the server.
+     *
+     * @param connection the connection thread of the recognition.
+     * @param error      the error.
+     */
+    private void failRecognition(AsrServerConnectionThread connection, RecognitionError error) {
+
+        // Ask connection thread to cancel recognition.
+        Message message = connection.obtainMessage();
+        message.arg1 = AsrServerConnectionThread.MESSAGE_CANCEL_RECOGNITION;
+        message.sendToTarget();
+
+        message = mHandler.obtainMessage();
+        message.arg1 = MESSAGE_ON_ERROR;
+        message.obj = error;
+        message.sendToTarget();
+    }
+
+    /**
+     * Listener that notifies another one in an executor.
+     */
+    private static class ExecutorListener implements RecognitionListener {
+
+        /* The notified listener. */
+        private final RecognitionListener listener;
+
+        /* The executor the listener is notified in. */
+        private final Executor executor;
+
+        ExecutorListener(RecognitionListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
         }
 
-        // Notify the sentence queue
-        synchronized (mSentencesQueue) {
-            mSentencesQueue.notifyAll();
+        @Override
+        public void onListening() {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onListening();
+                }
+            });
+        }
+
+        @Override
+        public void onSpeechStart(final Integer time) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onSpeechStart(time);
+                }
+            });
+        }
+
+        @Override
+        public void onSpeechStop(final Integer time) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onSpeechStop(time);
+                }
+            });
+        }
+
+        @Override
+        public void onPartialRecognitionResult(final PartialRecognitionResult result) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onPartialRecognitionResult(result);
+                }
+            });
+        }
+
+        @Override
+        public void onRecognitionResult(final RecognitionResult result) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onRecognitionResult(result);
+                }
+            });
+        }
+
+        @Override
+        public void onError(final RecognitionError error) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onError(error);
+                }
+            });
         }
     }
 
     private class ReaderTask implements Runnable {
 
         /* Status of the reader task. */
-        private ReaderTaskStatus readerStatus;
+        private final AtomicReference<ReaderTaskStatus> readerStatus;
 
         /* The Builder object. */
         private SpeechRecognizer.Builder builder;
 
         private final AudioSource audio;
 
-        ReaderTask(AudioSource audio, SpeechRecognizer.Builder builder) {
+        /* The pacing of this recognition, if given. */
+        private final AudioPacing pacing;
+
+        /* The connection thread the audio is sent to. */
+        private final AsrServerConnectionThread connection;
+
+        /* The recognition configuration, for the endpointer margins. */
+        private final RecognitionConfig config;
+
+        /* The thread running the task, while it runs. */
+        private Thread thread;
+
+        ReaderTask(AudioSource audio, AudioPacing pacing, SpeechRecognizer.Builder builder,
+                   AsrServerConnectionThread connection, RecognitionConfig config) {
             super();
             this.audio = audio;
+            this.pacing = pacing;
             this.builder = builder;
-            this.readerStatus = ReaderTaskStatus.IDLE;
+            this.connection = connection;
+            this.config = config;
+            this.readerStatus = new AtomicReference<>(ReaderTaskStatus.IDLE);
         }
 
         boolean isCancelled() {
-            return readerStatus == ReaderTaskStatus.CANCELED;
+            return readerStatus.get() == ReaderTaskStatus.CANCELED;
         }
 
         boolean isFinished() {
-            return readerStatus == ReaderTaskStatus.FINISHED;
+            return readerStatus.get() == ReaderTaskStatus.FINISHED;
         }
 
         boolean isIdle() {
-            return readerStatus == ReaderTaskStatus.IDLE;
+            return readerStatus.get() == ReaderTaskStatus.IDLE;
         }
 
-        void cancel() {
-            if (readerStatus != ReaderTaskStatus.FINISHED) {
-                readerStatus = ReaderTaskStatus.CANCELED;
+        /**
+         * Starts reading audio in the background, unless the task has already been stopped.
+         */
+        void start() {
+
+            if (readerStatus.compareAndSet(ReaderTaskStatus.IDLE, ReaderTaskStatus.RUNNING)) {
+                execute(this, "AsrReaderThread");
             }
         }
 
+        void cancel() {
+            stop(ReaderTaskStatus.CANCELED, ReaderTaskStatus.FINISHED);
+        }
+
         void finish() {
-            if (readerStatus != ReaderTaskStatus.CANCELED) {
-                readerStatus = ReaderTaskStatus.FINISHED;
+            stop(ReaderTaskStatus.FINISHED, ReaderTaskStatus.CANCELED);
+        }
+
+        /**
+         * Moves the task to a final status and wakes the reader thread up, so
+         * that it stops within one audio packet.  The audio source of a task
+         * that was never started is closed right away, as no reader will.
+         *
+         * @param status      the final status.
+         * @param otherStatus the other final status, which is kept if already set.
+         */
+        private void stop(ReaderTaskStatus status, ReaderTaskStatus otherStatus) {
+
+            ReaderTaskStatus current;
+
+            do {
+                current = readerStatus.get();
+
+                if (current == status || current == otherStatus) {
+                    return;
+                }
+            } while (!readerStatus.compareAndSet(current, status));
+
+            if (current == ReaderTaskStatus.IDLE) {
+                closeAudio();
+                return;
+            }
+
+            synchronized (this) {
+                if (thread != null && thread != Thread.currentThread()) {
+                    thread.interrupt();
+                }
+            }
+        }
+
+        private void closeAudio() {
+            try {
+                audio.close();
+            } catch (Exception e) {
+                //ignoring
             }
         }
 
+        /**
+         * Gets the pacing of the recognition, falling back to the pacing of the
+         * audio source and then to the builder configuration.
+         */
+        private AudioPacing getPacing() {
+
+            AudioPacing pacing = this.pacing;
+
+            if (pacing == null && audio instanceof PacedAudioSource) {
+                pacing = ((PacedAudioSource) audio).getPacing();
+            }
+
+            if (pacing == null) {
+                pacing = builder.audioPacing;
+            }
+
+            if (pacing == null) {
+                // Send audio at the speed the server is expected to process it.
+                pacing = AudioPacing.tokenBucket(1 / builder.serverRTF, 0);
+            }
+
+            return pacing;
+        }
+
+        /**
+         * Waits until the connection thread accepts another audio packet.
+         *
+         * @return {@code true} if the packet may be sent, {@code false} if the task has been stopped meanwhile.
+         */
+        private boolean acquireAudioPacketPermit() throws InterruptedException {
+
+            while (!isCancelled() && !isFinished()) {
+                if (connection.acquireAudioPacketPermit(builder.chunkLength, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
         @Override
         public void run() {
 
+            synchronized (this) {
+                thread = Thread.currentThread();
+            }
+
+            try {
+                readAudio();
+            } finally {
+                synchronized (this) {
+                    thread = null;
+                    // Do not leave a pending interrupt to the next task of an executor thread.
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        /**
+         * Queues an audio packet to the connection thread.
+         *
+         * @param packet       the audio packet, either a byte array or a ByteBuffer.
+         * @param isLastPacket whether it is the last packet of the audio.
+         * @return {@code true} if the packet was queued, {@code false} if the task has been stopped meanwhile.
+         */
+        private boolean sendAudioPacket(Object packet, boolean isLastPacket) throws InterruptedException {
+
+            if (!acquireAudioPacketPermit()) {
+                return false;
+            }
+
+            Message message = connection.obtainMessage();
+            message.arg1 = AsrServerConnectionThread.MESSAGE_HANDLE_AUDIO_PACKET;
+            message.arg2 = isLastPacket ? 1 : 0;
+            message.obj = packet;
+            message.sendToTarget();
+
+            return true;
+        }
+
+        /**
+         * Queues audio packets to the connection thread, in order.
+         *
+         * @param packets the audio packets.
+         * @return {@code true} if the packets were queued, {@code false} if the task has been stopped meanwhile.
+         */
+        private boolean sendAudioPackets(List<Object> packets) throws InterruptedException {
+
+            for (int i = 0; i < packets.size(); i++) {
+                if (!sendAudioPacket(packets.get(i), false)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Reads the audio source and sends the packets to the connection thread.
+         */
+        private void readAudio() {
+
+            // Audio sources provide linear PCM, which is encoded before being sent
+            final AudioEncoding encoding = builder.encoding;
+            final int pcmSampleSize = AudioEncoding.LINEAR16.getSampleSize();
+
             // The buffer size
             final int chunkSize = Util.calculateBufferSize(builder.chunkLength,
-                    builder.audioSampleRate, builder.encoding.getSampleSize());
+                    builder.audioSampleRate, pcmSampleSize);
+
+            // Number of bytes of one second of audio
+            final int bytesPerSecond = Util.calculateBufferSize(1000,
+                    builder.audioSampleRate, pcmSampleSize);
 
             // Initiate the buffer
             byte[] buffer = new byte[chunkSize];
 
-            // Delay is the duration of the package adjusted by the RTF
-            final int DELAY = (int) (builder.chunkLength * builder.serverRTF);
+            // Keeps the samples aligned across packets of odd length
+            PcmPacketEncoder encoder = encoding != AudioEncoding.LINEAR16 ? new PcmPacketEncoder(encoding) : null;
+
+            AudioPacing.Pacer pacer = getPacing().newPacer();
+
+            // Holds back the silence the server does not need, if enabled
+            SilenceGate gate = builder.silenceThreshold != null
+                    ? new SilenceGate(builder.silenceThreshold, config) : null;
 
             try {
 
+                // Check the audio format before sending any audio
+                if (audio instanceof WavAudioSource) {
+                    ((WavAudioSource) audio).validate(builder.audioSampleRate, builder.encoding);
+                }
+
                 int read = 0;
 
                 while (read != -1 && !isCancelled() && !isFinished()) {
 
-                    read = audio.read(buffer);
+                    Object bufferToSend;
+                    boolean voiced = true;
+
+                    if (audio instanceof SlicedAudioSource) {
 
-                    byte[] bufferToSend;
+                        // The slice is handed over to the connection thread, without copying it.
+                        ByteBuffer slice = ((SlicedAudioSource) audio).readSlice(chunkSize);
+                        read = slice != null ? slice.remaining() : -1;
+                        bufferToSend = slice;
+
+                        if (read > 0 && gate != null) {
+                            voiced = gate.isVoiced(slice);
+                        }
+
+                        if (read > 0 && encoding != AudioEncoding.LINEAR16) {
+                            if (!slice.hasArray()) {
+                                slice.get(buffer, 0, read);
+                                bufferToSend = encoder.encode(buffer, 0, read);
+                            } else {
+                                bufferToSend = encoder.encode(slice.array(),
+                                        slice.arrayOffset() + slice.position(), read);
+                            }
+                        }
 
-                    if (read > 0 && read != chunkSize) {
-                        bufferToSend = Arrays.copyOf(buffer, read);
                     } else {
-                        bufferToSend = buffer;
+
+                        read = audio.read(buffer);
+
+                        if (read > 0 && gate != null) {
+                            voiced = gate.isVoiced(buffer, 0, read);
+                        }
+
+                        if (encoding != AudioEncoding.LINEAR16) {
+                            // The buffer is kept, only the encoded audio is handed over.
+                            bufferToSend = read > 0 ? encoder.encode(buffer, 0, read) : null;
+                        } else if (read != chunkSize) {
+                            bufferToSend = read > 0 ? Arrays.copyOf(buffer, read) : null;
+                        } else {
+                            // The whole buffer is handed over to the connection thread.
+                            bufferToSend = buffer;
+                            buffer = new byte[chunkSize];
+                        }
                     }
 
                     if (read > 0) {
-                        Message message = mAsrServerConnectionThread.obtainMessage();
-                        message.arg1 = AsrServerConnectionThread.MESSAGE_HANDLE_AUDIO_PACKET;
-                        message.arg2 = 0;
-                        message.obj = bufferToSend;
-                        message.sendToTarget();
+
+                        long duration = read * 1000L / bytesPerSecond;
+
+                        if (gate == null) {
+                            if (!sendAudioPacket(bufferToSend, false)) {
+                                break;
+                            }
+                        } else if (!sendAudioPackets(gate.offer(bufferToSend, (int) duration, voiced))) {
+                            break;
+                        }
+
+                        pacer.onAudioRead(duration);
+
                     } else if (read < 0) {
-                        Message message = mAsrServerConnectionThread.obtainMessage();
-                        message.arg1 = AsrServerConnectionThread.MESSAGE_HANDLE_AUDIO_PACKET;
-                        message.arg2 = 1;
-                        message.obj = new byte[]{};
-                        message.sendToTarget();
-                    }
 
-                    Thread.sleep(DELAY);
+                        if (!sendAudioPacket(new byte[]{}, true)) {
+                            break;
+                        }
+
+                        if (gate != null) {
+                            Log.d(TAG, "silence not sent: " + gate.getSuppressedMillis() + " ms");
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // The task was stopped while waiting.
+            } catch (AudioFormatException e) {
+                if (!isCancelled() && !isFinished()) {
+                    Log.e(TAG, "invalid audio format: " + e.getMessage());
+                    failRecognition(connection, new RecognitionError(RecognitionErrorCode.FAILURE,
+                            "Invalid audio format: " + e.getMessage()));
                 }
             } catch (Exception e) {
-                Log.e(TAG, e.getMessage(), e);
+                // Reads may also be interrupted when the task is stopped.
+                if (!isCancelled() && !isFinished()) {
+                    Log.e(TAG, e.getMessage(), e);
+                }
             } finally {
                 // Close the audio
-                try {
-                    audio.close();
-                } catch (Exception e) {
-                    //ignoring
-                }
+                closeAudio();
             }
         }
     }
@@ -18,6 +18,7 @@ package br.com.cpqd.asr.recognizer;
 import java.io.IOException;
 import java.util.List;
 
+import br.com.cpqd.asr.recognizer.audio.AudioPacing;
 import br.com.cpqd.asr.recognizer.audio.AudioSource;
 import br.com.cpqd.asr.recognizer.model.LanguageModelList;
 import br.com.cpqd.asr.recognizer.model.RecognitionConfig;
@@ -72,6 +73,74 @@ public interface SpeechRecognizerInterface {
     void recognize(AudioSource audio, LanguageModelList lmList, RecognitionConfig config)
             throws IOException, RecognitionException;
 
+    /**
+     * Recognizes an audio source, reading it at the given pace. The pacing
+     * applies to this recognition only and takes precedence over the pacing
+     * of the audio source and of the Builder.
+     *
+     * @param lmList the language model to use.
+     * @param audio  audio source.
+     * @param config recognition configuration parameters; may be {@code null}.
+     * @param pacing the pace the audio is read at, or {@code null} to use the
+     *               pacing of the audio source or the Builder.
+     * @throws IOException          some sort of I/O exception has ocurred.
+     * @throws RecognitionException in case the operation fails.
+     * @see SpeechRecognizer.Builder#audioPacing(AudioPacing)
+     */
+    void recognize(AudioSource audio, LanguageModelList lmList, RecognitionConfig config, AudioPacing pacing)
+            throws IOException, RecognitionException;
+
+    /**
+     * Recognizes an audio source without blocking the caller. The returned
+     * handle completes with the recognition result once the last speech
+     * segment is recognized, or fails if the recognition fails or its result
+     * is not received within the max wait time after the end of the audio.
+     * Cancelling the handle cancels the recognition. The registered
+     * AsrListener callbacks are notified as well.
+     *
+     * @param lmList the language model to use.
+     * @param audio  audio source.
+     * @return the handle of the recognition.
+     */
+    RecognitionHandle recognizeAsync(AudioSource audio, LanguageModelList lmList);
+
+    /**
+     * Recognizes an audio source without blocking the caller. The returned
+     * handle completes with the recognition result once the last speech
+     * segment is recognized, or fails if the recognition fails or its result
+     * is not received within the max wait time after the end of the audio.
+     * Cancelling the handle cancels the recognition. The registered
+     * AsrListener callbacks are notified as well.
+     * <p>With auto close, the handle completes once the session is released,
+     * and a recognition started while the session of the previous one is
+     * being released waits for the release, as {@code recognize} does.</p>
+     *
+     * @param lmList the language model to use.
+     * @param audio  audio source.
+     * @param config recognition configuration parameters.
+     * @return the handle of the recognition.
+     */
+    RecognitionHandle recognizeAsync(AudioSource audio, LanguageModelList lmList, RecognitionConfig config);
+
+    /**
+     * Returns the number of partial results discarded before reaching the
+     * listeners, either because partial results are disabled or because the
+     * final result of the segment arrived first.
+     *
+     * @return the number of discarded partial results.
+     * @see SpeechRecognizer.Builder#partialResultMode(PartialResultMode)
+     */
+    long getDroppedPartialResults();
+
+    /**
+     * Returns the number of partial results replaced by a later one of the
+     * same speech segment before reaching the listeners.
+     *
+     * @return the number of merged partial results.
+     * @see SpeechRecognizer.Builder#partialResultMode(PartialResultMode)
+     */
+    long getMergedPartialResults();
+
     /**
      * Returns the recognition result. If audio packets are still being sent to
      * the server, the method blocks and waits for the end of the recognition
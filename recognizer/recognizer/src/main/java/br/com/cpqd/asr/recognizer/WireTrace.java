@@ -0,0 +1,418 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Tracing facility of the messages exchanged with the ASR server.</p>
+ * <p>Tracing is disabled by default, in which case the codec only pays for a
+ * single volatile read per message.  When enabled, traced messages are kept in a
+ * bounded ring buffer and optionally handed to a {@link Sink}.  Transcripts are
+ * only formatted when {@link Event#getTranscript()} is called, so capturing
+ * messages is cheap even at the {@link Level#FULL} level.</p>
+ * <p>Configuration is global to the process, because the websocket codec is
+ * instantiated by the websocket library.</p>
+ */
+public final class WireTrace {
+
+    /**
+     * Log tag.
+     */
+    private static final String TAG = WireTrace.class.getSimpleName();
+
+    /**
+     * Default capacity of the ring buffer.
+     */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * Tracing level, i.e. how much of each message a transcript shows.
+     */
+    public enum Level {
+
+        /**
+         * Messages are not traced.
+         */
+        OFF,
+
+        /**
+         * Only the start line of messages is traced.
+         */
+        START_LINE,
+
+        /**
+         * The start line and header fields of messages are traced.
+         */
+        HEADER,
+
+        /**
+         * Messages are traced in full, including text bodies.
+         */
+        FULL
+    }
+
+    /**
+     * Receives traced messages as they are captured.
+     * It is called from the websocket and connection threads, so implementations
+     * should return quickly and defer formatting as much as possible.
+     */
+    public interface Sink {
+
+        /**
+         * Called when a message is traced.
+         *
+         * @param event the traced message.
+         */
+        void onTrace(Event event);
+    }
+
+    /**
+     * A traced message.
+     */
+    public static final class Event {
+
+        /**
+         * Wall clock time the message was traced at, in milliseconds.
+         */
+        private final long mTimestamp;
+
+        /**
+         * Indicates whether the message was sent to the server ({@code true}) or received from it ({@code false}).
+         */
+        private final boolean mOutbound;
+
+        /**
+         * Tracing level in effect when the message was traced.  It is captured with the
+         * message so that a later level change does not alter the transcript.
+         */
+        private final Level mLevel;
+
+        /**
+         * The traced message.  For send audio messages it carries the header fields only.
+         */
+        private final AsrMessage mAsrMessage;
+
+        /**
+         * Length of the audio packet of a send audio message, or {@code -1} if the
+         * message is not a send audio message traced by {@link #traceSendAudio}.
+         */
+        private final int mAudioLength;
+
+        /**
+         * The formatted transcript, built on the first call to {@link #getTranscript()}.
+         */
+        private String mTranscript;
+
+        private Event(boolean outbound, Level level, AsrMessage asrMessage, int audioLength) {
+            mTimestamp = System.currentTimeMillis();
+            mOutbound = outbound;
+            mLevel = level;
+            mAsrMessage = asrMessage;
+            mAudioLength = audioLength;
+        }
+
+        /**
+         * @return the wall clock time the message was traced at, in milliseconds.
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * @return {@code true} if the message was sent to the server, {@code false} if it was received.
+         */
+        public boolean isOutbound() {
+            return mOutbound;
+        }
+
+        /**
+         * @return the method of the message, e.g. {@code RECOGNITION_RESULT}.
+         */
+        public String getMethod() {
+            return mAsrMessage.getMethod();
+        }
+
+        /**
+         * Formats the message according to the level it was traced at.
+         * The transcript is built on the first call only.
+         *
+         * @return the message transcript.
+         */
+        public synchronized String getTranscript() {
+
+            if (mTranscript == null) {
+
+                StringBuilder transcript = new StringBuilder(mOutbound ? ">> " : "<< ");
+
+                if (mAudioLength < 0) {
+
+                    mAsrMessage.appendTranscript(transcript, mLevel != Level.START_LINE, mLevel == Level.FULL);
+
+                } else {
+
+                    // The audio is not kept, so the body is replaced by a placeholder.
+                    mAsrMessage.appendTranscript(transcript, mLevel != Level.START_LINE, false);
+
+                    if (mLevel == Level.FULL) {
+                        transcript.append("\n<").append(mAudioLength).append(" octets of audio>");
+                    }
+                }
+
+                mTranscript = transcript.toString();
+            }
+
+            return mTranscript;
+        }
+
+        @Override
+        public String toString() {
+            return getTranscript();
+        }
+    }
+
+    /**
+     * Sink that writes transcripts into {@link Log} at debug level.
+     */
+    public static final Sink LOG_SINK = new Sink() {
+
+        @Override
+        public void onTrace(Event event) {
+            Log.d(TAG, event.getTranscript());
+        }
+    };
+
+    /**
+     * Tracing level.  It is volatile, rather than guarded by a lock, so that the
+     * codec pays a single read per message while tracing is disabled.
+     */
+    private static volatile Level sLevel = Level.OFF;
+
+    /**
+     * Only one in every {@code sSamplingInterval} messages is traced.
+     */
+    private static volatile int sSamplingInterval = 1;
+
+    /**
+     * Receives traced messages, if set.
+     */
+    private static volatile Sink sSink;
+
+    /**
+     * Counts the messages offered while sampling, to select one in every
+     * {@link #sSamplingInterval} of them.
+     */
+    private static final AtomicLong sMessageCounter = new AtomicLong();
+
+    /**
+     * Guards the ring buffer fields.
+     */
+    private static final Object sRingLock = new Object();
+
+    /**
+     * Ring buffer of the most recently traced messages.  When full, each traced
+     * message replaces the oldest one.
+     */
+    private static Event[] sRing = new Event[DEFAULT_CAPACITY];
+
+    /**
+     * Position of the ring buffer where the next traced message is stored.
+     */
+    private static int sRingNext;
+
+    /**
+     * Number of messages in the ring buffer.
+     */
+    private static int sRingSize;
+
+    private WireTrace() {
+    }
+
+    /**
+     * Sets the tracing level.
+     *
+     * @param level the tracing level; {@link Level#OFF} disables tracing.
+     */
+    public static void setLevel(@NonNull Level level) {
+        sLevel = level;
+    }
+
+    /**
+     * @return the tracing level.
+     */
+    public static Level getLevel() {
+        return sLevel;
+    }
+
+    /**
+     * Traces only one in every {@code interval} messages.
+     * This is mostly useful to keep the audio stream from flooding the ring buffer.
+     * Sampling restarts with the next message, which is traced.
+     *
+     * @param interval the sampling interval; {@code 1} traces every message.
+     */
+    public static void setSamplingInterval(int interval) {
+
+        if (interval < 1) {
+            throw new IllegalArgumentException("invalid sampling interval: " + interval);
+        }
+
+        sSamplingInterval = interval;
+        sMessageCounter.set(0);
+    }
+
+    /**
+     * Sets the sink of traced messages, e.g. {@link #LOG_SINK}.
+     *
+     * @param sink the sink, or {@code null} to keep messages in the ring buffer only.
+     */
+    public static void setSink(Sink sink) {
+        sSink = sink;
+    }
+
+    /**
+     * Sets the number of messages kept in the ring buffer, discarding the current ones.
+     *
+     * @param capacity the ring buffer capacity.
+     */
+    public static void setCapacity(int capacity) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+
+        synchronized (sRingLock) {
+            sRing = new Event[capacity];
+            sRingNext = 0;
+            sRingSize = 0;
+        }
+    }
+
+    /**
+     * Gets the messages in the ring buffer, oldest first.
+     *
+     * @return a copy of the traced messages.
+     */
+    public static List<Event> getEvents() {
+
+        synchronized (sRingLock) {
+
+            List<Event> events = new ArrayList<>(sRingSize);
+
+            for (int i = 0; i < sRingSize; i++) {
+                events.add(sRing[(sRingNext - sRingSize + i + sRing.length) % sRing.length]);
+            }
+
+            return events;
+        }
+    }
+
+    /**
+     * Discards the messages in the ring buffer.
+     */
+    public static void clear() {
+
+        synchronized (sRingLock) {
+
+            for (int i = 0; i < sRing.length; i++) {
+                sRing[i] = null;
+            }
+
+            sRingNext = 0;
+            sRingSize = 0;
+        }
+    }
+
+    /**
+     * Evaluates whether tracing is enabled.  Callers should check this before
+     * calling the {@code trace} methods.
+     *
+     * @return {@code true} if messages should be traced.
+     */
+    static boolean isEnabled() {
+        return sLevel != Level.OFF;
+    }
+
+    /**
+     * Traces a message.
+     *
+     * @param outbound   {@code true} if the message is being sent, {@code false} if it has been received.
+     * @param asrMessage the message.
+     */
+    static void trace(boolean outbound, AsrMessage asrMessage) {
+
+        Level level = sLevel;
+
+        if (level == Level.OFF || !isSampled()) {
+            return;
+        }
+
+        record(new Event(outbound, level, asrMessage, -1));
+    }
+
+    /**
+     * Traces a send audio message that was serialized without an {@link AsrMessage}.
+     *
+     * @param length       the audio packet length.
+     * @param isLastPacket the value of the <tt>LastPacket</tt> header field.
+     * @param contentType  the value of the <tt>Content-Type</tt> header field.
+     */
+    static void traceSendAudio(int length, boolean isLastPacket, String contentType) {
+
+        Level level = sLevel;
+
+        if (level == Level.OFF || !isSampled()) {
+            return;
+        }
+
+        Map<String, String> headerFields = new LinkedHashMap<>(4);
+        headerFields.put("LastPacket", Boolean.toString(isLastPacket));
+        headerFields.put("Content-Length", Integer.toString(length));
+        headerFields.put("Content-Type", contentType);
+
+        // The audio itself is never part of the transcript, so only its length is kept.
+        record(new Event(true, level, new AsrMessage(AsrMessage.METHOD_SEND_AUDIO, headerFields, null), length));
+    }
+
+    private static boolean isSampled() {
+
+        int interval = sSamplingInterval;
+
+        return interval == 1 || sMessageCounter.getAndIncrement() % interval == 0;
+    }
+
+    private static void record(Event event) {
+
+        synchronized (sRingLock) {
+            sRing[sRingNext] = event;
+            sRingNext = (sRingNext + 1) % sRing.length;
+            sRingSize = Math.min(sRingSize + 1, sRing.length);
+        }
+
+        Sink sink = sSink;
+
+        if (sink != null) {
+            sink.onTrace(event);
+        }
+    }
+}
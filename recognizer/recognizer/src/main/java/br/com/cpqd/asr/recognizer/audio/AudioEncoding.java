@@ -16,14 +16,30 @@
 package br.com.cpqd.asr.recognizer.audio;
 
 /**
- * Represents the audio encoding.
+ * Represents the audio encoding sent to the server. Audio sources always
+ * provide 16-bit linear PCM samples, which are encoded on the way to the
+ * server.
  */
 public enum AudioEncoding {
 
-    LINEAR16(16);
+    /**
+     * 16-bit linear PCM, little-endian.
+     */
+    LINEAR16(16, "application/octet-stream"),
+
+    /**
+     * 8-bit G.711 A-law.
+     */
+    ALAW(8, "audio/PCMA"),
 
-    AudioEncoding(int sampleSize) {
+    /**
+     * 8-bit G.711 mu-law.
+     */
+    MULAW(8, "audio/PCMU");
+
+    AudioEncoding(int sampleSize, String contentType) {
         this.sampleSize = sampleSize;
+        this.contentType = contentType;
     }
 
     /**
@@ -31,7 +47,51 @@ public enum AudioEncoding {
      */
     private int sampleSize;
 
+    /**
+     * the content type of the audio sent to the server.
+     */
+    private String contentType;
+
     public int getSampleSize() {
         return this.sampleSize;
     }
+
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * Evaluates the size of 16-bit linear PCM audio once encoded.
+     *
+     * @param pcmLength the length of the PCM audio, in bytes.
+     * @return the length of the encoded audio, in bytes.
+     */
+    public int getEncodedLength(int pcmLength) {
+        return pcmLength / 2 * sampleSize / 8;
+    }
+
+    /**
+     * Encodes 16-bit linear PCM audio, little-endian. A trailing odd byte is
+     * not encoded.
+     *
+     * @param pcm       the PCM audio.
+     * @param offset    offset of the audio in {@code pcm}.
+     * @param length    length of the audio, in bytes.
+     * @param out       the buffer the encoded audio is written to.
+     * @param outOffset offset in {@code out}.
+     * @return the number of bytes written to {@code out}.
+     */
+    public int encode(byte[] pcm, int offset, int length, byte[] out, int outOffset) {
+
+        switch (this) {
+            case ALAW:
+                return G711.encode(G711.aLawTable(), pcm, offset, length, out, outOffset);
+            case MULAW:
+                return G711.encode(G711.muLawTable(), pcm, offset, length, out, outOffset);
+            default:
+                length &= ~1;
+                System.arraycopy(pcm, offset, out, outOffset, length);
+                return length;
+        }
+    }
 }
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer.audio;
+
+/**
+ * Defines the pace at which audio is read from an {@link AudioSource} and sent
+ * to the server.  Instances are immutable and may be shared; the state of each
+ * recognition is kept by the {@link Pacer} created for it.
+ */
+public abstract class AudioPacing {
+
+    /**
+     * Paces the audio of a single recognition.
+     */
+    public interface Pacer {
+
+        /**
+         * Called after each audio packet is read. Blocks until the next packet may be read.
+         *
+         * @param audioMillis duration of the packet just read, in milliseconds.
+         * @throws InterruptedException if the reading thread is interrupted while waiting.
+         */
+        void onAudioRead(long audioMillis) throws InterruptedException;
+    }
+
+    /**
+     * Pacer that never waits.
+     */
+    private static final Pacer NO_WAIT = new Pacer() {
+
+        @Override
+        public void onAudioRead(long audioMillis) {
+            // Not used
+        }
+    };
+
+    /**
+     * Pacing that does not wait at all: audio is read as fast as the source
+     * delivers it and the connection drains it.  This is the natural choice for
+     * recorded audio, and for sources whose reads already block, like
+     * {@link MicAudioSource}.
+     *
+     * @return the pacing object.
+     */
+    public static AudioPacing unthrottled() {
+
+        return new AudioPacing() {
+
+            @Override
+            public Pacer newPacer() {
+                return NO_WAIT;
+            }
+
+            @Override
+            public String toString() {
+                return "AudioPacing [unthrottled]";
+            }
+        };
+    }
+
+    /**
+     * Pacing that sends audio at the speed it would be captured live.
+     *
+     * @return the pacing object.
+     */
+    public static AudioPacing realTime() {
+
+        return tokenBucket(1.0F, 0);
+    }
+
+    /**
+     * Pacing that sends audio at a multiple of real time, allowing short bursts.
+     *
+     * @param speed       how many milliseconds of audio may be sent per millisecond, e.g. {@code 10}.
+     * @param burstMillis how much audio may be sent ahead of the rate, in milliseconds.
+     * @return the pacing object.
+     */
+    public static AudioPacing tokenBucket(final float speed, final long burstMillis) {
+
+        if (speed <= 0) {
+            throw new IllegalArgumentException("invalid speed: " + speed);
+        }
+
+        if (burstMillis < 0) {
+            throw new IllegalArgumentException("invalid burst: " + burstMillis);
+        }
+
+        return new AudioPacing() {
+
+            @Override
+            public Pacer newPacer() {
+                return new TokenBucketPacer(speed, burstMillis);
+            }
+
+            @Override
+            public String toString() {
+                return "AudioPacing [" + speed + "x real time, burst=" + burstMillis + " ms]";
+            }
+        };
+    }
+
+    /**
+     * Creates the pacer of a new recognition.
+     *
+     * @return the pacer.
+     */
+    public abstract Pacer newPacer();
+
+    /**
+     * Token bucket whose tokens are milliseconds of audio.
+     */
+    private static class TokenBucketPacer implements Pacer {
+
+        private final float speed;
+
+        private final long capacityNanos;
+
+        /* Available audio, in nanoseconds. Negative if ahead of the rate. */
+        private long tokensNanos;
+
+        private long lastRefill;
+
+        TokenBucketPacer(float speed, long burstMillis) {
+            this.speed = speed;
+            this.capacityNanos = burstMillis * 1000000L;
+            this.tokensNanos = capacityNanos;
+            this.lastRefill = System.nanoTime();
+        }
+
+        @Override
+        public void onAudioRead(long audioMillis) throws InterruptedException {
+
+            long now = System.nanoTime();
+
+            tokensNanos = Math.min(capacityNanos, tokensNanos + (long) ((now - lastRefill) * speed));
+            lastRefill = now;
+
+            tokensNanos -= audioMillis * 1000000L;
+
+            if (tokensNanos < 0) {
+                long waitNanos = (long) (-tokensNanos / speed);
+                Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+            }
+        }
+    }
+}
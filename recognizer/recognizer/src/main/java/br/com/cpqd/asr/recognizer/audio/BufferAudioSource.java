@@ -16,32 +16,80 @@
 package br.com.cpqd.asr.recognizer.audio;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Audio source implementation of a piped circular buffer. The application
- * writes audio content in the circular buffer which is read by the recognition
+ * Audio source implementation of a circular buffer. The application writes
+ * audio content in the circular buffer which is read by the recognition
  * thread. If there is no content available, the read process is blocked until
- * some data is written. The implementation used PipedInputStream /
- * PipedOutputStream objects to connect the streams and provide the blocking
- * mechanism.
+ * some data is written. The buffer has a single writer and a single reader,
+ * which do not lock: each one only advances its own position, and the other
+ * one is woken up as soon as it has something to do. Reads are not paced,
+ * since they block until the application writes more audio.
  */
-public class BufferAudioSource implements AudioSource {
+public class BufferAudioSource implements PacedAudioSource {
 
     /**
-     * Default buffer size.
+     * What a write does when the buffer has no room for the audio.
      */
-    private static final int PIPE_SIZE = 5 * 1024 * 1024; // 5 MB
+    public enum WriteMode {
 
-    private PipedOutputStream output;
-    private PipedInputStream input;
+        /**
+         * Wait for the recognition thread to read enough audio.
+         */
+        BLOCKING,
 
-    private ReadWriteLock lock = new ReentrantReadWriteLock();
+        /**
+         * Discard the written audio, so the application thread never waits.
+         * See {@link #getDroppedBytes()}.
+         */
+        NON_BLOCKING
+    }
+
+    /**
+     * Default buffer size, about 16 seconds of 8 kHz linear PCM.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final byte[] buffer;
+
+    /**
+     * Mask that maps a position to its index in the buffer.
+     */
+    private final int mask;
 
-    private boolean finished = false;
+    private final WriteMode writeMode;
+
+    /**
+     * Total number of bytes written. Only changed by the writer.
+     */
+    private volatile long writePosition;
+
+    /**
+     * Total number of bytes read. Only changed by the reader.
+     */
+    private volatile long readPosition;
+
+    private volatile boolean finished = false;
+
+    private volatile boolean closed = false;
+
+    /**
+     * The reader thread, while it waits for audio.
+     */
+    private volatile Thread waitingReader;
+
+    /**
+     * The writer thread, while it waits for room.
+     */
+    private volatile Thread waitingWriter;
+
+    /**
+     * Bytes discarded by non-blocking writes. Only changed by the writer.
+     */
+    private volatile long droppedBytes;
 
     /**
      * Creates an audio source, where bytes can be written in a circular buffer by
@@ -51,9 +99,7 @@ public class BufferAudioSource implements AudioSource {
      * @throws IOException if an I/O error occurs.
      */
     public BufferAudioSource() throws IOException {
-        super();
-        output = new PipedOutputStream();
-        input = new PipedInputStream(output, PIPE_SIZE);
+        this(DEFAULT_BUFFER_SIZE);
     }
 
     /**
@@ -61,26 +107,85 @@ public class BufferAudioSource implements AudioSource {
      * one thread (application's), and read by a different thread (to send data to
      * the ASR Server).
      *
-     * @param size the buffer size (in bytes)
+     * @param size the buffer size (in bytes), rounded up to a power of two.
      * @throws IOException if an I/O error occurs.
      */
     public BufferAudioSource(int size) throws IOException {
-        super();
-        output = new PipedOutputStream();
-        input = new PipedInputStream(output, size);
+        this(size, WriteMode.BLOCKING);
+    }
+
+    /**
+     * Creates an audio source, where bytes can be written in a circular buffer by
+     * one thread (application's), and read by a different thread (to send data to
+     * the ASR Server).
+     *
+     * @param size      the buffer size (in bytes), rounded up to a power of two.
+     * @param writeMode what a write does when the buffer has no room for the audio.
+     */
+    public BufferAudioSource(int size, WriteMode writeMode) {
+        if (size <= 0 || size > 1 << 30) {
+            throw new IllegalArgumentException("invalid buffer size: " + size);
+        }
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        this.buffer = new byte[capacity];
+        this.mask = capacity - 1;
+        this.writeMode = writeMode;
     }
 
     @Override
     public int read(byte[] b) throws IOException, NullPointerException {
-        return input.read(b, 0, b.length);
+
+        while (true) {
+
+            long position = readPosition;
+            int available = (int) (writePosition - position);
+
+            if (available > 0) {
+
+                int length = Math.min(available, b.length);
+                int index = (int) position & mask;
+                int first = Math.min(length, buffer.length - index);
+
+                System.arraycopy(buffer, index, b, 0, first);
+                System.arraycopy(buffer, 0, b, first, length - first);
+
+                readPosition = position + length;
+                LockSupport.unpark(waitingWriter);
+
+                return length;
+            }
+
+            if (closed) {
+                throw new IOException("Buffer closed");
+            } else if (finished) {
+                // Nothing can be written after the buffer is finished.
+                if (writePosition == position) {
+                    return -1;
+                }
+                continue;
+            }
+
+            waitingReader = Thread.currentThread();
+            if (writePosition == position && !finished && !closed) {
+                LockSupport.park(this);
+            }
+            waitingReader = null;
+
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
     }
 
     @Override
     public void close() throws IOException {
-        lock.writeLock().lock();
         finished = true;
-        lock.writeLock().unlock();
-        input.close();
+        closed = true;
+        LockSupport.unpark(waitingReader);
+        LockSupport.unpark(waitingWriter);
     }
 
     /**
@@ -90,44 +195,157 @@ public class BufferAudioSource implements AudioSource {
      * @param len number of characters to write
      * @return returns 'false' if the buffer was finished and the byte array was not
      * written.
-     * @throws IOException if the buffer is broken, unconnected or if an I/O error occurs.
+     * @throws IOException if the write is interrupted while waiting for room.
      */
     public boolean write(byte[] b, int len) throws IOException {
-        try {
-            lock.readLock().lock();
-            if (!finished) {
-                output.write(b, 0, len);
+        return write(b, 0, len);
+    }
+
+    /**
+     * Writes part of the specified byte array to the circular buffer.
+     *
+     * @param b   the byte array
+     * @param off the position of the first byte to write
+     * @param len number of bytes to write
+     * @return returns 'false' if the buffer was finished and the bytes were not
+     * written.
+     * @throws IOException if the write is interrupted while waiting for room.
+     */
+    public boolean write(byte[] b, int off, int len) throws IOException {
+
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+
+            int length = reserve(len);
+            if (length < 0) {
+                return false;
+            } else if (length == 0) {
                 return true;
-            } else {
+            }
+
+            long position = writePosition;
+            int index = (int) position & mask;
+            int first = Math.min(length, buffer.length - index);
+
+            System.arraycopy(b, off, buffer, index, first);
+            System.arraycopy(b, off + first, buffer, 0, length - first);
+
+            publish(position + length);
+
+            off += length;
+            len -= length;
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the remaining bytes of the specified buffer to the circular buffer,
+     * copying them directly from it. The buffer position is advanced by the
+     * number of bytes written.
+     *
+     * @param src the buffer with the audio.
+     * @return returns 'false' if the buffer was finished and the bytes were not
+     * written.
+     * @throws IOException if the write is interrupted while waiting for room.
+     */
+    public boolean write(ByteBuffer src) throws IOException {
+
+        while (src.hasRemaining()) {
+
+            int length = reserve(src.remaining());
+            if (length < 0) {
                 return false;
+            } else if (length == 0) {
+                src.position(src.limit());
+                return true;
             }
-        } finally {
-            lock.readLock().unlock();
+
+            long position = writePosition;
+            int index = (int) position & mask;
+            int first = Math.min(length, buffer.length - index);
+
+            src.get(buffer, index, first);
+            src.get(buffer, 0, length - first);
+
+            publish(position + length);
         }
+
+        return true;
     }
 
     /**
-     * Flushes the output stream and forces any buffered output bytes to be written
-     * out. This will notify any readers that bytes are waiting in the pipe.
+     * Waits for room in the buffer, according to the write mode.
+     *
+     * @param length the number of bytes to be written.
+     * @return the number of bytes that may be written, 0 if they are
+     * discarded, or -1 if the buffer was finished.
+     */
+    private int reserve(int length) throws IOException {
+
+        while (true) {
+
+            if (finished) {
+                return -1;
+            }
+
+            int room = buffer.length - (int) (writePosition - readPosition);
+
+            if (room >= length || (room > 0 && writeMode == WriteMode.BLOCKING)) {
+                return Math.min(room, length);
+            } else if (writeMode == WriteMode.NON_BLOCKING) {
+                droppedBytes += length;
+                return 0;
+            }
+
+            waitingWriter = Thread.currentThread();
+            if (writePosition - readPosition == buffer.length && !finished) {
+                LockSupport.park(this);
+            }
+            waitingWriter = null;
+
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * Makes the written bytes available to the reader.
+     */
+    private void publish(long position) {
+        writePosition = position;
+        LockSupport.unpark(waitingReader);
+    }
+
+    /**
+     * Writes are visible to the reader as soon as they return, so there is
+     * nothing to flush.
      *
      * @throws IOException if an I/O error occurs.
      */
     public void flush() throws IOException {
-        output.flush();
+        // Nothing to do.
     }
 
     /**
-     * Closes the output stream and releases any system resources associated with
-     * this stream. This stream may no longer be used for writing bytes.
+     * Informs that no more audio will be written. The reader gets the end of
+     * the stream once it reads the audio still in the buffer.
      *
      * @throws IOException if an I/O error occurs.
      */
     public void finish() throws IOException {
-        lock.writeLock().lock();
         finished = true;
-        lock.writeLock().unlock();
-        output.flush();
-        output.close();
+        LockSupport.unpark(waitingReader);
+        LockSupport.unpark(waitingWriter);
+    }
+
+    @Override
+    public AudioPacing getPacing() {
+        return AudioPacing.unthrottled();
     }
 
     /**
@@ -136,7 +354,26 @@ public class BufferAudioSource implements AudioSource {
      * @return the buffer size in bytes.
      */
     public int getBufferSize() {
-        return PIPE_SIZE;
+        return buffer.length;
+    }
+
+    /**
+     * Returns the number of bytes written to the buffer and not read yet.
+     *
+     * @return the number of bytes available to the reader.
+     */
+    public int available() {
+        return (int) (writePosition - readPosition);
+    }
+
+    /**
+     * Returns the number of bytes discarded because the buffer was full, in
+     * {@link WriteMode#NON_BLOCKING} mode.
+     *
+     * @return the number of discarded bytes.
+     */
+    public long getDroppedBytes() {
+        return droppedBytes;
     }
 
     @Override
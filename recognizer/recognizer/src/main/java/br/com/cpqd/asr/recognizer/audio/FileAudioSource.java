@@ -19,19 +19,35 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * AudioSource implementation for a file audio source.
+ * AudioSource implementation for a file audio source. Since the audio is
+ * already recorded, it is read {@link AudioPacing#unthrottled() unthrottled}
+ * by default, i.e. as fast as the connection sends it.
  */
-public class FileAudioSource implements AudioSource {
+public class FileAudioSource implements PacedAudioSource {
 
     private InputStream inputStream;
 
     private boolean finished = false;
 
+    private AudioPacing pacing;
+
     /**
      * Creates a new instance.
      */
     public FileAudioSource(InputStream inputStream) {
+        this(inputStream, AudioPacing.unthrottled());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param inputStream the audio input stream.
+     * @param pacing      the pacing the audio should be read at, e.g.
+     *                    {@link AudioPacing#realTime()} to simulate live audio.
+     */
+    public FileAudioSource(InputStream inputStream, AudioPacing pacing) {
         this.inputStream = inputStream;
+        this.pacing = pacing;
     }
 
     @Override
@@ -49,4 +65,9 @@ public class FileAudioSource implements AudioSource {
     public void finish() throws IOException {
         finished = true;
     }
+
+    @Override
+    public AudioPacing getPacing() {
+        return pacing;
+    }
 }
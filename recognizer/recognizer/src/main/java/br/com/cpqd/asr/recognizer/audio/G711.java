@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer.audio;
+
+/**
+ * <p>G.711 A-law and mu-law encoders of 16-bit linear PCM audio.</p>
+ * <p>Neither law uses the two least significant bits of a sample, so each
+ * one is encoded with a single lookup in a table of 16384 entries, which is
+ * built on first use.</p>
+ */
+final class G711 {
+
+    /**
+     * Segment end points of A-law, on 13-bit samples.
+     */
+    private static final int[] A_LAW_SEGMENT_END = {0x1F, 0x3F, 0x7F, 0xFF, 0x1FF, 0x3FF, 0x7FF, 0xFFF};
+
+    /**
+     * Segment end points of mu-law, on 14-bit samples.
+     */
+    private static final int[] MU_LAW_SEGMENT_END = {0x3F, 0x7F, 0xFF, 0x1FF, 0x3FF, 0x7FF, 0xFFF, 0x1FFF};
+
+    /**
+     * Bias added to mu-law samples, on 14-bit samples.
+     */
+    private static final int MU_LAW_BIAS = 0x84 >> 2;
+
+    /**
+     * Largest magnitude of mu-law samples, on 14-bit samples.
+     */
+    private static final int MU_LAW_CLIP = 8159;
+
+    private static byte[] aLawTable;
+
+    private static byte[] muLawTable;
+
+    private G711() {
+    }
+
+    /**
+     * @return the A-law code of each 14-bit sample.
+     */
+    static synchronized byte[] aLawTable() {
+
+        if (aLawTable == null) {
+            byte[] table = new byte[1 << 14];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (byte) linearToALaw((short) (i << 2));
+            }
+            aLawTable = table;
+        }
+
+        return aLawTable;
+    }
+
+    /**
+     * @return the mu-law code of each 14-bit sample.
+     */
+    static synchronized byte[] muLawTable() {
+
+        if (muLawTable == null) {
+            byte[] table = new byte[1 << 14];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (byte) linearToMuLaw((short) (i << 2));
+            }
+            muLawTable = table;
+        }
+
+        return muLawTable;
+    }
+
+    /**
+     * Encodes 16-bit linear PCM audio, little-endian.
+     *
+     * @param table     the table of the law.
+     * @param pcm       the PCM audio.
+     * @param offset    offset of the audio in {@code pcm}.
+     * @param length    length of the audio, in bytes. A trailing odd byte is not encoded.
+     * @param out       the buffer the encoded audio is written to.
+     * @param outOffset offset in {@code out}.
+     * @return the number of bytes written to {@code out}.
+     */
+    static int encode(byte[] table, byte[] pcm, int offset, int length, byte[] out, int outOffset) {
+
+        int samples = length >> 1;
+
+        for (int i = 0; i < samples; i++) {
+            int index = offset + (i << 1);
+            // The 14 most significant bits of the sample
+            out[outOffset + i] = table[((pcm[index + 1] & 0xFF) << 6) | ((pcm[index] & 0xFF) >> 2)];
+        }
+
+        return samples;
+    }
+
+    /**
+     * Encodes a sample in A-law.
+     *
+     * @param sample the 16-bit sample.
+     * @return the A-law code.
+     */
+    private static int linearToALaw(int sample) {
+
+        int value = sample >> 3;
+        int mask;
+
+        if (value >= 0) {
+            mask = 0xD5;
+        } else {
+            mask = 0x55;
+            value = -value - 1;
+        }
+
+        int segment = segmentOf(value, A_LAW_SEGMENT_END);
+
+        if (segment >= 8) {
+            return 0x7F ^ mask;
+        }
+
+        int code = segment << 4;
+        code |= (value >> (segment < 2 ? 1 : segment)) & 0xF;
+
+        return code ^ mask;
+    }
+
+    /**
+     * Encodes a sample in mu-law.
+     *
+     * @param sample the 16-bit sample.
+     * @return the mu-law code.
+     */
+    private static int linearToMuLaw(int sample) {
+
+        int value = sample >> 2;
+        int mask;
+
+        if (value < 0) {
+            value = -value;
+            mask = 0x7F;
+        } else {
+            mask = 0xFF;
+        }
+
+        if (value > MU_LAW_CLIP) {
+            value = MU_LAW_CLIP;
+        }
+
+        value += MU_LAW_BIAS;
+
+        int segment = segmentOf(value, MU_LAW_SEGMENT_END);
+
+        if (segment >= 8) {
+            return 0x7F ^ mask;
+        }
+
+        return ((segment << 4) | ((value >> (segment + 1)) & 0xF)) ^ mask;
+    }
+
+    private static int segmentOf(int value, int[] segmentEnd) {
+
+        for (int i = 0; i < segmentEnd.length; i++) {
+            if (value <= segmentEnd[i]) {
+                return i;
+            }
+        }
+
+        return segmentEnd.length;
+    }
+}
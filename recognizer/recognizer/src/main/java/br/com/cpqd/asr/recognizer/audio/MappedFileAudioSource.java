@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * AudioSource implementation for a local audio file, which is memory-mapped
+ * instead of read. The audio is handed to the recognizer as slices of the
+ * mapped file, so it is not copied on the way to the connection. If the file
+ * is a RIFF/WAVE file, its header is skipped and its format is available;
+ * otherwise the whole file is taken as raw audio. Like {@link FileAudioSource},
+ * it is read {@link AudioPacing#unthrottled() unthrottled} by default.
+ * The audio may be read from any position with {@link #seek(long)}, so that a
+ * long recording can be split and its parts recognized separately.
+ */
+public class MappedFileAudioSource implements SlicedAudioSource, PacedAudioSource {
+
+    /**
+     * Maximum size of a mapped region of the file.
+     */
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final AudioPacing pacing;
+
+    /**
+     * Position of the audio data in the file.
+     */
+    private long dataOffset;
+
+    /**
+     * Length of the audio data in the file.
+     */
+    private long dataLength;
+
+    private int sampleRate;
+
+    private int channels;
+
+    private int bitsPerSample;
+
+    private int blockAlign = 1;
+
+    /**
+     * Position of the next read, relative to the start of the audio data.
+     */
+    private long position;
+
+    /**
+     * Position where reads end, relative to the start of the audio data.
+     */
+    private long end;
+
+    /**
+     * The mapped region of the audio data.
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * Position of the mapped region, relative to the start of the audio data.
+     */
+    private long windowStart;
+
+    private volatile boolean finished = false;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param file the audio file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public MappedFileAudioSource(File file) throws IOException {
+        this(file, AudioPacing.unthrottled());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param file   the audio file.
+     * @param pacing the pacing the audio should be read at, e.g.
+     *               {@link AudioPacing#realTime()} to simulate live audio.
+     * @throws IOException if the file cannot be opened.
+     */
+    public MappedFileAudioSource(File file, AudioPacing pacing) throws IOException {
+        this(file, 0, Long.MAX_VALUE, pacing);
+    }
+
+    /**
+     * Creates a new instance that reads part of the audio.
+     *
+     * @param file   the audio file.
+     * @param offset position of the first byte to read, relative to the start
+     *               of the audio data. It is rounded down to a whole sample.
+     * @param length maximum number of bytes to read.
+     * @param pacing the pacing the audio should be read at.
+     * @throws IOException if the file cannot be opened.
+     */
+    public MappedFileAudioSource(File file, long offset, long length, AudioPacing pacing) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.pacing = pacing;
+
+        try {
+            readHeader();
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+
+        seek(offset);
+        this.end = Math.min(dataLength, position + Math.max(length, 0));
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException, NullPointerException {
+        ByteBuffer slice = readSlice(b.length);
+        if (slice == null) return -1;
+        int length = slice.remaining();
+        slice.get(b, 0, length);
+        return length;
+    }
+
+    @Override
+    public synchronized ByteBuffer readSlice(int maxLength) throws IOException {
+        if (finished || position >= end) return null;
+
+        if (window == null || position < windowStart || position >= windowStart + window.capacity()) {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + position,
+                    Math.min(WINDOW_SIZE, end - position));
+        }
+
+        int start = (int) (position - windowStart);
+        int length = (int) Math.min(maxLength, Math.min(end - position, window.capacity() - start));
+
+        ByteBuffer slice = window.duplicate();
+        slice.position(start);
+        slice.limit(start + length);
+
+        position += length;
+
+        return slice.slice();
+    }
+
+    /**
+     * Moves the position of the next read.
+     *
+     * @param offset the new position, relative to the start of the audio data.
+     *               It is rounded down to a whole sample.
+     */
+    public synchronized void seek(long offset) {
+        offset = Math.max(0, Math.min(offset, dataLength));
+        position = offset - offset % blockAlign;
+    }
+
+    /**
+     * @return the position of the next read, relative to the start of the audio data.
+     */
+    public synchronized long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the length of the audio data, in bytes.
+     */
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * @return the sample rate declared by the WAVE header, or 0 if the file has none.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the number of channels declared by the WAVE header, or 0 if the file has none.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @return the sample size declared by the WAVE header, or 0 if the file has none.
+     */
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        finished = true;
+    }
+
+    @Override
+    public AudioPacing getPacing() {
+        return pacing;
+    }
+
+    /**
+     * Finds the audio data of a RIFF/WAVE file, and reads its format.
+     * Files without a RIFF/WAVE header are taken as raw audio.
+     */
+    private void readHeader() throws IOException {
+        long size = channel.size();
+
+        dataOffset = 0;
+        dataLength = size;
+
+        ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(header, 0, 12) || header.getInt(0) != 0x46464952 /* RIFF */
+                || header.getInt(8) != 0x45564157 /* WAVE */) {
+            return;
+        }
+
+        long chunk = 12;
+        while (readFully(header, chunk, 8)) {
+            int id = header.getInt(0);
+            long chunkSize = header.getInt(4) & 0xFFFFFFFFL;
+
+            if (id == 0x20746d66 /* fmt */ && readFully(header, chunk + 8, 16)) {
+                channels = header.getShort(2) & 0xFFFF;
+                sampleRate = header.getInt(4);
+                blockAlign = Math.max(header.getShort(12) & 0xFFFF, 1);
+                bitsPerSample = header.getShort(14) & 0xFFFF;
+            } else if (id == 0x61746164 /* data */) {
+                dataOffset = chunk + 8;
+                // Writers that do not know the length in advance may leave it unset.
+                dataLength = Math.min(chunkSize, size - dataOffset);
+                return;
+            }
+
+            // Chunks are padded to an even length.
+            chunk += 8 + chunkSize + (chunkSize & 1);
+        }
+
+        throw new IOException("WAVE file has no data chunk");
+    }
+
+    /**
+     * Reads part of the file into the start of a buffer.
+     *
+     * @return {@code false} if the file ends before.
+     */
+    private boolean readFully(ByteBuffer buffer, long offset, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
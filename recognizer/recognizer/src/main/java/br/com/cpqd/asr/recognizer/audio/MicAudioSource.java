@@ -21,9 +21,10 @@ import android.media.MediaRecorder;
 import android.util.Log;
 
 /**
- * Audio source implementation for microphone input.
+ * Audio source implementation for microphone input. Reads are not paced,
+ * since {@link AudioRecord#read(byte[], int, int)} already blocks at capture speed.
  */
-public class MicAudioSource implements AudioSource {
+public class MicAudioSource implements PacedAudioSource {
 
     /**
      * Log tag.
@@ -45,11 +46,21 @@ public class MicAudioSource implements AudioSource {
      */
     private static final int RECORDER_AUDIO_SOURCE = MediaRecorder.AudioSource.MIC;
 
+    /**
+     * Sample rate used when the requested one is not supported by the device.
+     */
+    private static final int FALLBACK_SAMPLE_RATE = 16000;
+
     /**
      * Audio record.
      */
     private AudioRecord recorder;
 
+    /**
+     * The sample rate the audio is captured at.
+     */
+    private int sampleRate;
+
     /**
      * Flag to indicate if the capture started.
      */
@@ -61,19 +72,27 @@ public class MicAudioSource implements AudioSource {
     private boolean stopped;
 
     /**
-     * Sets up object initial state.
+     * Sets up object initial state. If the device cannot capture at the given
+     * sample rate, the audio is captured at 16 kHz; see {@link #getSampleRate()}
+     * and {@link ResamplingAudioSource}.
+     *
+     * @param sampleRate the sample rate to capture the audio at, e.g. 8000,
+     *                   16000, 44100 or 48000.
      */
     public MicAudioSource(int sampleRate) throws IllegalArgumentException {
 
-        int recorderSampleRate;
+        int recorderSampleRate = sampleRate;
 
-        if (sampleRate == 8000) {
-            recorderSampleRate = 8000;
-        } else {
-            recorderSampleRate = 16000;
+        int minimumBufferSize = AudioRecord.getMinBufferSize(recorderSampleRate, RECORDER_NUMBER_OF_CHANNELS, RECORDER_AUDIO_FORMAT);
+
+        if (minimumBufferSize == AudioRecord.ERROR_BAD_VALUE && sampleRate != FALLBACK_SAMPLE_RATE) {
+            Log.w(TAG, "sample rate not supported by the device: " + sampleRate + " Hz, capturing at "
+                    + FALLBACK_SAMPLE_RATE + " Hz");
+            recorderSampleRate = FALLBACK_SAMPLE_RATE;
+            minimumBufferSize = AudioRecord.getMinBufferSize(recorderSampleRate, RECORDER_NUMBER_OF_CHANNELS, RECORDER_AUDIO_FORMAT);
         }
 
-        int minimumBufferSize = AudioRecord.getMinBufferSize(recorderSampleRate, RECORDER_NUMBER_OF_CHANNELS, RECORDER_AUDIO_FORMAT);
+        this.sampleRate = recorderSampleRate;
 
         int recorderBufferSize;
 
@@ -121,6 +140,21 @@ public class MicAudioSource implements AudioSource {
         }
     }
 
+    /**
+     * Returns the sample rate the audio is captured at, which may differ from
+     * the requested one.
+     *
+     * @return the sample rate (in Hz).
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public AudioPacing getPacing() {
+        return AudioPacing.unthrottled();
+    }
+
     @Override
     public void close() {
 
@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer.audio;
+
+/**
+ * An audio source that knows how fast it should be read, e.g. because its
+ * reads already block at capture speed or because its content is already recorded.
+ */
+public interface PacedAudioSource extends AudioSource {
+
+    /**
+     * Gets the pacing this source should be read at.
+     *
+     * @return the pacing, or {@code null} to use the recognizer default.
+     */
+    AudioPacing getPacing();
+}
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer.audio;
+
+import java.io.IOException;
+
+/**
+ * <p>AudioSource decorator that converts the sample rate of 16-bit linear PCM
+ * mono audio, e.g. to send 44.1 kHz or 48 kHz captured audio at the 8 kHz or
+ * 16 kHz the recognition model expects, instead of sending up to six times
+ * more bytes.</p>
+ * <p>It is a polyphase resampler: the ratio of the rates is reduced to
+ * L / M, and each output sample is computed with one of the L phases of a
+ * windowed sinc low-pass filter, which also removes the frequencies the
+ * output rate cannot represent. The filter and the buffers are created
+ * upfront, so reads do not allocate once the read size is stable.</p>
+ */
+public class ResamplingAudioSource implements PacedAudioSource {
+
+    /**
+     * Number of zero crossings of the sinc on each side of the filter, at the
+     * lower of the two rates.
+     */
+    private static final int ZERO_CROSSINGS = 10;
+
+    /**
+     * Cutoff of the filter, as a fraction of the Nyquist frequency of the lower rate.
+     */
+    private static final double CUTOFF = 0.92;
+
+    private final AudioSource source;
+
+    private final int inputRate;
+
+    private final int outputRate;
+
+    /**
+     * Number of filter phases, i.e. the upsampling factor.
+     */
+    private final int phases;
+
+    /**
+     * The decimation factor.
+     */
+    private final int step;
+
+    /**
+     * Number of input samples on each side of an output sample.
+     */
+    private final int halfLength;
+
+    /**
+     * Filter coefficients, {@code 2 * halfLength} for each phase.
+     */
+    private final float[] coefficients;
+
+    /**
+     * Input samples not needed anymore are discarded from the start.
+     */
+    private short[] samples;
+
+    private int sampleCount;
+
+    /**
+     * Index in {@link #samples} of the input sample before the next output sample.
+     */
+    private int position;
+
+    /**
+     * Phase of the next output sample.
+     */
+    private int phase;
+
+    /**
+     * Buffer the input audio is read into.
+     */
+    private byte[] input = new byte[0];
+
+    /**
+     * A byte left over from an odd-sized read, or -1.
+     */
+    private int pendingByte = -1;
+
+    private long inputSamples;
+
+    private long outputSamples;
+
+    private boolean ended = false;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param source     the audio source, in 16-bit linear PCM mono.
+     * @param inputRate  the sample rate of the source (in Hz).
+     * @param outputRate the sample rate to convert to (in Hz).
+     */
+    public ResamplingAudioSource(AudioSource source, int inputRate, int outputRate) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("invalid sample rate: " + inputRate + " -> " + outputRate);
+        }
+
+        this.source = source;
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+
+        int divisor = gcd(inputRate, outputRate);
+        this.phases = outputRate / divisor;
+        this.step = inputRate / divisor;
+
+        // Filter at the lower of the two rates, in cycles per input sample.
+        double ratio = Math.min(1.0, (double) outputRate / inputRate);
+        double cutoff = 0.5 * ratio * CUTOFF;
+        this.halfLength = (int) Math.ceil(ZERO_CROSSINGS / ratio);
+        this.coefficients = new float[phases * 2 * halfLength];
+
+        for (int p = 0; p < phases; p++) {
+
+            double sum = 0;
+            double[] phaseCoefficients = new double[2 * halfLength];
+
+            for (int k = 0; k < 2 * halfLength; k++) {
+                // Distance from the output sample to the input sample, in input samples.
+                double distance = (double) p / phases + halfLength - 1 - k;
+                double x = 2 * cutoff * distance;
+                double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+                double w = distance / halfLength;
+                double window = Math.abs(w) >= 1 ? 0
+                        : 0.42 + 0.5 * Math.cos(Math.PI * w) + 0.08 * Math.cos(2 * Math.PI * w);
+                phaseCoefficients[k] = sinc * window;
+                sum += phaseCoefficients[k];
+            }
+
+            // Unity gain for a constant signal in every phase
+            for (int k = 0; k < 2 * halfLength; k++) {
+                coefficients[p * 2 * halfLength + k] = (float) (phaseCoefficients[k] / sum);
+            }
+        }
+
+        // The first output sample is aligned with the first input sample,
+        // which is preceded by silence.
+        this.samples = new short[4 * halfLength];
+        this.sampleCount = halfLength - 1;
+        this.position = halfLength - 1;
+    }
+
+    @Override
+    public synchronized int read(byte[] b) throws IOException, NullPointerException {
+        int capacity = b.length / 2;
+        if (capacity == 0) {
+            throw new IllegalArgumentException("buffer too small: " + b.length);
+        }
+
+        int produced = 0;
+
+        while (produced == 0) {
+
+            produced = resample(b, capacity);
+
+            if (produced > 0) {
+                break;
+            } else if (ended) {
+                return -1;
+            }
+
+            int read = readInput(capacity);
+            if (read == 0) {
+                // Nothing to do yet, e.g. the source is starting.
+                return 0;
+            }
+        }
+
+        return produced * 2;
+    }
+
+    /**
+     * Computes the output samples the buffered input allows.
+     *
+     * @return the number of samples written.
+     */
+    private int resample(byte[] b, int capacity) {
+        int length = 2 * halfLength;
+        // The input samples each output sample depends on, once the source ended.
+        long expected = (inputSamples * phases + step - 1) / step;
+        int produced = 0;
+
+        while (produced < capacity && position + halfLength < sampleCount
+                && (!ended || outputSamples < expected)) {
+
+            int start = position - halfLength + 1;
+            int offset = phase * length;
+            float sum = 0;
+
+            for (int k = 0; k < length; k++) {
+                sum += coefficients[offset + k] * samples[start + k];
+            }
+
+            int value = Math.round(sum);
+            if (value > Short.MAX_VALUE) {
+                value = Short.MAX_VALUE;
+            } else if (value < Short.MIN_VALUE) {
+                value = Short.MIN_VALUE;
+            }
+
+            b[2 * produced] = (byte) value;
+            b[2 * produced + 1] = (byte) (value >> 8);
+            produced++;
+            outputSamples++;
+
+            phase += step;
+            position += phase / phases;
+            phase %= phases;
+        }
+
+        // Discard the input samples no output sample depends on anymore.
+        int discard = Math.min(position - halfLength + 1, sampleCount);
+        if (discard > 0) {
+            System.arraycopy(samples, discard, samples, 0, sampleCount - discard);
+            sampleCount -= discard;
+            position -= discard;
+        }
+
+        return produced;
+    }
+
+    /**
+     * Reads enough input for the given number of output samples. At the end
+     * of the source, the input is followed by silence, so that the last
+     * output samples can be computed.
+     *
+     * @return the number of bytes read, or -1 at the end of the source.
+     */
+    private int readInput(int capacity) throws IOException {
+        int needed = (int) ((long) capacity * step / phases) + 1;
+
+        if (input.length < 2 * needed) {
+            input = new byte[2 * needed];
+        }
+
+        if (samples.length < sampleCount + needed + halfLength + 1) {
+            short[] buffer = new short[sampleCount + needed + halfLength + 1];
+            System.arraycopy(samples, 0, buffer, 0, sampleCount);
+            samples = buffer;
+        }
+
+        int read = source.read(input);
+
+        if (read < 0) {
+            if (!ended) {
+                ended = true;
+                for (int i = 0; i < halfLength; i++) {
+                    samples[sampleCount++] = 0;
+                }
+            }
+            return -1;
+        }
+
+        int i = 0;
+        if (pendingByte >= 0 && read > 0) {
+            samples[sampleCount++] = (short) (pendingByte | input[0] << 8);
+            inputSamples++;
+            pendingByte = -1;
+            i = 1;
+        }
+
+        for (; i + 1 < read; i += 2) {
+            samples[sampleCount++] = (short) ((input[i] & 0xFF) | input[i + 1] << 8);
+            inputSamples++;
+        }
+
+        if (i < read) {
+            pendingByte = input[i] & 0xFF;
+        }
+
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        source.finish();
+    }
+
+    @Override
+    public AudioPacing getPacing() {
+        return source instanceof PacedAudioSource ? ((PacedAudioSource) source).getPacing() : null;
+    }
+
+    /**
+     * @return the sample rate of the decorated source.
+     */
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    /**
+     * @return the sample rate of the audio read from this source.
+     */
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
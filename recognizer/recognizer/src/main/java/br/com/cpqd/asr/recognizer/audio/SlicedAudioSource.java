@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An audio source whose content is already in memory, and that can hand out
+ * views of it instead of copying it into the reader buffer.
+ */
+public interface SlicedAudioSource extends AudioSource {
+
+    /**
+     * Reads the next slice of audio. The returned buffer is a view of the
+     * source content between its position and limit, and must not be
+     * changed.
+     *
+     * @param maxLength the maximum number of bytes to read.
+     * @return the slice, or {@code null} if the end of the audio has been reached.
+     * @throws IOException if some I/O error occurs.
+     */
+    ByteBuffer readSlice(int maxLength) throws IOException;
+}
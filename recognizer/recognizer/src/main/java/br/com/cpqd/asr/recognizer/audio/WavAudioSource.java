@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer.audio;
+
+import java.io.IOException;
+
+/**
+ * AudioSource decorator for RIFF/WAVE audio. The header of the audio is
+ * parsed on the first read, and only the samples of its data chunk are read
+ * from the decorated source, so the header is not sent to the server as if it
+ * were audio. Before reading the audio, the recognizer validates its format
+ * against the configured sample rate and encoding, and fails the recognition
+ * if they do not match. Audio without a RIFF header is read unchanged.
+ */
+public class WavAudioSource implements PacedAudioSource {
+
+    /**
+     * The WAVE format tag of linear PCM audio.
+     */
+    private static final int WAVE_FORMAT_PCM = 1;
+
+    /**
+     * Maximum size of the chunks that precede the audio data.
+     */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private final AudioSource source;
+
+    /**
+     * Audio read from the source while looking for the data chunk.
+     */
+    private byte[] header = new byte[64];
+
+    private int headerLength;
+
+    /**
+     * Position of the audio in {@link #header} not read yet.
+     */
+    private int headerPosition;
+
+    private boolean headerRead = false;
+
+    private boolean riff = false;
+
+    private int formatTag;
+
+    private int sampleRate;
+
+    private int channels;
+
+    private int bitsPerSample;
+
+    /**
+     * Number of bytes of the data chunk not read yet, or -1 if unknown.
+     */
+    private long remaining = -1;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param source the RIFF/WAVE audio source.
+     */
+    public WavAudioSource(AudioSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Reads the header of the audio, if not read yet. It blocks until the
+     * start of the data chunk is read from the decorated source.
+     *
+     * @throws IOException if some I/O error occurs, or {@link AudioFormatException}
+     *                     if the header is invalid.
+     */
+    public synchronized void readHeader() throws IOException {
+        if (headerRead) return;
+
+        if (fill(12) && tag(0, "RIFF")) {
+            if (!tag(8, "WAVE")) {
+                throw new AudioFormatException("RIFF audio is not WAVE");
+            }
+
+            riff = true;
+
+            int chunk = 12;
+            while (true) {
+                if (!fill(chunk + 8)) {
+                    throw new AudioFormatException("WAVE audio has no data chunk");
+                }
+
+                long chunkSize = int32(chunk + 4) & 0xFFFFFFFFL;
+
+                if (tag(chunk, "data")) {
+                    headerPosition = chunk + 8;
+                    // Writers that do not know the length in advance may leave it unset.
+                    remaining = chunkSize == 0xFFFFFFFFL || chunkSize == 0 ? -1 : chunkSize;
+                    break;
+                }
+
+                if (chunk + 8 + chunkSize > MAX_HEADER_SIZE) {
+                    throw new AudioFormatException("WAVE header is too large");
+                }
+
+                if (tag(chunk, "fmt ")) {
+                    if (chunkSize < 16 || !fill(chunk + 24)) {
+                        throw new AudioFormatException("invalid WAVE format chunk");
+                    }
+                    formatTag = int16(chunk + 8);
+                    channels = int16(chunk + 10);
+                    sampleRate = int32(chunk + 12);
+                    bitsPerSample = int16(chunk + 22);
+                }
+
+                // Chunks are padded to an even length.
+                chunk += 8 + (int) chunkSize + (int) (chunkSize & 1);
+            }
+
+            if (sampleRate == 0) {
+                throw new AudioFormatException("WAVE audio has no format chunk");
+            }
+        }
+
+        headerRead = true;
+    }
+
+    /**
+     * Checks that the audio has the given format. Audio without a RIFF header
+     * is not checked.
+     *
+     * @param sampleRate the expected sample rate.
+     * @param encoding   the encoding the audio is sent to the server in. The
+     *                   audio itself must be 16-bit linear PCM, since it is
+     *                   encoded while it is sent.
+     * @throws IOException if some I/O error occurs while reading the header, or
+     *                     {@link AudioFormatException} if the format does not match.
+     */
+    public void validate(int sampleRate, AudioEncoding encoding) throws IOException {
+        readHeader();
+
+        if (!riff) return;
+
+        if (formatTag != WAVE_FORMAT_PCM) {
+            throw new AudioFormatException("unsupported WAVE format: " + formatTag);
+        } else if (channels != 1) {
+            throw new AudioFormatException("unsupported number of channels: " + channels);
+        } else if (this.sampleRate != sampleRate) {
+            throw new AudioFormatException("sample rate is " + this.sampleRate + " Hz, expected " + sampleRate + " Hz");
+        } else if (bitsPerSample != AudioEncoding.LINEAR16.getSampleSize()) {
+            throw new AudioFormatException("sample size is " + bitsPerSample + " bits, expected "
+                    + AudioEncoding.LINEAR16.getSampleSize() + " bits to be sent as " + encoding);
+        }
+    }
+
+    /**
+     * @return whether the audio has a RIFF/WAVE header. The header must have been read.
+     */
+    public boolean isWave() {
+        return riff;
+    }
+
+    /**
+     * @return the sample rate declared by the header, or 0 if there is none.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the number of channels declared by the header, or 0 if there is none.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @return the sample size declared by the header, or 0 if there is none.
+     */
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    @Override
+    public synchronized int read(byte[] b) throws IOException, NullPointerException {
+        readHeader();
+
+        if (remaining == 0) return -1;
+
+        int length;
+        if (headerPosition < headerLength) {
+            length = Math.min(b.length, headerLength - headerPosition);
+            System.arraycopy(header, headerPosition, b, 0, length);
+            headerPosition += length;
+        } else {
+            length = source.read(b);
+            if (length < 0) return -1;
+        }
+
+        if (remaining > 0) {
+            // Chunks after the data chunk are not audio.
+            length = (int) Math.min(length, remaining);
+            remaining -= length;
+        }
+
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        source.finish();
+    }
+
+    @Override
+    public AudioPacing getPacing() {
+        return source instanceof PacedAudioSource ? ((PacedAudioSource) source).getPacing() : null;
+    }
+
+    /**
+     * Reads from the source until the header buffer has the given length.
+     *
+     * @return {@code false} if the audio ends before.
+     */
+    private boolean fill(int length) throws IOException {
+        if (length > header.length) {
+            byte[] buffer = new byte[Math.max(length, header.length * 2)];
+            System.arraycopy(header, 0, buffer, 0, headerLength);
+            header = buffer;
+        }
+
+        while (headerLength < length) {
+            byte[] chunk = new byte[header.length - headerLength];
+            int read = source.read(chunk);
+            if (read < 0) return false;
+            System.arraycopy(chunk, 0, header, headerLength, read);
+            headerLength += read;
+        }
+
+        return true;
+    }
+
+    private boolean tag(int offset, String tag) {
+        for (int i = 0; i < 4; i++) {
+            if (header[offset + i] != tag.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int int16(int offset) {
+        return (header[offset] & 0xFF) | (header[offset + 1] & 0xFF) << 8;
+    }
+
+    private int int32(int offset) {
+        return int16(offset) | int16(offset + 2) << 16;
+    }
+}
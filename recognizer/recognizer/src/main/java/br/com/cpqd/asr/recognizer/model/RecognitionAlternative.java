@@ -15,13 +15,21 @@
  ******************************************************************************/
 package br.com.cpqd.asr.recognizer.model;
 
+import org.json.JSONException;
+
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import br.com.cpqd.asr.recognizer.util.RecognitionResultParser;
+
 /**
  * Represents a alternative sentence or speech segment result of the recognition
  * process.
  *
+ * The word alignment and the interpretations may be kept in the raw result
+ * body, and are only read from it when first requested.
+ *
  */
 public class RecognitionAlternative {
 
@@ -40,6 +48,18 @@ public class RecognitionAlternative {
 	/** the word alignment list. */
 	private List<Word> wordAlignment = new ArrayList<>();
 
+	/** the raw result body the word alignment is read from, if not read yet. */
+	private ByteBuffer wordAlignmentBody;
+
+	/** the position of the word alignment in the raw result body. */
+	private int wordAlignmentOffset;
+
+	/** the raw result body the interpretations are read from, if not read yet. */
+	private ByteBuffer interpretationsBody;
+
+	/** the position of the interpretations in the raw result body. */
+	private int interpretationsOffset;
+
 	public String getLanguageModel() {
 		return languageModel;
 	}
@@ -64,26 +84,97 @@ public class RecognitionAlternative {
 		this.confidence = confidence;
 	}
 
-	public List<Interpretation> getInterpretations() {
+	public synchronized List<Interpretation> getInterpretations() {
+		if (interpretationsBody != null) {
+			try {
+				interpretations = RecognitionResultParser.parseInterpretations(interpretationsBody, interpretationsOffset);
+			} catch (JSONException e) {
+				// the body has been checked when the result was parsed
+				throw new IllegalStateException(e);
+			}
+			interpretationsBody = null;
+		}
 		return interpretations;
 	}
 
-	public void setInterpretations(List<Interpretation> interpretations) {
+	public synchronized void setInterpretations(List<Interpretation> interpretations) {
 		this.interpretations = interpretations;
+		this.interpretationsBody = null;
 	}
 
-	public List<Word> getWordAlignment() {
+	/**
+	 * Sets the interpretations to be read from the raw result body when first
+	 * requested.
+	 *
+	 * @param body
+	 *            the raw result body.
+	 * @param offset
+	 *            the position of the interpretation array in the body.
+	 */
+	public synchronized void setInterpretations(ByteBuffer body, int offset) {
+		this.interpretationsBody = body;
+		this.interpretationsOffset = offset;
+	}
+
+	public synchronized List<Word> getWordAlignment() {
+		if (wordAlignmentBody != null) {
+			try {
+				wordAlignment = RecognitionResultParser.parseWords(wordAlignmentBody, wordAlignmentOffset);
+			} catch (JSONException e) {
+				// the body has been checked when the result was parsed
+				throw new IllegalStateException(e);
+			}
+			wordAlignmentBody = null;
+		}
 		return wordAlignment;
 	}
 
-	public void setWordAlignment(List<Word> wordAlignment) {
+	/**
+	 * Returns the word alignment in its compact representation. If the word
+	 * alignment has not been requested as a list yet, it is read from the raw
+	 * result body without creating an object per word. It is then also
+	 * returned by {@link #getWordAlignment()}.
+	 * 
+	 * @return the compact word alignment.
+	 */
+	public synchronized WordAlignment getCompactWordAlignment() {
+		if (wordAlignmentBody != null) {
+			try {
+				wordAlignment = RecognitionResultParser.parseWordAlignment(wordAlignmentBody, wordAlignmentOffset);
+			} catch (JSONException e) {
+				// the body has been checked when the result was parsed
+				throw new IllegalStateException(e);
+			}
+			wordAlignmentBody = null;
+		} else if (!(wordAlignment instanceof WordAlignment)) {
+			wordAlignment = WordAlignment.of(wordAlignment);
+		}
+		return (WordAlignment) wordAlignment;
+	}
+
+	public synchronized void setWordAlignment(List<Word> wordAlignment) {
 		this.wordAlignment = wordAlignment;
+		this.wordAlignmentBody = null;
+	}
+
+	/**
+	 * Sets the word alignment to be read from the raw result body when first
+	 * requested.
+	 *
+	 * @param body
+	 *            the raw result body.
+	 * @param offset
+	 *            the position of the word array in the body.
+	 */
+	public synchronized void setWordAlignment(ByteBuffer body, int offset) {
+		this.wordAlignmentBody = body;
+		this.wordAlignmentOffset = offset;
 	}
 
 	@Override
 	public String toString() {
 		return "RecognitionAlternative [lm=" + languageModel + ", text=" + text + ", confidence=" + confidence
-				+ ", interpretations=" + interpretations + ", wordAlignment=" + wordAlignment + "]";
+				+ ", interpretations=" + getInterpretations() + ", wordAlignment=" + getWordAlignment() + "]";
 	}
 
 }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact word alignment of a recognition alternative.
+ * 
+ * The words are stored in parallel primitive arrays, and their text in a
+ * single character buffer, instead of one {@link Word} object per word. The
+ * words can be read with the indexed getters, which do not allocate, or as
+ * {@link Word} objects, which are created on each call to {@link #get(int)}.
+ * 
+ */
+public class WordAlignment extends AbstractList<Word> {
+
+	/** the number of words. */
+	private int size;
+
+	/** the text of all the words. */
+	private char[] text;
+
+	/** the offsets of the text of each word, plus the end of the last one. */
+	private int[] textOffsets;
+
+	/** the confidence score of each word. */
+	private int[] confidences;
+
+	/** the start time of each word. */
+	private float[] startTimes;
+
+	/** the end time of each word. */
+	private float[] endTimes;
+
+	public WordAlignment() {
+		this(16);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param capacity
+	 *            the expected number of words.
+	 */
+	public WordAlignment(int capacity) {
+		capacity = Math.max(capacity, 1);
+		text = new char[capacity * 8];
+		textOffsets = new int[capacity + 1];
+		confidences = new int[capacity];
+		startTimes = new float[capacity];
+		endTimes = new float[capacity];
+	}
+
+	/**
+	 * Creates a compact copy of a word alignment list.
+	 * 
+	 * @param words
+	 *            the word alignment list.
+	 * @return the compact word alignment.
+	 */
+	public static WordAlignment of(List<Word> words) {
+		if (words instanceof WordAlignment) {
+			return (WordAlignment) words;
+		}
+
+		WordAlignment alignment = new WordAlignment(words.size());
+		for (Word word : words) {
+			alignment.add(word);
+		}
+		return alignment;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Creates a {@link Word} object with the data of a word. Prefer the indexed
+	 * getters when iterating over long alignments.
+	 */
+	@Override
+	public Word get(int index) {
+		checkIndex(index);
+
+		Word word = new Word();
+		word.setWord(getWord(index));
+		word.setConfidence(confidences[index]);
+		word.setStartTime(startTimes[index]);
+		word.setEndTime(endTimes[index]);
+		return word;
+	}
+
+	@Override
+	public boolean add(Word word) {
+		String value = word.getWord() != null ? word.getWord() : "";
+		ensureTextCapacity(value.length());
+		value.getChars(0, value.length(), text, textOffsets[size]);
+		append(value.length(), word.getConfidence(), word.getStartTime(), word.getEndTime());
+		return true;
+	}
+
+	/**
+	 * Appends a word.
+	 * 
+	 * @param chars
+	 *            the buffer with the word text.
+	 * @param offset
+	 *            the position of the word text in the buffer.
+	 * @param length
+	 *            the length of the word text.
+	 * @param confidence
+	 *            the word confidence score.
+	 * @param startTime
+	 *            the word start time.
+	 * @param endTime
+	 *            the word end time.
+	 */
+	public void add(char[] chars, int offset, int length, int confidence, float startTime, float endTime) {
+		ensureTextCapacity(length);
+		System.arraycopy(chars, offset, text, textOffsets[size], length);
+		append(length, confidence, startTime, endTime);
+	}
+
+	/**
+	 * @return the text of a word.
+	 */
+	public String getWord(int index) {
+		checkIndex(index);
+		return new String(text, textOffsets[index], textOffsets[index + 1] - textOffsets[index]);
+	}
+
+	/**
+	 * Appends the text of a word to a builder, without creating a string.
+	 * 
+	 * @return the builder.
+	 */
+	public StringBuilder appendWord(int index, StringBuilder out) {
+		checkIndex(index);
+		return out.append(text, textOffsets[index], textOffsets[index + 1] - textOffsets[index]);
+	}
+
+	/**
+	 * @return the confidence score of a word.
+	 */
+	public int getConfidence(int index) {
+		checkIndex(index);
+		return confidences[index];
+	}
+
+	/**
+	 * @return the start time of a word.
+	 */
+	public float getStartTime(int index) {
+		checkIndex(index);
+		return startTimes[index];
+	}
+
+	/**
+	 * @return the end time of a word.
+	 */
+	public float getEndTime(int index) {
+		checkIndex(index);
+		return endTimes[index];
+	}
+
+	/**
+	 * Releases the unused capacity of the arrays.
+	 */
+	public void trimToSize() {
+		text = Arrays.copyOf(text, textOffsets[size]);
+		textOffsets = Arrays.copyOf(textOffsets, size + 1);
+		confidences = Arrays.copyOf(confidences, size);
+		startTimes = Arrays.copyOf(startTimes, size);
+		endTimes = Arrays.copyOf(endTimes, size);
+	}
+
+	/**
+	 * Appends the data of a word whose text has been copied to the buffer.
+	 */
+	private void append(int length, int confidence, float startTime, float endTime) {
+		if (size == confidences.length) {
+			int capacity = Math.max(size * 2, 1);
+			textOffsets = Arrays.copyOf(textOffsets, capacity + 1);
+			confidences = Arrays.copyOf(confidences, capacity);
+			startTimes = Arrays.copyOf(startTimes, capacity);
+			endTimes = Arrays.copyOf(endTimes, capacity);
+		}
+
+		confidences[size] = confidence;
+		startTimes[size] = startTime;
+		endTimes[size] = endTime;
+		textOffsets[size + 1] = textOffsets[size] + length;
+		size++;
+		modCount++;
+	}
+
+	private void ensureTextCapacity(int length) {
+		int required = textOffsets[size] + length;
+		if (required > text.length) {
+			text = Arrays.copyOf(text, Math.max(required, text.length * 2));
+		}
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
@@ -0,0 +1,943 @@
+/*******************************************************************************
+ * Copyright 2017 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer.util;
+
+import org.json.JSONException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import br.com.cpqd.asr.recognizer.model.Interpretation;
+import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionAlternative;
+import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionResultCode;
+import br.com.cpqd.asr.recognizer.model.Word;
+import br.com.cpqd.asr.recognizer.model.WordAlignment;
+
+/**
+ * <p>Single pass parser of recognition result bodies.</p>
+ * <p>It reads the UTF-8 encoded JSON octets directly and fills the model
+ * objects as it goes, without decoding the body into a string or building a
+ * JSON tree. Only the text values kept by the model are turned into strings;
+ * field names are matched in a reusable character buffer.</p>
+ * <p>Values are converted the same way as the {@code org.json} based parsing
+ * in {@link Util}: missing or mistyped fields get their default value, and
+ * interpretations that are not strings are kept as compact JSON text.</p>
+ * <p>The word alignment and the interpretations of each alternative are only
+ * checked in the first pass. The alternative keeps a copy of the body and
+ * reads them when they are first requested, so callers that only need the
+ * recognized text do not pay for them.</p>
+ */
+public class RecognitionResultParser {
+
+    /**
+     * The body being parsed.
+     */
+    private final ByteBuffer mInput;
+
+    /**
+     * Position of the body in the input.
+     */
+    private final int mStart;
+
+    /**
+     * Copy of the body kept by the parsed alternatives, created when first needed.
+     */
+    private ByteBuffer mRawBody;
+
+    /**
+     * Characters of the last string read.
+     */
+    private char[] mChars;
+
+    /**
+     * Number of characters of the last string read.
+     */
+    private int mLength;
+
+    /**
+     * Constructor.
+     *
+     * @param body the UTF-8 encoded JSON body. Its position is not changed.
+     */
+    public RecognitionResultParser(ByteBuffer body) {
+        mInput = body.duplicate();
+        mStart = mInput.position();
+        mChars = new char[64];
+    }
+
+    /**
+     * Reads the word alignment of an alternative from a parsed body.
+     *
+     * @param body   the body, as kept by the alternative.
+     * @param offset the position of the word array in the body.
+     * @return the word alignment.
+     * @throws JSONException if the body is not valid JSON.
+     */
+    public static List<Word> parseWords(ByteBuffer body, int offset) throws JSONException {
+
+        RecognitionResultParser parser = new RecognitionResultParser(body);
+        parser.mInput.position(parser.mStart + offset);
+
+        return parser.readWords();
+    }
+
+    /**
+     * Reads the word alignment of an alternative from a parsed body into its
+     * compact representation, without creating an object per word.
+     *
+     * @param body   the body, as kept by the alternative.
+     * @param offset the position of the word array in the body.
+     * @return the compact word alignment.
+     * @throws JSONException if the body is not valid JSON.
+     */
+    public static WordAlignment parseWordAlignment(ByteBuffer body, int offset) throws JSONException {
+
+        RecognitionResultParser parser = new RecognitionResultParser(body);
+        parser.mInput.position(parser.mStart + offset);
+
+        return parser.readWordAlignment();
+    }
+
+    /**
+     * Reads the interpretations of an alternative from a parsed body.
+     *
+     * @param body   the body, as kept by the alternative.
+     * @param offset the position of the interpretation array in the body.
+     * @return the interpretations.
+     * @throws JSONException if the body is not valid JSON.
+     */
+    public static List<Interpretation> parseInterpretations(ByteBuffer body, int offset) throws JSONException {
+
+        RecognitionResultParser parser = new RecognitionResultParser(body);
+        parser.mInput.position(parser.mStart + offset);
+
+        return parser.readInterpretations();
+    }
+
+    /**
+     * Parses a recognition result.
+     *
+     * @return the recognition result.
+     * @throws JSONException if the body is not valid JSON.
+     */
+    public RecognitionResult parseResult() throws JSONException {
+
+        RecognitionResult recognitionResult = new RecognitionResult();
+        String resultStatus = "";
+
+        beginObject();
+        for (boolean first = true; nextField(first); first = false) {
+
+            if (isName("segment_index")) {
+                recognitionResult.setSpeechSegmentIndex((int) readNumber());
+            } else if (isName("last_segment")) {
+                recognitionResult.setLastSpeechSegment(readBoolean());
+            } else if (isName("final_result")) {
+                recognitionResult.setFinalResult(readBoolean());
+            } else if (isName("start_time")) {
+                recognitionResult.setSegmentStartTime((long) readNumber());
+            } else if (isName("end_time")) {
+                recognitionResult.setSegmentEndTime((long) readNumber());
+            } else if (isName("result_status")) {
+                resultStatus = readString();
+            } else if (isName("alternatives") && peek() == '[') {
+                recognitionResult.setAlternatives(readAlternatives());
+            } else {
+                copyValue(null);
+            }
+        }
+
+        recognitionResult.setResultCode(RecognitionResultCode.valueOf(resultStatus));
+
+        return recognitionResult;
+    }
+
+    /**
+     * Parses a partial recognition result, which is read from the first alternative.
+     *
+     * @return the partial recognition result.
+     * @throws JSONException if the body is not valid JSON or has no alternative.
+     */
+    public PartialRecognitionResult parsePartialResult() throws JSONException {
+
+        PartialRecognitionResult partialResult = null;
+
+        beginObject();
+        for (boolean first = true; nextField(first); first = false) {
+
+            if (isName("alternatives") && peek() == '[') {
+
+                beginArray();
+                for (boolean firstAlternative = true; nextElement(firstAlternative); firstAlternative = false) {
+
+                    if (partialResult == null && peek() == '{') {
+
+                        partialResult = new PartialRecognitionResult();
+                        partialResult.setText("");
+
+                        beginObject();
+                        for (boolean firstField = true; nextField(firstField); firstField = false) {
+                            if (isName("segment_index")) {
+                                partialResult.setSpeechSegmentIndex((int) readNumber());
+                            } else if (isName("text")) {
+                                partialResult.setText(readString());
+                            } else {
+                                copyValue(null);
+                            }
+                        }
+                    } else if (partialResult == null) {
+                        throw syntaxError("alternative is not an object");
+                    } else {
+                        copyValue(null);
+                    }
+                }
+            } else {
+                copyValue(null);
+            }
+        }
+
+        if (partialResult == null) {
+            throw new JSONException("No alternative in partial result");
+        }
+
+        return partialResult;
+    }
+
+    /**
+     * Reads the recognition alternatives.
+     */
+    private List<RecognitionAlternative> readAlternatives() throws JSONException {
+
+        List<RecognitionAlternative> recognitionAlternatives = new ArrayList<>();
+
+        beginArray();
+        for (boolean firstAlternative = true; nextElement(firstAlternative); firstAlternative = false) {
+
+            RecognitionAlternative recognitionAlternative = new RecognitionAlternative();
+            recognitionAlternative.setText("");
+            recognitionAlternative.setLanguageModel("");
+
+            beginObject();
+            for (boolean firstField = true; nextField(firstField); firstField = false) {
+
+                if (isName("text")) {
+                    recognitionAlternative.setText(readString());
+                } else if (isName("score")) {
+                    recognitionAlternative.setConfidence((int) readNumber());
+                } else if (isName("lm")) {
+                    recognitionAlternative.setLanguageModel(readString());
+                } else if (isName("words") && peek() == '[') {
+                    int offset = mInput.position() - mStart;
+                    copyValue(null);
+                    recognitionAlternative.setWordAlignment(rawBody(), offset);
+                } else if (isName("interpretations") && peek() == '[') {
+                    int offset = mInput.position() - mStart;
+                    copyValue(null);
+                    recognitionAlternative.setInterpretations(rawBody(), offset);
+                } else {
+                    copyValue(null);
+                }
+            }
+
+            recognitionAlternatives.add(recognitionAlternative);
+        }
+
+        return recognitionAlternatives;
+    }
+
+    /**
+     * Gets the copy of the body kept by the alternatives. The input may be a
+     * view of a receive buffer, which is not kept after the message is handled.
+     */
+    private ByteBuffer rawBody() {
+
+        if (mRawBody == null) {
+
+            ByteBuffer body = mInput.duplicate();
+            body.position(mStart);
+
+            byte[] copy = new byte[body.remaining()];
+            body.get(copy);
+
+            mRawBody = ByteBuffer.wrap(copy).asReadOnlyBuffer();
+        }
+
+        return mRawBody;
+    }
+
+    /**
+     * Reads the word alignment of an alternative.
+     */
+    private List<Word> readWords() throws JSONException {
+
+        List<Word> wordAlignment = new ArrayList<>();
+
+        beginArray();
+        for (boolean firstWord = true; nextElement(firstWord); firstWord = false) {
+
+            Word word = new Word();
+            word.setWord("");
+
+            beginObject();
+            for (boolean firstField = true; nextField(firstField); firstField = false) {
+
+                if (isName("text")) {
+                    word.setWord(readString());
+                } else if (isName("score")) {
+                    word.setConfidence((int) readNumber());
+                } else if (isName("start_time")) {
+                    word.setStartTime((long) readNumber());
+                } else if (isName("end_time")) {
+                    word.setEndTime((long) readNumber());
+                } else {
+                    copyValue(null);
+                }
+            }
+
+            wordAlignment.add(word);
+        }
+
+        return wordAlignment;
+    }
+
+    /**
+     * Reads the word alignment of an alternative into its compact representation.
+     */
+    private WordAlignment readWordAlignment() throws JSONException {
+
+        WordAlignment wordAlignment = new WordAlignment();
+        char[] text = new char[16];
+
+        beginArray();
+        for (boolean firstWord = true; nextElement(firstWord); firstWord = false) {
+
+            int textLength = 0;
+            int confidence = 0;
+            float startTime = 0;
+            float endTime = 0;
+
+            beginObject();
+            for (boolean firstField = true; nextField(firstField); firstField = false) {
+
+                if (isName("text")) {
+                    if (peek() == '"') {
+                        mInput.get();
+                        decodeString();
+                    } else {
+                        String value = readString();
+                        mLength = 0;
+                        for (int i = 0; i < value.length(); i++) {
+                            append(value.charAt(i));
+                        }
+                    }
+                    if (mLength > text.length) {
+                        text = new char[Math.max(mLength, text.length * 2)];
+                    }
+                    System.arraycopy(mChars, 0, text, 0, mLength);
+                    textLength = mLength;
+                    mLength = 0;
+                } else if (isName("score")) {
+                    confidence = (int) readNumber();
+                } else if (isName("start_time")) {
+                    startTime = (long) readNumber();
+                } else if (isName("end_time")) {
+                    endTime = (long) readNumber();
+                } else {
+                    copyValue(null);
+                }
+            }
+
+            wordAlignment.add(text, 0, textLength, confidence, startTime, endTime);
+        }
+
+        wordAlignment.trimToSize();
+
+        return wordAlignment;
+    }
+
+    /**
+     * Reads the interpretations of an alternative.
+     */
+    private List<Interpretation> readInterpretations() throws JSONException {
+
+        List<Interpretation> interpretationList = new ArrayList<>();
+
+        beginArray();
+        for (boolean first = true; nextElement(first); first = false) {
+
+            Interpretation interpretation = new Interpretation();
+            interpretation.setInterpretation(readString());
+
+            interpretationList.add(interpretation);
+        }
+
+        return interpretationList;
+    }
+
+    /**
+     * Reads the start of an object.
+     */
+    private void beginObject() throws JSONException {
+
+        if (next() != '{') {
+            throw syntaxError("expected an object");
+        }
+    }
+
+    /**
+     * Reads the start of an array.
+     */
+    private void beginArray() throws JSONException {
+
+        if (next() != '[') {
+            throw syntaxError("expected an array");
+        }
+    }
+
+    /**
+     * Moves to the next field of the current object, reading its name.
+     *
+     * @param first whether it is the first field of the object.
+     * @return {@code false} at the end of the object.
+     */
+    private boolean nextField(boolean first) throws JSONException {
+
+        int c = next();
+
+        if (c == '}') {
+            return false;
+        } else if (!first) {
+            if (c != ',') {
+                throw syntaxError("expected ',' or '}'");
+            }
+            c = next();
+        }
+
+        if (c != '"') {
+            throw syntaxError("expected a field name");
+        }
+
+        decodeString();
+
+        if (next() != ':') {
+            throw syntaxError("expected ':'");
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves to the next element of the current array.
+     *
+     * @param first whether it is the first element of the array.
+     * @return {@code false} at the end of the array.
+     */
+    private boolean nextElement(boolean first) throws JSONException {
+
+        int c = peek();
+
+        if (c == ']') {
+            mInput.get();
+            return false;
+        } else if (!first) {
+            if (c != ',') {
+                throw syntaxError("expected ',' or ']'");
+            }
+            mInput.get();
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether the name of the current field is the given one.
+     */
+    private boolean isName(String name) {
+
+        if (mLength != name.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < mLength; i++) {
+            if (mChars[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads a value as text: strings are decoded, other values are kept as compact JSON.
+     */
+    private String readString() throws JSONException {
+
+        if (peek() == '"') {
+            mInput.get();
+            decodeString();
+            String value = new String(mChars, 0, mLength);
+            mLength = 0;
+            return value;
+        }
+
+        StringBuilder value = new StringBuilder();
+        copyValue(value);
+        mLength = 0;
+
+        return value.toString();
+    }
+
+    /**
+     * Reads a value as a boolean. Strings are accepted, other values are {@code false}.
+     */
+    private boolean readBoolean() throws JSONException {
+
+        int c = peek();
+        boolean value;
+
+        if (c == 't' || c == 'f') {
+            value = c == 't';
+            copyValue(null);
+        } else if (c == '"') {
+            value = "true".equalsIgnoreCase(readString());
+        } else {
+            value = false;
+            copyValue(null);
+        }
+
+        mLength = 0;
+
+        return value;
+    }
+
+    /**
+     * Reads a value as a number. Numeric strings are accepted, other values are zero.
+     */
+    private double readNumber() throws JSONException {
+
+        int c = peek();
+        double value;
+
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            value = parseNumber();
+        } else if (c == '"') {
+            try {
+                value = Double.parseDouble(readString().trim());
+            } catch (NumberFormatException e) {
+                value = 0;
+            }
+        } else {
+            value = 0;
+            copyValue(null);
+        }
+
+        mLength = 0;
+
+        return value;
+    }
+
+    /**
+     * Parses a JSON number.
+     */
+    private double parseNumber() throws JSONException {
+
+        boolean negative = false;
+        long mantissa = 0;
+        int scale = 0;
+
+        int c = mInput.get();
+        if (c == '-') {
+            negative = true;
+            c = mInput.hasRemaining() ? mInput.get() : -1;
+        }
+
+        if (c < '0' || c > '9') {
+            throw syntaxError("invalid number");
+        }
+
+        while (c >= '0' && c <= '9') {
+            mantissa = mantissa * 10 + (c - '0');
+            c = nextRaw();
+        }
+
+        if (c == '.') {
+            c = nextRaw();
+            while (c >= '0' && c <= '9') {
+                if (mantissa < Long.MAX_VALUE / 10) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    scale--;
+                }
+                c = nextRaw();
+            }
+        }
+
+        if (c == 'e' || c == 'E') {
+            c = nextRaw();
+            boolean negativeExponent = c == '-';
+            if (c == '-' || c == '+') {
+                c = nextRaw();
+            }
+            int exponent = 0;
+            while (c >= '0' && c <= '9') {
+                exponent = exponent * 10 + (c - '0');
+                c = nextRaw();
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        // Give back the octet after the number
+        if (c != -1) {
+            mInput.position(mInput.position() - 1);
+        }
+
+        double value = scale == 0 ? mantissa : mantissa * Math.pow(10, scale);
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Copies a value as compact JSON text, or skips it if the output is {@code null}.
+     */
+    private void copyValue(StringBuilder out) throws JSONException {
+
+        int c = next();
+
+        if (c == '"') {
+
+            if (out != null) {
+                decodeString();
+                quote(out);
+            } else {
+                skipString();
+            }
+
+        } else if (c == '{' || c == '[') {
+
+            int close = c == '{' ? '}' : ']';
+            if (out != null) {
+                out.append((char) c);
+            }
+
+            if (peek() == close) {
+                mInput.get();
+            } else {
+                while (true) {
+
+                    if (c == '{') {
+                        if (next() != '"') {
+                            throw syntaxError("expected a field name");
+                        }
+                        if (out != null) {
+                            decodeString();
+                            quote(out);
+                            out.append(':');
+                        } else {
+                            skipString();
+                        }
+                        if (next() != ':') {
+                            throw syntaxError("expected ':'");
+                        }
+                    }
+
+                    copyValue(out);
+
+                    int separator = next();
+                    if (separator == close) {
+                        break;
+                    } else if (separator != ',') {
+                        throw syntaxError("expected ',' or '" + (char) close + "'");
+                    }
+                    if (out != null) {
+                        out.append(',');
+                    }
+                }
+            }
+
+            if (out != null) {
+                out.append((char) close);
+            }
+
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+
+            mInput.position(mInput.position() - 1);
+            int start = mInput.position();
+            parseNumber();
+            if (out != null) {
+                for (int i = start; i < mInput.position(); i++) {
+                    out.append((char) mInput.get(i));
+                }
+            }
+
+        } else if (c == 't') {
+            literal("rue", "true", out);
+        } else if (c == 'f') {
+            literal("alse", "false", out);
+        } else if (c == 'n') {
+            literal("ull", "null", out);
+        } else {
+            throw syntaxError("unexpected character");
+        }
+    }
+
+    /**
+     * Reads the rest of a literal.
+     */
+    private void literal(String rest, String value, StringBuilder out) throws JSONException {
+
+        for (int i = 0; i < rest.length(); i++) {
+            if (!mInput.hasRemaining() || mInput.get() != rest.charAt(i)) {
+                throw syntaxError("invalid literal");
+            }
+        }
+
+        if (out != null) {
+            out.append(value);
+        }
+    }
+
+    /**
+     * Appends the last string read as a JSON string, escaped as {@code org.json} does.
+     */
+    private void quote(StringBuilder out) {
+
+        out.append('"');
+
+        for (int i = 0; i < mLength; i++) {
+
+            char c = mChars[i];
+
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    out.append('\\').append(c);
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        out.append(String.format(Constants.DEFAULT_LOCALE, "\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+
+        out.append('"');
+    }
+
+    /**
+     * Decodes a string whose opening quote has been read into the character buffer.
+     */
+    private void decodeString() throws JSONException {
+
+        mLength = 0;
+
+        while (true) {
+
+            if (!mInput.hasRemaining()) {
+                throw syntaxError("unterminated string");
+            }
+
+            int b = mInput.get();
+
+            if (b == '"') {
+                return;
+            } else if (b == '\\') {
+                append(unescape());
+            } else if (b >= 0) {
+                append((char) b);
+            } else {
+                decodeMultiByte(b & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Skips a string whose opening quote has been read, without decoding it.
+     */
+    private void skipString() throws JSONException {
+
+        while (true) {
+
+            if (!mInput.hasRemaining()) {
+                throw syntaxError("unterminated string");
+            }
+
+            int b = mInput.get();
+
+            if (b == '"') {
+                return;
+            } else if (b == '\\') {
+                unescape();
+            }
+        }
+    }
+
+    /**
+     * Decodes an escape sequence whose backslash has been read.
+     */
+    private char unescape() throws JSONException {
+
+        if (!mInput.hasRemaining()) {
+            throw syntaxError("unterminated escape sequence");
+        }
+
+        int c = mInput.get();
+
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = mInput.hasRemaining() ? Character.digit(mInput.get(), 16) : -1;
+                    if (digit < 0) {
+                        throw syntaxError("invalid unicode escape");
+                    }
+                    code = (code << 4) | digit;
+                }
+                return (char) code;
+            default:
+                return (char) c;
+        }
+    }
+
+    /**
+     * Decodes a multi-byte UTF-8 sequence, given its first octet.
+     * Malformed sequences are replaced by U+FFFD.
+     */
+    private void decodeMultiByte(int first) {
+
+        int continuation;
+        int code;
+
+        if ((first & 0xE0) == 0xC0) {
+            continuation = 1;
+            code = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            continuation = 2;
+            code = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            continuation = 3;
+            code = first & 0x07;
+        } else {
+            append('\uFFFD');
+            return;
+        }
+
+        for (int i = 0; i < continuation; i++) {
+
+            if (!mInput.hasRemaining() || (mInput.get(mInput.position()) & 0xC0) != 0x80) {
+                append('\uFFFD');
+                return;
+            }
+
+            code = (code << 6) | (mInput.get() & 0x3F);
+        }
+
+        if (code >= 0x10000) {
+            code -= 0x10000;
+            append((char) (0xD800 + (code >>> 10)));
+            append((char) (0xDC00 + (code & 0x3FF)));
+        } else {
+            append((char) code);
+        }
+    }
+
+    /**
+     * Appends a character to the character buffer.
+     */
+    private void append(char c) {
+
+        if (mLength == mChars.length) {
+            char[] chars = new char[mChars.length * 2];
+            System.arraycopy(mChars, 0, chars, 0, mLength);
+            mChars = chars;
+        }
+
+        mChars[mLength++] = c;
+    }
+
+    /**
+     * Reads the next octet that is not whitespace.
+     */
+    private int next() throws JSONException {
+
+        int c = peek();
+        mInput.get();
+
+        return c;
+    }
+
+    /**
+     * Peeks at the next octet that is not whitespace, skipping the whitespace.
+     */
+    private int peek() throws JSONException {
+
+        while (mInput.hasRemaining()) {
+
+            int c = mInput.get(mInput.position());
+
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+
+            mInput.get();
+        }
+
+        throw syntaxError("unexpected end of input");
+    }
+
+    /**
+     * Reads the next octet, or -1 at the end of the input.
+     */
+    private int nextRaw() {
+        return mInput.hasRemaining() ? mInput.get() : -1;
+    }
+
+    /**
+     * Creates a syntax error at the current position.
+     */
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at offset " + mInput.position());
+    }
+}
@@ -21,6 +21,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -51,6 +52,38 @@ public class Util {
         return (int) bufferSize;
     }
 
+    /**
+     * Transform UTF-8 encoded JSON into PartialRecognitionResult, in a single pass.
+     *
+     * @see RecognitionResultParser
+     */
+    public static PartialRecognitionResult getPartialRecogResult(ByteBuffer body) {
+        if (body != null) {
+            try {
+                return new RecognitionResultParser(body).parsePartialResult();
+            } catch (JSONException e) {
+                Log.w(TAG, e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Transform UTF-8 encoded JSON into RecognitionResult, in a single pass.
+     *
+     * @see RecognitionResultParser
+     */
+    public static RecognitionResult getRecogResult(ByteBuffer body) {
+        if (body != null) {
+            try {
+                return new RecognitionResultParser(body).parseResult();
+            } catch (JSONException e) {
+                Log.w(TAG, e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
     /**
      * Transform JSON into PartialRecognitionResult
      */
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import br.com.cpqd.asr.recognizer.util.Constants;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the in-place buffer decoder of {@link AsrMessage} is equivalent to
+ * the byte array one, and compares their throughput on a partial result message.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AsrMessageDecoderTest {
+
+    private static final String PARTIAL_RESULT_BODY = "{\"alternatives\":[{\"text\":\"você me pede na carta que eu\","
+            + "\"score\":87,\"segment_index\":0}],\"segment_index\":0,\"last_segment\":false,\"final_result\":false,"
+            + "\"result_status\":\"PROCESSING\"}";
+
+    private static final int BENCHMARK_WARM_UP = 2000;
+
+    private static final int BENCHMARK_ITERATIONS = 20000;
+
+    @Test
+    public void decodeResultMessage() {
+
+        byte[] serialized = partialResultMessage();
+
+        AsrMessage fromArray = new AsrMessage(serialized);
+        AsrMessage fromBuffer = new AsrMessage(ByteBuffer.wrap(serialized));
+
+        assertEquals(fromArray.getMethod(), fromBuffer.getMethod());
+        assertEquals("PROCESSING", fromBuffer.getHeaderFieldValueForName("Result-Status"));
+        assertEquals("application/json", fromBuffer.getHeaderFieldValueForName("Content-Type"));
+        assertArrayEquals(fromArray.getBody(), fromBuffer.getBody());
+        assertEquals(PARTIAL_RESULT_BODY, fromBuffer.getBodyAsString(Constants.DEFAULT_CHARSET));
+        assertArrayEquals(fromArray.toByteArray(), fromBuffer.toByteArray());
+    }
+
+    @Test
+    public void bodyIsReadOnlySliceOfBuffer() {
+
+        byte[] serialized = partialResultMessage();
+
+        ByteBuffer bodyBuffer = new AsrMessage(ByteBuffer.wrap(serialized)).getBodyBuffer();
+
+        assertTrue("Body should be read-only.", bodyBuffer.isReadOnly());
+        assertEquals(PARTIAL_RESULT_BODY.getBytes(Constants.NETWORK_CHARSET).length, bodyBuffer.remaining());
+
+        // The body shares the original octets.
+        serialized[serialized.length - 2] = 'X';
+        assertEquals('X', bodyBuffer.get(bodyBuffer.limit() - 2));
+    }
+
+    @Test
+    public void decodeResponseWithoutBody() {
+
+        byte[] serialized = "ASR 2.3 RESPONSE\r\nHandle: 1\r\nMethod: CREATE_SESSION\r\nResult: SUCCESS\r\n\r\n"
+                .getBytes(Constants.NETWORK_CHARSET);
+
+        AsrMessage asrMessage = new AsrMessage(ByteBuffer.wrap(serialized));
+
+        assertEquals(AsrMessage.METHOD_RESPONSE, asrMessage.getMethod());
+        assertEquals(AsrMessage.METHOD_CREATE_SESSION, asrMessage.getHeaderFieldValueForName("Method"));
+        assertEquals("SUCCESS", asrMessage.getHeaderFieldValueForName("Result"));
+        assertNull(asrMessage.getBodyBuffer());
+    }
+
+    @Test
+    public void rejectInvalidMessages() {
+
+        for (String invalid : Arrays.asList("ASR 2.3 UNKNOWN\r\n\r\n", "ASR 3.0 RESPONSE\r\n\r\n",
+                "ASR 2.3 RESPONSE\r\n", "HTTP/1.1 200 OK\r\n\r\n")) {
+
+            try {
+                new AsrMessage(ByteBuffer.wrap(invalid.getBytes(Constants.NETWORK_CHARSET)));
+                fail("Message should be rejected: " + invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkDecoders() {
+
+        byte[] serialized = partialResultMessage();
+
+        for (int i = 0; i < BENCHMARK_WARM_UP; i++) {
+            new AsrMessage(serialized.clone()).getBody();
+            new AsrMessage(ByteBuffer.wrap(serialized)).getBodyAsString(Constants.DEFAULT_CHARSET);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            // The former decoder copied the received buffer before parsing it.
+            AsrMessage asrMessage = new AsrMessage(serialized.clone());
+            new String(asrMessage.getBody(), Constants.DEFAULT_CHARSET);
+        }
+        long arrayNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            new AsrMessage(ByteBuffer.wrap(serialized)).getBodyAsString(Constants.DEFAULT_CHARSET);
+        }
+        long bufferNanos = System.nanoTime() - start;
+
+        System.out.println("### AsrMessage(byte[]): " + arrayNanos / BENCHMARK_ITERATIONS + " ns/op");
+        System.out.println("### AsrMessage(ByteBuffer): " + bufferNanos / BENCHMARK_ITERATIONS + " ns/op");
+    }
+
+    private static byte[] partialResultMessage() {
+
+        byte[] body = PARTIAL_RESULT_BODY.getBytes(Constants.NETWORK_CHARSET);
+
+        return ("ASR 2.3 RECOGNITION_RESULT\r\nHandle: 5ba1f3\r\nResult-Status: PROCESSING\r\n"
+                + "Content-Type: application/json\r\nContent-Length: " + body.length + "\r\n\r\n"
+                + PARTIAL_RESULT_BODY).getBytes(Constants.NETWORK_CHARSET);
+    }
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import br.com.cpqd.asr.recognizer.audio.AudioSource;
+import br.com.cpqd.asr.recognizer.audio.FileAudioSource;
+import br.com.cpqd.asr.recognizer.model.LanguageModelList;
+import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionResultCode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class AsrSessionPoolTest {
+
+    private static final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private static final int RECOGNITIONS = 5;
+
+    @Test
+    public void reuseSessions() {
+
+        AsrSessionPool pool = AsrSessionPool.builder().maxIdleSessions(2).build(mContext);
+
+        try {
+            SpeechRecognizer.Builder builder = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .connectOnRecognize(true).autoClose(true).sessionPool(pool);
+
+            pool.warmUp(builder, 2);
+            Thread.sleep(2000);
+
+            assertEquals("Number of idle sessions is not the expected.", 2, pool.getStatistics().getIdleSessions());
+
+            SpeechRecognizerInterface recognizer = builder.build(mContext);
+
+            for (int i = 0; i < RECOGNITIONS; i++) {
+
+                AudioSource audio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio));
+                recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+                List<RecognitionResult> results = recognizer.waitRecognitionResult();
+
+                assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+                assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, results.get(0).getAlternatives().get(0).getText());
+            }
+
+            recognizer.close();
+
+            AsrSessionPool.Statistics statistics = pool.getStatistics();
+            System.out.println("### " + statistics);
+
+            assertEquals("Number of recognitions is not the expected.", RECOGNITIONS, statistics.getFirstAudioCount());
+            assertTrue("Sessions should be reused.", statistics.getWarmAcquisitions() >= RECOGNITIONS);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void replaceAcquiredSessions() {
+
+        AsrSessionPool pool = AsrSessionPool.builder().maxIdleSessions(1).build(mContext);
+        List<SpeechRecognizerInterface> recognizers = new ArrayList<>();
+
+        try {
+            SpeechRecognizer.Builder builder = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .connectOnRecognize(true).sessionPool(pool);
+
+            pool.warmUp(builder, 1);
+            Thread.sleep(2000);
+
+            assertEquals("Number of idle sessions is not the expected.", 1, pool.getStatistics().getIdleSessions());
+
+            for (int i = 0; i < 2; i++) {
+
+                // Each recognizer holds its session until closed, so only a replacement can be warm
+                SpeechRecognizerInterface recognizer = builder.build(mContext);
+                recognizers.add(recognizer);
+
+                AudioSource audio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio));
+                recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+                List<RecognitionResult> results = recognizer.waitRecognitionResult();
+
+                assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+
+                Thread.sleep(2000);
+
+                assertEquals("The acquired session was not replaced.", 1, pool.getStatistics().getIdleSessions());
+                assertEquals("Number of warm acquisitions is not the expected.", i + 1, pool.getStatistics().getWarmAcquisitions());
+            }
+
+            for (SpeechRecognizerInterface recognizer : recognizers) {
+                recognizer.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void sessionsInIoLooper() {
+
+        HandlerThread ioThread = new HandlerThread("AsrIoThread");
+        ioThread.start();
+
+        AsrSessionPool pool = AsrSessionPool.builder().maxIdleSessions(1).build(mContext);
+
+        try {
+            SpeechRecognizer.Builder builder = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .connectOnRecognize(true).ioLooper(ioThread.getLooper()).singleThread(true).sessionPool(pool);
+
+            pool.warmUp(builder, 1);
+            Thread.sleep(2000);
+
+            // A session of the looper does not serve recognizers without it
+            SpeechRecognizer.Builder otherBuilder = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .sessionPool(pool);
+            AsrServerConnectionThread connection = pool.acquire(otherBuilder, new Handler(ioThread.getLooper()));
+            pool.release(otherBuilder, connection);
+
+            assertEquals("Number of warm acquisitions is not the expected.", 0, pool.getStatistics().getWarmAcquisitions());
+
+            connection = pool.acquire(builder, new Handler(ioThread.getLooper()));
+
+            assertEquals("Number of warm acquisitions is not the expected.", 1, pool.getStatistics().getWarmAcquisitions());
+            assertSame("The session is not handled in the I/O looper.", ioThread.getLooper(),
+                    connection.obtainMessage().getTarget().getLooper());
+
+            pool.release(builder, connection);
+            Thread.sleep(2000);
+
+            SpeechRecognizerInterface recognizer = builder.build(mContext);
+
+            AudioSource audio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio));
+            recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+            List<RecognitionResult> results = recognizer.waitRecognitionResult();
+
+            assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+
+            recognizer.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        } finally {
+            pool.close();
+            ioThread.quit();
+        }
+    }
+
+    @Test
+    public void evictIdleSessions() {
+
+        AsrSessionPool pool = AsrSessionPool.builder().build(mContext);
+
+        try {
+            SpeechRecognizer.Builder builder = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .maxSessionIdleSeconds(3).sessionPool(pool);
+
+            pool.warmUp(builder, 1);
+            Thread.sleep(1000);
+
+            assertEquals("Number of idle sessions is not the expected.", 1, pool.getStatistics().getIdleSessions());
+
+            Thread.sleep(4000);
+
+            assertEquals("Number of idle sessions is not the expected.", 0, pool.getStatistics().getIdleSessions());
+            assertEquals("Number of evictions is not the expected.", 1, pool.getStatistics().getEvictions());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        } finally {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+
+import br.com.cpqd.asr.recognizer.audio.AudioEncoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class AudioEncodingTest {
+
+    @Test
+    public void encodeALaw() {
+
+        try {
+            byte[] encoded = encode(AudioEncoding.ALAW, 0, -1, 32767, -32768, 1000, -1000);
+
+            assertArrayEquals("A-law codes are not the expected.",
+                    new byte[]{(byte) 0xD5, 0x55, (byte) 0xAA, 0x2A, (byte) 0xFA, 0x7A}, encoded);
+            assertEquals("Content type is not the expected.", "audio/PCMA", AudioEncoding.ALAW.getContentType());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void encodeMuLaw() {
+
+        try {
+            byte[] encoded = encode(AudioEncoding.MULAW, 0, -1, 32767, -32768, 1000, -1000);
+
+            assertArrayEquals("mu-law codes are not the expected.",
+                    new byte[]{(byte) 0xFF, 0x7E, (byte) 0x80, 0x00, (byte) 0xCE, 0x4E}, encoded);
+            assertEquals("Content type is not the expected.", "audio/PCMU", AudioEncoding.MULAW.getContentType());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void encodedLength() {
+
+        try {
+            assertEquals("Encoded length is not the expected.", 4000, AudioEncoding.LINEAR16.getEncodedLength(4000));
+            assertEquals("Encoded length is not the expected.", 2000, AudioEncoding.ALAW.getEncodedLength(4000));
+            assertEquals("Encoded length is not the expected.", 2000, AudioEncoding.MULAW.getEncodedLength(4001));
+
+            // A trailing odd byte is not encoded
+            byte[] out = new byte[2];
+            assertEquals("Encoded length is not the expected.", 1,
+                    AudioEncoding.MULAW.encode(new byte[]{0, 0, 0}, 0, 3, out, 0));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void encodeOddLengths() {
+
+        try {
+            int[] samples = new int[101];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (int) (20000 * Math.sin(2 * Math.PI * 440 * i / 8000));
+            }
+            byte[] pcm = pcm(samples);
+
+            for (AudioEncoding encoding : new AudioEncoding[]{AudioEncoding.ALAW, AudioEncoding.MULAW}) {
+
+                byte[] expected = encode(encoding, samples);
+
+                // Packets of odd length split samples, which are carried over to the next packet
+                for (int packetLength = 1; packetLength <= 9; packetLength += 2) {
+
+                    PcmPacketEncoder encoder = new PcmPacketEncoder(encoding);
+                    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+
+                    for (int offset = 0; offset < pcm.length; offset += packetLength) {
+                        encoded.write(encoder.encode(pcm, offset, Math.min(packetLength, pcm.length - offset)));
+                    }
+
+                    assertArrayEquals(encoding + " codes are not the expected for packets of "
+                            + packetLength + " bytes.", expected, encoded.toByteArray());
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void benchmarkEncoding() {
+
+        try {
+            // One minute of 8 kHz audio
+            int samples = 8000 * 60;
+            byte[] pcm = new byte[samples * 2];
+            for (int i = 0; i < samples; i++) {
+                short sample = (short) (10000 * Math.sin(2 * Math.PI * 440 * i / 8000));
+                pcm[2 * i] = (byte) sample;
+                pcm[2 * i + 1] = (byte) (sample >> 8);
+            }
+
+            for (AudioEncoding encoding : AudioEncoding.values()) {
+
+                byte[] out = new byte[encoding.getEncodedLength(pcm.length)];
+
+                long start = System.nanoTime();
+                int length = encoding.encode(pcm, 0, pcm.length, out, 0);
+                long elapsed = System.nanoTime() - start;
+
+                System.out.println("### " + encoding + ": " + length + " bytes per minute, encoded in "
+                        + elapsed / 1000 + " us");
+
+                assertEquals("Encoded length is not the expected.", out.length, length);
+            }
+
+            assertTrue("A-law does not halve the audio.",
+                    AudioEncoding.ALAW.getEncodedLength(pcm.length) * 2 == pcm.length);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    private static byte[] encode(AudioEncoding encoding, int... samples) {
+
+        byte[] pcm = pcm(samples);
+
+        byte[] out = new byte[encoding.getEncodedLength(pcm.length)];
+        encoding.encode(pcm, 0, pcm.length, out, 0);
+
+        return out;
+    }
+
+    private static byte[] pcm(int... samples) {
+
+        byte[] pcm = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            pcm[2 * i] = (byte) samples[i];
+            pcm[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+
+        return pcm;
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import br.com.cpqd.asr.recognizer.audio.AudioPacing;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the rate and burst of the {@link AudioPacing} policies.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AudioPacingTest {
+
+    /**
+     * Duration of each audio packet, in milliseconds.
+     */
+    private static final int PACKET_MILLIS = 100;
+
+    /**
+     * Allowed scheduling delay, in milliseconds.
+     */
+    private static final long TOLERANCE_MILLIS = 150;
+
+    @Test
+    public void unthrottled() throws InterruptedException {
+
+        // An hour of audio is read without waiting
+        long elapsed = read(AudioPacing.unthrottled().newPacer(), 36, 100000);
+
+        assertTrue("Unthrottled pacing waited " + elapsed + " ms", elapsed < TOLERANCE_MILLIS);
+    }
+
+    @Test
+    public void realTime() throws InterruptedException {
+
+        long elapsed = read(AudioPacing.realTime().newPacer(), 10, PACKET_MILLIS);
+
+        assertBetween(10 * PACKET_MILLIS, elapsed);
+    }
+
+    @Test
+    public void tokenBucketRate() throws InterruptedException {
+
+        // Two seconds of audio at 4 times real time
+        long elapsed = read(AudioPacing.tokenBucket(4, 0).newPacer(), 20, PACKET_MILLIS);
+
+        assertBetween(20 * PACKET_MILLIS / 4, elapsed);
+
+        // Half a second of audio at half real time
+        elapsed = read(AudioPacing.tokenBucket(0.5F, 0).newPacer(), 5, PACKET_MILLIS);
+
+        assertBetween(2 * 5 * PACKET_MILLIS, elapsed);
+    }
+
+    @Test
+    public void tokenBucketBurst() throws InterruptedException {
+
+        AudioPacing.Pacer pacer = AudioPacing.tokenBucket(1, 5 * PACKET_MILLIS).newPacer();
+
+        // The burst is sent right away
+        long elapsed = read(pacer, 5, PACKET_MILLIS);
+
+        assertTrue("Burst was paced: " + elapsed + " ms", elapsed < TOLERANCE_MILLIS);
+
+        // Then audio is sent at the rate
+        elapsed = read(pacer, 5, PACKET_MILLIS);
+
+        assertBetween(5 * PACKET_MILLIS, elapsed);
+
+        // Idle time refills the bucket, but only up to the burst
+        Thread.sleep(20 * PACKET_MILLIS);
+
+        elapsed = read(pacer, 5, PACKET_MILLIS);
+
+        assertTrue("Refilled burst was paced: " + elapsed + " ms", elapsed < TOLERANCE_MILLIS);
+
+        elapsed = read(pacer, 1, PACKET_MILLIS);
+
+        assertBetween(PACKET_MILLIS, elapsed);
+    }
+
+    @Test
+    public void invalidArguments() {
+
+        try {
+            AudioPacing.tokenBucket(0, 0);
+            fail("Zero speed was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            AudioPacing.tokenBucket(1, -1);
+            fail("Negative burst was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Reads packets through a pacer.
+     *
+     * @param pacer        the pacer.
+     * @param packets      the number of packets.
+     * @param packetMillis the duration of each packet, in milliseconds.
+     * @return the elapsed time, in milliseconds.
+     */
+    private static long read(AudioPacing.Pacer pacer, int packets, long packetMillis) throws InterruptedException {
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < packets; i++) {
+            pacer.onAudioRead(packetMillis);
+        }
+
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+    /**
+     * Checks that the elapsed time is close to the expected one.  It may be a bit
+     * shorter, as the time spent in a previous read refills the bucket.
+     *
+     * @param expected the expected time, in milliseconds.
+     * @param elapsed  the elapsed time, in milliseconds.
+     */
+    private static void assertBetween(long expected, long elapsed) {
+        assertTrue("Expected " + expected + " ms, elapsed " + elapsed + " ms",
+                elapsed >= expected * 9 / 10 && elapsed < expected + TOLERANCE_MILLIS);
+    }
+}
@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import br.com.cpqd.asr.recognizer.audio.AudioEncoding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the audio packets in flight to the server are bounded by the
+ * window of audio packet permits, including the audio buffered while the
+ * recognition is being started.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AudioPacketWindowTest {
+
+    /**
+     * Maximum number of audio packets in flight.
+     */
+    private static final int WINDOW = 8;
+
+    /**
+     * Number of audio packets buffered while the recognition is started.
+     */
+    private static final int PRE_ROLL_PACKETS = 20;
+
+    private HandlerThread mIoThread;
+
+    private Handler mIoHandler;
+
+    private AsrServerConnectionThread mConnection;
+
+    /* The audio frames written to the fake session, and their completion handlers. */
+    private final List<ByteBuffer> mFrames = Collections.synchronizedList(new ArrayList<ByteBuffer>());
+
+    private final List<SendHandler> mSendHandlers = Collections.synchronizedList(new ArrayList<SendHandler>());
+
+    private int mWrittenFrames;
+
+    @Before
+    public void setUp() throws Exception {
+
+        mIoThread = new HandlerThread("audio-packet-window-test");
+        mIoThread.start();
+        mIoHandler = new Handler(mIoThread.getLooper());
+
+        mConnection = new AsrServerConnectionThread(InstrumentationRegistry.getTargetContext(), mIoHandler,
+                new URI("ws://localhost"), null, 0, null, AudioEncoding.LINEAR16, mIoThread.getLooper());
+
+        // The connection streams audio to a session that only records the frames
+        setField("mWebsocketSession", newSession());
+        setField("mConnectionState", getField("CONNECTION_STATE_STREAMING_AUDIO"));
+    }
+
+    @After
+    public void tearDown() {
+        mIoThread.quit();
+    }
+
+    @Test
+    public void readerHeldBack() throws Exception {
+
+        for (int i = 0; i < WINDOW; i++) {
+            assertTrue("Audio packet permit " + i + " was not granted.",
+                    mConnection.acquireAudioPacketPermit(0, TimeUnit.MILLISECONDS));
+        }
+
+        assertFalse("The reader is not held back by a full window.",
+                mConnection.acquireAudioPacketPermit(100, TimeUnit.MILLISECONDS));
+
+        sendAudioPacket(0, false);
+        writeFrames(1);
+
+        assertTrue("The permit of a written packet was not given back.",
+                mConnection.acquireAudioPacketPermit(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void preRollWithinWindow() throws Exception {
+
+        startPreRoll();
+
+        assertEquals("The pre-roll is not sent within the window.", WINDOW, mFrames.size());
+        assertFalse("The reader is not held back by the pre-roll.",
+                mConnection.acquireAudioPacketPermit(0, TimeUnit.MILLISECONDS));
+
+        while (mWrittenFrames < mFrames.size()) {
+            writeFrames(1);
+
+            assertTrue("Too many audio packets in flight.", mFrames.size() - mWrittenFrames <= WINDOW);
+        }
+
+        assertFrames(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19);
+        assertFreePermits(WINDOW);
+    }
+
+    @Test
+    public void liveAudioAfterPreRoll() throws Exception {
+
+        startPreRoll();
+
+        // The reader takes the permits given back while the pre-roll is being sent
+        writeFrameToReader();
+        sendAudioPacket(100, false);
+        writeFrameToReader();
+        sendAudioPacket(101, true);
+
+        assertTrue("Too many audio packets in flight.", mFrames.size() - mWrittenFrames <= WINDOW);
+
+        while (mWrittenFrames < mFrames.size()) {
+            writeFrames(1);
+        }
+
+        assertFrames(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 100, 101);
+        assertEquals("The last packet does not end the audio.", 1, countLastPackets());
+        assertTrue("The last packet is not the last frame.", isLastPacket(mFrames.get(mFrames.size() - 1)));
+        assertFreePermits(WINDOW);
+    }
+
+    @Test
+    public void cancelDuringPreRoll() throws Exception {
+
+        startPreRoll();
+
+        writeFrames(2);
+        writeFrameToReader();
+        sendAudioPacket(100, false);
+
+        Message message = mConnection.obtainMessage();
+        message.arg1 = AsrServerConnectionThread.MESSAGE_CANCEL_RECOGNITION;
+        message.sendToTarget();
+
+        while (mWrittenFrames < mFrames.size()) {
+            writeFrames(1);
+        }
+
+        // The buffered audio is dropped and its permits are given back
+        assertEquals("Buffered audio was sent after the cancellation.", WINDOW + 3, mFrames.size());
+        assertFreePermits(WINDOW);
+    }
+
+    /**
+     * Buffers the pre-roll packets and starts sending them, as done once the
+     * recognition is started.
+     */
+    private void startPreRoll() throws Exception {
+
+        PreRollBuffer preRoll = new PreRollBuffer(Integer.MAX_VALUE, PreRollOverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < PRE_ROLL_PACKETS; i++) {
+            preRoll.add(newPacket(i));
+        }
+        mConnection.setPreRollBuffer(preRoll);
+
+        final Method sendPreRoll = AsrServerConnectionThread.class.getDeclaredMethod("sendPreRoll");
+        sendPreRoll.setAccessible(true);
+
+        runOnConnection(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendPreRoll.invoke(mConnection);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues an audio packet to the connection, as done by the audio reader
+     * once it holds a permit.
+     */
+    private void sendAudioPacket(int id, boolean isLastPacket) throws Exception {
+
+        Message message = mConnection.obtainMessage();
+        message.arg1 = AsrServerConnectionThread.MESSAGE_HANDLE_AUDIO_PACKET;
+        message.arg2 = isLastPacket ? 1 : 0;
+        message.obj = newPacket(id);
+        message.sendToTarget();
+
+        runOnConnection(null);
+    }
+
+    /**
+     * Completes the oldest frames being written to the session.
+     */
+    private void writeFrames(final int count) throws Exception {
+
+        runOnConnection(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    mSendHandlers.get(mWrittenFrames++).onResult(new SendResult());
+                }
+            }
+        });
+
+        // Lets the connection handle the messages posted by the completions
+        runOnConnection(null);
+    }
+
+    /**
+     * Completes the oldest frame being written to the session, and lets the
+     * reader take its permit before the connection resumes the buffered audio.
+     */
+    private void writeFrameToReader() throws Exception {
+
+        runOnConnection(new Runnable() {
+            @Override
+            public void run() {
+                mSendHandlers.get(mWrittenFrames++).onResult(new SendResult());
+
+                try {
+                    assertTrue("Audio packet permit was not granted.",
+                            mConnection.acquireAudioPacketPermit(0, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a task in the looper of the connection and waits for it.
+     */
+    private void runOnConnection(final Runnable task) throws InterruptedException {
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        mIoHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (task != null) {
+                    task.run();
+                }
+                done.countDown();
+            }
+        });
+
+        assertTrue("The connection looper is blocked.", done.await(5, TimeUnit.SECONDS));
+    }
+
+    private void assertFrames(int... ids) {
+
+        assertEquals("Number of frames is not the expected.", ids.length, mFrames.size());
+
+        for (int i = 0; i < ids.length; i++) {
+            ByteBuffer frame = mFrames.get(i);
+            assertEquals("Frame " + i + " is out of order.", (byte) ids[i], frame.get(frame.limit() - 1));
+        }
+    }
+
+    private void assertFreePermits(int expected) throws InterruptedException {
+
+        int permits = 0;
+        while (mConnection.acquireAudioPacketPermit(0, TimeUnit.MILLISECONDS)) {
+            permits++;
+        }
+
+        assertEquals("Audio packet permits were not given back.", expected, permits);
+    }
+
+    private int countLastPackets() {
+
+        int count = 0;
+        for (ByteBuffer frame : mFrames) {
+            if (isLastPacket(frame)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static boolean isLastPacket(ByteBuffer frame) {
+
+        byte[] bytes = new byte[frame.remaining()];
+        frame.duplicate().get(bytes);
+
+        return new String(bytes).contains("LastPacket: true");
+    }
+
+    private static ByteBuffer newPacket(int id) {
+        return ByteBuffer.wrap(new byte[]{0, 0, 0, (byte) id});
+    }
+
+    private Session newSession() {
+
+        final RemoteEndpoint.Async asyncRemote = (RemoteEndpoint.Async) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{RemoteEndpoint.Async.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("sendBinary")) {
+                            mFrames.add((ByteBuffer) args[0]);
+                            mSendHandlers.add((SendHandler) args[1]);
+                        }
+                        return null;
+                    }
+                });
+
+        final RemoteEndpoint.Basic basicRemote = (RemoteEndpoint.Basic) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{RemoteEndpoint.Basic.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Session.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getAsyncRemote")) {
+                            return asyncRemote;
+                        } else if (method.getName().equals("getBasicRemote")) {
+                            return basicRemote;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private Object getField(String name) throws Exception {
+
+        Field field = AsrServerConnectionThread.class.getDeclaredField(name);
+        field.setAccessible(true);
+
+        return field.get(mConnection);
+    }
+
+    private void setField(String name, Object value) throws Exception {
+
+        Field field = AsrServerConnectionThread.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mConnection, value);
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import br.com.cpqd.asr.recognizer.audio.BufferAudioSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class BufferAudioSourceTest {
+
+    @Test
+    public void readWhatIsWritten() {
+
+        try {
+            final BufferAudioSource audio = new BufferAudioSource(1000);
+            final int total = 1024 * 1024;
+
+            assertEquals("Buffer size is not the expected.", 1024, audio.getBufferSize());
+
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        byte[] packet = new byte[700];
+                        int written = 0;
+                        while (written < total) {
+                            int length = Math.min(packet.length, total - written);
+                            for (int i = 0; i < length; i++) {
+                                packet[i] = (byte) (written + i);
+                            }
+                            if (written % 2 == 0) {
+                                audio.write(packet, length);
+                            } else {
+                                audio.write(ByteBuffer.wrap(packet, 0, length));
+                            }
+                            written += length;
+                        }
+                        audio.finish();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            writer.start();
+
+            byte[] buffer = new byte[1600];
+            int read = 0;
+            int length;
+            while ((length = audio.read(buffer)) != -1) {
+                for (int i = 0; i < length; i++) {
+                    assertEquals("Audio byte is not the expected.", (byte) (read + i), buffer[i]);
+                }
+                read += length;
+            }
+            writer.join();
+
+            assertEquals("Number of bytes read is not the expected.", total, read);
+            assertFalse("Write should fail after finish.", audio.write(buffer, buffer.length));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void dropWhenFull() {
+
+        try {
+            BufferAudioSource audio = new BufferAudioSource(1024, BufferAudioSource.WriteMode.NON_BLOCKING);
+
+            for (int i = 0; i < 5; i++) {
+                assertTrue("Write should not fail before finish.", audio.write(new byte[300], 300));
+            }
+
+            assertEquals("Number of available bytes is not the expected.", 900, audio.available());
+            assertEquals("Number of dropped bytes is not the expected.", 600, audio.getDroppedBytes());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import br.com.cpqd.asr.recognizer.audio.FileAudioSource;
+import br.com.cpqd.asr.recognizer.audio.WavAudioSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class EndOfSpeechDetectorTest {
+
+    private static final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /**
+     * Number of bytes of a 20 ms frame of 8 kHz audio.
+     */
+    private static final int FRAME_BYTES = 320;
+
+    /**
+     * Number of frames of the default hangover time.
+     */
+    private static final int HANGOVER_FRAMES = EndOfSpeechDetector.DEFAULT_HANGOVER_MILLIS
+            / EndOfSpeechDetector.DEFAULT_FRAME_MILLIS;
+
+    @Test
+    public void silenceIsNotSpeech() {
+
+        try {
+            EndOfSpeechDetector detector = new EndOfSpeechDetector();
+
+            assertFalse("Silence should not be a pause.", detector.isPausing(readAsset(TestConstants.SilenceAudio)));
+            assertFalse("Silence should not be speech.", detector.isSpeech());
+            assertEquals("Speech start is not the expected.", -1, detector.getSpeechStartFrame());
+            assertTrue("Silence level is not the expected.",
+                    detector.getLastFrameLevel() < EndOfSpeechDetector.DEFAULT_SILENCE_THRESHOLD);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void speechWithoutEndSilence() {
+
+        try {
+            EndOfSpeechDetector detector = new EndOfSpeechDetector();
+
+            assertFalse("Audio without end silence should not be a pause.",
+                    detector.isPausing(readAsset(TestConstants.NoEndSilenceAudio)));
+            assertTrue("Audio should end in speech.", detector.isSpeech());
+            assertTrue("Speech should start after the initial silence.", detector.getSpeechStartFrame() > 0);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void pauseAfterHangover() {
+
+        try {
+            byte[] speech = readAsset(TestConstants.CpfAudio);
+            byte[] audio = concat(speech, readAsset(TestConstants.SilenceAudio), 8000 * 2);
+
+            EndOfSpeechDetector detector = new EndOfSpeechDetector();
+
+            assertTrue("Silence after speech should be a pause.", detector.isPausing(audio));
+            assertEquals("Pause frame is not the expected.", speech.length / FRAME_BYTES + HANGOVER_FRAMES - 1,
+                    detector.getPauseFrame());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void sameResultForAnySlicing() {
+
+        try {
+            byte[] audio = concat(readAsset(TestConstants.CpfAudio), readAsset(TestConstants.SilenceAudio), 8000 * 2);
+
+            EndOfSpeechDetector whole = new EndOfSpeechDetector();
+            whole.isPausing(audio);
+
+            // Odd slices of a byte array
+            EndOfSpeechDetector bytes = new EndOfSpeechDetector();
+            for (int i = 0; i < audio.length; i += 333) {
+                bytes.process(audio, i, Math.min(333, audio.length - i));
+            }
+            assertSameResult(whole, bytes);
+
+            // Slices of a direct buffer, in its default big-endian order
+            ByteBuffer direct = ByteBuffer.allocateDirect(audio.length);
+            direct.put(audio).flip();
+            EndOfSpeechDetector buffers = new EndOfSpeechDetector();
+            for (int i = 0; i < audio.length; i += 1000) {
+                direct.limit(Math.min(audio.length, i + 1000)).position(i);
+                buffers.process(direct.slice());
+            }
+            assertSameResult(whole, buffers);
+
+            // Odd slices of a direct buffer, which split samples
+            EndOfSpeechDetector oddBuffers = new EndOfSpeechDetector();
+            for (int i = 0; i < audio.length; i += 333) {
+                direct.limit(Math.min(audio.length, i + 333)).position(i);
+                oddBuffers.process(direct.slice());
+            }
+            assertSameResult(whole, oddBuffers);
+
+            // Odd slices alternating between byte arrays and direct buffers
+            EndOfSpeechDetector mixed = new EndOfSpeechDetector();
+            for (int i = 0, n = 0; i < audio.length; i += 333, n++) {
+                int length = Math.min(333, audio.length - i);
+                if (n % 2 == 0) {
+                    mixed.process(audio, i, length);
+                } else {
+                    direct.limit(i + length).position(i);
+                    mixed.process(direct.slice());
+                }
+            }
+            assertSameResult(whole, mixed);
+
+            // Samples
+            short[] samples = new short[audio.length / 2];
+            ByteBuffer.wrap(audio).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+            EndOfSpeechDetector shorts = new EndOfSpeechDetector();
+            for (int i = 0; i < samples.length; i += 77) {
+                shorts.process(samples, i, Math.min(77, samples.length - i));
+            }
+            assertSameResult(whole, shorts);
+
+            EndOfSpeechDetector shortBuffer = new EndOfSpeechDetector();
+            shortBuffer.process(ByteBuffer.wrap(audio).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+            assertSameResult(whole, shortBuffer);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void lowByteIsUnsigned() {
+
+        try {
+            // The sample 0x00FF must not be read as -1
+            assertEquals("Energy is not the expected.", 255.0 * 255.0,
+                    EndOfSpeechDetector.energy(new byte[]{(byte) 0xFF, 0x00}, 0, 2), 0);
+            assertEquals("Energy is not the expected.", 32768.0 * 32768.0,
+                    EndOfSpeechDetector.energy(new short[]{Short.MIN_VALUE}, 0, 1), 0);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void benchmarkDetector() {
+
+        try {
+            byte[] audio = readAsset(TestConstants.PizzaVegAudio);
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(audio.length);
+            direct.put(audio).flip();
+
+            ShortBuffer samples = ShortBuffer.allocate(audio.length / 2);
+            samples.put(ByteBuffer.wrap(audio).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer()).flip();
+
+            double seconds = audio.length / (8000.0 * 2);
+
+            for (int round = 0; round < 5; round++) {
+
+                long start = System.nanoTime();
+                new EndOfSpeechDetector().process(audio, 0, audio.length);
+                long bytesNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                new EndOfSpeechDetector().process(direct);
+                long directNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                new EndOfSpeechDetector().process(samples);
+                long samplesNanos = System.nanoTime() - start;
+
+                if (round == 4) {
+                    System.out.println("### EndOfSpeechDetector byte[]: " + (long) (bytesNanos / seconds) + " ns per second of audio");
+                    System.out.println("### EndOfSpeechDetector direct ByteBuffer: " + (long) (directNanos / seconds) + " ns per second of audio");
+                    System.out.println("### EndOfSpeechDetector ShortBuffer: " + (long) (samplesNanos / seconds) + " ns per second of audio");
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    private static void assertSameResult(EndOfSpeechDetector expected, EndOfSpeechDetector actual) {
+        assertEquals("Frame count is not the expected.", expected.getFrameCount(), actual.getFrameCount());
+        assertEquals("Speech start is not the expected.", expected.getSpeechStartFrame(), actual.getSpeechStartFrame());
+        assertEquals("Pause frame is not the expected.", expected.getPauseFrame(), actual.getPauseFrame());
+        assertEquals("Pause state is not the expected.", expected.isPausing(), actual.isPausing());
+    }
+
+    private static byte[] concat(byte[] first, byte[] second, int secondLength) {
+
+        byte[] result = new byte[first.length + secondLength];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, secondLength);
+
+        return result;
+    }
+
+    private static byte[] readAsset(String name) throws Exception {
+
+        WavAudioSource audio = new WavAudioSource(new FileAudioSource(mContext.getAssets().open(name)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = audio.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        audio.close();
+
+        return out.toByteArray();
+    }
+}
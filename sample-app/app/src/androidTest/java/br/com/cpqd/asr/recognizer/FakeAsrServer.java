@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Minimal ASR server for the tests that need a server misbehaving in a
+ * controlled way.</p>
+ * <p>It accepts websocket connections on the loopback interface and answers
+ * the session and recognition requests with success, and the last audio packet
+ * with the end of listening, but it never sends a recognition result.</p>
+ */
+class FakeAsrServer {
+
+    /**
+     * GUID appended to the websocket key of the handshake.
+     */
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final ServerSocket mServerSocket;
+
+    /* The accepted connections, closed along with the server. */
+    private final List<Socket> mSockets = new ArrayList<>();
+
+    private volatile boolean mClosed;
+
+    /**
+     * Starts the server on an ephemeral port.
+     *
+     * @throws IOException if the server socket could not be opened.
+     */
+    FakeAsrServer() throws IOException {
+
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "fake-asr-server");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * @return the URL of the server.
+     */
+    String getURL() {
+        return "ws://127.0.0.1:" + mServerSocket.getLocalPort() + "/asr-server/asr";
+    }
+
+    /**
+     * Stops the server and closes its connections.
+     */
+    void close() {
+
+        mClosed = true;
+
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // ignoring
+        }
+
+        synchronized (mSockets) {
+            for (Socket socket : mSockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // ignoring
+                }
+            }
+        }
+    }
+
+    private void accept() {
+
+        while (!mClosed) {
+
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+
+            synchronized (mSockets) {
+                mSockets.add(socket);
+            }
+
+            Thread connectionThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException e) {
+                        // The connection was closed
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // ignoring
+                        }
+                    }
+                }
+            }, "fake-asr-connection");
+            connectionThread.setDaemon(true);
+            connectionThread.start();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+
+        handshake(in, out);
+
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+
+        while (true) {
+
+            int first = in.readUnsignedByte();
+            int second = in.readUnsignedByte();
+            int opcode = first & 0x0F;
+
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = in.readUnsignedShort();
+            } else if (length == 127) {
+                length = in.readLong();
+            }
+
+            byte[] mask = new byte[4];
+            if ((second & 0x80) != 0) {
+                in.readFully(mask);
+            }
+
+            byte[] payload = new byte[(int) length];
+            in.readFully(payload);
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i % 4];
+            }
+
+            if (opcode == 0x8) {
+                writeFrame(out, 0x8, payload);
+                return;
+            } else if (opcode == 0x9) {
+                writeFrame(out, 0xA, payload);
+                continue;
+            } else if (opcode == 0xA) {
+                continue;
+            }
+
+            message.write(payload);
+
+            // Messages may be fragmented
+            if ((first & 0x80) != 0) {
+                handleMessage(out, message.toByteArray());
+                message.reset();
+            }
+        }
+    }
+
+    private void handshake(DataInputStream in, OutputStream out) throws IOException {
+
+        String key = null;
+
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                key = line.substring(colon + 1).trim();
+            }
+        }
+
+        if (key == null) {
+            throw new IOException("Not a websocket handshake");
+        }
+
+        String accept;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + WEBSOCKET_GUID).getBytes(CHARSET));
+            accept = Base64.encodeToString(digest, Base64.NO_WRAP);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(CHARSET));
+        out.flush();
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+
+        StringBuilder line = new StringBuilder();
+
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Connection closed during the handshake");
+            } else if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+
+        return line.toString();
+    }
+
+    /**
+     * Answers an ASR message. Recognition results are never sent.
+     */
+    private void handleMessage(OutputStream out, byte[] message) throws IOException {
+
+        String text = new String(message, CHARSET);
+        String startLine = text.substring(0, text.indexOf("\r\n"));
+        String method = startLine.substring(startLine.lastIndexOf(' ') + 1);
+
+        if (method.equals(AsrMessage.METHOD_SEND_AUDIO)) {
+
+            // The server stops listening at the end of the audio
+            if (text.contains("LastPacket: true")) {
+                writeResponse(out, method, "Session-Status: RECOGNIZING\r\n");
+            }
+
+        } else {
+            writeResponse(out, method, "");
+        }
+    }
+
+    private void writeResponse(OutputStream out, String method, String headerFields) throws IOException {
+
+        String response = AsrMessage.ASR_PROTOCOL + " " + AsrMessage.ASR_VERSION + " " + AsrMessage.METHOD_RESPONSE
+                + "\r\nHandle: 1\r\nMethod: " + method + "\r\nResult: SUCCESS\r\n" + headerFields + "\r\n";
+
+        writeFrame(out, 0x2, response.getBytes(CHARSET));
+    }
+
+    private static synchronized void writeFrame(OutputStream out, int opcode, byte[] payload) throws IOException {
+
+        out.write(0x80 | opcode);
+
+        if (payload.length < 126) {
+            out.write(payload.length);
+        } else if (payload.length < 65536) {
+            out.write(126);
+            out.write(payload.length >> 8);
+            out.write(payload.length);
+        } else {
+            out.write(127);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) ((long) payload.length >> shift));
+            }
+        }
+
+        out.write(payload);
+        out.flush();
+    }
+}
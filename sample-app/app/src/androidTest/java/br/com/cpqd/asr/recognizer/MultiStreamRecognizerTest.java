@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import br.com.cpqd.asr.recognizer.audio.FileAudioSource;
+import br.com.cpqd.asr.recognizer.model.LanguageModelList;
+import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionResultCode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class MultiStreamRecognizerTest {
+
+    private static final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private static final int RECOGNITIONS = 8;
+
+    @Test
+    public void concurrentRecognitions() {
+
+        MultiStreamRecognizer recognizer = null;
+
+        try {
+            recognizer = MultiStreamRecognizer.builder(SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal))
+                    .ioThreads(2).maxSessions(3).build(mContext);
+
+            LanguageModelList lmList = LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build();
+            List<RecognitionHandle> handles = new ArrayList<>();
+
+            for (int i = 0; i < RECOGNITIONS; i++) {
+                handles.add(recognizer.recognize(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)), lmList));
+            }
+
+            for (RecognitionHandle handle : handles) {
+
+                List<RecognitionResult> results = handle.get(30, TimeUnit.SECONDS);
+
+                assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+                assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, results.get(0).getAlternatives().get(0).getText());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        } finally {
+            if (recognizer != null) {
+                recognizer.close();
+            }
+        }
+    }
+
+    @Test
+    public void cancelPendingRecognition() {
+
+        MultiStreamRecognizer recognizer = null;
+
+        try {
+            recognizer = MultiStreamRecognizer.builder(SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal))
+                    .maxSessions(1).build(mContext);
+
+            LanguageModelList lmList = LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build();
+
+            RecognitionHandle running = recognizer.recognize(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)), lmList);
+            RecognitionHandle pending = recognizer.recognize(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)), lmList);
+
+            assertTrue("Pending recognition should be cancelled.", pending.cancel(true));
+            assertTrue("Pending recognition should be cancelled.", pending.isCancelled());
+
+            List<RecognitionResult> results = running.get(30, TimeUnit.SECONDS);
+            assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, results.get(0).getAlternatives().get(0).getText());
+            assertFalse("Completed recognition should not be cancelled.", running.cancel(true));
+
+            // The session is free for a new recognition
+            RecognitionHandle next = recognizer.recognize(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)), lmList);
+            results = next.get(30, TimeUnit.SECONDS);
+            assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, results.get(0).getAlternatives().get(0).getText());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        } finally {
+            if (recognizer != null) {
+                recognizer.close();
+            }
+        }
+    }
+
+    @Test
+    public void resultTimeout() {
+
+        FakeAsrServer server = null;
+        MultiStreamRecognizer recognizer = null;
+
+        try {
+            // The server never sends the final result
+            server = new FakeAsrServer();
+            recognizer = MultiStreamRecognizer.builder(SpeechRecognizer.builder().serverURL(server.getURL())
+                    .maxWaitSeconds(2)).maxSessions(1).build(mContext);
+
+            LanguageModelList lmList = LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build();
+
+            RecognitionHandle running = recognizer.recognize(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)), lmList);
+            RecognitionHandle pending = recognizer.recognize(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)), lmList);
+
+            assertTimedOut(running);
+
+            // The session is freed for the pending recognition
+            assertTimedOut(pending);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        } finally {
+            if (recognizer != null) {
+                recognizer.close();
+            }
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    private static void assertTimedOut(RecognitionHandle handle) throws Exception {
+
+        try {
+            handle.get(15, TimeUnit.SECONDS);
+            fail("Recognition without result should not complete.");
+        } catch (ExecutionException e) {
+            // expected
+        } catch (TimeoutException e) {
+            fail("Recognition without result was not timed out.");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+public class PartialResultCoalescerTest {
+
+    @Test
+    public void latestPartialPerSegment() {
+
+        PartialResultCoalescer coalescer = new PartialResultCoalescer(PartialResultMode.LATEST);
+
+        PartialResultCoalescer.Slot slot0 = coalescer.offer(partial(0, "um"));
+        assertNotNull("First partial of the segment should be sent.", slot0);
+        assertNull("Unread partial should be replaced.", coalescer.offer(partial(0, "um dois")));
+
+        PartialResultCoalescer.Slot slot1 = coalescer.offer(partial(1, "três"));
+        assertNotNull("First partial of the segment should be sent.", slot1);
+
+        assertEquals("Partial text is not the expected.", "um dois", slot0.take().getText());
+        assertNull("Partial should be taken only once.", slot0.take());
+
+        // The segment 0 partial was read, so the next one is sent again
+        assertNotNull("Partial after a read one should be sent.", coalescer.offer(partial(0, "um dois três")));
+
+        // The final result of segment 1 arrives before its partial is read
+        coalescer.onFinalResult(1);
+        assertNull("Out of date partial should be discarded.", slot1.take());
+
+        assertEquals("Number of merged partials is not the expected.", 1, coalescer.getMergedCount());
+        assertEquals("Number of dropped partials is not the expected.", 1, coalescer.getDroppedCount());
+    }
+
+    @Test
+    public void allAndNoneModes() {
+
+        PartialResultCoalescer all = new PartialResultCoalescer(PartialResultMode.ALL);
+        assertNotNull("Every partial should be sent.", all.offer(partial(0, "um")));
+        assertNotNull("Every partial should be sent.", all.offer(partial(0, "um dois")));
+        assertEquals("Number of merged partials is not the expected.", 0, all.getMergedCount());
+
+        PartialResultCoalescer none = new PartialResultCoalescer(PartialResultMode.NONE);
+        assertFalse("Partials should not be parsed.", none.isEnabled());
+        none.drop();
+        assertEquals("Number of dropped partials is not the expected.", 1, none.getDroppedCount());
+    }
+
+    private static PartialRecognitionResult partial(int segment, String text) {
+        PartialRecognitionResult result = new PartialRecognitionResult();
+        result.setSpeechSegmentIndex(segment);
+        result.setText(text);
+        return result;
+    }
+}
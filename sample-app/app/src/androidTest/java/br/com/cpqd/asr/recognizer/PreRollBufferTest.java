@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PreRollBufferTest {
+
+    @Test
+    public void drainInOrder() {
+
+        PreRollBuffer buffer = new PreRollBuffer(1000, PreRollOverflowPolicy.FAIL);
+
+        ByteBuffer first = packet(400);
+        ByteBuffer second = packet(400);
+
+        assertTrue("Packet should fit.", buffer.add(first));
+        assertTrue("Packet should fit.", buffer.add(second));
+        assertEquals("Buffered size is not the expected.", 800, buffer.size());
+
+        // Packets are kept as they are, not merged
+        assertSame("Packet is not the expected.", first, buffer.poll());
+        assertSame("Packet is not the expected.", second, buffer.poll());
+        assertNull("Buffer should be empty.", buffer.poll());
+        assertEquals("Buffered size is not the expected.", 0, buffer.size());
+    }
+
+    @Test
+    public void dropOldest() {
+
+        PreRollBuffer buffer = new PreRollBuffer(1000, PreRollOverflowPolicy.DROP_OLDEST);
+
+        ByteBuffer last = packet(400);
+
+        assertTrue("Packet should fit.", buffer.add(packet(400)));
+        assertTrue("Packet should fit.", buffer.add(packet(400)));
+        assertTrue("Oldest packet should be dropped.", buffer.add(last));
+
+        assertFalse("Buffer should not overflow.", buffer.hasOverflowed());
+        assertEquals("Buffered size is not the expected.", 800, buffer.size());
+        assertEquals("Dropped bytes are not the expected.", 400, buffer.getDroppedBytes());
+
+        buffer.poll();
+        assertSame("Latest packet should be kept.", last, buffer.poll());
+    }
+
+    @Test
+    public void failOnOverflow() {
+
+        PreRollBuffer buffer = new PreRollBuffer(1000, PreRollOverflowPolicy.FAIL);
+
+        assertTrue("Packet should fit.", buffer.add(packet(600)));
+        assertFalse("Buffer should overflow.", buffer.add(packet(600)));
+        assertFalse("Buffer should stay overflowed.", buffer.add(packet(100)));
+
+        assertTrue("Buffer should overflow.", buffer.hasOverflowed());
+        assertTrue("Buffer should be empty.", buffer.isEmpty());
+        assertEquals("Dropped bytes are not the expected.", 1300, buffer.getDroppedBytes());
+
+        // The next recognition starts over
+        buffer.clear();
+        assertFalse("Buffer should not overflow.", buffer.hasOverflowed());
+        assertTrue("Packet should fit.", buffer.add(packet(600)));
+    }
+
+    private static ByteBuffer packet(int length) {
+        return ByteBuffer.wrap(new byte[length]);
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class RecognitionEventQueueTest {
+
+    @Test
+    public void dropOldestPartials() {
+
+        try {
+            RecognitionEventQueue queue = new RecognitionEventQueue(2, RecognitionEventQueue.OverflowPolicy.DROP_OLDEST);
+
+            queue.onListening();
+            queue.onPartialRecognitionResult(partial(0, "um"));
+            queue.onPartialRecognitionResult(partial(0, "um dois"));
+            queue.onPartialRecognitionResult(partial(0, "um dois três"));
+            queue.onSpeechStop(1000);
+
+            assertEquals("Number of events is not the expected.", 4, queue.size());
+            assertEquals("Number of dropped partials is not the expected.", 1, queue.getDroppedCount());
+
+            assertEquals("Event is not the expected.", RecognitionEvent.Type.LISTENING, queue.take().getType());
+            assertEquals("Partial text is not the expected.", "um dois", queue.take().getPartialResult().getText());
+            assertEquals("Partial text is not the expected.", "um dois três", queue.take().getPartialResult().getText());
+            assertEquals("Event is not the expected.", RecognitionEvent.Type.SPEECH_STOP, queue.take().getType());
+            assertNull("Queue should be empty.", queue.poll(10, TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void coalescePartialsPerSegment() {
+
+        try {
+            RecognitionEventQueue queue = new RecognitionEventQueue(10, RecognitionEventQueue.OverflowPolicy.COALESCE);
+
+            queue.onPartialRecognitionResult(partial(0, "um"));
+            queue.onPartialRecognitionResult(partial(0, "um dois"));
+            queue.onSpeechStop(1000);
+            queue.onPartialRecognitionResult(partial(1, "três"));
+            queue.onPartialRecognitionResult(partial(1, "três quatro"));
+            queue.onPartialRecognitionResult(partial(1, "três quatro cinco"));
+
+            assertEquals("Number of events is not the expected.", 3, queue.size());
+            assertEquals("Number of coalesced partials is not the expected.", 3, queue.getCoalescedCount());
+            assertEquals("Number of dropped partials is not the expected.", 0, queue.getDroppedCount());
+
+            assertEquals("Partial text is not the expected.", "um dois", queue.take().getPartialResult().getText());
+            assertEquals("Event is not the expected.", RecognitionEvent.Type.SPEECH_STOP, queue.take().getType());
+            assertEquals("Partial text is not the expected.", "três quatro cinco", queue.take().getPartialResult().getText());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void coalescedPartialKeepsArrivalOrder() {
+
+        try {
+            RecognitionEventQueue queue = new RecognitionEventQueue(10, RecognitionEventQueue.OverflowPolicy.COALESCE);
+
+            queue.onPartialRecognitionResult(partial(0, "um"));
+            queue.onSpeechStop(1000);
+            queue.onPartialRecognitionResult(partial(0, "um dois"));
+
+            assertEquals("Number of events is not the expected.", 2, queue.size());
+            assertEquals("Number of coalesced partials is not the expected.", 1, queue.getCoalescedCount());
+
+            // The latest partial is read after the events that arrived before it
+            assertEquals("Event is not the expected.", RecognitionEvent.Type.SPEECH_STOP, queue.take().getType());
+            assertEquals("Partial text is not the expected.", "um dois", queue.take().getPartialResult().getText());
+            assertNull("Queue should be empty.", queue.poll(10, TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    private static PartialRecognitionResult partial(int segment, String text) {
+        PartialRecognitionResult result = new PartialRecognitionResult();
+        result.setSpeechSegmentIndex(segment);
+        result.setText(text);
+        return result;
+    }
+}
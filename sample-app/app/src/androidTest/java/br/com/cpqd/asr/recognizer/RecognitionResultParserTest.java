@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import br.com.cpqd.asr.recognizer.model.PartialRecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionAlternative;
+import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+import br.com.cpqd.asr.recognizer.model.Word;
+import br.com.cpqd.asr.recognizer.model.WordAlignment;
+import br.com.cpqd.asr.recognizer.util.Constants;
+import br.com.cpqd.asr.recognizer.util.Util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the single pass result parser against the org.json based one, and
+ * compares their throughput on a word aligned result of a long utterance.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RecognitionResultParserTest {
+
+    private static final String BANK_RESULT_BODY = "{\"alternatives\":[{\"text\":\"" + TestConstants.BancoTransfiraText + "\","
+            + "\"interpretations\":[" + TestConstants.BancoTransfiraInterp + "],\"words\":[{\"text\":\"transfira\",\"score\":100,"
+            + "\"start_time\":0.48,\"end_time\":1.03},{\"text\":\"seis\",\"score\":98,\"start_time\":1.05,\"end_time\":1.4}],"
+            + "\"score\":96,\"lm\":\"" + TestConstants.BankGramHttp + "\",\"interpretation_scores\":[100]}],"
+            + "\"segment_index\":0,\"last_segment\":true,\"final_result\":true,\"start_time\":0.36,\"end_time\":5.82,"
+            + "\"result_status\":\"RECOGNIZED\"}";
+
+    private static final String CPF_RESULT_BODY = "{\"alternatives\":[{\"text\":\"" + TestConstants.CpfText + "\","
+            + "\"interpretations\":[\"" + TestConstants.CpfInterp + "\"],\"score\":91,\"lm\":\"" + TestConstants.CpfGramHttp + "\"}],"
+            + "\"segment_index\":0,\"last_segment\":true,\"final_result\":true,\"start_time\":0.9,\"end_time\":6.2,"
+            + "\"result_status\":\"RECOGNIZED\"}";
+
+    private static final String PARTIAL_RESULT_BODY = "{\"alternatives\":[{\"text\":\"você me pede na carta que eu\","
+            + "\"score\":87,\"segment_index\":3}],\"segment_index\":3,\"last_segment\":false,\"final_result\":false,"
+            + "\"result_status\":\"PROCESSING\"}";
+
+    private static final int LONG_RESULT_WORDS = 3000;
+
+    private static final int BENCHMARK_WARM_UP = 20;
+
+    private static final int BENCHMARK_ITERATIONS = 100;
+
+    @Test
+    public void parseLikeOrgJson() {
+
+        for (String body : new String[]{BANK_RESULT_BODY, CPF_RESULT_BODY, longResultBody()}) {
+
+            RecognitionResult expected = Util.getRecogResult(body);
+            RecognitionResult actual = Util.getRecogResult(ByteBuffer.wrap(body.getBytes(Constants.NETWORK_CHARSET)));
+
+            assertNotNull(actual);
+            assertResultEquals(expected, actual);
+        }
+
+        assertEquals(TestConstants.BancoTransfiraInterp, Util.getRecogResult(ByteBuffer.wrap(
+                BANK_RESULT_BODY.getBytes(Constants.NETWORK_CHARSET))).getAlternatives().get(0).getInterpretations().get(0).getInterpretation());
+    }
+
+    @Test
+    public void readWordsOnDemand() {
+
+        byte[] body = BANK_RESULT_BODY.getBytes(Constants.NETWORK_CHARSET);
+        RecognitionResult result = Util.getRecogResult(ByteBuffer.wrap(body));
+        assertNotNull(result);
+
+        // The result must not depend on the receive buffer once parsed
+        Arrays.fill(body, (byte) ' ');
+
+        RecognitionAlternative alternative = result.getAlternatives().get(0);
+        assertEquals(TestConstants.BancoTransfiraText, alternative.getText());
+        assertEquals(2, alternative.getWordAlignment().size());
+        assertEquals("transfira", alternative.getWordAlignment().get(0).getWord());
+        assertSame(alternative.getWordAlignment(), alternative.getWordAlignment());
+        assertEquals(TestConstants.BancoTransfiraInterp, alternative.getInterpretations().get(0).getInterpretation());
+    }
+
+    @Test
+    public void compactWordAlignment() {
+
+        ByteBuffer buffer = ByteBuffer.wrap(longResultBody().getBytes(Constants.NETWORK_CHARSET));
+
+        List<Word> words = Util.getRecogResult(buffer).getAlternatives().get(0).getWordAlignment();
+        WordAlignment compact = Util.getRecogResult(buffer).getAlternatives().get(0).getCompactWordAlignment();
+
+        assertEquals(words.size(), compact.size());
+        assertEquals(words.size(), WordAlignment.of(words).size());
+
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(words.get(i).getWord(), compact.getWord(i));
+            assertEquals(words.get(i).getConfidence(), compact.getConfidence(i));
+            assertEquals(words.get(i).getStartTime(), compact.getStartTime(i), 0);
+            assertEquals(words.get(i).getEndTime(), compact.getEndTime(i), 0);
+            assertEquals(words.get(i).getWord(), compact.get(i).getWord());
+        }
+    }
+
+    @Test
+    public void parsePartialResult() {
+
+        PartialRecognitionResult expected = Util.getPartialRecogResult(PARTIAL_RESULT_BODY);
+        PartialRecognitionResult actual = Util.getPartialRecogResult(ByteBuffer.wrap(PARTIAL_RESULT_BODY.getBytes(Constants.NETWORK_CHARSET)));
+
+        assertEquals(expected.getSpeechSegmentIndex(), actual.getSpeechSegmentIndex());
+        assertEquals(expected.getText(), actual.getText());
+    }
+
+    @Test
+    public void rejectInvalidJson() {
+
+        for (String invalid : new String[]{"", "{", "{\"alternatives\":[}", "{\"segment_index\":1 \"final_result\":true}"}) {
+            assertNull("Body should be rejected: " + invalid,
+                    Util.getRecogResult(ByteBuffer.wrap(invalid.getBytes(Constants.NETWORK_CHARSET))));
+        }
+    }
+
+    @Test
+    public void benchmarkParsers() {
+
+        String body = longResultBody();
+        ByteBuffer buffer = ByteBuffer.wrap(body.getBytes(Constants.NETWORK_CHARSET));
+
+        for (int i = 0; i < BENCHMARK_WARM_UP; i++) {
+            Util.getRecogResult(new String(buffer.array(), Constants.DEFAULT_CHARSET));
+            Util.getRecogResult(buffer);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            // The former path decoded the body into a string and built a JSON tree.
+            Util.getRecogResult(new String(buffer.array(), Constants.DEFAULT_CHARSET));
+        }
+        long jsonNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            Util.getRecogResult(buffer);
+        }
+        long parserNanos = System.nanoTime() - start;
+
+        System.out.println("### org.json (" + LONG_RESULT_WORDS + " words): " + jsonNanos / BENCHMARK_ITERATIONS / 1000 + " us/op");
+        System.out.println("### RecognitionResultParser (" + LONG_RESULT_WORDS + " words): " + parserNanos / BENCHMARK_ITERATIONS / 1000 + " us/op");
+    }
+
+    @Test
+    public void benchmarkTextOnly() {
+
+        ByteBuffer buffer = ByteBuffer.wrap(longResultBody().getBytes(Constants.NETWORK_CHARSET));
+
+        for (int i = 0; i < BENCHMARK_WARM_UP; i++) {
+            Util.getRecogResult(buffer).getAlternatives().get(0).getWordAlignment();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            Util.getRecogResult(buffer).getAlternatives().get(0).getText();
+        }
+        long textNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            Util.getRecogResult(buffer).getAlternatives().get(0).getWordAlignment();
+        }
+        long wordsNanos = System.nanoTime() - start;
+
+        System.out.println("### text only (" + LONG_RESULT_WORDS + " words): " + textNanos / BENCHMARK_ITERATIONS / 1000 + " us/op");
+        System.out.println("### word alignment (" + LONG_RESULT_WORDS + " words): " + wordsNanos / BENCHMARK_ITERATIONS / 1000 + " us/op");
+    }
+
+    /**
+     * Builds a word aligned result of a long utterance in continuous mode.
+     */
+    private static String longResultBody() {
+
+        String[] text = (TestConstants.ContinuousModeTextSeg1 + " " + TestConstants.ContinuousModeTextSeg2 + " "
+                + TestConstants.ContinuousModeTextSeg3 + " " + TestConstants.ContinuousModeTextSeg4).split(" ");
+
+        StringBuilder words = new StringBuilder();
+        StringBuilder transcript = new StringBuilder();
+
+        for (int i = 0; i < LONG_RESULT_WORDS; i++) {
+
+            String word = text[i % text.length];
+            if (i > 0) {
+                words.append(',');
+                transcript.append(' ');
+            }
+            transcript.append(word);
+            words.append("{\"text\":\"").append(word).append("\",\"score\":").append(80 + i % 20)
+                    .append(",\"start_time\":").append(i * 0.35).append(",\"end_time\":").append(i * 0.35 + 0.3).append('}');
+        }
+
+        return "{\"alternatives\":[{\"text\":\"" + transcript + "\",\"words\":[" + words + "],\"score\":88,"
+                + "\"lm\":\"" + TestConstants.FreeLanguageModel + "\"}],\"segment_index\":0,\"last_segment\":true,"
+                + "\"final_result\":true,\"start_time\":0.0,\"end_time\":" + LONG_RESULT_WORDS * 0.35 + ",\"result_status\":\"RECOGNIZED\"}";
+    }
+
+    private static void assertResultEquals(RecognitionResult expected, RecognitionResult actual) {
+
+        assertEquals(expected.getResultCode(), actual.getResultCode());
+        assertEquals(expected.getSpeechSegmentIndex(), actual.getSpeechSegmentIndex());
+        assertEquals(expected.isLastSpeechSegment(), actual.isLastSpeechSegment());
+        assertEquals(expected.isFinalResult(), actual.isFinalResult());
+        assertEquals(expected.getSegmentStartTime(), actual.getSegmentStartTime(), 0);
+        assertEquals(expected.getSegmentEndTime(), actual.getSegmentEndTime(), 0);
+        assertEquals(expected.getAlternatives().size(), actual.getAlternatives().size());
+
+        for (int i = 0; i < expected.getAlternatives().size(); i++) {
+
+            RecognitionAlternative expectedAlternative = expected.getAlternatives().get(i);
+            RecognitionAlternative actualAlternative = actual.getAlternatives().get(i);
+
+            assertEquals(expectedAlternative.getText(), actualAlternative.getText());
+            assertEquals(expectedAlternative.getConfidence(), actualAlternative.getConfidence());
+            assertEquals(expectedAlternative.getLanguageModel(), actualAlternative.getLanguageModel());
+            assertEquals(expectedAlternative.getInterpretations().size(), actualAlternative.getInterpretations().size());
+
+            for (int j = 0; j < expectedAlternative.getInterpretations().size(); j++) {
+                assertEquals(expectedAlternative.getInterpretations().get(j).getInterpretation(),
+                        actualAlternative.getInterpretations().get(j).getInterpretation());
+            }
+
+            List<Word> expectedWords = expectedAlternative.getWordAlignment();
+            List<Word> actualWords = actualAlternative.getWordAlignment();
+            assertEquals(expectedWords.size(), actualWords.size());
+
+            for (int j = 0; j < expectedWords.size(); j++) {
+                assertEquals(expectedWords.get(j).getWord(), actualWords.get(j).getWord());
+                assertEquals(expectedWords.get(j).getConfidence(), actualWords.get(j).getConfidence());
+                assertEquals(expectedWords.get(j).getStartTime(), actualWords.get(j).getStartTime(), 0);
+                assertEquals(expectedWords.get(j).getEndTime(), actualWords.get(j).getEndTime(), 0);
+            }
+        }
+    }
+}
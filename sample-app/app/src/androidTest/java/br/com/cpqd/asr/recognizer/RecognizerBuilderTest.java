@@ -75,6 +75,25 @@ public class RecognizerBuilderTest {
         }
     }
 
+    @Test
+    public void singleThreadPoolWithoutLooper() {
+
+        AsrSessionPool pool = AsrSessionPool.builder().build(mContext);
+
+        try {
+            SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .singleThread(true).sessionPool(pool).build(mContext);
+            fail("IllegalArgumentException was expected");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("IllegalArgumentException was expected, not: " + e);
+        } finally {
+            pool.close();
+        }
+    }
+
     @Test
     public void credentialValid() {
         try {
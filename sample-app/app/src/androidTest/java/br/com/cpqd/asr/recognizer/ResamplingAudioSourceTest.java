@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import br.com.cpqd.asr.recognizer.audio.FileAudioSource;
+import br.com.cpqd.asr.recognizer.audio.ResamplingAudioSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class ResamplingAudioSourceTest {
+
+    private static final double TONE_FREQUENCY = 440;
+
+    private static final double TONE_AMPLITUDE = 10000;
+
+    @Test
+    public void downsample() {
+        checkResampling(48000, 8000);
+        checkResampling(44100, 16000);
+        checkResampling(16000, 8000);
+    }
+
+    @Test
+    public void upsample() {
+        checkResampling(8000, 16000);
+    }
+
+    @Test
+    public void benchmarkResampling() {
+
+        try {
+            int inputRate = 48000;
+            byte[] pcm = tone(inputRate, 60, true);
+
+            long start = System.nanoTime();
+            resample(pcm, inputRate, 8000);
+            long nanos = System.nanoTime() - start;
+
+            System.out.println("### ResamplingAudioSource 48 kHz -> 8 kHz: " + nanos / 60 / 1000 + " us per second of audio");
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resamples two seconds of a tone, plus a tone the output rate cannot
+     * represent, and compares the output with the first tone.
+     */
+    private static void checkResampling(int inputRate, int outputRate) {
+
+        try {
+            byte[] output = resample(tone(inputRate, 2, outputRate < inputRate), inputRate, outputRate);
+            int samples = output.length / 2;
+
+            assertEquals("Number of samples is not the expected.", 2 * outputRate, samples);
+
+            // Skip the edges, where the filter sees the silence around the audio
+            double error = 0;
+            for (int i = samples / 4; i < 3 * samples / 4; i++) {
+                short value = (short) ((output[2 * i] & 0xFF) | output[2 * i + 1] << 8);
+                double expected = TONE_AMPLITUDE * Math.sin(2 * Math.PI * TONE_FREQUENCY * i / outputRate);
+                error += (value - expected) * (value - expected);
+            }
+            error = Math.sqrt(error / (samples / 2));
+
+            assertTrue("Resampling error is too large: " + error, error < 10);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    private static byte[] resample(byte[] pcm, int inputRate, int outputRate) throws Exception {
+
+        ResamplingAudioSource audio = new ResamplingAudioSource(new FileAudioSource(new ByteArrayInputStream(pcm)),
+                inputRate, outputRate);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // 250 ms packets, as sent by the recognizer
+        byte[] buffer = new byte[outputRate / 2];
+        int length;
+        while ((length = audio.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Creates linear PCM audio of a tone, optionally mixed with a tone near
+     * the Nyquist frequency of the audio.
+     */
+    private static byte[] tone(int sampleRate, int seconds, boolean aliasing) {
+
+        int samples = sampleRate * seconds;
+        byte[] pcm = new byte[2 * samples];
+
+        for (int i = 0; i < samples; i++) {
+            double value = TONE_AMPLITUDE * Math.sin(2 * Math.PI * TONE_FREQUENCY * i / sampleRate);
+            if (aliasing) {
+                value += TONE_AMPLITUDE / 2 * Math.sin(2 * Math.PI * 0.45 * i);
+            }
+            short sample = (short) Math.round(value);
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+
+        return pcm;
+    }
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import br.com.cpqd.asr.recognizer.audio.AudioEncoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the frames of {@link SendAudioEncoder} are the same as the
+ * serialization of an equivalent {@link AsrMessage}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SendAudioEncoderTest {
+
+    /**
+     * Size of a 250 ms packet of 8 kHz linear PCM.
+     */
+    private static final int CHUNK_SIZE = 4000;
+
+    @Test
+    public void sameAsAsrMessage() {
+
+        byte[] audio = audio(CHUNK_SIZE);
+
+        for (AudioEncoding encoding : AudioEncoding.values()) {
+
+            SendAudioEncoder encoder = new SendAudioEncoder(encoding.getContentType());
+
+            assertFrame(expected(audio, false, encoding), encoder.encode(audio, 0, audio.length, false));
+            assertFrame(expected(audio, true, encoding), encoder.encode(audio, 0, audio.length, true));
+        }
+    }
+
+    @Test
+    public void emptyBody() {
+
+        SendAudioEncoder encoder = new SendAudioEncoder(AudioEncoding.LINEAR16.getContentType());
+
+        byte[] expected = expected(null, true, AudioEncoding.LINEAR16);
+
+        assertFrame(expected, encoder.encode(null, 0, 0, true));
+        assertFrame(expected, encoder.encode(new byte[0], 0, 0, true));
+        assertFrame(expected, encoder.encode((ByteBuffer) null, true));
+        assertFrame(expected, encoder.encode(ByteBuffer.allocate(0), true));
+    }
+
+    @Test
+    public void packetLargerThanChunk() {
+
+        byte[] audio = audio(25 * CHUNK_SIZE + 1);
+
+        SendAudioEncoder encoder = new SendAudioEncoder(AudioEncoding.LINEAR16.getContentType());
+
+        assertFrame(expected(audio, false, AudioEncoding.LINEAR16), encoder.encode(audio, 0, audio.length, false));
+    }
+
+    @Test
+    public void encodeBuffers() {
+
+        byte[] audio = audio(3 * CHUNK_SIZE);
+        byte[] packet = Arrays.copyOfRange(audio, CHUNK_SIZE, 2 * CHUNK_SIZE);
+        byte[] expected = expected(packet, false, AudioEncoding.MULAW);
+
+        SendAudioEncoder encoder = new SendAudioEncoder(AudioEncoding.MULAW.getContentType());
+
+        // Offset into an array
+        assertFrame(expected, encoder.encode(audio, CHUNK_SIZE, CHUNK_SIZE, false));
+
+        // Slice of a heap buffer
+        ByteBuffer heap = ByteBuffer.wrap(audio);
+        heap.position(CHUNK_SIZE);
+        ByteBuffer slice = heap.slice();
+        slice.limit(CHUNK_SIZE);
+        assertFrame(expected, encoder.encode(slice, false));
+
+        // Direct buffer, e.g. a mapped file
+        ByteBuffer direct = ByteBuffer.allocateDirect(audio.length);
+        direct.put(audio);
+        direct.position(CHUNK_SIZE);
+        direct.limit(2 * CHUNK_SIZE);
+        assertFrame(expected, encoder.encode(direct, false));
+        assertEquals("Buffer position should not change.", CHUNK_SIZE, direct.position());
+    }
+
+    private static void assertFrame(byte[] expected, ByteBuffer frame) {
+
+        // The frame takes its whole array, so it is sent without trimming
+        assertEquals("Frame should start at its array.", 0, frame.arrayOffset() + frame.position());
+        assertEquals("Frame should take its whole array.", frame.array().length, frame.remaining());
+        assertArrayEquals("Frame is not the expected.", expected, frame.array());
+    }
+
+    private static byte[] expected(byte[] audio, boolean isLastPacket, AudioEncoding encoding) {
+
+        Map<String, String> headerFields = new LinkedHashMap<>();
+        headerFields.put("LastPacket", isLastPacket ? "true" : "false");
+        headerFields.put("Content-Length", Integer.toString(audio != null ? audio.length : 0));
+        headerFields.put("Content-Type", encoding.getContentType());
+
+        return new AsrMessage(AsrMessage.METHOD_SEND_AUDIO, headerFields, audio).toByteArray();
+    }
+
+    private static byte[] audio(int length) {
+
+        byte[] audio = new byte[length];
+        for (int i = 0; i < length; i++) {
+            audio[i] = (byte) (i * 31 + 7);
+        }
+
+        return audio;
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import br.com.cpqd.asr.recognizer.model.RecognitionConfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SilenceGateTest {
+
+    private static final int PACKET_MILLIS = 250;
+
+    @Test
+    public void keepEndpointerMargins() {
+
+        RecognitionConfig config = RecognitionConfig.builder().headMarginMilis(500).tailMarginMilis(250)
+                .waitEndMilis(250).build();
+        SilenceGate gate = new SilenceGate(-45, config);
+
+        assertEquals("Silence should be held.", 0, offer(gate, "s1", false).size());
+        assertEquals("Silence should be held.", 0, offer(gate, "s2", false).size());
+        assertEquals("Silence should be held.", 0, offer(gate, "s3", false).size());
+        assertEquals("Silence should be held.", 0, offer(gate, "s4", false).size());
+
+        // The head margin goes before the speech
+        assertEquals("Packets are not the expected.", Arrays.<Object>asList("s3", "s4", "v1"), offer(gate, "v1", true));
+
+        // The wait end time and the tail margin go after it
+        assertEquals("Packets are not the expected.", Arrays.<Object>asList("s5"), offer(gate, "s5", false));
+        assertEquals("Packets are not the expected.", Arrays.<Object>asList("s6"), offer(gate, "s6", false));
+        assertEquals("Silence should be held.", 0, offer(gate, "s7", false).size());
+        assertEquals("Silence should be held.", 0, offer(gate, "s8", false).size());
+        assertEquals("Silence should be held.", 0, offer(gate, "s9", false).size());
+
+        assertEquals("Packets are not the expected.", Arrays.<Object>asList("s8", "s9", "v2"), offer(gate, "v2", true));
+
+        assertEquals("Suppressed silence is not the expected.", 3 * PACKET_MILLIS, gate.getSuppressedMillis());
+    }
+
+    @Test
+    public void noHeadMargin() {
+
+        RecognitionConfig config = RecognitionConfig.builder().headMarginMilis(0).tailMarginMilis(250)
+                .waitEndMilis(0).build();
+        SilenceGate gate = new SilenceGate(-45, config);
+
+        assertEquals("Silence should be dropped.", 0, offer(gate, "s1", false).size());
+        assertEquals("Silence should be dropped.", 0, offer(gate, "s2", false).size());
+
+        // No silence goes before the speech
+        assertEquals("Packets are not the expected.", Arrays.<Object>asList("v1"), offer(gate, "v1", true));
+        assertEquals("Packets are not the expected.", Arrays.<Object>asList("s3"), offer(gate, "s3", false));
+        assertEquals("Silence should be dropped.", 0, offer(gate, "s4", false).size());
+        assertEquals("Packets are not the expected.", Arrays.<Object>asList("v2"), offer(gate, "v2", true));
+
+        assertEquals("Suppressed silence is not the expected.", 3 * PACKET_MILLIS, gate.getSuppressedMillis());
+    }
+
+    @Test
+    public void serverDefaultMargins() {
+
+        SilenceGate gate = new SilenceGate(-45, null);
+
+        offer(gate, "v1", true);
+
+        // The server waits 900 ms for the end of speech and appends a 450 ms tail
+        int sent = 0;
+        for (int i = 0; i < 10; i++) {
+            sent += offer(gate, "s" + i, false).size();
+        }
+
+        assertEquals("Number of silent packets sent is not the expected.", 6, sent);
+    }
+
+    @Test
+    public void detectVoicedAudio() {
+
+        SilenceGate gate = new SilenceGate(-45, null);
+
+        assertFalse("Digital silence should not be voiced.", gate.isVoiced(tone(0), 0, 4000));
+        assertFalse("Low noise should not be voiced.", gate.isVoiced(tone(100), 0, 4000));
+        assertTrue("Speech level audio should be voiced.", gate.isVoiced(tone(10000), 0, 4000));
+        assertTrue("Speech level audio should be voiced.", gate.isVoiced(ByteBuffer.wrap(tone(10000))));
+    }
+
+    private static List<Object> offer(SilenceGate gate, String packet, boolean voiced) {
+        return new ArrayList<>(gate.offer(packet, PACKET_MILLIS, voiced));
+    }
+
+    private static byte[] tone(double amplitude) {
+
+        byte[] pcm = new byte[4000];
+
+        for (int i = 0; i < pcm.length / 2; i++) {
+            short sample = (short) (amplitude * Math.sin(2 * Math.PI * 440 * i / 8000));
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+
+        return pcm;
+    }
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import br.com.cpqd.asr.recognizer.audio.AudioSource;
+import br.com.cpqd.asr.recognizer.model.LanguageModelList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs many concurrent recognize / cancel / close cycles, on separate and on
+ * shared recognizers, and checks that the audio reader always stops promptly.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SpeechRecognizerStressTest {
+
+    private static final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private static final int THREADS = 4;
+
+    private static final int CYCLES_PER_THREAD = 500;
+
+    /**
+     * Maximum time for the reader to stop after the request returns.
+     * The default chunk length is 250 ms.
+     */
+    private static final int MAX_STOP_MILLIS = 250;
+
+    /**
+     * Cycles of the test that races a shared recognizer.
+     */
+    private static final int SHARED_CYCLES = 200;
+
+    /**
+     * Maximum time for a recognize call to return once it is raced: the
+     * response timeout of the library plus a margin.
+     */
+    private static final int MAX_RECOGNIZE_MILLIS = 15000;
+
+    @Test
+    public void concurrentRecognizeCancelClose() {
+
+        final LanguageModelList lmList = LanguageModelList.builder().addFromURI(TestConstants.FreeLanguageModel).build();
+        final AtomicInteger completedCycles = new AtomicInteger();
+        final List<String> failures = new ArrayList<>();
+
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+
+                    try {
+                        SpeechRecognizerInterface recognizer = SpeechRecognizer.builder()
+                                .serverURL(TestConstants.ASR_URL_Internal).build(mContext);
+
+                        for (int i = 0; i < CYCLES_PER_THREAD; i++) {
+
+                            SilenceAudioSource audio = new SilenceAudioSource();
+                            recognizer.recognize(audio, lmList);
+
+                            if (i % 2 == 0) {
+                                recognizer.cancelRecognition();
+                            } else {
+                                recognizer.close();
+                            }
+
+                            if (!audio.awaitClose(MAX_STOP_MILLIS)) {
+                                throw new AssertionError("Reader still running after cycle " + i);
+                            }
+
+                            completedCycles.incrementAndGet();
+                        }
+
+                        recognizer.close();
+
+                    } catch (Throwable e) {
+                        e.printStackTrace();
+                        synchronized (failures) {
+                            failures.add(e.toString());
+                        }
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            fail("Test failed: " + e.getMessage());
+        }
+
+        if (!failures.isEmpty()) {
+            fail("Test failed: " + failures);
+        }
+
+        assertEquals("Number of cycles is not the expected.", THREADS * CYCLES_PER_THREAD, completedCycles.get());
+    }
+
+    @Test
+    public void cancelCloseDuringRecognize() {
+
+        final LanguageModelList lmList = LanguageModelList.builder().addFromURI(TestConstants.FreeLanguageModel).build();
+        ExecutorService recognizeThread = Executors.newSingleThreadExecutor();
+        int streamingCycles = 0;
+
+        try {
+            final SpeechRecognizerInterface recognizer = SpeechRecognizer.builder()
+                    .serverURL(TestConstants.ASR_URL_Internal).build(mContext);
+
+            for (int i = 0; i < SHARED_CYCLES; i++) {
+
+                final SilenceAudioSource audio = new SilenceAudioSource();
+
+                Future<Void> recognize = recognizeThread.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        recognizer.recognize(audio, lmList);
+                        return null;
+                    }
+                });
+
+                // Spread the cancel or close over the recognize call and the streaming that follows it
+                Thread.sleep((i * 37) % 500);
+
+                if (audio.isStreaming()) {
+                    streamingCycles++;
+                }
+
+                try {
+                    if (i % 2 == 0) {
+                        recognizer.cancelRecognition();
+                    } else {
+                        recognizer.close();
+                    }
+                } catch (RecognitionException e) {
+                    // The request may lose the race against the server responses
+                }
+
+                try {
+                    recognize.get(MAX_RECOGNIZE_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException e) {
+                    // The recognition may fail when it is closed before the server is listening
+                    if (!(e.getCause() instanceof RecognitionException)) {
+                        throw e;
+                    }
+                }
+
+                // A cancel before the server is listening is ignored, so the recognition may still be running
+                recognizer.cancelRecognition();
+
+                if (!audio.awaitClose(MAX_STOP_MILLIS)) {
+                    throw new AssertionError("Reader still running after cycle " + i);
+                }
+            }
+
+            recognizer.close();
+
+        } catch (Throwable e) {
+            e.printStackTrace();
+            fail("Test failed: " + e);
+        } finally {
+            recognizeThread.shutdownNow();
+        }
+
+        assertTrue("The reader was never streaming when the recognizer was raced.", streamingCycles > 0);
+    }
+
+    /**
+     * Endless silence, which keeps the reader streaming until it is stopped.
+     */
+    private static class SilenceAudioSource implements AudioSource {
+
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private volatile boolean streaming;
+
+        @Override
+        public int read(byte[] b) {
+            streaming = true;
+            Arrays.fill(b, (byte) 0);
+            return b.length;
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        @Override
+        public void finish() {
+            // Not used
+        }
+
+        boolean isStreaming() {
+            return streaming;
+        }
+
+        boolean awaitClose(long timeout) throws InterruptedException {
+            return closed.await(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+}
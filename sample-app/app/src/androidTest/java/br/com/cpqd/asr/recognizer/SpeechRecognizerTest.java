@@ -16,19 +16,33 @@
 package br.com.cpqd.asr.recognizer;
 
 import android.content.Context;
+import android.os.HandlerThread;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import br.com.cpqd.asr.recognizer.audio.AudioPacing;
 import br.com.cpqd.asr.recognizer.audio.AudioSource;
 import br.com.cpqd.asr.recognizer.audio.BufferAudioSource;
 import br.com.cpqd.asr.recognizer.audio.FileAudioSource;
+import br.com.cpqd.asr.recognizer.audio.MappedFileAudioSource;
+import br.com.cpqd.asr.recognizer.audio.WavAudioSource;
 import br.com.cpqd.asr.recognizer.model.Interpretation;
 import br.com.cpqd.asr.recognizer.model.LanguageModelList;
 import br.com.cpqd.asr.recognizer.model.RecognitionConfig;
@@ -172,6 +186,192 @@ public class SpeechRecognizerTest {
         }
     }
 
+    @Test
+    public void recognizeMappedFileAudioSource() {
+
+        try {
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal).build(mContext);
+
+            MappedFileAudioSource audio = new MappedFileAudioSource(copyAssetToFile(TestConstants.CpfAudio));
+            assertEquals("Sample rate is not the expected.", 8000, audio.getSampleRate());
+
+            recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+            List<RecognitionResult> results = recognizer.waitRecognitionResult();
+            List<Interpretation> interpretationsFromFirstAlt = results.get(0).getAlternatives().get(0).getInterpretations();
+
+            String textFromFirstAlternative = results.get(0).getAlternatives().get(0).getText();
+            String firstInterpFromFirstAlt = interpretationsFromFirstAlt.get(0).getInterpretation();
+
+            assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+            assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, textFromFirstAlternative);
+            assertEquals("Interpretation is not the expected.", TestConstants.CpfInterp, firstInterpFromFirstAlt);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void recognizeWithSilenceSuppression() {
+
+        try {
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .suppressSilence(-45).build(mContext);
+
+            AudioSource audio = new WavAudioSource(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)));
+            recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+            List<RecognitionResult> results = recognizer.waitRecognitionResult();
+
+            String textFromFirstAlternative = results.get(0).getAlternatives().get(0).getText();
+
+            assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+            assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, textFromFirstAlternative);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void recognizeWithPipelinedSetup() {
+
+        try {
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .connectOnRecognize(true).autoClose(true).pipelinedSetup(true).build(mContext);
+
+            for (int i = 0; i < 2; i++) {
+
+                System.out.println("### Recognition #" + (i + 1));
+                AudioSource audio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio));
+                recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+                List<RecognitionResult> results = recognizer.waitRecognitionResult();
+
+                String textFromFirstAlternative = results.get(0).getAlternatives().get(0).getText();
+
+                assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+                assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, textFromFirstAlternative);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void recognizeSingleThread() {
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final AtomicInteger notifications = new AtomicInteger();
+
+        try {
+            RecognitionEventQueue events = new RecognitionEventQueue(10, RecognitionEventQueue.OverflowPolicy.DROP_OLDEST);
+
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .singleThread(true).addListener(events).listenerExecutor(new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            notifications.incrementAndGet();
+                            executor.execute(command);
+                        }
+                    }).build(mContext);
+
+            AudioSource audio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio));
+            recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+            List<RecognitionResult> results = recognizer.waitRecognitionResult();
+
+            String textFromFirstAlternative = results.get(0).getAlternatives().get(0).getText();
+
+            assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+            assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, textFromFirstAlternative);
+
+            // The listener is notified in the executor, in order
+            assertEquals("Event is not the expected.", RecognitionEvent.Type.LISTENING,
+                    events.poll(5, TimeUnit.SECONDS).getType());
+            assertTrue("Listener should be notified in the executor.", notifications.get() > 0);
+
+            recognizer.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void recognizeSharedThreads() {
+
+        HandlerThread ioThread = new HandlerThread("AsrIoThread");
+        ioThread.start();
+
+        final AtomicInteger readerThreads = new AtomicInteger();
+        ExecutorService readerExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                readerThreads.incrementAndGet();
+                return new Thread(runnable, "AsrReaderThread");
+            }
+        });
+
+        try {
+            SpeechRecognizer.Builder builder = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .ioLooper(ioThread.getLooper()).readerExecutor(readerExecutor);
+
+            SpeechRecognizerInterface[] recognizers = {builder.build(mContext), builder.build(mContext)};
+
+            for (SpeechRecognizerInterface recognizer : recognizers) {
+
+                AudioSource audio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio));
+                recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+                List<RecognitionResult> results = recognizer.waitRecognitionResult();
+
+                String textFromFirstAlternative = results.get(0).getAlternatives().get(0).getText();
+
+                assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+                assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, textFromFirstAlternative);
+
+                recognizer.close();
+            }
+
+            assertEquals("Number of reader threads is not the expected.", 1, readerThreads.get());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        } finally {
+            readerExecutor.shutdown();
+            ioThread.quit();
+        }
+    }
+
+    @Test
+    public void recognizeWithPacing() {
+
+        try {
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .build(mContext);
+
+            // The pacing of the recognition takes precedence over the real time pacing of the source
+            AudioSource audio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio),
+                    AudioPacing.realTime());
+
+            long startTimeMS = System.currentTimeMillis();
+            recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build(),
+                    null, AudioPacing.unthrottled());
+            List<RecognitionResult> results = recognizer.waitRecognitionResult();
+            long elapsedTimeMS = System.currentTimeMillis() - startTimeMS;
+
+            String textFromFirstAlternative = results.get(0).getAlternatives().get(0).getText();
+
+            assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+            assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, textFromFirstAlternative);
+            // The audio lasts about 5 seconds
+            assertTrue("Audio was read in real time: " + elapsedTimeMS + " ms", elapsedTimeMS < 4000);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
     @Test
     public void recognizeBufferBlockRead() {
 
@@ -692,7 +892,97 @@ public class SpeechRecognizerTest {
         }
     }
 
+    @Test
+    public void recognizeAsync() {
+
+        try {
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal).build(mContext);
+            AudioSource audio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio));
+            RecognitionHandle handle = recognizer.recognizeAsync(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+            List<RecognitionResult> results = handle.get(30, TimeUnit.SECONDS);
+
+            assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+            assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, results.get(0).getAlternatives().get(0).getText());
+
+            recognizer.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void recognizeAsyncBackToBack() {
+
+        try {
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .connectOnRecognize(true).autoClose(true).build(mContext);
+
+            // Each recognition starts as soon as the previous one completes, while its session is released
+            for (int i = 0; i < 3; i++) {
+                AudioSource audio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio));
+                RecognitionHandle handle = recognizer.recognizeAsync(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+                List<RecognitionResult> results = handle.get(30, TimeUnit.SECONDS);
+
+                assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+                assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, results.get(0).getAlternatives().get(0).getText());
+            }
+
+            recognizer.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void cancelRecognizeAsync() {
+
+        try {
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal).build(mContext);
+            BufferAudioSource audio = new BufferAudioSource();
+            RecognitionHandle handle = recognizer.recognizeAsync(audio, LanguageModelList.builder().addFromURI(TestConstants.FreeLanguageModel).build());
+            WriteToBufferAudioSource(audio, TestConstants.NoEndSilenceAudio, defaultPacketDelay);
+
+            assertTrue("Recognition should be cancelled.", handle.cancel(true));
+
+            try {
+                handle.get();
+                fail("Cancelled recognition should not complete.");
+            } catch (CancellationException e) {
+                // expected
+            }
+
+            // The recognizer is ready for a new recognition once the server confirms the cancel
+            Thread.sleep(1000);
+            AudioSource cpfAudio = new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio));
+            handle = recognizer.recognizeAsync(cpfAudio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+            List<RecognitionResult> results = handle.get(30, TimeUnit.SECONDS);
+
+            assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, results.get(0).getAlternatives().get(0).getText());
+
+            recognizer.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
     // Aux function
+    private File copyAssetToFile(String audioName) throws Exception {
+        File file = new File(mContext.getCacheDir(), audioName);
+        InputStream input = mContext.getAssets().open(audioName);
+        OutputStream output = new FileOutputStream(file);
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = input.read(buffer)) != -1) {
+            output.write(buffer, 0, len);
+        }
+        output.close();
+        input.close();
+        return file;
+    }
+
     private void WriteToBufferAudioSource(BufferAudioSource audio, String audioName, int packetDelay) throws Exception {
         InputStream input = mContext.getAssets().open(audioName);
         // Read the audio file and write into AudioSource
@@ -20,7 +20,13 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({RecognizerBuilderTest.class, SpeechRecognizerTest.class})
+@SuiteClasses({RecognizerBuilderTest.class, SpeechRecognizerTest.class, AsrMessageDecoderTest.class,
+        SpeechRecognizerStressTest.class, AsrSessionPoolTest.class, MultiStreamRecognizerTest.class,
+        RecognitionEventQueueTest.class, PartialResultCoalescerTest.class,
+        RecognitionResultParserTest.class, BufferAudioSourceTest.class, WavAudioSourceTest.class,
+        ResamplingAudioSourceTest.class, AudioEncodingTest.class, SilenceGateTest.class,
+        EndOfSpeechDetectorTest.class, PreRollBufferTest.class, SendAudioEncoderTest.class,
+        WireTraceTest.class, AudioPacingTest.class, AudioPacketWindowTest.class})
 public class SpeechRecognizerTestSuite {
 
 }
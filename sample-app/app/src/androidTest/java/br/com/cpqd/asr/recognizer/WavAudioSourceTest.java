@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+import java.util.List;
+
+import br.com.cpqd.asr.recognizer.audio.AudioEncoding;
+import br.com.cpqd.asr.recognizer.audio.AudioFormatException;
+import br.com.cpqd.asr.recognizer.audio.FileAudioSource;
+import br.com.cpqd.asr.recognizer.audio.WavAudioSource;
+import br.com.cpqd.asr.recognizer.model.LanguageModelList;
+import br.com.cpqd.asr.recognizer.model.RecognitionErrorCode;
+import br.com.cpqd.asr.recognizer.model.RecognitionResult;
+import br.com.cpqd.asr.recognizer.model.RecognitionResultCode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class WavAudioSourceTest {
+
+    private static final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /**
+     * Size of the RIFF header of the test audio files.
+     */
+    private static final int WAVE_HEADER_SIZE = 44;
+
+    @Test
+    public void stripHeader() {
+
+        try {
+            WavAudioSource audio = new WavAudioSource(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)));
+            audio.validate(8000, AudioEncoding.LINEAR16);
+
+            assertTrue("Audio should have a WAVE header.", audio.isWave());
+            assertEquals("Sample rate is not the expected.", 8000, audio.getSampleRate());
+            assertEquals("Number of channels is not the expected.", 1, audio.getChannels());
+
+            long read = 0;
+            int length;
+            byte[] buffer = new byte[1600];
+            while ((length = audio.read(buffer)) != -1) {
+                read += length;
+            }
+            audio.close();
+
+            assertEquals("Number of audio bytes is not the expected.", assetSize(TestConstants.CpfAudio) - WAVE_HEADER_SIZE, read);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectSampleRate() {
+
+        try {
+            WavAudioSource audio = new WavAudioSource(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)));
+            audio.validate(16000, AudioEncoding.LINEAR16);
+            fail("Sample rate should not be accepted.");
+        } catch (AudioFormatException e) {
+            // Expected
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void recognizeWithHeader() {
+
+        try {
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal).build(mContext);
+            WavAudioSource audio = new WavAudioSource(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)));
+            recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+            List<RecognitionResult> results = recognizer.waitRecognitionResult();
+
+            assertEquals("Result Status is not the expected.", RecognitionResultCode.RECOGNIZED, results.get(0).getResultCode());
+            assertEquals("Recognized Text is not the expected.", TestConstants.CpfText, results.get(0).getAlternatives().get(0).getText());
+            recognizer.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void recognizeSampleRateMismatch() {
+
+        try {
+            SpeechRecognizerInterface recognizer = SpeechRecognizer.builder().serverURL(TestConstants.ASR_URL_Internal)
+                    .audioSampleRate(16000).build(mContext);
+            WavAudioSource audio = new WavAudioSource(new FileAudioSource(mContext.getAssets().open(TestConstants.CpfAudio)));
+            recognizer.recognize(audio, LanguageModelList.builder().addFromURI(TestConstants.CpfGramHttp).build());
+
+            try {
+                recognizer.waitRecognitionResult();
+                fail("Recognition should fail.");
+            } catch (RecognitionException e) {
+                assertEquals("Error code is not the expected.", RecognitionErrorCode.FAILURE, e.getErrorCode());
+            }
+            recognizer.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Test failed: " + e.getMessage());
+        }
+    }
+
+    private static long assetSize(String name) throws Exception {
+        InputStream input = mContext.getAssets().open(name);
+        long size = 0;
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            size += length;
+        }
+        input.close();
+        return size;
+    }
+}
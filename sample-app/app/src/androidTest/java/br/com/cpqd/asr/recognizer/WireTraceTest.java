@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2018 CPqD. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package br.com.cpqd.asr.recognizer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.com.cpqd.asr.recognizer.audio.AudioEncoding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the level, sampling and ring buffer of {@link WireTrace}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WireTraceTest {
+
+    /**
+     * Events handed to the sink.
+     */
+    private final List<WireTrace.Event> mSinkEvents = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        WireTrace.setCapacity(256);
+        WireTrace.setSamplingInterval(1);
+        WireTrace.setSink(new WireTrace.Sink() {
+            @Override
+            public void onTrace(WireTrace.Event event) {
+                mSinkEvents.add(event);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        WireTrace.setLevel(WireTrace.Level.OFF);
+        WireTrace.setSamplingInterval(1);
+        WireTrace.setSink(null);
+        WireTrace.clear();
+    }
+
+    @Test
+    public void offTracesNothing() {
+
+        WireTrace.setLevel(WireTrace.Level.OFF);
+
+        assertFalse(WireTrace.isEnabled());
+
+        WireTrace.trace(true, message(AsrMessage.METHOD_CREATE_SESSION));
+        WireTrace.traceSendAudio(4000, false, AudioEncoding.LINEAR16.getContentType());
+
+        assertTrue(WireTrace.getEvents().isEmpty());
+        assertTrue(mSinkEvents.isEmpty());
+    }
+
+    @Test
+    public void samplingInterval() {
+
+        WireTrace.setLevel(WireTrace.Level.START_LINE);
+        WireTrace.setSamplingInterval(3);
+
+        for (int i = 0; i < 10; i++) {
+            WireTrace.traceSendAudio(i, false, AudioEncoding.LINEAR16.getContentType());
+        }
+
+        // The first message and one in every three after it: 0, 3, 6 and 9.
+        List<WireTrace.Event> events = WireTrace.getEvents();
+
+        assertEquals(4, events.size());
+        assertEquals(events, mSinkEvents);
+
+        // Each event keeps the level it was traced at.
+        WireTrace.setLevel(WireTrace.Level.HEADER);
+
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(">> ASR 2.3 SEND_AUDIO(CRLF)", events.get(i).getTranscript());
+        }
+    }
+
+    @Test
+    public void ringEvictsOldest() {
+
+        WireTrace.setLevel(WireTrace.Level.START_LINE);
+        WireTrace.setCapacity(3);
+
+        String[] methods = {AsrMessage.METHOD_CREATE_SESSION, AsrMessage.METHOD_START_RECOGNITION,
+                AsrMessage.METHOD_SEND_AUDIO, AsrMessage.METHOD_RECOGNITION_RESULT, AsrMessage.METHOD_RELEASE_SESSION};
+
+        for (String method : methods) {
+            WireTrace.trace(!AsrMessage.METHOD_RECOGNITION_RESULT.equals(method), message(method));
+        }
+
+        List<WireTrace.Event> events = WireTrace.getEvents();
+
+        assertEquals(3, events.size());
+        assertEquals(AsrMessage.METHOD_SEND_AUDIO, events.get(0).getMethod());
+        assertEquals(AsrMessage.METHOD_RECOGNITION_RESULT, events.get(1).getMethod());
+        assertFalse(events.get(1).isOutbound());
+        assertEquals(AsrMessage.METHOD_RELEASE_SESSION, events.get(2).getMethod());
+
+        // The sink sees every traced message, evicted or not.
+        assertEquals(methods.length, mSinkEvents.size());
+
+        WireTrace.clear();
+
+        assertTrue(WireTrace.getEvents().isEmpty());
+    }
+
+    @Test
+    public void lazyTranscript() {
+
+        WireTrace.setLevel(WireTrace.Level.FULL);
+
+        Map<String, String> headerFields = new LinkedHashMap<>();
+        headerFields.put("Handle", "1");
+
+        WireTrace.trace(true, new AsrMessage(AsrMessage.METHOD_CREATE_SESSION, headerFields, null));
+
+        // The transcript is only formatted on the first call, so it shows a header
+        // field added after tracing but not one added after that call.
+        headerFields.put("Extra", "value");
+
+        WireTrace.Event event = WireTrace.getEvents().get(0);
+
+        String transcript = event.getTranscript();
+
+        assertEquals(">> ASR 2.3 CREATE_SESSION(CRLF)"
+                + "\nHandle: 1(CRLF)"
+                + "\nExtra: value(CRLF)"
+                + "\n(CRLF)"
+                + "\n(no body)", transcript);
+
+        headerFields.put("Later", "value");
+
+        assertSame(transcript, event.getTranscript());
+    }
+
+    @Test
+    public void sendAudioPlaceholder() {
+
+        String contentType = AudioEncoding.LINEAR16.getContentType();
+
+        WireTrace.setLevel(WireTrace.Level.FULL);
+        WireTrace.traceSendAudio(4000, true, contentType);
+        WireTrace.setLevel(WireTrace.Level.HEADER);
+        WireTrace.traceSendAudio(4000, true, contentType);
+
+        List<WireTrace.Event> events = WireTrace.getEvents();
+
+        assertEquals(">> ASR 2.3 SEND_AUDIO(CRLF)"
+                + "\nLastPacket: true(CRLF)"
+                + "\nContent-Length: 4000(CRLF)"
+                + "\nContent-Type: " + contentType + "(CRLF)"
+                + "\n(CRLF)"
+                + "\n<4000 octets of audio>", events.get(0).getTranscript());
+
+        assertEquals(">> ASR 2.3 SEND_AUDIO(CRLF)"
+                + "\nLastPacket: true(CRLF)"
+                + "\nContent-Length: 4000(CRLF)"
+                + "\nContent-Type: " + contentType + "(CRLF)"
+                + "\n(CRLF)", events.get(1).getTranscript());
+    }
+
+    /**
+     * Creates a message with a single header field.
+     *
+     * @param method the message method.
+     * @return the message.
+     */
+    private static AsrMessage message(String method) {
+
+        Map<String, String> headerFields = new LinkedHashMap<>();
+        headerFields.put("Handle", "1");
+
+        return new AsrMessage(method, headerFields, null);
+    }
+}
@@ -14,6 +14,7 @@ import br.com.cpqd.asr.recognizer.SpeechRecognizer;
 import br.com.cpqd.asr.recognizer.SpeechRecognizerInterface;
 import br.com.cpqd.asr.recognizer.audio.AudioSource;
 import br.com.cpqd.asr.recognizer.audio.FileAudioSource;
+import br.com.cpqd.asr.recognizer.audio.WavAudioSource;
 import br.com.cpqd.asr.recognizer.model.Interpretation;
 import br.com.cpqd.asr.recognizer.model.LanguageModelList;
 import br.com.cpqd.asr.recognizer.model.RecognitionAlternative;
@@ -91,7 +92,7 @@ public class FileActivity extends AppCompatActivity {
                     recognizer = SpeechRecognizer.builder().serverURL(Constants.URL).credentials(Constants.USER, Constants.PWD).build(getApplicationContext());
 
                     // Initiate the audio source
-                    AudioSource audio = new FileAudioSource(getApplicationContext().getAssets().open("pizza_veg_audio_8k.wav"));
+                    AudioSource audio = new WavAudioSource(new FileAudioSource(getApplicationContext().getAssets().open("pizza_veg_audio_8k.wav")));
 
                     // Starts the recognize
                     recognizer.recognize(audio, LanguageModelList.builder().addFromURI("builtin:slm/general").build());